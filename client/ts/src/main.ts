@@ -785,7 +785,7 @@ const doMain = (wsPort: number
               column: pos.column,
             };
 
-            const asyncRes = await evaluateAsyncRequest<HoverReq, HoverRes>(modalEnv, req);
+            const asyncRes = await evaluateAsyncRequest<HoverReq, HoverRes>(modalEnv, req, 'lsp:hover');
             switch (asyncRes.type) {
               case 'timeout':
                 return { contents: [{ value: '⚠️ Timeout when computing this value' }]}
@@ -821,7 +821,7 @@ const doMain = (wsPort: number
               line: pos.line,
               column: pos.column,
             };
-            const asyncRes = await evaluateAsyncRequest<CompleteReq, CompleteRes>(modalEnv, req);
+            const asyncRes = await evaluateAsyncRequest<CompleteReq, CompleteRes>(modalEnv, req, 'lsp:complete');
             switch (asyncRes.type) {
               case 'timeout':
               case 'unexpected_error':
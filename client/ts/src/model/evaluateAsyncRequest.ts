@@ -8,7 +8,10 @@ type AsyncResult<T> =
 | { type: 'unexpected_error', value: string[] }
 ;
 
-const evaluateAsyncRequest = <Req, Res>(env: ModalEnv, req: Req): Promise<AsyncResult<Res>> => new Promise(async (resolve, reject) => {
+/**
+ * @param supersedes if set, older requests from this client with the same key are cancelled by the server
+ */
+const evaluateAsyncRequest = <Req, Res>(env: ModalEnv, req: Req, supersedes?: string): Promise<AsyncResult<Res>> => new Promise(async (resolve, reject) => {
   try {
     let autoKillTimer: any | null = null;
     const jobId = env.createJobId(update => {
@@ -45,6 +48,7 @@ const evaluateAsyncRequest = <Req, Res>(env: ModalEnv, req: Req): Promise<AsyncR
       type: 'AsyncRequest',
       src: req as any,
       job: jobId.id,
+      supersedes,
     });
 
     switch (res.response.type) {
@@ -305,6 +305,7 @@ const createTestManager = (getEnv: () => ModalEnv, createJobId: ModalEnv['create
           captureTraces: settings.shouldCaptureTraces() || false,
           flushBeforeTraceCollection: (settings.shouldCaptureTraces() && settings.shouldAutoflushTraces()) || false,
           jobLabel: `Test > ${debugLabel}`,
+          priority: 'BULK',
         }).fetch();
         if (res !== 'stopped') {
           // Non-concurrent server, handle request synchronously
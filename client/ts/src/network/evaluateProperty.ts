@@ -117,7 +117,9 @@ const evaluateProperty = (
         .then((data) => {
           if (data.response.type === 'job') {
             // Async work queued, not done.
-            if (cancelled) {
+            if (isDone) {
+              // The result was already delivered as an async update, e.g a memoized result.
+            } else if (cancelled) {
               // We were removed while this request was sent
               // Stop it asap
               doStopJob(jobId);
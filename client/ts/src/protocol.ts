@@ -2,6 +2,8 @@ interface AsyncRequestReq {
   type: "AsyncRequest";
   src: { [key: string]: any };
   job?: number;
+  priority?: ('INTERACTIVE'| 'BULK'| 'BACKGROUND');
+  supersedes?: string;
 }
 interface AsyncRequestRes {
   response: AsyncResult;
@@ -20,6 +22,7 @@ type AsyncRpcUpdateValue = (
     { type: 'status'; value: string; }
   | { type: 'workerStackTrace'; value: string[]; }
   | { type: 'workerStatuses'; value: string[]; }
+  | { type: 'workerQueueDepths'; value: WorkerQueueDepths; }
   | { type: 'workerTaskDone'; value: WorkerTaskDone; }
 );
 interface BackingFile {
@@ -75,6 +78,10 @@ interface Diagnostic {
   end: number;
   msg: string;
 }
+interface DocumentRef {
+  id: string;
+  version: number;
+}
 interface EvaluatePropertyReq {
   type: "EvaluateProperty";
   src: ParsingRequestData;
@@ -87,6 +94,8 @@ interface EvaluatePropertyReq {
   captureTraces?: boolean;
   flushBeforeTraceCollection?: boolean;
   flattenForTextProbes?: boolean;
+  priority?: ('INTERACTIVE'| 'BULK'| 'BACKGROUND');
+  supersedes?: string;
 }
 interface EvaluatePropertyRes {
   response: PropertyEvaluationResult;
@@ -121,9 +130,14 @@ interface GetTestSuiteRes {
 }
 interface GetWorkerStatusReq {
   type: "Concurrent:GetWorkerStatus";
+  instance?: number;
 }
 interface GetWorkerStatusRes {
   stackTrace: string[];
+  heapUsedBytes?: number;
+  heapLiveBytes?: number;
+  heapMaxBytes?: number;
+  gcTimeMillis?: number;
 }
 interface GetWorkspaceFileReq {
   type: "GetWorkspaceFile";
@@ -258,6 +272,7 @@ interface ParsingRequestData {
 type ParsingSource = (
     { type: 'text'; value: string; }
   | { type: 'workspacePath'; value: string; }
+  | { type: 'document'; value: DocumentRef; }
 );
 interface PollWorkerStatusReq {
   type: "Concurrent:PollWorkerStatus";
@@ -324,6 +339,22 @@ interface RenameWorkspacePathReq {
 interface RenameWorkspacePathRes {
   ok: boolean;
 }
+interface ResetWorkerInstanceReq {
+  type: "Concurrent:ResetInstance";
+  instance: number;
+}
+interface ResetWorkerInstanceRes {
+  ok: boolean;
+}
+interface ResolveLocatorsReq {
+  type: "ResolveLocators";
+  src: ParsingRequestData;
+  locators: NodeLocator[];
+}
+interface ResolveLocatorsRes {
+  body: RpcBodyLine[];
+  results?: NullableNodeLocator[];
+}
 type RpcBodyLine = (
     { type: 'plain'; value: string; }
   | { type: 'stdout'; value: string; }
@@ -348,6 +379,7 @@ interface SubmitWorkerTaskReq {
   type: "Concurrent:SubmitTask";
   job: number;
   data: { [key: string]: any };
+  instance?: number;
 }
 interface SubmitWorkerTaskRes {
   ok: boolean;
@@ -359,6 +391,18 @@ interface SubscribeToWorkerStatusReq {
 interface SubscribeToWorkerStatusRes {
   subscriberId: number;
 }
+interface SyncDocumentReq {
+  type: "SyncDocument";
+  id: string;
+  version: number;
+  fullText?: string;
+  baseVersion?: number;
+  edits?: TextEdit[];
+}
+interface SyncDocumentRes {
+  ok: boolean;
+  version?: number;
+}
 interface SynchronousEvaluationResult {
   body: RpcBodyLine[];
   totalTime: number;
@@ -371,6 +415,10 @@ interface SynchronousEvaluationResult {
   errors?: Diagnostic[];
   args?: PropertyArg[];
   locator?: NodeLocator;
+  astCacheHits?: number;
+  astCacheMisses?: number;
+  applyLocatorCacheHits?: number;
+  applyLocatorCacheMisses?: number;
 }
 interface TALStep {
   type: string;
@@ -401,6 +449,11 @@ type TestSuiteOrError = (
     { type: 'err'; value: ('NO_TEST_DIR_SET'| 'NO_SUCH_TEST_SUITE'| 'ERROR_WHEN_READING_FILE'); }
   | { type: 'contents'; value: TestSuite; }
 );
+interface TextEdit {
+  start: number;
+  end: number;
+  text: string;
+}
 interface TopRequestReq {
   type: "rpc";
   id: number;
@@ -445,6 +498,11 @@ interface UnsubscribeFromWorkerStatusReq {
 interface UnsubscribeFromWorkerStatusRes {
   ok: boolean;
 }
+interface WorkerQueueDepths {
+  interactive: number;
+  bulk: number;
+  background: number;
+}
 type WorkerTaskDone = (
     { type: 'normal'; value: { [key: string]: any }; }
   | { type: 'unexpectedError'; value: string[]; }
@@ -493,6 +551,7 @@ export {
  , CompletionItem
  , Decoration
  , Diagnostic
+ , DocumentRef
  , EvaluatePropertyReq
  , EvaluatePropertyRes
  , FNStep
@@ -545,6 +604,10 @@ export {
  , Refresh
  , RenameWorkspacePathReq
  , RenameWorkspacePathRes
+ , ResetWorkerInstanceReq
+ , ResetWorkerInstanceRes
+ , ResolveLocatorsReq
+ , ResolveLocatorsRes
  , RpcBodyLine
  , StopJobReq
  , StopJobRes
@@ -552,12 +615,15 @@ export {
  , SubmitWorkerTaskRes
  , SubscribeToWorkerStatusReq
  , SubscribeToWorkerStatusRes
+ , SyncDocumentReq
+ , SyncDocumentRes
  , SynchronousEvaluationResult
  , TALStep
  , TestCase
  , TestSuite
  , TestSuiteListOrError
  , TestSuiteOrError
+ , TextEdit
  , TopRequestReq
  , TopRequestRes
  , TopRequestResponseData
@@ -568,6 +634,7 @@ export {
  , UnlinkWorkspacePathRes
  , UnsubscribeFromWorkerStatusReq
  , UnsubscribeFromWorkerStatusRes
+ , WorkerQueueDepths
  , WorkerTaskDone
  , WorkspaceEntry
  , WorkspaceFile
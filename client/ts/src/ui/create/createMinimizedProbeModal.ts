@@ -63,6 +63,7 @@ const createMinimizedProbeModal = (
             property,
             src,
             type: 'EvaluateProperty',
+            supersedes: `probe:${queryId}`,
           },
             // Status update stuff, can we use this here? :thinking:
             () => {},
@@ -373,6 +373,8 @@ const displayProbeModal = (
           flushBeforeTraceCollection: (settings.shouldCaptureTraces() && settings.shouldAutoflushTraces()) || undefined,
           jobLabel: `Probe: '${`${locator.get().result.label ?? locator.get().result.type}`.split('.').slice(-1)[0]}.${property.name}'`,
           skipResultLocator: env !== env.getGlobalModalEnv(),
+          // A new evaluation replaces any older one from this window that hasn't started yet
+          supersedes: `probe:${queryId}`,
         },
           () => { // On slow
             const stopBtn = document.createElement('button');
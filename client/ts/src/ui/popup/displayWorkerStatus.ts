@@ -50,12 +50,24 @@ const displayWorkerStatus = (
       root.appendChild(pre);
       pre.innerText = `Requesting worker status..`;
 
+      let workerLines = '';
+      let queueLine = '';
+      const render = () => {
+        pre.innerText = `Status:\n${workerLines}${queueLine ? `\n${queueLine}` : ''}`;
+      };
       const job = env.createJobId(data => {
         // console.log('worker status data:', data);
         switch (data.value.type) {
           case 'workerStatuses': {
             const workers = data.value.value
-            pre.innerText = `Status:\n${workers.map((stat, idx) => `${`${idx + 1}`.padStart(3, ' ')}:${stat}`).join('\n')}`
+            workerLines = workers.map((stat, idx) => `${`${idx + 1}`.padStart(3, ' ')}:${stat}`).join('\n');
+            render();
+            break;
+          }
+          case 'workerQueueDepths': {
+            const { interactive, bulk, background } = data.value.value;
+            queueLine = `Queued: ${interactive} interactive, ${bulk} bulk, ${background} background`;
+            render();
             break;
           }
         }
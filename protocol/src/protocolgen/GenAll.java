@@ -26,11 +26,14 @@ import protocolgen.spec.PutWorkspaceContent;
 import protocolgen.spec.PutWorkspaceMetadata;
 import protocolgen.spec.Refresh;
 import protocolgen.spec.RenameWorkspacePath;
+import protocolgen.spec.ResolveLocators;
+import protocolgen.spec.ResetWorkerInstance;
 import protocolgen.spec.Rpc;
 import protocolgen.spec.StopJob;
 import protocolgen.spec.Streamable;
 import protocolgen.spec.SubmitWorkerTask;
 import protocolgen.spec.SubscribeToWorkerStatus;
+import protocolgen.spec.SyncDocument;
 import protocolgen.spec.TopRequest;
 import protocolgen.spec.TunneledWsPutRequest;
 import protocolgen.spec.UnlinkWorkspacePath;
@@ -53,6 +56,7 @@ public class GenAll {
 		rpcs.add(ListProperties.class);
 		rpcs.add(EvaluateProperty.class);
 		rpcs.add(ListTree.class);
+		rpcs.add(ResolveLocators.class);
 		rpcs.add(ListTestSuites.class);
 		rpcs.add(GetTestSuite.class);
 		rpcs.add(PutTestSuite.class);
@@ -61,6 +65,7 @@ public class GenAll {
 		rpcs.add(StopJob.class);
 		rpcs.add(PollWorkerStatus.class);
 		rpcs.add(BlessFile.class);
+		rpcs.add(SyncDocument.class);
 
 		// Client->Server, Workspace
 		rpcs.add(GetWorkspaceFile.class);
@@ -84,6 +89,7 @@ public class GenAll {
 		// Coordinator -> Worker
 		rpcs.add(GetWorkerStatus.class);
 		rpcs.add(SubmitWorkerTask.class);
+		rpcs.add(ResetWorkerInstance.class);
 		rpcs.add(AsyncRequest.class);
 
 		// Server->Client
@@ -17,10 +17,12 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.json.JSONObject;
 
+import protocolgen.spec.ContentDigested;
 import protocolgen.spec.Rpc;
 import protocolgen.spec.Streamable;
 import protocolgen.spec.StreamableUnion;
@@ -185,9 +187,11 @@ public class GenJava {
 //		private final StreamableUnion union;
 		private final String typeName;
 		private final List<UnionMember> members;
+		private final boolean contentDigested;
 
 		public UnionRequestedType(StreamableUnion union) throws Exception {
 			this.typeName = union.getClass().getSimpleName();
+			this.contentDigested = union instanceof ContentDigested;
 			this.members = new ArrayList<>();
 			for (Field f : listFieldsInProperOrder(union.getClass())) {
 				f.setAccessible(true);
@@ -239,9 +243,18 @@ public class GenJava {
 			println.accept("");
 			println.accept("  public final Type type;");
 			println.accept("  public final Object value;");
+			final Function<String, String> genDigestInit = val -> "    this.contentDigest = " + val
+					+ " instanceof String ? codeprober.util.ContentDigest.of((String) " + val + ") : 0L;";
+			if (contentDigested) {
+				println.accept("  /** Digest of the value if it is a String, otherwise 0. Computed once, on creation/decoding. */");
+				println.accept("  public final long contentDigest;");
+			}
 			println.accept("  private " + getTypeName() + "(Type type, Object value) {");
 			println.accept("    this.type = type;");
 			println.accept("    this.value = value;");
+			if (contentDigested) {
+				println.accept(genDigestInit.apply("value"));
+			}
 			println.accept("  }");
 			println.accept("  public " + getTypeName() + "(java.io.DataInputStream src) throws java.io.IOException {");
 			println.accept("    this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));");
@@ -262,6 +275,9 @@ public class GenJava {
 				println.accept("        break;");
 			}
 			println.accept("    }");
+			if (contentDigested) {
+				println.accept(genDigestInit.apply("this.value"));
+			}
 			println.accept("  }");
 
 			for (int i = 0; i < members.size(); ++i) {
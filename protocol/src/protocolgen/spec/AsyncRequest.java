@@ -2,6 +2,8 @@ package protocolgen.spec;
 
 import org.json.JSONObject;
 
+import codeprober.protocol.JobPriority;
+
 import protocolgen.spec.EvaluateProperty.PropertyEvaluationResult;
 import protocolgen.spec.EvaluateProperty.SynchronousEvaluationResult;
 
@@ -14,6 +16,8 @@ public class AsyncRequest extends Rpc {
 			public final Object type = "AsyncRequest";
 			public final Object src = JSONObject.class;
 			public final Object job = opt(Long.class);
+			public final Object priority = opt(JobPriority.class);
+			public final Object supersedes = opt(String.class);
 		};
 	}
 
@@ -5,5 +5,6 @@ public class AsyncRpcUpdateValue extends StreamableUnion {
 	public final Object status = String.class;
 	public final Object workerStackTrace = arr(String.class);
 	public final Object workerStatuses = arr(String.class);
+	public final Object workerQueueDepths = WorkerQueueDepths.class;
 	public final Object workerTaskDone = WorkerTaskDone.class;
 }
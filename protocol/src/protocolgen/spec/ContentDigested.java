@@ -0,0 +1,11 @@
+package protocolgen.spec;
+
+/**
+ * Marker for union types whose Java class should carry a
+ * <code>contentDigest</code> of its value. The digest is computed once, when the
+ * value is created or decoded, for members of type String. Other members get 0.
+ * Only affects the generated Java code.
+ */
+public interface ContentDigested {
+
+}
@@ -0,0 +1,6 @@
+package protocolgen.spec;
+
+public class DocumentRef extends Streamable {
+	public final Object id = String.class;
+	public final Object version = Integer.class;
+}
@@ -1,5 +1,7 @@
 package protocolgen.spec;
 
+import codeprober.protocol.JobPriority;
+
 @SuppressWarnings("unused")
 public class EvaluateProperty extends Rpc {
 
@@ -17,6 +19,8 @@ public class EvaluateProperty extends Rpc {
 			public final Object captureTraces = opt(Boolean.class);
 			public final Object flushBeforeTraceCollection = opt(Boolean.class);
 			public final Object flattenForTextProbes = opt(Boolean.class);
+			public final Object priority = opt(JobPriority.class);
+			public final Object supersedes = opt(String.class);
 		};
 	}
 
@@ -44,5 +48,9 @@ public class EvaluateProperty extends Rpc {
 		public final Object errors = opt(arr(Diagnostic.class));
 		public final Object args = opt(arr(PropertyArg.class));
 		public final Object locator = opt(NodeLocator.class);
+		public final Object astCacheHits = opt(Long.class);
+		public final Object astCacheMisses = opt(Long.class);
+		public final Object applyLocatorCacheHits = opt(Long.class);
+		public final Object applyLocatorCacheMisses = opt(Long.class);
 	}
 }
@@ -7,6 +7,7 @@ public class GetWorkerStatus extends Rpc {
 	public Streamable getRequestType() {
 		return new Streamable() {
 			public final Object type = "Concurrent:GetWorkerStatus";
+			public final Object instance = opt(Integer.class);
 		};
 	}
 
@@ -14,6 +15,10 @@ public class GetWorkerStatus extends Rpc {
 	public Streamable getResponseType() {
 		return new Streamable() {
 			public final Object stackTrace = arr(String.class);
+			public final Object heapUsedBytes = opt(Long.class);
+			public final Object heapLiveBytes = opt(Long.class);
+			public final Object heapMaxBytes = opt(Long.class);
+			public final Object gcTimeMillis = opt(Long.class);
 		};
 	}
 
@@ -1,6 +1,8 @@
 package protocolgen.spec;
 
-public class ParsingSource extends StreamableUnion {
+public class ParsingSource extends StreamableUnion implements ContentDigested {
 	public final Object text = String.class;
 	public final Object workspacePath = String.class;
+	// A document previously sent with SyncDocument
+	public final Object document = DocumentRef.class;
 }
@@ -0,0 +1,21 @@
+package protocolgen.spec;
+
+@SuppressWarnings("unused")
+public class ResetWorkerInstance extends Rpc {
+
+	@Override
+	public Streamable getRequestType() {
+		return new Streamable() {
+			public final Object type = "Concurrent:ResetInstance";
+			public final Object instance = Integer.class;
+		};
+	}
+
+	@Override
+	public Streamable getResponseType() {
+		return new Streamable() {
+			public final Object ok = Boolean.class;
+		};
+	}
+
+}
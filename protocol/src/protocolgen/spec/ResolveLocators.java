@@ -0,0 +1,25 @@
+package protocolgen.spec;
+
+@SuppressWarnings("unused")
+public class ResolveLocators extends Rpc {
+
+	@Override
+	public Streamable getRequestType() {
+		return new Streamable() {
+			public final Object type = "ResolveLocators";
+			public final Object src = ParsingRequestData.class;
+			public final Object locators = arr(NodeLocator.class);
+		};
+	}
+
+	@Override
+	public Streamable getResponseType() {
+		return new Streamable() {
+			public final Object body = arr(RpcBodyLine.class);
+			// One entry per requested locator, in the same order. Each entry holds a fresh
+			// locator to the resolved node, or no value if no node was found.
+			public final Object results = opt(arr(NullableNodeLocator.class));
+		};
+	}
+
+}
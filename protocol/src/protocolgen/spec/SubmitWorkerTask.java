@@ -11,6 +11,7 @@ public class SubmitWorkerTask extends Rpc {
 			public final Object type = "Concurrent:SubmitTask";
 			public final Object job  = Long.class;
 			public final Object data  = JSONObject.class;
+			public final Object instance = opt(Integer.class);
 		};
 	}
 
@@ -0,0 +1,29 @@
+package protocolgen.spec;
+
+@SuppressWarnings("unused")
+public class SyncDocument extends Rpc {
+
+	@Override
+	public Streamable getRequestType() {
+		return new Streamable() {
+			public final Object type = "SyncDocument";
+			public final Object id = String.class;
+			public final Object version = Integer.class;
+			// Either 'fullText', or 'edits' applied in order on top of 'baseVersion'
+			public final Object fullText = opt(String.class);
+			public final Object baseVersion = opt(Integer.class);
+			public final Object edits = opt(arr(TextEdit.class));
+		};
+	}
+
+	@Override
+	public Streamable getResponseType() {
+		return new Streamable() {
+			public final Object ok = Boolean.class;
+			// Latest version of the document known by the server, if any. If 'ok' is
+			// false, the client should resend the document using 'fullText'.
+			public final Object version = opt(Integer.class);
+		};
+	}
+
+}
@@ -0,0 +1,8 @@
+package protocolgen.spec;
+
+public class TextEdit extends Streamable {
+	// UTF-16 offsets into the previous version of the document. 'end' is exclusive.
+	public final Object start = Integer.class;
+	public final Object end = Integer.class;
+	public final Object text = String.class;
+}
@@ -0,0 +1,8 @@
+package protocolgen.spec;
+
+public class WorkerQueueDepths extends Streamable {
+	// Number of jobs waiting for a worker, per JobPriority
+	public final Object interactive = Integer.class;
+	public final Object bulk = Integer.class;
+	public final Object background = Integer.class;
+}
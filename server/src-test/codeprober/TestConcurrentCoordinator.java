@@ -0,0 +1,305 @@
+package codeprober;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import codeprober.protocol.ClientRequest;
+import codeprober.protocol.data.AsyncRequestReq;
+import codeprober.protocol.data.AsyncRpcUpdate;
+import codeprober.protocol.data.AsyncRpcUpdateValue;
+import codeprober.protocol.data.StopJobReq;
+import codeprober.protocol.data.WorkerTaskDone;
+
+public class TestConcurrentCoordinator {
+
+	/**
+	 * A worker that never answers, but records what the coordinator sends it.
+	 */
+	private static class FakeChannel extends WorkerChannel {
+		private final PipedOutputStream toCoordinator = new PipedOutputStream();
+		private final PipedInputStream in;
+		private final ByteArrayOutputStream fromCoordinator = new ByteArrayOutputStream();
+		private volatile boolean closed;
+
+		public FakeChannel() throws IOException {
+			in = new PipedInputStream(toCoordinator);
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return in;
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return fromCoordinator;
+		}
+
+		@Override
+		public boolean isAlive() {
+			return !closed;
+		}
+
+		@Override
+		public void close(boolean forcibly) {
+			closed = true;
+			try {
+				toCoordinator.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		@Override
+		public boolean isLocal() {
+			return true;
+		}
+
+		public void send(JSONObject msg) throws IOException {
+			toCoordinator.write(IpcFrames.encodeJson(msg));
+			toCoordinator.flush();
+		}
+
+		public boolean hasReceived(String text) {
+			return new String(fromCoordinator.toByteArray(), StandardCharsets.UTF_8).contains(text);
+		}
+	}
+
+	private final List<FakeChannel> started = new CopyOnWriteArrayList<>();
+	// Queue depth that the fake workers announce
+	private int announcedQueueDepth = ConcurrentWorker.getQueueDepth();
+	private final Map<Long, List<AsyncRpcUpdate>> clientUpdates = new ConcurrentHashMap<>();
+	private ConcurrentCoordinator coordinator;
+
+	private ConcurrentCoordinator createCoordinator(int workerCount) throws IOException {
+		return createCoordinator(workerCount, null);
+	}
+
+	private ConcurrentCoordinator createCoordinator(int workerCount, Integer minWorkerCount) throws IOException {
+		coordinator = new ConcurrentCoordinator(req -> null, "unused.jar", new String[0], workerCount,
+				minWorkerCount) {
+			@Override
+			WorkerChannel startLocalWorker() throws IOException {
+				final FakeChannel ret = new FakeChannel();
+				ret.send(IpcFrames.createHello(false, ConcurrentWorker.getInstanceCount(), announcedQueueDepth));
+				started.add(ret);
+				return ret;
+			}
+		};
+		return coordinator;
+	}
+
+	@After
+	public void teardown() {
+		if (coordinator != null) {
+			coordinator.shutdown();
+		}
+		System.clearProperty("cpr.spareWorkers");
+		System.clearProperty("cpr.workerScaleUpWaitMs");
+		System.clearProperty("cpr.workerIdleRetireMs");
+		System.clearProperty("cpr.workerMemoryBudgetMb");
+		System.clearProperty("cpr.workerInstances");
+		System.clearProperty("cpr.workerCancelGraceMs");
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10_000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timed out", System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+	}
+
+	private long countAlive() {
+		return started.stream().filter(FakeChannel::isAlive).count();
+	}
+
+	private void submitJob(long jobId, String label) {
+		final JSONObject data = new AsyncRequestReq(new JSONObject().put("type", "Test").put("label", label), jobId)
+				.toJSON();
+		coordinator.handleRequest(new ClientRequest(data,
+				upd -> clientUpdates.computeIfAbsent(upd.job, id -> new CopyOnWriteArrayList<>()).add(upd),
+				new AtomicBoolean(true), path -> {
+				}));
+	}
+
+	private static AsyncRpcUpdate createDone(long jobId) {
+		return new AsyncRpcUpdate(jobId, true,
+				AsyncRpcUpdateValue.fromWorkerTaskDone(WorkerTaskDone.fromNormal(new JSONObject())));
+	}
+
+	@Test
+	public void testSpareIsHandedOutAndReplenished() throws Exception {
+		createCoordinator(1);
+		// One worker, plus one spare started in the background
+		waitUntil(() -> started.size() == 2);
+		final FakeChannel worker = started.get(0);
+		final FakeChannel spare = started.get(1);
+		spare.send(IpcFrames.createReady());
+
+		// Crash the worker, the ready spare takes its place
+		worker.close(true);
+		waitUntil(() -> started.size() == 3);
+		submitJob(1, "job-for-spare");
+		waitUntil(() -> spare.hasReceived("job-for-spare"));
+		assertFalse(worker.hasReceived("job-for-spare"));
+
+		// The new spare is not used until needed
+		Thread.sleep(50);
+		assertEquals(3, started.size());
+		assertFalse(started.get(2).hasReceived("job-for-spare"));
+		assertTrue(started.get(2).isAlive());
+	}
+
+	@Test
+	public void testShutdownStopsWorkersAndSpares() throws Exception {
+		createCoordinator(2);
+		waitUntil(() -> started.size() == 3);
+
+		coordinator.shutdown();
+		for (FakeChannel ch : started) {
+			assertFalse(ch.isAlive());
+		}
+		// Workers that exit because of the shutdown are neither replaced nor refilled
+		Thread.sleep(100);
+		assertEquals(3, started.size());
+	}
+
+	@Test
+	public void testWorkerCountFollowsQueueDepth() throws Exception {
+		System.setProperty("cpr.spareWorkers", "0");
+		System.setProperty("cpr.workerScaleUpWaitMs", "20");
+		System.setProperty("cpr.workerIdleRetireMs", "100");
+		System.setProperty("cpr.workerMemoryBudgetMb", "1000000");
+		createCoordinator(3, 1);
+		assertEquals(1, started.size());
+
+		// The worker runs one job and stages one, so nothing waits yet
+		submitJob(1, "<job-1>");
+		submitJob(2, "<job-2>");
+		Thread.sleep(100);
+		assertEquals(1, started.size());
+
+		// A waiting job adds a worker, which takes the job
+		submitJob(3, "<job-3>");
+		waitUntil(() -> started.size() == 2);
+		waitUntil(() -> started.get(1).hasReceived("<job-3>"));
+		Thread.sleep(100);
+		assertEquals(2, started.size());
+
+		// A long queue adds workers up to the max
+		for (int i = 4; i <= 12; ++i) {
+			submitJob(i, "<job-" + i + ">");
+		}
+		waitUntil(() -> started.size() == 3);
+		Thread.sleep(100);
+		assertEquals(3, started.size());
+
+		// Finish all jobs, after which idle workers are shut down until the min is reached
+		final boolean[] done = new boolean[13];
+		waitUntil(() -> {
+			boolean allDone = true;
+			for (int i = 1; i <= 12; ++i) {
+				if (done[i]) {
+					continue;
+				}
+				allDone = false;
+				for (FakeChannel ch : started) {
+					if (ch.isAlive() && ch.hasReceived("<job-" + i + ">")) {
+						try {
+							ch.send(createDone(i).toJSON());
+						} catch (IOException e) {
+							throw new RuntimeException(e);
+						}
+						done[i] = true;
+					}
+				}
+			}
+			return allDone;
+		});
+		waitUntil(() -> countAlive() == 1);
+		assertEquals(3, started.size());
+	}
+
+	@Test
+	public void testReplacingMultiInstanceWorker() throws Exception {
+		System.setProperty("cpr.spareWorkers", "0");
+		System.setProperty("cpr.workerInstances", "3");
+		System.setProperty("cpr.workerCancelGraceMs", "0");
+		createCoordinator(1);
+		assertEquals(1, started.size());
+		final FakeChannel first = started.get(0);
+
+		// One job running in each instance, plus one staged
+		for (int i = 1; i <= 4; ++i) {
+			submitJob(i, "<job-" + i + ">");
+		}
+		waitUntil(() -> first.hasReceived("<job-4>"));
+		// Job 2 has started streaming its output, job 3 has not
+		first.send(new AsyncRpcUpdate(2, false, AsyncRpcUpdateValue.fromStatus("Working")).toJSON());
+		waitUntil(() -> clientUpdates.containsKey(2L));
+
+		// Stopping job 1 replaces the process, since it cannot wait for job 1 to react
+		coordinator.handleRequest(new ClientRequest(new StopJobReq(1).toJSON(), upd -> {
+		}, new AtomicBoolean(true), path -> {
+		}));
+		waitUntil(() -> started.size() == 2);
+		final FakeChannel second = started.get(1);
+		assertFalse(first.isAlive());
+
+		// Jobs that the client hasn't seen anything from are run again
+		waitUntil(() -> second.hasReceived("<job-3>") && second.hasReceived("<job-4>"));
+		assertFalse(second.hasReceived("<job-1>"));
+		assertFalse(second.hasReceived("<job-2>"));
+
+		// Job 2 would show its output twice if run again, so it fails instead
+		final List<AsyncRpcUpdate> job2 = clientUpdates.get(2L);
+		assertEquals(2, job2.size());
+		final AsyncRpcUpdate last = job2.get(1);
+		assertTrue(last.isFinalUpdate);
+		assertTrue(last.value.asWorkerTaskDone().isUnexpectedError());
+
+		// The new process finishes the requeued jobs normally
+		second.send(createDone(3).toJSON());
+		waitUntil(() -> clientUpdates.containsKey(3L));
+		assertTrue(clientUpdates.get(3L).get(0).value.asWorkerTaskDone().isNormal());
+	}
+
+	@Test
+	public void testAnnouncedQueueDepthIsUsed() throws Exception {
+		System.setProperty("cpr.spareWorkers", "0");
+		// The worker only accepts one job at a time, even if the coordinator would stage
+		// more by default
+		announcedQueueDepth = 1;
+		createCoordinator(1);
+		final FakeChannel worker = started.get(0);
+
+		submitJob(1, "<job-1>");
+		submitJob(2, "<job-2>");
+		waitUntil(() -> worker.hasReceived("<job-1>"));
+		Thread.sleep(100);
+		assertFalse(worker.hasReceived("<job-2>"));
+
+		worker.send(createDone(1).toJSON());
+		waitUntil(() -> worker.hasReceived("<job-2>"));
+	}
+}
@@ -0,0 +1,169 @@
+package codeprober;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import codeprober.protocol.JobPriority;
+
+public class TestConcurrentJobQueue {
+
+	private static final long SECOND = 1_000_000_000L;
+
+	private static List<String> order(ConcurrentJobQueue<String> queue, long now) {
+		return queue.getOrdered(now).stream().map(ent -> ent.job).collect(Collectors.toList());
+	}
+
+	@Test
+	public void testHigherPriorityGoesFirst() {
+		final ConcurrentJobQueue<String> queue = new ConcurrentJobQueue<>(0);
+		final Object client = new Object();
+		queue.add("bulk", JobPriority.BULK, client, 0);
+		queue.add("background", JobPriority.BACKGROUND, client, 1);
+		queue.add("interactive", JobPriority.INTERACTIVE, client, 2);
+		assertEquals(Arrays.asList("interactive", "bulk", "background"), order(queue, 3));
+
+		final Map<JobPriority, Integer> depths = queue.getDepths();
+		assertEquals(Integer.valueOf(1), depths.get(JobPriority.INTERACTIVE));
+		assertEquals(Integer.valueOf(1), depths.get(JobPriority.BULK));
+		assertEquals(Integer.valueOf(1), depths.get(JobPriority.BACKGROUND));
+	}
+
+	@Test
+	public void testClientsTakeTurns() {
+		final ConcurrentJobQueue<String> queue = new ConcurrentJobQueue<>(0);
+		final Object busyClient = new Object();
+		final Object otherClient = new Object();
+		queue.add("a1", JobPriority.BULK, busyClient, 0);
+		queue.add("a2", JobPriority.BULK, busyClient, 1);
+		queue.add("a3", JobPriority.BULK, busyClient, 2);
+		queue.add("b1", JobPriority.BULK, otherClient, 3);
+
+		assertEquals("a1", order(queue, 4).get(0));
+		assertTrue(queue.take("a1"));
+		// The other client has not been served yet, so it goes before a2
+		assertEquals(Arrays.asList("b1", "a2", "a3"), order(queue, 4));
+		assertTrue(queue.take("b1"));
+		assertFalse(queue.take("b1"));
+		assertEquals(Arrays.asList("a2", "a3"), order(queue, 4));
+	}
+
+	@Test
+	public void testAgingPromotesWaitingJobs() {
+		final ConcurrentJobQueue<String> queue = new ConcurrentJobQueue<>(10 * SECOND);
+		queue.add("old-background", JobPriority.BACKGROUND, null, 0);
+		queue.add("new-bulk", JobPriority.BULK, null, 15 * SECOND);
+		queue.add("new-interactive", JobPriority.INTERACTIVE, null, 15 * SECOND);
+
+		// After 15s, the background job has been promoted to bulk, and is older than
+		// the other bulk job
+		assertEquals(Arrays.asList("new-interactive", "old-background", "new-bulk"), order(queue, 15 * SECOND));
+		// After 20s, it is promoted to interactive
+		assertEquals("old-background", order(queue, 20 * SECOND).get(0));
+	}
+
+	@Test
+	public void testRaisePriority() {
+		final ConcurrentJobQueue<String> queue = new ConcurrentJobQueue<>(0);
+		final Object client = new Object();
+		queue.add("bulk", JobPriority.BULK, client, 0);
+		queue.add("background", JobPriority.BACKGROUND, client, 1);
+		assertEquals(Arrays.asList("bulk", "background"), order(queue, 2));
+
+		assertTrue(queue.raisePriority("background", JobPriority.INTERACTIVE));
+		assertEquals(Arrays.asList("background", "bulk"), order(queue, 2));
+		assertEquals(2, queue.getJobs().size());
+		assertEquals(JobPriority.INTERACTIVE, queue.getOrdered(2).get(0).priority);
+
+		// Lowering is not supported, and unknown jobs are ignored
+		assertFalse(queue.raisePriority("bulk", JobPriority.BACKGROUND));
+		assertFalse(queue.raisePriority("unknown", JobPriority.INTERACTIVE));
+		assertTrue(queue.take("background"));
+		assertFalse(queue.raisePriority("background", JobPriority.INTERACTIVE));
+		assertEquals(Arrays.asList("bulk"), order(queue, 2));
+	}
+
+	@Test
+	public void testVisitStopsEarly() {
+		final ConcurrentJobQueue<String> queue = new ConcurrentJobQueue<>(0);
+		for (int i = 0; i < 100; ++i) {
+			queue.add("job" + i, JobPriority.BULK, null, i);
+		}
+		final List<String> visited = new ArrayList<>();
+		queue.visitInOrder(100, ent -> {
+			visited.add(ent.job);
+			return visited.size() < 3;
+		});
+		assertEquals(Arrays.asList("job0", "job1", "job2"), visited);
+		// Visiting doesn't change the queue
+		assertEquals(100, order(queue, 100).size());
+		assertEquals("job0", order(queue, 100).get(0));
+	}
+
+	@Test
+	public void testMatchesSortedOrder() {
+		// Compare against sorting all entries by (effective priority, last time the
+		// client was served, time of queueing).
+		final Random rng = new Random(1234);
+		final long aging = 50;
+		final ConcurrentJobQueue<String> queue = new ConcurrentJobQueue<>(aging);
+		final Object[] clients = { new Object(), new Object(), new Object() };
+		final Map<String, Object[]> model = new HashMap<>();
+		final Map<Object, Long> lastServed = new HashMap<>();
+		long serveCounter = 0;
+		long now = 0;
+		for (int step = 0; step < 2000; ++step) {
+			now += rng.nextInt(10);
+			final int action = rng.nextInt(10);
+			if (action < 5 || model.isEmpty()) {
+				final String job = "job" + step;
+				final Object client = clients[rng.nextInt(clients.length)];
+				final JobPriority prio = JobPriority.values()[rng.nextInt(JobPriority.values().length)];
+				// Occasionally put back an old job, like when a worker is replaced
+				final long queuedAt = rng.nextInt(8) == 0 ? Math.max(0, now - rng.nextInt(200)) : now;
+				queue.add(job, prio, client, queuedAt);
+				model.put(job, new Object[] { prio, client, queuedAt });
+				lastServed.putIfAbsent(client, serveCounter);
+			} else {
+				final List<String> expected = new ArrayList<>(model.keySet());
+				final long at = now;
+				final Function<String, Long> effectiveClass = job -> Math.max(0,
+						((JobPriority) model.get(job)[0]).ordinal() - (at - (long) model.get(job)[2]) / aging);
+				expected.sort(Comparator //
+						.<String>comparingLong(effectiveClass::apply) //
+						.thenComparingLong(job -> lastServed.get(model.get(job)[1])) //
+						.thenComparingLong(job -> (long) model.get(job)[2]));
+				final List<String> actual = order(queue, now);
+				assertEquals(expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); ++i) {
+					// Ties between identical keys may be broken either way
+					final Object[] exp = model.get(expected.get(i));
+					final Object[] act = model.get(actual.get(i));
+					assertEquals(effectiveClass.apply(expected.get(i)), effectiveClass.apply(actual.get(i)));
+					assertEquals(lastServed.get(exp[1]), lastServed.get(act[1]));
+					assertEquals(exp[2], act[2]);
+				}
+				final String taken = action < 8 ? actual.get(0) : actual.get(rng.nextInt(actual.size()));
+				if (action < 9) {
+					assertTrue(queue.take(taken));
+					lastServed.put(model.get(taken)[1], ++serveCounter);
+				} else {
+					assertTrue(queue.removeIf(job -> job.equals(taken)));
+				}
+				model.remove(taken);
+			}
+		}
+	}
+}
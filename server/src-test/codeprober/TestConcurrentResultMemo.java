@@ -0,0 +1,74 @@
+package codeprober;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import codeprober.protocol.AstCacheStrategy;
+import codeprober.protocol.JobPriority;
+import codeprober.protocol.PositionRecoveryStrategy;
+import codeprober.protocol.data.EvaluatePropertyReq;
+import codeprober.protocol.data.NodeLocator;
+import codeprober.protocol.data.ParsingRequestData;
+import codeprober.protocol.data.ParsingSource;
+import codeprober.protocol.data.Property;
+import codeprober.protocol.data.TALStep;
+
+public class TestConcurrentResultMemo {
+
+	private static JSONObject createReq(String text, String property, AstCacheStrategy cache, Long job,
+			JobPriority priority) {
+		return new EvaluatePropertyReq(
+				new ParsingRequestData(PositionRecoveryStrategy.FAIL, cache, ParsingSource.fromText(text), null,
+						".tmp"),
+				new NodeLocator(new TALStep("", "", 0, 0, 0, false), Collections.emptyList()),
+				new Property(property, Collections.emptyList(), null), false, job, "Label " + job, null, null, null,
+				null, priority).toJSON();
+	}
+
+	@Test
+	public void testKeyIgnoresJobDetails() {
+		final String a = ConcurrentResultMemo.getCoalescingKey(
+				createReq("src", "prop", AstCacheStrategy.FULL, 1L, JobPriority.BULK), "tool");
+		final String b = ConcurrentResultMemo.getCoalescingKey(
+				createReq("src", "prop", AstCacheStrategy.FULL, 2L, JobPriority.INTERACTIVE).put("supersedes", "probe"),
+				"tool");
+		assertNotNull(a);
+		assertEquals(a, b);
+	}
+
+	@Test
+	public void testKeyDependsOnSourcePropertyAndTool() {
+		final String base = ConcurrentResultMemo
+				.getCoalescingKey(createReq("src", "prop", AstCacheStrategy.FULL, 1L, null), "tool");
+		assertNotEquals(base, ConcurrentResultMemo
+				.getCoalescingKey(createReq("src2", "prop", AstCacheStrategy.FULL, 1L, null), "tool"));
+		assertNotEquals(base, ConcurrentResultMemo
+				.getCoalescingKey(createReq("src", "prop2", AstCacheStrategy.FULL, 1L, null), "tool"));
+		assertNotEquals(base, ConcurrentResultMemo
+				.getCoalescingKey(createReq("src", "prop", AstCacheStrategy.FULL, 1L, null), "tool2"));
+		assertNull(ConcurrentResultMemo
+				.getCoalescingKey(createReq("src", "prop", AstCacheStrategy.NONE, 1L, null), "tool"));
+	}
+
+	@Test
+	public void testMemoExpires() {
+		final ConcurrentResultMemo memo = new ConcurrentResultMemo(100, 2);
+		final JSONObject res = new JSONObject().put("foo", "bar");
+		memo.put("a", res, 0);
+		assertEquals(res, memo.get("a", 50));
+		assertNull(memo.get("a", 101));
+
+		memo.put("a", res, 200);
+		memo.put("b", res, 200);
+		memo.put("c", res, 200);
+		assertEquals(2, memo.size());
+		assertNull(memo.get("a", 200));
+	}
+}
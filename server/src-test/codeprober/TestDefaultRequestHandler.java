@@ -1,12 +1,16 @@
 package codeprober;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -16,6 +20,7 @@ import codeprober.ast.TestData;
 import codeprober.protocol.AstCacheStrategy;
 import codeprober.protocol.ClientRequest;
 import codeprober.protocol.PositionRecoveryStrategy;
+import codeprober.protocol.data.DocumentRef;
 import codeprober.protocol.data.EvaluatePropertyReq;
 import codeprober.protocol.data.EvaluatePropertyRes;
 import codeprober.protocol.data.NodeLocator;
@@ -24,6 +29,7 @@ import codeprober.protocol.data.ParsingSource;
 import codeprober.protocol.data.Property;
 import codeprober.protocol.data.PutWorkspaceContentReq;
 import codeprober.protocol.data.PutWorkspaceContentRes;
+import codeprober.protocol.data.SyncDocumentReq;
 import codeprober.protocol.data.TALStep;
 import codeprober.requesthandler.WorkspaceHandler;
 import codeprober.toolglue.ParseResult;
@@ -136,6 +142,166 @@ public class TestDefaultRequestHandler {
 		assertEquals("Changed", changedText.response.asSync().body.get(0).asPlain());
 	}
 
+	@Test
+	public void testParseCachingKeepsMultipleAsts() {
+		final AtomicInteger parseCounter = new AtomicInteger();
+		final UnderlyingTool countingTool = new DummyTool() {
+
+			@Override
+			public ParseResult parse(String[] args) {
+				parseCounter.incrementAndGet();
+				return super.parse(args);
+			}
+		};
+		DefaultRequestHandler handler = new DefaultRequestHandler(countingTool);
+
+		handler.handleRequest(constructRequest("First", "getData"));
+		handler.handleRequest(constructRequest("Second", "getData"));
+		assertEquals(2, parseCounter.get());
+
+		// Switching back to a previously parsed text should reuse its AST
+		final EvaluatePropertyRes switchedBack = EvaluatePropertyRes
+				.fromJSON(handler.handleRequest(constructRequest("First", "getData")));
+		assertEquals(2, parseCounter.get());
+		assertEquals("First", switchedBack.response.asSync().body.get(0).asPlain());
+		assertEquals(Long.valueOf(1), switchedBack.response.asSync().astCacheHits);
+		assertEquals(Long.valueOf(2), switchedBack.response.asSync().astCacheMisses);
+	}
+
+	@Test
+	public void testAstCacheEvictsLeastRecentlyUsed() {
+		final AstCache cache = new AstCache(2, Long.MAX_VALUE);
+		final AstCache.Key a = new AstCache.Key(ParsingSource.fromText("a"), new String[0], 0);
+		final AstCache.Key b = new AstCache.Key(ParsingSource.fromText("b"), new String[0], 0);
+		final AstCache.Key c = new AstCache.Key(ParsingSource.fromText("c"), new String[0], 0);
+		cache.put(a, new AstCache.Entry("A", null, 1));
+		cache.put(b, new AstCache.Entry("B", null, 1));
+		cache.get(a);
+		cache.put(c, new AstCache.Entry("C", null, 1));
+		assertEquals(2, cache.size());
+		assertEquals("A", cache.get(a).rootNode);
+		assertEquals(null, cache.get(b));
+
+		final AstCache heapBound = new AstCache(10, 100);
+		heapBound.put(a, new AstCache.Entry("A", null, 60));
+		heapBound.put(b, new AstCache.Entry("B", null, 60));
+		assertEquals(1, heapBound.size());
+		assertEquals("B", heapBound.get(b).rootNode);
+	}
+
+	@Test
+	public void testParseTextSkipsFileSystem() {
+		final AtomicInteger parseCounter = new AtomicInteger();
+		final AtomicInteger parseTextCounter = new AtomicInteger();
+		final UnderlyingTool inMemoryTool = new DummyTool() {
+
+			@Override
+			public ParseResult parse(String[] args) {
+				parseCounter.incrementAndGet();
+				return super.parse(args);
+			}
+
+			@Override
+			public boolean supportsParseText() {
+				return true;
+			}
+
+			@Override
+			public ParseResult parseText(String[] args, CharSequence src) {
+				parseTextCounter.incrementAndGet();
+				assertEquals(0, args.length);
+				return new ParseResult(new DummyAst(src.toString()));
+			}
+		};
+		DefaultRequestHandler handler = new DefaultRequestHandler(inMemoryTool);
+
+		final EvaluatePropertyRes res = EvaluatePropertyRes
+				.fromJSON(handler.handleRequest(constructRequest("In memory", "getData")));
+		assertEquals("In memory", res.response.asSync().body.get(0).asPlain());
+		assertEquals(0, parseCounter.get());
+		assertEquals(1, parseTextCounter.get());
+	}
+
+	@Test
+	public void testScratchFilePerText() {
+		final List<String> parsedPaths = new ArrayList<>();
+		final DummyTool pathRecordingTool = new DummyTool() {
+
+			@Override
+			public ParseResult parse(String[] args) {
+				parsedPaths.add(args[args.length - 1]);
+				return super.parse(args);
+			}
+		};
+		DefaultRequestHandler handler = new DefaultRequestHandler(pathRecordingTool);
+
+		handler.handleRequest(constructRequest("A longer first text", "getData"));
+		final EvaluatePropertyRes second = EvaluatePropertyRes
+				.fromJSON(handler.handleRequest(constructRequest("Short", "getData")));
+		assertEquals("Short", second.response.asSync().body.get(0).asPlain());
+
+		// Both ASTs are cached, so each must keep pointing to a file with its own text
+		assertEquals(2, parsedPaths.size());
+		assertNotEquals(parsedPaths.get(0), parsedPaths.get(1));
+		assertEquals("A longer first text", pathRecordingTool.extractContents(parsedPaths.get(0)));
+		assertEquals("Short", pathRecordingTool.extractContents(parsedPaths.get(1)));
+	}
+
+	@Test
+	public void testScratchFilesAreReused() {
+		final List<String> parsedPaths = new ArrayList<>();
+		final DummyTool pathRecordingTool = new DummyTool() {
+
+			@Override
+			public ParseResult parse(String[] args) {
+				parsedPaths.add(args[args.length - 1]);
+				return super.parse(args);
+			}
+		};
+		DefaultRequestHandler handler = new DefaultRequestHandler(pathRecordingTool);
+
+		// Like typing, every request has a new text
+		final int numTexts = 20;
+		for (int i = 0; i < numTexts; ++i) {
+			handler.handleRequest(constructRequest("Text " + i, "getData"));
+		}
+		assertEquals(numTexts, parsedPaths.size());
+		final int poolSize = AstCache.createDefault().getMaxEntries() + 1;
+		assertEquals(poolSize, new HashSet<>(parsedPaths).size());
+
+		// Files are overwritten in place, least recently used first
+		assertEquals(parsedPaths.get(0), parsedPaths.get(poolSize));
+		assertEquals("Text " + (numTexts - 1), pathRecordingTool.extractContents(parsedPaths.get(numTexts - 1)));
+	}
+
+	@Test
+	public void testParseSyncedDocument() {
+		DefaultRequestHandler handler = new DefaultRequestHandler(new DummyTool());
+		final AtomicBoolean connection = new AtomicBoolean(true);
+		handler.handleRequest(new ClientRequest(new SyncDocumentReq("doc", 1, "Synced text").toJSON(), obj -> {
+		}, connection, p -> {
+		}));
+
+		final EvaluatePropertyReq req = new EvaluatePropertyReq(
+				new ParsingRequestData(PositionRecoveryStrategy.ALTERNATE_PARENT_CHILD, AstCacheStrategy.FULL,
+						ParsingSource.fromDocument(new DocumentRef("doc", 1)), null, ".tmp"),
+				new NodeLocator(new TALStep("", "", 0, 0, 0, false), Collections.emptyList()),
+				new Property("getData", Collections.emptyList(), null), false, null, null, null, null);
+		final EvaluatePropertyRes res = EvaluatePropertyRes.fromJSON(handler.handleRequest(
+				new ClientRequest(req.toJSON(), obj -> {
+				}, connection, p -> {
+				})));
+		assertEquals("Synced text", res.response.asSync().body.get(0).asPlain());
+
+		// Other connections have their own documents, even with the same id
+		final EvaluatePropertyRes otherConnection = EvaluatePropertyRes.fromJSON(handler.handleRequest(
+				new ClientRequest(req.toJSON(), obj -> {
+				}, new AtomicBoolean(true), p -> {
+				})));
+		assertEquals("Unknown document version " + new DocumentRef("doc", 1).toJSON(),
+				otherConnection.response.asSync().body.get(0).asPlain());
+	}
+
 	@Test
 	public void testCprApiStyleHasPrecedenceOverNormal() {
 		DefaultRequestHandler handler = new DefaultRequestHandler(
@@ -0,0 +1,196 @@
+package codeprober;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import codeprober.protocol.BinaryInputStream;
+import codeprober.protocol.data.AsyncRpcUpdate;
+import codeprober.protocol.data.AsyncRpcUpdateValue;
+import codeprober.protocol.data.TopRequestReq;
+import codeprober.protocol.data.WorkerTaskDone;
+
+public class TestIpcReader {
+
+	private static List<Object> readAll(byte[] stream) {
+		final List<Object> ret = new ArrayList<>();
+		new IpcReader(new ByteArrayInputStream(stream)) {
+
+			@Override
+			protected void onMessage(String data) {
+				ret.add(new JSONObject(data).toString());
+			}
+
+			@Override
+			protected void onBinaryMessage(byte[] data) {
+				try {
+					final BinaryInputStream in = IpcFrames.openBinary(data);
+					switch (in.readInt()) {
+					case IpcFrames.KIND_TOP_REQUEST_REQ:
+						ret.add(new TopRequestReq(in).toJSON().toString());
+						break;
+					case IpcFrames.KIND_ASYNC_RPC_UPDATE:
+						ret.add(new AsyncRpcUpdate(in).toJSON().toString());
+						break;
+					default:
+						ret.add("unknown");
+					}
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}.runForever();
+		return ret;
+	}
+
+	@Test
+	public void testMixedFramesAndGarbage() throws IOException {
+		final JSONObject json = new JSONObject().put("type", "rpc").put("id", 1);
+		final TopRequestReq req = new TopRequestReq(2, new JSONObject().put("foo", "bar"));
+		final StringBuilder longText = new StringBuilder();
+		while (longText.length() < 100_000) {
+			// Bigger than the 64KB limit of DataOutputStream.writeUTF
+			longText.append("åäö ");
+		}
+		final AsyncRpcUpdate update = new AsyncRpcUpdate(3, true, AsyncRpcUpdateValue
+				.fromWorkerTaskDone(WorkerTaskDone.fromNormal(new JSONObject().put("text", longText.toString()))));
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write("Some tool output\n".getBytes(StandardCharsets.UTF_8));
+		baos.write(IpcFrames.encodeJson(json));
+		baos.write("<not a frame>\n".getBytes(StandardCharsets.UTF_8));
+		baos.write(IpcFrames.encodeBinary(IpcFrames.KIND_TOP_REQUEST_REQ, req::writeTo));
+		baos.write(IpcFrames.encodeBinary(IpcFrames.KIND_ASYNC_RPC_UPDATE, update::writeTo));
+		baos.write("\ntrailing garbage".getBytes(StandardCharsets.UTF_8));
+
+		assertEquals(Arrays.asList(json.toString(), req.toJSON().toString(), update.toJSON().toString()),
+				readAll(baos.toByteArray()));
+	}
+
+	@Test
+	public void testReadFrameBeforeRunForever() throws IOException {
+		final JSONObject hello = IpcFrames.createHello(true, 3, 2);
+		final JSONObject ready = IpcFrames.createReady();
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write(IpcFrames.encodeJson(hello));
+		baos.write(IpcFrames.encodeJson(ready));
+
+		final List<String> received = new ArrayList<>();
+		final IpcReader reader = new IpcReader(new ByteArrayInputStream(baos.toByteArray())) {
+
+			@Override
+			protected void onMessage(String data) {
+				received.add(data);
+			}
+		};
+		// Reading one frame at a time must not consume data meant for later reads
+		while (received.isEmpty()) {
+			assertTrue(reader.readFrame());
+		}
+		assertEquals(1, received.size());
+		final JSONObject readHello = new JSONObject(received.get(0));
+		assertTrue(IpcFrames.isBinaryHello(readHello));
+		assertEquals(3, IpcFrames.getHelloInstances(readHello));
+
+		reader.runForever();
+		assertEquals(Arrays.asList(hello.toString(), ready.toString()), received);
+		assertFalse(reader.readFrame());
+	}
+
+	@Test
+	public void testGarbageStartingWithMarkerIsSkipped() throws IOException {
+		final JSONObject json = new JSONObject().put("type", "rpc").put("id", 1);
+		final TopRequestReq req = new TopRequestReq(2, new JSONObject().put("foo", "bar"));
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		// Marker byte followed by something that is not a valid header. The bogus
+		// "header" spans into the following frame, which must still be read.
+		baos.write(IpcFrames.BINARY_MARKER);
+		baos.write("ab".getBytes(StandardCharsets.UTF_8));
+		baos.write(IpcFrames.encodeJson(json));
+		baos.write(IpcFrames.BINARY_MARKER);
+		baos.write(new byte[] { 0x7F, 0, 0, 0, 0, 0, 0, 0, '\n' });
+		baos.write("<99999999999999>{}\n".getBytes(StandardCharsets.UTF_8));
+		baos.write(IpcFrames.encodeBinary(IpcFrames.KIND_TOP_REQUEST_REQ, req::writeTo));
+
+		assertEquals(Arrays.asList(json.toString(), req.toJSON().toString()), readAll(baos.toByteArray()));
+	}
+
+	@Test
+	public void testNonProtocolOutputIsReported() throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write("First line\n<12\n".getBytes(StandardCharsets.UTF_8));
+		baos.write(IpcFrames.encodeJson(IpcFrames.createReady()));
+		baos.write("\nLast line".getBytes(StandardCharsets.UTF_8));
+
+		final List<String> messages = new ArrayList<>();
+		final List<String> output = new ArrayList<>();
+		new IpcReader(new ByteArrayInputStream(baos.toByteArray())) {
+
+			@Override
+			protected void onMessage(String data) {
+				messages.add(data);
+			}
+
+			@Override
+			protected void onNonProtocolOutput(String line) {
+				output.add(line);
+			}
+		}.runForever();
+		assertEquals(Arrays.asList(IpcFrames.createReady().toString()), messages);
+		assertEquals(Arrays.asList("First line", "<12", "Last line"), output);
+	}
+
+	@Test
+	public void testReadSingleJsonFrameLeavesTheRest() throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write(IpcFrames.encodeJson(IpcFrames.createCoordinatorHello("secret")));
+		baos.write(IpcFrames.encodeJson(IpcFrames.createReady()));
+		final ByteArrayInputStream src = new ByteArrayInputStream(baos.toByteArray());
+
+		final JSONObject hello = new JSONObject(IpcReader.readSingleJsonFrame(src));
+		assertTrue(IpcFrames.hasToken(hello, "secret"));
+		assertFalse(IpcFrames.hasToken(hello, "secreT"));
+		assertFalse(IpcFrames.hasToken(hello, "secret2"));
+		assertFalse(IpcFrames.hasToken(IpcFrames.createCoordinatorHello(null), "secret"));
+
+		// The next frame is left for a regular reader
+		final List<String> messages = new ArrayList<>();
+		new IpcReader(src) {
+
+			@Override
+			protected void onMessage(String data) {
+				messages.add(data);
+			}
+		}.runForever();
+		assertEquals(Arrays.asList(IpcFrames.createReady().toString()), messages);
+	}
+
+	@Test
+	public void testReadSingleJsonFrameRejectsGarbage() throws IOException {
+		assertNull(IpcReader.readSingleJsonFrame(
+				new ByteArrayInputStream("GET / HTTP/1.1\n".getBytes(StandardCharsets.UTF_8))));
+		assertNull(IpcReader.readSingleJsonFrame(new ByteArrayInputStream("<>{}".getBytes(StandardCharsets.UTF_8))));
+		assertNull(IpcReader.readSingleJsonFrame(
+				new ByteArrayInputStream("<99999999999>".getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	public void testHelloQueueDepth() {
+		assertEquals(3, IpcFrames.getHelloQueueDepth(IpcFrames.createHello(false, 1, 3), 2));
+		// Workers from before the queue depth was announced
+		assertEquals(2, IpcFrames.getHelloQueueDepth(new JSONObject().put("type", IpcFrames.HELLO_TYPE), 2));
+	}
+}
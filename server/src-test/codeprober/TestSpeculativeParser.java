@@ -0,0 +1,122 @@
+package codeprober;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import codeprober.TestDefaultRequestHandler.DummyAst;
+import codeprober.protocol.AstCacheStrategy;
+import codeprober.protocol.ClientRequest;
+import codeprober.protocol.PositionRecoveryStrategy;
+import codeprober.protocol.data.EvaluatePropertyReq;
+import codeprober.protocol.data.EvaluatePropertyRes;
+import codeprober.protocol.data.NodeLocator;
+import codeprober.protocol.data.ParsingRequestData;
+import codeprober.protocol.data.ParsingSource;
+import codeprober.protocol.data.Property;
+import codeprober.protocol.data.TALStep;
+import codeprober.requesthandler.WorkspaceHandler;
+import codeprober.toolglue.ParseResult;
+
+public class TestSpeculativeParser {
+
+	private File workspaceRoot;
+	private final AtomicInteger parseCounter = new AtomicInteger();
+	private DefaultRequestHandler handler;
+	private SpeculativeParser speculativeParser;
+
+	@Before
+	public void setup() throws IOException {
+		workspaceRoot = Files.createTempDirectory("cpr_speculative").toFile();
+		handler = new DefaultRequestHandler(args -> {
+			parseCounter.incrementAndGet();
+			try {
+				return new ParseResult(new DummyAst(new String(Files.readAllBytes(new File(args[0]).toPath()),
+						StandardCharsets.UTF_8)));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}, new WorkspaceHandler(workspaceRoot));
+		speculativeParser = new SpeculativeParser(handler);
+	}
+
+	@After
+	public void cleanup() {
+		for (File child : workspaceRoot.listFiles()) {
+			child.delete();
+		}
+		workspaceRoot.delete();
+	}
+
+	private void writeFile(String path, String contents) throws IOException {
+		Files.write(new File(workspaceRoot, path).toPath(), contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private String getData(String path) {
+		final EvaluatePropertyReq req = new EvaluatePropertyReq(
+				new ParsingRequestData(PositionRecoveryStrategy.FAIL, AstCacheStrategy.FULL,
+						ParsingSource.fromWorkspacePath(path), null, ".tmp"),
+				new NodeLocator(new TALStep("", "", 0, 0, 0, false), Collections.emptyList()),
+				new Property("getData", Collections.emptyList(), null), false, null, null, null, null);
+		final EvaluatePropertyRes res = EvaluatePropertyRes.fromJSON(speculativeParser.handleRequest(
+				new ClientRequest(req.toJSON(), obj -> {
+				}, new AtomicBoolean(true), p -> {
+				})));
+		return res.response.asSync().body.get(0).asPlain();
+	}
+
+	@Test
+	public void testReparseWarmsCacheForChangedFile() throws IOException {
+		writeFile("a.txt", "Before");
+		assertEquals("Before", getData("a.txt"));
+		assertEquals(1, parseCounter.get());
+
+		writeFile("a.txt", "After the change");
+		assertEquals(1, speculativeParser.reparse("a.txt"));
+		assertEquals(2, parseCounter.get());
+
+		// The user request should now hit the cache
+		assertEquals("After the change", getData("a.txt"));
+		assertEquals(2, parseCounter.get());
+	}
+
+	@Test
+	public void testReparseIgnoresUnchangedAndUncachedFiles() throws IOException {
+		writeFile("a.txt", "Unchanged");
+		writeFile("b.txt", "Never parsed");
+		getData("a.txt");
+		assertEquals(1, parseCounter.get());
+
+		assertEquals(0, speculativeParser.reparse("a.txt"));
+		assertEquals(0, speculativeParser.reparse("b.txt"));
+		assertEquals(1, parseCounter.get());
+	}
+
+	@Test
+	public void testReparseDoesNotCountAsUse() throws IOException {
+		writeFile("a.txt", "A");
+		writeFile("b.txt", "B");
+		getData("a.txt");
+		getData("b.txt");
+		final AstCache cache = handler.getAstCache();
+		final long hitsBefore = cache.getHits();
+		final long missesBefore = cache.getMisses();
+
+		writeFile("a.txt", "A, changed");
+		assertEquals(1, speculativeParser.reparse("a.txt"));
+		assertEquals(3, parseCounter.get());
+		assertEquals(hitsBefore, cache.getHits());
+		assertEquals(missesBefore, cache.getMisses());
+		assertEquals("b.txt", cache.getMostRecent().getKey().workspacePath);
+	}
+}
@@ -3,7 +3,9 @@ package codeprober.ast;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -60,4 +62,52 @@ public class TestAstNode {
 			return Arrays.asList("foobar");
 		}
 	}
+
+	private static int countParents(AstNode node) {
+		int num = 0;
+		for (AstNode parent = node.parent(); parent != null; parent = parent.parent()) {
+			++num;
+		}
+		return num;
+	}
+
+	@Test
+	public void testDeepParentChain() {
+		final TestData.Node leaf = new TestData.Node(0, 0);
+		TestData.Node current = leaf;
+		for (int i = 0; i < 10_000; ++i) {
+			final TestData.Node parent = new TestData.Node(0, 0);
+			current.parent = parent;
+			current = parent;
+		}
+		assertEquals(10_000, countParents(new AstNode(leaf)));
+	}
+
+	private static void assertLoopDetected(TestData.Node start) {
+		try {
+			countParents(new AstNode(start));
+			fail("Expected AstLoopException");
+		} catch (AstLoopException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testParentLoop() {
+		final TestData.Node self = new TestData.Node(0, 0);
+		self.parent = self;
+		assertLoopDetected(self);
+
+		// A chain leading into a larger cycle
+		final List<TestData.Node> nodes = new ArrayList<>();
+		for (int i = 0; i < 20; ++i) {
+			nodes.add(new TestData.Node(0, 0));
+		}
+		for (int i = 0; i < nodes.size() - 1; ++i) {
+			nodes.get(i).parent = nodes.get(i + 1);
+		}
+		nodes.get(nodes.size() - 1).parent = nodes.get(7);
+		assertLoopDetected(nodes.get(0));
+		assertLoopDetected(nodes.get(12));
+	}
 }
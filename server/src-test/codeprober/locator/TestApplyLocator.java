@@ -1,9 +1,13 @@
 package codeprober.locator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.BiFunction;
@@ -15,6 +19,9 @@ import codeprober.AstInfo;
 import codeprober.ast.AstNode;
 import codeprober.ast.TestData;
 import codeprober.locator.ApplyLocator.ResolvedNode;
+import codeprober.metaprogramming.AstNodeApiStyle;
+import codeprober.metaprogramming.TypeIdentificationStyle;
+import codeprober.protocol.PositionRecoveryStrategy;
 import codeprober.protocol.data.NodeLocator;
 import codeprober.protocol.data.NodeLocatorStep;
 import codeprober.protocol.data.TALStep;
@@ -187,4 +194,132 @@ public class TestApplyLocator {
 		assertNotNull(result);
 		assertSame(foo, result.node);
 	}
+
+	@Test
+	public void testIsExactMatch() {
+		final AstInfo info = TestData.getInfo(new AstNode(TestData.getSimple()));
+		final AstNode foo = info.ast.getNthChild(info, 0);
+		final NodeLocator locator = CreateLocator.fromNode(info, foo);
+		assertTrue(ApplyLocator.isExactMatch(ApplyLocator.toNode(info, locator), locator));
+
+		// Slightly off, still resolves to 'foo', but only as the closest match
+		final TALStep res = locator.result;
+		final NodeLocator shifted = new NodeLocator(
+				new TALStep(res.type, res.label, res.start + 1, res.end + 1, res.depth, res.external), locator.steps);
+		final ResolvedNode fuzzy = ApplyLocator.toNode(info, shifted);
+		assertNotNull(fuzzy);
+		assertSame(foo.underlyingAstNode, fuzzy.node.underlyingAstNode);
+		assertFalse(ApplyLocator.isExactMatch(fuzzy, shifted));
+	}
+
+	@Test
+	public void testResolvedLocatorCache() {
+		final AstNode root = new AstNode(TestData.getSimple());
+		final AstInfo info = TestData.getInfo(root);
+		final AstNode bar = root.getNthChild(info, 0).getNthChild(info, 0);
+		final NodeLocator locator = CreateLocator.fromNode(info, bar);
+
+		final ResolvedNode first = ApplyLocator.toNode(info, locator);
+		assertSame(bar.underlyingAstNode, first.node.underlyingAstNode);
+		assertEquals(0, info.getResolvedLocatorHits());
+		assertEquals(1, info.getResolvedLocatorMisses());
+
+		// An equal locator that is a different instance, like one sent again by a client
+		final NodeLocator copy = NodeLocator.fromJSON(locator.toJSON());
+		final ResolvedNode second = ApplyLocator.toNode(info, copy);
+		assertSame(bar.underlyingAstNode, second.node.underlyingAstNode);
+		assertEquals(first.nodeLocator.toJSON().toString(), second.nodeLocator.toJSON().toString());
+		assertEquals(1, info.getResolvedLocatorHits());
+
+		// Shared with another AstInfo for the same AST
+		final AstInfo nextInfo = TestData.getInfo(new AstNode(root.underlyingAstNode));
+		nextInfo.setResolvedLocatorCache(info.getResolvedLocatorCache());
+		assertSame(bar.underlyingAstNode, ApplyLocator.toNode(nextInfo, locator).node.underlyingAstNode);
+		assertEquals(1, nextInfo.getResolvedLocatorHits());
+
+		// Spans, and thereby matches, depend on the position recovery strategy
+		final AstInfo otherStrategyInfo = new AstInfo(new AstNode(root.underlyingAstNode),
+				PositionRecoveryStrategy.FAIL, AstNodeApiStyle.BEAVER_PACKED_BITS, TypeIdentificationStyle.REFLECTION);
+		otherStrategyInfo.setResolvedLocatorCache(info.getResolvedLocatorCache());
+		assertSame(bar.underlyingAstNode, ApplyLocator.toNode(otherStrategyInfo, locator).node.underlyingAstNode);
+		assertEquals(0, otherStrategyInfo.getResolvedLocatorHits());
+		assertEquals(1, otherStrategyInfo.getResolvedLocatorMisses());
+		assertEquals(2, info.getResolvedLocatorCache().size());
+
+		final String key = ResolvedLocatorCache.createKey(locator, info.recoveryStrategy);
+		assertSame(bar.underlyingAstNode, info.getResolvedLocatorCache().get(key).node);
+		info.invalidateLocatorCache();
+		assertNull(info.getResolvedLocatorCache().get(key));
+		assertEquals(0, info.getResolvedLocatorCache().size());
+		assertSame(bar.underlyingAstNode, ApplyLocator.toNode(info, locator).node.underlyingAstNode);
+		assertEquals(1, info.getResolvedLocatorHits());
+		assertEquals(2, info.getResolvedLocatorMisses());
+		assertSame(bar.underlyingAstNode, info.getResolvedLocatorCache().get(key).node);
+	}
+
+	@Test
+	public void testResolvedLocatorCacheDisabled() {
+		final AstNode root = new AstNode(TestData.getSimple());
+		final AstInfo info = TestData.getInfo(root);
+		info.setResolvedLocatorCache(new ResolvedLocatorCache(0));
+		final NodeLocator locator = CreateLocator.fromNode(info, root.getNthChild(info, 1));
+
+		ApplyLocator.toNode(info, locator);
+		ApplyLocator.toNode(info, locator);
+		assertEquals(0, info.getResolvedLocatorHits());
+		assertEquals(0, info.getResolvedLocatorMisses());
+		assertEquals(0, info.getResolvedLocatorCache().size());
+	}
+
+	private static void collectNodes(AstInfo info, AstNode node, List<AstNode> out) {
+		out.add(node);
+		for (int i = 0; i < node.getNumChildren(info); ++i) {
+			collectNodes(info, node.getNthChild(info, i), out);
+		}
+	}
+
+	private void assertToNodes(ResolvedLocatorCache cache) {
+		final AstNode root = new AstNode(TestData.getIdenticalBarsWithDifferentGrandParents());
+		final AstInfo info = TestData.getInfo(root);
+		info.setResolvedLocatorCache(cache);
+		final List<AstNode> nodes = new ArrayList<>();
+		collectNodes(info, root, nodes);
+
+		final List<NodeLocator> locators = new ArrayList<>();
+		for (AstNode node : nodes) {
+			locators.add(CreateLocator.fromNode(info, node));
+		}
+		// A locator that doesn't lead anywhere, mixed in with the others
+		final NodeLocator first = locators.get(1);
+		final List<NodeLocatorStep> badSteps = new ArrayList<>(first.steps);
+		badSteps.add(NodeLocatorStep.fromChild(100));
+		locators.add(2, new NodeLocator(first.result, badSteps));
+
+		final List<ResolvedNode> resolved = ApplyLocator.toNodes(info, locators, true);
+		assertEquals(locators.size(), resolved.size());
+		assertNull(resolved.get(2));
+		for (int i = 0; i < locators.size(); ++i) {
+			if (i == 2) {
+				continue;
+			}
+			final ResolvedNode single = ApplyLocator.toNode(info, locators.get(i));
+			final ResolvedNode bulk = resolved.get(i);
+			assertNotNull(bulk);
+			assertSame(single.node.underlyingAstNode, bulk.node.underlyingAstNode);
+			assertEquals(single.pos, bulk.pos);
+			assertEquals(single.nodeLocator.toJSON().toString(), bulk.nodeLocator.toJSON().toString());
+		}
+	}
+
+	@Test
+	public void testToNodes() {
+		assertToNodes(new ResolvedLocatorCache(0));
+	}
+
+	@Test
+	public void testToNodesWithCache() {
+		final ResolvedLocatorCache cache = new ResolvedLocatorCache(1024);
+		assertToNodes(cache);
+		assertTrue(cache.size() > 0);
+	}
 }
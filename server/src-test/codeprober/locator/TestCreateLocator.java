@@ -1,16 +1,23 @@
 package codeprober.locator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
-import java.util.IdentityHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
-import org.junit.Before;
 import org.junit.Test;
 
 import codeprober.AstInfo;
@@ -18,6 +25,7 @@ import codeprober.ast.AstNode;
 import codeprober.ast.TestData;
 import codeprober.ast.TestData.Node;
 import codeprober.ast.TestData.Program;
+import codeprober.locator.CreateLocator.LocatorMergeMethod;
 import codeprober.metaprogramming.Reflect;
 import codeprober.metaprogramming.TypeIdentificationStyle;
 import codeprober.protocol.data.NodeLocator;
@@ -38,14 +46,6 @@ public class TestCreateLocator {
 		return CreateLocator.fromNode(info, node);
 	}
 
-	@Before
-	public void setup() {
-		// The cache is an optimisation that enables a different code path in
-		// CreateLocator. Can be uncommented, should work identically but tests less
-		// code.
-		CreateLocator.identityLocatorCache = new IdentityHashMap<>();
-	}
-
 	@Test
 	public void testSimpleRoot() {
 		AstNode root = new AstNode(TestData.getSimple());
@@ -317,12 +317,6 @@ public class TestCreateLocator {
 		};
 
 		testIdentifications.accept(TypeIdentificationStyle.REFLECTION, NodeLocatorStep.Type.child);
-		if (CreateLocator.identityLocatorCache != null) {
-			// Swapping identification style without restarting the JVM is not usually
-			// supported.
-			// Must manually clear the locator cache.
-			CreateLocator.identityLocatorCache.clear();
-		}
 		testIdentifications.accept(TypeIdentificationStyle.NODE_LABEL, NodeLocatorStep.Type.tal);
 	}
 
@@ -387,4 +381,196 @@ public class TestCreateLocator {
 
 		assertSame(child, ApplyLocator.toNode(info, locator).node.underlyingAstNode);
 	}
+
+	@Test
+	public void testLocatorCache() {
+		final AstNode root = new AstNode(TestData.getSimple());
+		final AstInfo info = TestData.getInfo(root);
+		final AstNode bar = root.getNthChild(info, 0).getNthChild(info, 0);
+
+		final List<NodeLocator> created = new ArrayList<>();
+		info.runWithLocatorCache(() -> {
+			final NodeLocator first = createLocator(info, bar);
+			assertSame(first, createLocator(info, bar));
+			assertSame(first, createLocator(info, new AstNode(bar.underlyingAstNode)));
+			// Nested calls share the cache
+			info.runWithLocatorCache(() -> assertSame(first, createLocator(info, bar)));
+			assertSame(first, createLocator(info, bar));
+
+			info.invalidateLocatorCache();
+			final NodeLocator second = createLocator(info, bar);
+			assertNotSame(first, second);
+			assertEquals(first.toJSON().toString(), second.toJSON().toString());
+			created.add(second);
+
+			// Each AstInfo has its own cache
+			final AstInfo otherInfo = TestData.getInfo(root);
+			otherInfo.runWithLocatorCache(() -> assertNotSame(second, createLocator(otherInfo, bar)));
+		});
+
+		// The cache is cleared afterwards, since evaluation may change the tree
+		assertNull(info.getLocatorCache());
+		final NodeLocator outside = createLocator(info, bar);
+		assertNotSame(created.get(0), outside);
+		assertNotSame(outside, createLocator(info, bar));
+		info.runWithLocatorCache(() -> assertNotSame(created.get(0), createLocator(info, bar)));
+	}
+
+	@Test
+	public void testLocatorCacheDisabled() {
+		final AstNode root = new AstNode(TestData.getSimple());
+		System.setProperty(AstInfo.locatorCacheKey, "false");
+		final AstInfo info;
+		try {
+			info = TestData.getInfo(root);
+		} finally {
+			System.clearProperty(AstInfo.locatorCacheKey);
+		}
+		final AstNode baz = root.getNthChild(info, 1);
+
+		info.runWithLocatorCache(() -> {
+			assertNull(info.getLocatorCache());
+			final NodeLocator first = createLocator(info, baz);
+			final NodeLocator second = createLocator(info, baz);
+			assertNotSame(first, second);
+			assertEquals(first.toJSON().toString(), second.toJSON().toString());
+		});
+	}
+
+	private static List<AstNode> collectNodes(AstInfo info, AstNode node, List<AstNode> out) {
+		out.add(node);
+		for (AstNode child : node.getChildren(info)) {
+			collectNodes(info, child, out);
+		}
+		return out;
+	}
+
+	private static void assertBatchSameAsIndividual(AstInfo batchInfo, List<AstNode> batchNodes, AstInfo plainInfo,
+			List<AstNode> plainNodes) {
+		final List<NodeLocator> batch = CreateLocator.fromNodes(batchInfo, batchNodes);
+		assertEquals(plainNodes.size(), batch.size());
+		for (int i = 0; i < plainNodes.size(); ++i) {
+			final NodeLocator plain = CreateLocator.fromNode(plainInfo, plainNodes.get(i));
+			assertEquals(plain.toJSON().toString(), batch.get(i).toJSON().toString());
+		}
+	}
+
+	private static void assertBatchSameAsIndividual(Supplier<Object> createAst) {
+		final AstInfo batchInfo = TestData.getInfo(new AstNode(createAst.get()));
+		final AstInfo plainInfo = TestData.getInfo(new AstNode(createAst.get()));
+		final List<AstNode> batchNodes = collectNodes(batchInfo, batchInfo.ast, new ArrayList<>());
+		// Deepest nodes first, so that ancestors are reached through the memo
+		Collections.reverse(batchNodes);
+		final List<AstNode> plainNodes = collectNodes(plainInfo, plainInfo.ast, new ArrayList<>());
+		Collections.reverse(plainNodes);
+		assertBatchSameAsIndividual(batchInfo, batchNodes, plainInfo, plainNodes);
+	}
+
+	@Test
+	public void testFromNodes() {
+		assertBatchSameAsIndividual(TestData::getSimple);
+		assertBatchSameAsIndividual(TestData::getFlatAmbiguous);
+		assertBatchSameAsIndividual(TestData::getHillyAmbiguous);
+		assertBatchSameAsIndividual(TestData::getMultipleAmbiguousLevels);
+		assertBatchSameAsIndividual(TestData::getAmbiguousUncle);
+		assertBatchSameAsIndividual(TestData::getIdenticalBarsWithDifferentParents);
+		assertBatchSameAsIndividual(TestData::getIdenticalBarsWithDifferentGrandParents);
+		assertBatchSameAsIndividual(TestData::getWithLabels);
+	}
+
+	@Test
+	public void testFromNodesWithNta() {
+		final Function<AstInfo, List<AstNode>> getNodes = info -> {
+			final AstNode nta = new AstNode(Reflect.invokeN(info.ast.underlyingAstNode, "parameterizedNTA",
+					new Class<?>[] { Integer.TYPE, info.baseAstClazz },
+					new Object[] { 1, info.ast.getNthChild(info, 0).underlyingAstNode }));
+			final List<AstNode> nodes = collectNodes(info, nta, new ArrayList<>());
+			collectNodes(info, info.ast, nodes);
+			return nodes;
+		};
+		final AstInfo batchInfo = TestData.getInfo(new AstNode(TestData.getWithParameterizedNta()));
+		final AstInfo plainInfo = TestData.getInfo(new AstNode(TestData.getWithParameterizedNta()));
+		assertBatchSameAsIndividual(batchInfo, getNodes.apply(batchInfo), plainInfo, getNodes.apply(plainInfo));
+	}
+
+	@Test
+	public void testFromNodesUsesCache() {
+		final AstNode root = new AstNode(TestData.getSimple());
+		final AstInfo info = TestData.getInfo(root);
+		final AstNode foo = root.getNthChild(info, 0);
+		final AstNode bar = foo.getNthChild(info, 0);
+
+		info.runWithLocatorCache(() -> {
+			final NodeLocator barLocator = createLocator(info, bar);
+			final List<NodeLocator> batch = CreateLocator.fromNodes(info, Arrays.asList(bar, foo, root));
+			assertSame(barLocator, batch.get(0));
+			assertSame(batch.get(1), createLocator(info, foo));
+			assertSame(batch.get(2), createLocator(info, root));
+		});
+	}
+
+	@Test
+	public void testMergeMethodIsPerThread() throws Exception {
+		final CountDownLatch skipSet = new CountDownLatch(1);
+		final CountDownLatch checked = new CountDownLatch(1);
+		final Thread other = new Thread(() -> {
+			CreateLocator.setMergeMethod(LocatorMergeMethod.SKIP);
+			skipSet.countDown();
+			try {
+				checked.await();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		});
+		other.start();
+		skipSet.await();
+		assertEquals(LocatorMergeMethod.DEFAULT_METHOD, CreateLocator.getMergeMethod());
+		checked.countDown();
+		other.join();
+	}
+
+	private static List<String> createAllLocators(LocatorMergeMethod method) {
+		final AstInfo info = TestData.getInfo(new AstNode(TestData.getMultipleAmbiguousLevels()));
+		final List<String> ret = new ArrayList<>();
+		CreateLocator.setMergeMethod(method);
+		try {
+			for (AstNode node : collectNodes(info, info.ast, new ArrayList<>())) {
+				ret.add(CreateLocator.fromNode(info, node).toJSON().toString());
+			}
+		} finally {
+			CreateLocator.setMergeMethod(LocatorMergeMethod.DEFAULT_METHOD);
+		}
+		return ret;
+	}
+
+	@Test
+	public void testConcurrentInstances() throws Exception {
+		// Like two tool instances in the same worker process, with different merge
+		// methods
+		final List<String> expectedSkip = createAllLocators(LocatorMergeMethod.SKIP);
+		final List<String> expectedDefault = createAllLocators(LocatorMergeMethod.DEFAULT_METHOD);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final CountDownLatch start = new CountDownLatch(1);
+		final BiFunction<LocatorMergeMethod, List<String>, Thread> createThread = (method, expected) -> new Thread(
+				() -> {
+					try {
+						start.await();
+						for (int i = 0; i < 200; ++i) {
+							assertEquals(expected, createAllLocators(method));
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				});
+		final Thread skipThread = createThread.apply(LocatorMergeMethod.SKIP, expectedSkip);
+		final Thread defaultThread = createThread.apply(LocatorMergeMethod.DEFAULT_METHOD, expectedDefault);
+		skipThread.start();
+		defaultThread.start();
+		start.countDown();
+		skipThread.join();
+		defaultThread.join();
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+	}
 }
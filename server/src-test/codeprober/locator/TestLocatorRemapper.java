@@ -0,0 +1,141 @@
+package codeprober.locator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import codeprober.protocol.data.DocumentRef;
+import codeprober.protocol.data.NodeLocator;
+import codeprober.protocol.data.NodeLocatorStep;
+import codeprober.protocol.data.ParsingSource;
+import codeprober.protocol.data.TALStep;
+
+public class TestLocatorRemapper {
+
+	private static int lc(int line, int col) {
+		return (line << 12) + col;
+	}
+
+	private static TALStep tal(int start, int end) {
+		return new TALStep("Node", null, start, end, 1);
+	}
+
+	private static final String TEXT_ID = LocatorRemapper.getSourceId(ParsingSource.fromText(""));
+
+	private static final String text = String.join("\n", //
+			"class A {", //
+			"  int x; int y;", //
+			"}");
+
+	// Locator to 'int y;', through 'class A'
+	private static NodeLocator createLocator() {
+		return new NodeLocator(tal(lc(2, 10), lc(2, 15)),
+				Arrays.asList(NodeLocatorStep.fromTal(tal(lc(1, 1), lc(3, 1))), NodeLocatorStep.fromChild(0)));
+	}
+
+	private static void assertSpan(int expectedStart, int expectedEnd, TALStep actual) {
+		assertEquals(expectedStart, actual.start);
+		assertEquals(expectedEnd, actual.end);
+	}
+
+	private static NodeLocator remap(String newText) {
+		final LocatorRemapper remapper = new LocatorRemapper(16);
+		final NodeLocator locator = createLocator();
+		remapper.remember(locator, TEXT_ID, ParsingSource.fromText(text));
+		return remapper.remap(locator, TEXT_ID, ParsingSource.fromText(newText));
+	}
+
+	@Test
+	public void testInsertLineBefore() {
+		final NodeLocator remapped = remap(text.replace("class A {\n", "class A {\n  int w;\n"));
+		assertNotNull(remapped);
+		assertSpan(lc(3, 10), lc(3, 15), remapped.result);
+		assertSpan(lc(1, 1), lc(4, 1), remapped.steps.get(0).asTal());
+		assertEquals(0, remapped.steps.get(1).asChild());
+	}
+
+	@Test
+	public void testEditEarlierOnSameLine() {
+		final NodeLocator remapped = remap(text.replace("int x;", "long x;"));
+		assertNotNull(remapped);
+		assertSpan(lc(2, 11), lc(2, 16), remapped.result);
+		assertSpan(lc(1, 1), lc(3, 1), remapped.steps.get(0).asTal());
+	}
+
+	@Test
+	public void testEditAfter() {
+		final NodeLocator remapped = remap(text + "\nclass B {}");
+		assertNotNull(remapped);
+		assertSpan(lc(2, 10), lc(2, 15), remapped.result);
+		assertSpan(lc(1, 1), lc(3, 1), remapped.steps.get(0).asTal());
+	}
+
+	@Test
+	public void testEditInsideSpan() {
+		assertNull(remap(text.replace("int y;", "long y;")));
+	}
+
+	@Test
+	public void testUnknownOrUnchanged() {
+		final LocatorRemapper remapper = new LocatorRemapper(16);
+		final NodeLocator locator = createLocator();
+		final ParsingSource newSrc = ParsingSource.fromText("\n" + text);
+		assertNull(remapper.remap(locator, TEXT_ID, newSrc));
+
+		remapper.remember(locator, TEXT_ID, ParsingSource.fromText(text));
+		assertNull(remapper.remap(locator, TEXT_ID, ParsingSource.fromText(text)));
+		assertNotNull(remapper.remap(locator, TEXT_ID, newSrc));
+		// Only the exact locator that was remembered is remapped
+		assertNull(remapper.remap(new NodeLocator(locator.result, Collections.emptyList()), TEXT_ID, newSrc));
+	}
+
+	@Test
+	public void testExternalStepsAreKept() {
+		final LocatorRemapper remapper = new LocatorRemapper(16);
+		final TALStep external = new TALStep("Node", null, lc(50, 1), lc(60, 1), 1, true);
+		final NodeLocator locator = new NodeLocator(tal(lc(2, 10), lc(2, 15)),
+				Arrays.asList(NodeLocatorStep.fromTal(external)));
+		remapper.remember(locator, TEXT_ID, ParsingSource.fromText(text));
+
+		final NodeLocator remapped = remapper.remap(locator, TEXT_ID, ParsingSource.fromText("\n" + text));
+		assertNotNull(remapped);
+		assertSpan(lc(3, 10), lc(3, 15), remapped.result);
+		assertSpan(lc(50, 1), lc(60, 1), remapped.steps.get(0).asTal());
+	}
+
+	@Test
+	public void testDisabled() {
+		final LocatorRemapper remapper = new LocatorRemapper(0);
+		final NodeLocator locator = createLocator();
+		remapper.remember(locator, TEXT_ID, ParsingSource.fromText(text));
+		assertNull(remapper.remap(locator, TEXT_ID, ParsingSource.fromText("\n" + text)));
+	}
+
+	@Test
+	public void testSourcesAreKeptApart() {
+		final LocatorRemapper remapper = new LocatorRemapper(16);
+		final NodeLocator locator = createLocator();
+		final String docA = LocatorRemapper.getSourceId(ParsingSource.fromDocument(new DocumentRef("a", 1)));
+		final String docB = LocatorRemapper.getSourceId(ParsingSource.fromDocument(new DocumentRef("b", 1)));
+		assertEquals(docA, LocatorRemapper.getSourceId(ParsingSource.fromDocument(new DocumentRef("a", 2))));
+		assertNotEquals(docA, docB);
+
+		// Document 'b' has the same locator, but for a different text
+		remapper.remember(locator, docA, ParsingSource.fromText(text));
+		remapper.remember(locator, docB, ParsingSource.fromText("\n\n" + text));
+
+		final NodeLocator remapped = remapper.remap(locator, docA, ParsingSource.fromText("\n" + text));
+		assertNotNull(remapped);
+		assertSpan(lc(3, 10), lc(3, 15), remapped.result);
+		// Unchanged for document 'b'
+		assertNull(remapper.remap(locator, docB, ParsingSource.fromText("\n\n" + text)));
+		// Never remembered for plain text
+		assertNull(remapper.remap(locator, TEXT_ID, ParsingSource.fromText("\n" + text)));
+	}
+}
@@ -0,0 +1,132 @@
+package codeprober.locator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import codeprober.AstInfo;
+import codeprober.ast.AstNode;
+import codeprober.ast.TestData;
+import codeprober.locator.ApplyLocator.ResolvedNode;
+import codeprober.protocol.data.NodeLocator;
+
+public class TestSpanIndex {
+
+	@After
+	public void tearDown() {
+		System.clearProperty(AstInfo.spanIndexMinLookupsKey);
+	}
+
+	private static AstInfo createInfo(Object ast, boolean useIndex) {
+		System.setProperty(AstInfo.spanIndexMinLookupsKey, useIndex ? "0" : "-1");
+		try {
+			return TestData.getInfo(new AstNode(ast));
+		} finally {
+			System.clearProperty(AstInfo.spanIndexMinLookupsKey);
+		}
+	}
+
+	private static List<AstNode> collectNodes(AstInfo info, AstNode node, List<AstNode> out) {
+		out.add(node);
+		for (AstNode child : node.getChildren(info)) {
+			collectNodes(info, child, out);
+		}
+		return out;
+	}
+
+	private static void assertSameAsWithoutIndex(Supplier<Object> createAst) {
+		final AstInfo plainInfo = createInfo(createAst.get(), false);
+		final AstInfo indexedInfo = createInfo(createAst.get(), true);
+		final List<AstNode> plainNodes = collectNodes(plainInfo, plainInfo.ast, new ArrayList<>());
+		final List<AstNode> indexedNodes = collectNodes(indexedInfo, indexedInfo.ast, new ArrayList<>());
+		assertEquals(plainNodes.size(), indexedNodes.size());
+
+		for (int i = 0; i < plainNodes.size(); ++i) {
+			final NodeLocator plainLocator = CreateLocator.fromNode(plainInfo, plainNodes.get(i));
+			final NodeLocator indexedLocator = CreateLocator.fromNode(indexedInfo, indexedNodes.get(i));
+			assertNotNull(plainLocator);
+			assertEquals(plainLocator.toJSON().toString(), indexedLocator.toJSON().toString());
+
+			final ResolvedNode resolved = ApplyLocator.toNode(indexedInfo, indexedLocator);
+			assertNotNull(resolved);
+			assertSame(indexedNodes.get(i).underlyingAstNode, resolved.node.underlyingAstNode);
+		}
+		assertNotNull(indexedInfo.getSpanIndex());
+	}
+
+	@Test
+	public void testSimple() {
+		assertSameAsWithoutIndex(TestData::getSimple);
+	}
+
+	@Test
+	public void testAmbiguous() {
+		assertSameAsWithoutIndex(TestData::getFlatAmbiguous);
+		assertSameAsWithoutIndex(TestData::getHillyAmbiguous);
+		assertSameAsWithoutIndex(TestData::getMultipleAmbiguousLevels);
+		assertSameAsWithoutIndex(TestData::getAmbiguousUncle);
+	}
+
+	@Test
+	public void testIdenticalBars() {
+		assertSameAsWithoutIndex(TestData::getIdenticalBarsWithDifferentParents);
+		assertSameAsWithoutIndex(TestData::getIdenticalBarsWithDifferentGrandParents);
+	}
+
+	@Test
+	public void testLabels() {
+		assertSameAsWithoutIndex(TestData::getWithLabels);
+	}
+
+	@Test
+	public void testFindFirstExactInSubtree() {
+		final AstInfo info = createInfo(TestData.getIdenticalBarsWithDifferentParents(), true);
+		final SpanIndex index = info.getSpanIndex();
+		assertNotNull(index);
+
+		final AstNode secondFoo = info.ast.getNthChild(info, 1);
+		final AstNode secondBar = secondFoo.getNthChild(info, 0);
+		final Span barSpan = secondBar.getRecoveredSpan(info);
+		final int srcId = index.getId(secondFoo);
+		final int matchId = index.findFirstExact(srcId, node -> node.underlyingAstNode instanceof TestData.Bar,
+				barSpan.start, barSpan.end, 1, (start, end) -> true);
+		assertSame(secondBar.underlyingAstNode, index.getNode(matchId).underlyingAstNode);
+
+		// Wrong depth
+		assertEquals(-1, index.findFirstExact(srcId, node -> true, barSpan.start, barSpan.end, 2, (start, end) -> true));
+		// Filtered out on the way down
+		assertEquals(-1, index.findFirstExact(srcId, node -> true, barSpan.start, barSpan.end, 1, (start, end) -> false));
+	}
+
+	@Test
+	public void testSharedSpanIndexCache() {
+		System.setProperty(AstInfo.spanIndexMinLookupsKey, "2");
+		final Object ast = TestData.getIdenticalBarsWithDifferentParents();
+		final AstInfo info = TestData.getInfo(new AstNode(ast));
+		final SpanIndexCache cache = info.getSpanIndexCache();
+		assertNull(info.getSpanIndex());
+
+		// Lookups from a later request for the same AST count towards the same index
+		final AstInfo nextInfo = TestData.getInfo(new AstNode(ast));
+		nextInfo.setSpanIndexCache(cache);
+		final SpanIndex index = nextInfo.getSpanIndex();
+		assertNotNull(index);
+		assertSame(index, info.getSpanIndex());
+
+		// Flushing the tree drops the index
+		nextInfo.invalidateLocatorCache();
+		assertFalse(cache.isBuilt());
+		assertNull(info.getSpanIndex());
+		assertNotSame(index, info.getSpanIndex());
+	}
+}
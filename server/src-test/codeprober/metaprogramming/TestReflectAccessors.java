@@ -0,0 +1,133 @@
+package codeprober.metaprogramming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Test;
+
+public class TestReflectAccessors {
+
+	public static class Node {
+		private int numVisits;
+
+		public String name() {
+			return "node";
+		}
+
+		public int getNumChild() {
+			return 2;
+		}
+
+		public void visit() {
+			++numVisits;
+		}
+
+		public int getNumVisits() {
+			return numVisits;
+		}
+
+		public String getChild(int idx) {
+			return "child" + idx;
+		}
+
+		public long scaled(long value, String label) {
+			return value * 10;
+		}
+
+		public String fail() {
+			throw new IllegalStateException("Broken attribute");
+		}
+	}
+
+	public static class SubNode extends Node {
+		@Override
+		public String name() {
+			return "sub";
+		}
+	}
+
+	private static class HiddenNode extends Node {
+		@Override
+		public String name() {
+			return "hidden";
+		}
+	}
+
+	private static void assertInvokeProblem(Runnable invocation, Class<?> expectedCause) {
+		try {
+			invocation.run();
+			fail("Expected InvokeProblem");
+		} catch (InvokeProblem e) {
+			assertTrue("Unexpected cause " + e.getCause(), expectedCause.isInstance(e.getCause()));
+		}
+	}
+
+	@Test
+	public void testInvoke0() {
+		final Node node = new Node();
+		for (int i = 0; i < 3; ++i) {
+			assertEquals("node", Reflect.invoke0(node, "name"));
+			assertEquals(2, Reflect.invoke0(node, "getNumChild"));
+			assertSame(Reflect.VOID_RETURN_VALUE, Reflect.invoke0(node, "visit"));
+		}
+		assertEquals(3, Reflect.invoke0(node, "getNumVisits"));
+	}
+
+	@Test
+	public void testInvokeN() {
+		final Node node = new Node();
+		for (int i = 0; i < 3; ++i) {
+			assertEquals("child" + i,
+					Reflect.invokeN(node, "getChild", new Class<?>[] { Integer.TYPE }, new Object[] { i }));
+		}
+		assertEquals("node", Reflect.invokeN(node, "name", new Class<?>[0], new Object[0]));
+		final Class<?>[] types = new Class<?>[] { Long.TYPE, String.class };
+		assertEquals(50L, Reflect.invokeN(node, "scaled", types, new Object[] { 5L, "a" }));
+		assertEquals(50L, Reflect.invokeN(node, "scaled", types, new Object[] { 5L, null }));
+
+		// Widening conversions work like with Method.invoke
+		assertEquals(70L, Reflect.invokeN(node, "scaled", types, new Object[] { 7, "b" }));
+		assertInvokeProblem(() -> Reflect.invokeN(node, "scaled", types, new Object[] { "c", "d" }),
+				IllegalArgumentException.class);
+		assertInvokeProblem(() -> Reflect.invokeN(node, "scaled", types, new Object[] { null, "e" }),
+				IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testOverridesAndHiddenClasses() {
+		assertEquals("node", Reflect.invoke0(new Node(), "name"));
+		assertEquals("sub", Reflect.invoke0(new SubNode(), "name"));
+		assertEquals("hidden", Reflect.invoke0(new HiddenNode(), "name"));
+		assertEquals(2, Reflect.invoke0(new HiddenNode(), "getNumChild"));
+	}
+
+	@Test
+	public void testProblems() {
+		final Node node = new Node();
+		for (int i = 0; i < 2; ++i) {
+			assertInvokeProblem(() -> Reflect.invoke0(node, "missing"), NoSuchMethodException.class);
+			assertInvokeProblem(() -> Reflect.invokeN(node, "missing", new Class<?>[] { Integer.TYPE },
+					new Object[] { 1 }), NoSuchMethodException.class);
+		}
+		try {
+			Reflect.invoke0(node, "fail");
+			fail("Expected InvokeProblem");
+		} catch (InvokeProblem e) {
+			assertTrue(e.getCause() instanceof InvocationTargetException);
+			assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void testInvalidate() {
+		final Node node = new Node();
+		assertEquals("node", Reflect.invoke0(node, "name"));
+		Reflect.invalidateAccessorCache();
+		assertEquals("node", Reflect.invoke0(node, "name"));
+		assertEquals("child1", Reflect.invokeN(node, "getChild", new Class<?>[] { Integer.TYPE }, new Object[] { 1 }));
+	}
+}
@@ -0,0 +1,55 @@
+package codeprober.metaprogramming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestReflectCancellation {
+
+	public static class Node {
+		public String name() {
+			return "node";
+		}
+	}
+
+	@After
+	public void cleanup() {
+		Reflect.clearCancellation(Thread.currentThread());
+	}
+
+	@Test
+	public void testCancelledThreadCannotInvoke() {
+		final Node node = new Node();
+		assertEquals("node", Reflect.invoke0(node, "name"));
+
+		Reflect.requestCancellation(Thread.currentThread());
+		assertTrue(Reflect.isCancellationRequested());
+		try {
+			Reflect.invoke0(node, "name");
+			fail("Expected the invocation to be cancelled");
+		} catch (InvokeCancelled e) {
+			// OK
+		}
+
+		Reflect.clearCancellation(Thread.currentThread());
+		assertFalse(Reflect.isCancellationRequested());
+		assertEquals("node", Reflect.invoke0(node, "name"));
+	}
+
+	@Test
+	public void testOtherThreadsAreUnaffected() throws InterruptedException {
+		Reflect.requestCancellation(Thread.currentThread());
+
+		final AtomicReference<Object> otherResult = new AtomicReference<>();
+		final Thread other = new Thread(() -> otherResult.set(Reflect.invoke0(new Node(), "name")));
+		other.start();
+		other.join();
+		assertEquals("node", otherResult.get());
+	}
+}
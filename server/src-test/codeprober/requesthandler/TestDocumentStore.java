@@ -0,0 +1,129 @@
+package codeprober.requesthandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import codeprober.protocol.AstCacheStrategy;
+import codeprober.protocol.PositionRecoveryStrategy;
+import codeprober.protocol.data.DocumentRef;
+import codeprober.protocol.data.ListNodesReq;
+import codeprober.protocol.data.ParsingRequestData;
+import codeprober.protocol.data.ParsingSource;
+import codeprober.protocol.data.SyncDocumentReq;
+import codeprober.protocol.data.SyncDocumentRes;
+import codeprober.protocol.data.TextEdit;
+
+public class TestDocumentStore {
+
+	@Test
+	public void testEditsAreAppliedOnBaseVersion() {
+		final DocumentStore store = new DocumentStore(4);
+		assertTrue(store.handleSyncDocument(new SyncDocumentReq("doc", 1, "Hello World")).ok);
+
+		final SyncDocumentRes res = store.handleSyncDocument(new SyncDocumentReq("doc", 2, null, 1,
+				Arrays.asList(new TextEdit(0, 5, "Goodbye"), new TextEdit(13, 13, "!"))));
+		assertTrue(res.ok);
+		assertEquals(Integer.valueOf(2), res.version);
+
+		assertEquals("Goodbye World!", store.resolve(new DocumentRef("doc", 2)).asText());
+		// Older versions are still available
+		assertEquals("Hello World", store.resolve(new DocumentRef("doc", 1)).asText());
+	}
+
+	@Test
+	public void testUnknownBaseVersionRequiresFullText() {
+		final DocumentStore store = new DocumentStore(4);
+		final SyncDocumentRes unknownDoc = store.handleSyncDocument(
+				new SyncDocumentReq("doc", 2, null, 1, Arrays.asList(new TextEdit(0, 0, "x"))));
+		assertFalse(unknownDoc.ok);
+		assertNull(unknownDoc.version);
+
+		store.handleSyncDocument(new SyncDocumentReq("doc", 5, "abc"));
+		final SyncDocumentRes unknownBase = store.handleSyncDocument(
+				new SyncDocumentReq("doc", 7, null, 6, Arrays.asList(new TextEdit(0, 0, "x"))));
+		assertFalse(unknownBase.ok);
+		assertEquals(Integer.valueOf(5), unknownBase.version);
+
+		final SyncDocumentRes outOfBounds = store.handleSyncDocument(
+				new SyncDocumentReq("doc", 6, null, 5, Arrays.asList(new TextEdit(2, 10, "x"))));
+		assertFalse(outOfBounds.ok);
+		assertNull(store.resolve(new DocumentRef("doc", 6)));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedDocumentIsDropped() {
+		final DocumentStore store = new DocumentStore(2);
+		store.handleSyncDocument(new SyncDocumentReq("a", 1, "A"));
+		store.handleSyncDocument(new SyncDocumentReq("b", 1, "B"));
+		store.resolve(new DocumentRef("a", 1));
+		store.handleSyncDocument(new SyncDocumentReq("c", 1, "C"));
+		assertEquals(2, store.size());
+		assertEquals("A", store.resolve(new DocumentRef("a", 1)).asText());
+		assertNull(store.resolve(new DocumentRef("b", 1)));
+	}
+
+	@Test
+	public void testInlineDocuments() {
+		final DocumentStore store = new DocumentStore(4);
+		store.handleSyncDocument(new SyncDocumentReq("doc", 1, "Inlined"));
+
+		final JSONObject req = new ListNodesReq(0,
+				new ParsingRequestData(PositionRecoveryStrategy.FAIL, AstCacheStrategy.FULL,
+						ParsingSource.fromDocument(new DocumentRef("doc", 1)), null, ".tmp"))
+				.toJSON();
+		store.inlineDocuments(req);
+		assertEquals("Inlined", ListNodesReq.fromJSON(req).src.src.asText());
+	}
+
+	@Test
+	public void testEditsOnOutdatedBaseAreRejected() {
+		final DocumentStore store = new DocumentStore(4);
+		store.handleSyncDocument(new SyncDocumentReq("doc", 1, "abc"));
+		assertTrue(store.handleSyncDocument(
+				new SyncDocumentReq("doc", 2, null, 1, Arrays.asList(new TextEdit(3, 3, "d")))).ok);
+
+		// Version 1 is still known, but is no longer the latest
+		final SyncDocumentRes outdated = store.handleSyncDocument(
+				new SyncDocumentReq("doc", 3, null, 1, Arrays.asList(new TextEdit(0, 0, "x"))));
+		assertFalse(outdated.ok);
+		assertEquals(Integer.valueOf(2), outdated.version);
+		assertNull(store.resolve(new DocumentRef("doc", 3)));
+
+		final SyncDocumentRes notNewer = store.handleSyncDocument(
+				new SyncDocumentReq("doc", 2, null, 2, Arrays.asList(new TextEdit(0, 0, "x"))));
+		assertFalse(notNewer.ok);
+		assertEquals("abcd", store.resolve(new DocumentRef("doc", 2)).asText());
+	}
+
+	@Test
+	public void testVersionsAreKeptInOrder() {
+		final DocumentStore store = new DocumentStore(4);
+		store.handleSyncDocument(new SyncDocumentReq("doc", 5, "five"));
+		// Full text of an older version arrives late
+		assertTrue(store.handleSyncDocument(new SyncDocumentReq("doc", 4, "four")).ok);
+		assertEquals("four", store.resolve(new DocumentRef("doc", 4)).asText());
+
+		// Edits must still be based on the highest version
+		assertFalse(store.handleSyncDocument(
+				new SyncDocumentReq("doc", 6, null, 4, Arrays.asList(new TextEdit(0, 0, "x")))).ok);
+		assertTrue(store.handleSyncDocument(
+				new SyncDocumentReq("doc", 6, null, 5, Arrays.asList(new TextEdit(4, 4, "!")))).ok);
+		assertEquals("five!", store.resolve(new DocumentRef("doc", 6)).asText());
+	}
+
+	@Test
+	public void testStoresArePerConnection() {
+		final AtomicBoolean first = new AtomicBoolean(true);
+		DocumentStore.forConnection(first).handleSyncDocument(new SyncDocumentReq("doc", 1, "First"));
+		DocumentStore.forConnection(new AtomicBoolean(true)).handleSyncDocument(new SyncDocumentReq("doc", 1, "Second"));
+		assertEquals("First", DocumentStore.forConnection(first).resolve(new DocumentRef("doc", 1)).asText());
+	}
+}
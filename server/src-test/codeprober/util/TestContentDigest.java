@@ -0,0 +1,91 @@
+package codeprober.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import codeprober.protocol.data.DocumentRef;
+import codeprober.protocol.data.ParsingSource;
+import codeprober.requesthandler.WorkspaceHandler;
+import codeprober.util.ContentDigest.DigestingOutputStream;
+
+public class TestContentDigest {
+
+	@Test
+	public void testEqualTextsHaveEqualDigests() {
+		assertEquals(ContentDigest.of("Hello World"), ContentDigest.of(new StringBuilder("Hello ").append("World")));
+		assertEquals(ContentDigest.of("abc"), ParsingSource.fromText("abc").contentDigest);
+		// Computed when decoding too
+		assertEquals(ContentDigest.of("abc"),
+				ParsingSource.fromJSON(ParsingSource.fromText("abc").toJSON()).contentDigest);
+		assertEquals(0L, ParsingSource.fromDocument(new DocumentRef("doc", 1)).contentDigest);
+	}
+
+	@Test
+	public void testDifferentTextsHaveDifferentDigests() {
+		assertNotEquals(ContentDigest.of(""), ContentDigest.of("\0"));
+		assertNotEquals(ContentDigest.of("ab"), ContentDigest.of("ba"));
+		assertNotEquals(ContentDigest.of("a = 1;"), ContentDigest.of("a = 2;"));
+	}
+
+	@Test
+	public void testDigestingOutputStreamMatchesByteDigest() throws IOException {
+		final byte[] data = "int x = 1;\n".getBytes(StandardCharsets.UTF_8);
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final DigestingOutputStream dos = new DigestingOutputStream(baos);
+		dos.write(data[0]);
+		dos.write(data, 1, data.length - 1);
+		dos.close();
+		assertEquals(ContentDigest.of(data), dos.getDigest());
+	}
+
+	@Test
+	public void testWorkspaceFileDigestDetectsSameLengthRewrite() throws IOException {
+		final File tmp = File.createTempFile("cpr_digest", ".txt");
+		tmp.deleteOnExit();
+		try {
+			Files.write(tmp.toPath(), "aaa".getBytes(StandardCharsets.UTF_8));
+			final Long first = WorkspaceHandler.getWorkspaceFileDigest(tmp);
+			assertNotNull(first);
+
+			// Same length, and likely the same modification timestamp
+			Files.write(tmp.toPath(), "bbb".getBytes(StandardCharsets.UTF_8));
+			tmp.setLastModified(tmp.lastModified());
+			final Long second = WorkspaceHandler.getWorkspaceFileDigest(tmp);
+			assertNotEquals(first, second);
+			assertEquals(Long.valueOf(ContentDigest.of("bbb".getBytes(StandardCharsets.UTF_8))), second);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	@Test
+	public void testWorkspaceFileDigestDetectsRewriteAfterServerWrite() throws IOException {
+		final File dir = Files.createTempDirectory("cpr_digest").toFile();
+		final File file = new File(dir, "a.txt");
+		try {
+			final WorkspaceHandler handler = new WorkspaceHandler(dir);
+			handler.handlePutWorkspaceContent("a.txt", out -> out.write("aaa".getBytes(StandardCharsets.UTF_8)));
+			assertEquals(Long.valueOf(ContentDigest.of("aaa".getBytes(StandardCharsets.UTF_8))),
+					WorkspaceHandler.getWorkspaceFileDigest(file));
+
+			// Rewritten by someone else right after our write, same length and timestamp
+			final long lastModified = file.lastModified();
+			Files.write(file.toPath(), "bbb".getBytes(StandardCharsets.UTF_8));
+			file.setLastModified(lastModified);
+			assertEquals(Long.valueOf(ContentDigest.of("bbb".getBytes(StandardCharsets.UTF_8))),
+					WorkspaceHandler.getWorkspaceFileDigest(file));
+		} finally {
+			file.delete();
+			dir.delete();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package codeprober.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestHeapMonitor {
+
+	private static final Set<String> HEAP_POOLS = new HashSet<>(Arrays.asList("Eden", "Old"));
+
+	private static Map<String, MemoryUsage> usage(long eden, long old, long metaspace) {
+		final Map<String, MemoryUsage> ret = new HashMap<>();
+		ret.put("Eden", new MemoryUsage(0, eden, 1000, 1000));
+		ret.put("Old", new MemoryUsage(0, old, 1000, 1000));
+		ret.put("Metaspace", new MemoryUsage(0, metaspace, 1000, 1000));
+		return ret;
+	}
+
+	@Test
+	public void testFullCollectionsAreRecorded() {
+		assertEquals(Long.valueOf(300),
+				HeapMonitor.getRetainedBytes(HeapMonitor.FULL_GC_ACTION, usage(100, 200, 400), HEAP_POOLS));
+	}
+
+	@Test
+	public void testMinorCollectionsAreIgnored() {
+		// The old generation may be full of garbage after a minor collection
+		assertNull(HeapMonitor.getRetainedBytes("end of minor GC", usage(0, 900, 400), HEAP_POOLS));
+	}
+}
@@ -0,0 +1,62 @@
+package codeprober.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import codeprober.util.ParsedArgs.ConcurrencyMode;
+
+public class TestParsedArgs {
+
+	private static void assertRejected(String... args) {
+		try {
+			ParsedArgs.parse(args);
+			fail("Expected " + String.join(" ", args) + " to be rejected");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testFixedWorkerCount() {
+		final ParsedArgs parsed = ParsedArgs.parse(new String[] { "--concurrent=3", "tool.jar" });
+		assertEquals(ConcurrencyMode.COORDINATOR, parsed.concurrencyMode);
+		assertEquals(Integer.valueOf(3), parsed.workerProcessCount);
+		assertNull(parsed.minWorkerProcessCount);
+		assertEquals("tool.jar", parsed.jarPath);
+	}
+
+	@Test
+	public void testWorkerCountRange() {
+		ParsedArgs parsed = ParsedArgs.parse(new String[] { "--concurrent=2-8", "tool.jar" });
+		assertEquals(ConcurrencyMode.COORDINATOR, parsed.concurrencyMode);
+		assertEquals(Integer.valueOf(2), parsed.minWorkerProcessCount);
+		assertEquals(Integer.valueOf(8), parsed.workerProcessCount);
+
+		parsed = ParsedArgs.parse(new String[] { "--concurrent=4-4", "tool.jar" });
+		assertEquals(Integer.valueOf(4), parsed.minWorkerProcessCount);
+		assertEquals(Integer.valueOf(4), parsed.workerProcessCount);
+	}
+
+	@Test
+	public void testInvalidWorkerCountRange() {
+		// Inverted
+		assertRejected("--concurrent=8-2", "tool.jar");
+		// Out of range
+		assertRejected("--concurrent=0-4", "tool.jar");
+		assertRejected("--concurrent=0", "tool.jar");
+		assertRejected("--concurrent=-3", "tool.jar");
+	}
+
+	@Test
+	public void testMalformedWorkerCount() {
+		assertRejected("--concurrent=", "tool.jar");
+		assertRejected("--concurrent=abc", "tool.jar");
+		assertRejected("--concurrent=2-", "tool.jar");
+		assertRejected("--concurrent=2-x", "tool.jar");
+		assertRejected("--concurrent=1-2-3", "tool.jar");
+		assertRejected("--concurrent=1..4", "tool.jar");
+	}
+}
@@ -0,0 +1,42 @@
+package codeprober.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class TestWeakIdentityMap {
+
+	@Test
+	public void testKeysComparedByIdentity() {
+		final WeakIdentityMap<Object, String> map = new WeakIdentityMap<>();
+		final String a1 = new String("a");
+		final String a2 = new String("a");
+
+		map.put(a1, "first");
+		assertEquals("first", map.get(a1));
+		assertNull(map.get(a2));
+
+		map.put(a2, "second");
+		assertEquals("first", map.get(a1));
+		assertEquals("second", map.get(a2));
+		assertEquals(2, map.size());
+	}
+
+	@Test
+	public void testReplaceAndClear() {
+		final WeakIdentityMap<Object, Object> map = new WeakIdentityMap<>();
+		final Object key = new Object();
+		final Object value = new Object();
+
+		map.put(key, "old");
+		map.put(key, value);
+		assertSame(value, map.get(key));
+		assertEquals(1, map.size());
+
+		map.clear();
+		assertNull(map.get(key));
+		assertEquals(0, map.size());
+	}
+}
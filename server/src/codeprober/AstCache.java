@@ -0,0 +1,347 @@
+package codeprober;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import codeprober.locator.ResolvedLocatorCache;
+import codeprober.locator.SpanIndexCache;
+import codeprober.metaprogramming.Reflect;
+import codeprober.protocol.data.ParsingSource;
+import codeprober.requesthandler.WorkspaceHandler;
+import codeprober.util.Util;
+
+/**
+ * A bounded cache of parsed ASTs, used by {@link DefaultRequestHandler} to
+ * avoid re-parsing when the user switches between multiple source files.
+ * <p>
+ * Entries are evicted in least-recently-used order when either the number of
+ * entries or the estimated heap usage exceeds their limits. The most recently
+ * used entry is never evicted, so the cache always behaves at least as well as
+ * a single "last parsed AST" slot.
+ */
+public class AstCache {
+
+	public static class Key {
+		public final ParsingSource.Type sourceType;
+
+		/**
+		 * The workspace path for workspace sources, null for text sources. Text
+		 * sources are instead identified by {@link #contentDigest} and
+		 * {@link #contentLength}.
+		 */
+		public final String workspacePath;
+		public final long contentDigest;
+		public final int contentLength;
+		public final String[] forwardArgs;
+		public final long toolVersionId;
+
+		public Key(ParsingSource src, String[] forwardArgs, long toolVersionId) {
+			this.sourceType = src.type;
+			if (src.isText()) {
+				this.workspacePath = null;
+				this.contentDigest = src.contentDigest;
+				this.contentLength = src.asText().length();
+			} else {
+				this.workspacePath = (String) src.value;
+				this.contentDigest = 0;
+				this.contentLength = 0;
+			}
+			this.forwardArgs = forwardArgs;
+			this.toolVersionId = toolVersionId;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(sourceType, workspacePath, contentDigest, contentLength, Arrays.hashCode(forwardArgs),
+					toolVersionId);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null) {
+				return false;
+			}
+			if (getClass() != obj.getClass()) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return sourceType == other.sourceType && contentDigest == other.contentDigest
+					&& contentLength == other.contentLength && toolVersionId == other.toolVersionId
+					&& Objects.equals(workspacePath, other.workspacePath)
+					&& Arrays.equals(forwardArgs, other.forwardArgs);
+		}
+	}
+
+	/**
+	 * Snapshot of the contents of a file on disk, used to detect whether a
+	 * workspace-sourced AST is still up to date.
+	 */
+	public static class FileStamp {
+		private final long length;
+		private final Long contentDigest;
+
+		public FileStamp(long length, Long contentDigest) {
+			this.length = length;
+			this.contentDigest = contentDigest;
+		}
+
+		public static FileStamp of(File f) {
+			return new FileStamp(f.length(), WorkspaceHandler.getWorkspaceFileDigest(f));
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(length, contentDigest);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null) {
+				return false;
+			}
+			if (getClass() != obj.getClass()) {
+				return false;
+			}
+			FileStamp other = (FileStamp) obj;
+			// An unreadable file is never considered equal to anything
+			return length == other.length && contentDigest != null && contentDigest.equals(other.contentDigest);
+		}
+	}
+
+	public static class Entry {
+		public final Object rootNode;
+
+		/**
+		 * State of the source file at the time of parsing. Only non-null for
+		 * workspace-sourced ASTs.
+		 */
+		public final FileStamp fileStamp;
+		public final long estimatedHeapBytes;
+
+		/**
+		 * Resolved locators for this AST, shared by all requests that use it. Must be
+		 * invalidated whenever the tree cache is flushed.
+		 */
+		public final ResolvedLocatorCache resolvedLocators = new ResolvedLocatorCache();
+
+		/**
+		 * Span index for this AST, shared like {@link #resolvedLocators} and
+		 * invalidated at the same time.
+		 */
+		public final SpanIndexCache spanIndex = new SpanIndexCache();
+
+		private Boolean supportsFlushTreeCache;
+
+		public Entry(Object rootNode, FileStamp fileStamp, long estimatedHeapBytes) {
+			this.rootNode = rootNode;
+			this.fileStamp = fileStamp;
+			this.estimatedHeapBytes = estimatedHeapBytes;
+		}
+
+		public boolean supportsFlushTreeCache() {
+			if (supportsFlushTreeCache == null) {
+				boolean found;
+				try {
+					rootNode.getClass().getMethod("flushTreeCache");
+					found = true;
+				} catch (NoSuchMethodException e) {
+					found = false;
+				}
+				supportsFlushTreeCache = found;
+			}
+			return supportsFlushTreeCache;
+		}
+	}
+
+	private final int maxEntries;
+	private final long maxHeapBytes;
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long totalEstimatedHeapBytes;
+
+	private long hits;
+	private long misses;
+
+	public AstCache(int maxEntries, long maxHeapBytes) {
+		this.maxEntries = Math.max(1, maxEntries);
+		this.maxHeapBytes = maxHeapBytes;
+	}
+
+	/**
+	 * Create a cache sized according to the system properties
+	 * <code>cpr.astCacheSize</code> (max number of ASTs) and
+	 * <code>cpr.astCacheHeapPercent</code> (max share of the max heap size).
+	 */
+	public static AstCache createDefault() {
+		final int heapPercent = Math.max(1, Math.min(100, Util.getIntProperty("cpr.astCacheHeapPercent", 25)));
+		return new AstCache(Util.getIntProperty("cpr.astCacheSize", 4),
+				Runtime.getRuntime().maxMemory() / 100L * heapPercent);
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public synchronized Entry get(Key key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Like {@link #get(Key)}, but doesn't count as a use of the entry, i.e the
+	 * eviction order is left unchanged.
+	 */
+	public synchronized Entry peek(Key key) {
+		for (Map.Entry<Key, Entry> ent : entries.entrySet()) {
+			if (ent.getKey().equals(key)) {
+				return ent.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the most recently used entry, or null if the cache is empty.
+	 */
+	public synchronized Map.Entry<Key, Entry> getMostRecent() {
+		Map.Entry<Key, Entry> last = null;
+		for (Map.Entry<Key, Entry> ent : entries.entrySet()) {
+			last = ent;
+		}
+		return last;
+	}
+
+	public synchronized void put(Key key, Entry entry) {
+		remove(key);
+		entries.put(key, entry);
+		totalEstimatedHeapBytes += entry.estimatedHeapBytes;
+		evictExcess();
+	}
+
+	/**
+	 * Replace the entry for a key that is already in the cache, without counting
+	 * it as a use of the entry. The eviction order is left unchanged, so a
+	 * background parse cannot make an AST look more recently used than it is.
+	 *
+	 * @return true if the entry was replaced, false if the key isn't in the cache
+	 *         (e.g because it was evicted in the meantime).
+	 */
+	public synchronized boolean replaceQuietly(Key key, Entry entry) {
+		for (Map.Entry<Key, Entry> ent : entries.entrySet()) {
+			if (ent.getKey().equals(key)) {
+				totalEstimatedHeapBytes += entry.estimatedHeapBytes - ent.getValue().estimatedHeapBytes;
+				ent.setValue(entry);
+				evictExcess();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void evictExcess() {
+		final Iterator<Entry> iter = entries.values().iterator();
+		while (entries.size() > 1 && (entries.size() > maxEntries || totalEstimatedHeapBytes > maxHeapBytes)) {
+			final Entry evicted = iter.next();
+			totalEstimatedHeapBytes -= evicted.estimatedHeapBytes;
+			iter.remove();
+		}
+	}
+
+	public synchronized void remove(Key key) {
+		final Entry prev = entries.remove(key);
+		if (prev != null) {
+			totalEstimatedHeapBytes -= prev.estimatedHeapBytes;
+		}
+	}
+
+	/**
+	 * Remove all entries that were parsed by another version of the underlying
+	 * tool. They can never be used again.
+	 */
+	public synchronized void retainToolVersion(long toolVersionId) {
+		final Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+		while (iter.hasNext()) {
+			final Map.Entry<Key, Entry> ent = iter.next();
+			if (ent.getKey().toolVersionId != toolVersionId) {
+				totalEstimatedHeapBytes -= ent.getValue().estimatedHeapBytes;
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Call 'flushTreeCache' on all entries that support it, and remove all other
+	 * entries. Used when an evaluation was aborted part-way through, which may
+	 * leave cached attribute values in an inconsistent state.
+	 */
+	public synchronized void flushOrRemoveAll() {
+		final Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+		while (iter.hasNext()) {
+			final Entry ent = iter.next().getValue();
+			boolean keep = false;
+			if (ent.supportsFlushTreeCache()) {
+				try {
+					Reflect.invoke0(ent.rootNode, "flushTreeCache");
+					ent.resolvedLocators.invalidate();
+					ent.spanIndex.invalidate();
+					keep = true;
+				} catch (RuntimeException e) {
+					System.out.println("Error when flushing cached AST, removing it from the cache");
+					e.printStackTrace();
+				}
+			}
+			if (!keep) {
+				totalEstimatedHeapBytes -= ent.estimatedHeapBytes;
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Get the keys of all entries that were parsed from the given workspace path.
+	 */
+	public synchronized List<Key> getWorkspacePathKeys(String workspacePath) {
+		final List<Key> ret = new ArrayList<>();
+		for (Key key : entries.keySet()) {
+			if (workspacePath.equals(key.workspacePath)) {
+				ret.add(key);
+			}
+		}
+		return ret;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		totalEstimatedHeapBytes = 0;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized void registerHit() {
+		++hits;
+	}
+
+	public synchronized void registerMiss() {
+		++misses;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
@@ -6,18 +6,37 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 
 import codeprober.ast.AstNode;
 import codeprober.locator.MethodKindDetector;
+import codeprober.locator.ResolvedLocatorCache;
+import codeprober.locator.SpanIndex;
+import codeprober.locator.SpanIndexCache;
 import codeprober.metaprogramming.AstNodeApiStyle;
 import codeprober.metaprogramming.InvokeProblem;
 import codeprober.metaprogramming.Reflect;
 import codeprober.metaprogramming.TypeIdentificationStyle;
 import codeprober.protocol.PositionRecoveryStrategy;
+import codeprober.protocol.data.NodeLocator;
+import codeprober.util.WeakIdentityMap;
 
 public class AstInfo {
 
+	/**
+	 * System property for how many TAL lookups must be done in an AST before it is
+	 * worth building a {@link SpanIndex} for it. Negative values disable the
+	 * index.
+	 */
+	public static final String spanIndexMinLookupsKey = "cpr.spanIndexMinLookups";
+
+	/**
+	 * System property for whether locators created for nodes in the AST should be
+	 * cached, see {@link #getLocatorCache()}.
+	 */
+	public static final String locatorCacheKey = "cpr.locatorCache";
+
 	public final AstNode ast;
 	public final PositionRecoveryStrategy recoveryStrategy;
 	public final AstNodeApiStyle astApiStyle;
@@ -34,6 +53,16 @@ public class AstInfo {
 	private Field childIndexField = null;
 	private boolean childIndexFieldLoaded = false;
 
+	private SpanIndexCache spanIndexCache = new SpanIndexCache();
+
+	private final WeakIdentityMap<Object, Optional<NodeLocator>> locatorCache = "true"
+			.equals(System.getProperty(locatorCacheKey, "true")) ? new WeakIdentityMap<>() : null;
+	private int locatorCacheScopes;
+
+	private ResolvedLocatorCache resolvedLocatorCache = new ResolvedLocatorCache();
+	private int resolvedLocatorHits;
+	private int resolvedLocatorMisses;
+
 	public AstInfo(AstNode ast, PositionRecoveryStrategy recoveryStrategy, AstNodeApiStyle astApiStyle,
 			TypeIdentificationStyle typeIdentificationStyle) {
 		this.ast = ast;
@@ -78,6 +107,107 @@ public class AstInfo {
 		return childIndexField;
 	}
 
+	/**
+	 * Get an index over the spans of all nodes in the AST, for resolving TAL steps
+	 * quickly. Building the index visits the whole AST, which costs more than a
+	 * few searches through it. It is therefore only built once this method has
+	 * been called as many times as configured by {@link #spanIndexMinLookupsKey},
+	 * and null is returned until then. Null is also returned if the AST cannot be
+	 * indexed.
+	 * <p>
+	 * By default, each AstInfo has its own index. If the AST is reused by multiple
+	 * requests, an index that lives as long as the AST can be set with
+	 * {@link #setSpanIndexCache(SpanIndexCache)}.
+	 */
+	public SpanIndex getSpanIndex() {
+		return spanIndexCache.get(this);
+	}
+
+	public SpanIndexCache getSpanIndexCache() {
+		return spanIndexCache;
+	}
+
+	public void setSpanIndexCache(SpanIndexCache spanIndexCache) {
+		this.spanIndexCache = spanIndexCache;
+	}
+
+	/**
+	 * Get the cache of locators created by
+	 * {@link codeprober.locator.CreateLocator#fromNode(AstInfo, AstNode)}, keyed
+	 * by the underlying AST node. An empty value means that no locator could be
+	 * created for the node. Returns null if the cache is disabled with
+	 * {@link #locatorCacheKey}, or if called outside of
+	 * {@link #runWithLocatorCache(Runnable)}.
+	 * <p>
+	 * Evaluating attributes may create NTAs or otherwise change where nodes are,
+	 * which makes cached locators stale. The cache is therefore only used while
+	 * encoding a result, and cleared afterwards.
+	 */
+	public WeakIdentityMap<Object, Optional<NodeLocator>> getLocatorCache() {
+		return locatorCacheScopes > 0 ? locatorCache : null;
+	}
+
+	/**
+	 * Run <code>action</code> with the locator cache enabled. Calls may be nested,
+	 * the cache is cleared when the outermost call returns.
+	 */
+	public void runWithLocatorCache(Runnable action) {
+		++locatorCacheScopes;
+		try {
+			action.run();
+		} finally {
+			if (--locatorCacheScopes == 0 && locatorCache != null) {
+				locatorCache.clear();
+			}
+		}
+	}
+
+	/**
+	 * Invalidate all cached locator information, must be called if the tree cache
+	 * is flushed while this instance is in use.
+	 */
+	public void invalidateLocatorCache() {
+		if (locatorCache != null) {
+			locatorCache.clear();
+		}
+		resolvedLocatorCache.invalidate();
+		spanIndexCache.invalidate();
+	}
+
+	/**
+	 * Get the cache of nodes that locators have been resolved to. By default, each
+	 * AstInfo has its own cache. If the AST is reused by multiple requests, a cache
+	 * that lives as long as the AST can be set with
+	 * {@link #setResolvedLocatorCache(ResolvedLocatorCache)}.
+	 */
+	public ResolvedLocatorCache getResolvedLocatorCache() {
+		return resolvedLocatorCache;
+	}
+
+	public void setResolvedLocatorCache(ResolvedLocatorCache resolvedLocatorCache) {
+		this.resolvedLocatorCache = resolvedLocatorCache;
+	}
+
+	public void registerResolvedLocatorHit() {
+		++resolvedLocatorHits;
+	}
+
+	public void registerResolvedLocatorMiss() {
+		++resolvedLocatorMisses;
+	}
+
+	/**
+	 * Number of locators resolved through this instance that were found in the
+	 * resolved locator cache.
+	 */
+	public int getResolvedLocatorHits() {
+		return resolvedLocatorHits;
+	}
+
+	public int getResolvedLocatorMisses() {
+		return resolvedLocatorMisses;
+	}
+
 	public String getQualifiedAstType(String simpleName) {
 		if (baseAstClazz.getEnclosingClass() != null) {
 			return baseAstClazz.getEnclosingClass().getName() + "$" + simpleName;
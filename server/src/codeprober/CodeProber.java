@@ -1,12 +1,25 @@
 package codeprober;
 
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
@@ -18,7 +31,9 @@ import org.json.JSONObject;
 import codeprober.RunAllTests.MergedResult;
 import codeprober.metaprogramming.StdIoInterceptor;
 import codeprober.metaprogramming.StreamInterceptor.OtherThreadDataHandling;
+import codeprober.protocol.BinaryInputStream;
 import codeprober.protocol.ClientRequest;
+import codeprober.protocol.data.AsyncRpcUpdate;
 import codeprober.protocol.data.RequestAdapter;
 import codeprober.protocol.data.TopRequestReq;
 import codeprober.protocol.data.TopRequestRes;
@@ -50,6 +65,9 @@ import codeprober.util.WorkspaceDirectoryMonitor;
 
 public class CodeProber {
 
+	// How long a worker waits for a coordinator to present its token
+	private static final int COORDINATOR_HELLO_TIMEOUT_MS = 5000;
+
 	public static void flog(String msg) {
 		final String flogPath = System.getenv("FLOG_PATH");
 		if (flogPath != null) {
@@ -64,6 +82,178 @@ public class CodeProber {
 		}
 	}
 
+	/**
+	 * Handle requests from a coordinator until the connection to it is closed.
+	 */
+	private static void serveCoordinator(InputStream src, Consumer<byte[]> writeToCoordinator, boolean binaryIpc,
+			Function<ClientRequest, JSONObject> rpcHandler, AtomicBoolean connectionIsAlive) {
+		final Consumer<AsyncRpcUpdate> writeAsyncUpdate = asyncMsg -> writeToCoordinator.accept(binaryIpc //
+				? IpcFrames.encodeBinary(IpcFrames.KIND_ASYNC_RPC_UPDATE, asyncMsg::writeTo)
+				: IpcFrames.encodeJson(asyncMsg.toJSON()));
+		final Consumer<JSONObject> writeRpcResponse = resp -> writeToCoordinator.accept(binaryIpc //
+				? IpcFrames.encodeBinary(IpcFrames.KIND_TOP_REQUEST_RES, TopRequestRes.fromJSON(resp)::writeTo)
+				: IpcFrames.encodeJson(resp));
+
+		final Consumer<JSONObject> handleRequest = obj -> writeRpcResponse
+				.accept(rpcHandler.apply(new ClientRequest(obj, writeAsyncUpdate, connectionIsAlive, (p) -> {
+				})));
+		new IpcReader(src) {
+
+			protected void onMessage(String msg) {
+				JSONObject obj;
+				try {
+					obj = new JSONObject(msg);
+				} catch (JSONException e) {
+					flog("worker non-json input: " + e);
+					System.out.println("Got non-json message to worker: " + msg);
+					e.printStackTrace();
+					return;
+				}
+				handleRequest.accept(obj);
+			}
+
+			@Override
+			protected void onBinaryMessage(byte[] data) {
+				final TopRequestReq req;
+				try {
+					final BinaryInputStream in = IpcFrames.openBinary(data);
+					final int kind = in.readInt();
+					if (kind != IpcFrames.KIND_TOP_REQUEST_REQ) {
+						System.out.println("Got unknown binary message kind to worker: " + kind);
+						return;
+					}
+					req = new TopRequestReq(in);
+				} catch (IOException | JSONException e) {
+					flog("worker invalid binary input: " + e);
+					e.printStackTrace();
+					return;
+				}
+				handleRequest.accept(req.toJSON());
+			}
+		}.runForever();
+	}
+
+	/**
+	 * Get the address that a worker started with <code>--listen=ENDPOINT</code>
+	 * binds to. Without a host in the endpoint, only local connections are
+	 * accepted, unless PERMIT_REMOTE_CONNECTIONS is set.
+	 */
+	static InetSocketAddress getListenAddress(String endpoint, boolean permitRemote) {
+		final InetSocketAddress ret = WorkerChannel.parseEndpoint(endpoint,
+				permitRemote ? null : InetAddress.getLoopbackAddress().getHostAddress());
+		if (!permitRemote && (ret.getAddress() == null || !ret.getAddress().isLoopbackAddress())) {
+			throw new IllegalArgumentException("Refusing to listen on non-loopback address '" + endpoint
+					+ "'. Set PERMIT_REMOTE_CONNECTIONS to true to allow connections from other machines.");
+		}
+		return ret;
+	}
+
+	private static String getOrCreateWorkerToken() {
+		final String configured = IpcFrames.getWorkerToken();
+		if (configured != null) {
+			return configured;
+		}
+		final byte[] randomBytes = new byte[16];
+		new SecureRandom().nextBytes(randomBytes);
+		final String ret = "key-" + Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
+		System.out.println("Start the coordinator with -Dcpr.workerToken=" + ret + " to connect to this worker");
+		return ret;
+	}
+
+	/**
+	 * Serve coordinators that connect over TCP (see
+	 * {@link WorkerChannel#connect(String, int)}), one at a time. Coordinators must
+	 * start by sending the worker token, see {@link IpcFrames#getWorkerToken()}.
+	 */
+	private static void listenForCoordinators(String endpoint, ConcurrentWorker worker,
+			Function<ClientRequest, JSONObject> rpcHandler, byte[] hello, boolean binaryIpc) {
+		final boolean permitRemote = WebSocketServer.shouldAcceptRemoteConnections();
+		try (ServerSocket server = new ServerSocket()) {
+			server.bind(getListenAddress(endpoint, permitRemote));
+			System.out.println("Worker listening for a coordinator on " + server.getLocalSocketAddress());
+			if (permitRemote) {
+				System.out.println(
+						"CAUTION: Anybody that can connect to this port and knows the token can run code in this process. Only expose it on trusted networks.");
+			}
+			final String token = getOrCreateWorkerToken();
+			while (true) {
+				try (Socket socket = server.accept()) {
+					socket.setTcpNoDelay(true);
+					System.out.println("Coordinator connected from " + socket.getRemoteSocketAddress());
+					final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+					final JSONObject coordinatorHello = readCoordinatorHello(socket);
+					if (coordinatorHello == null || !IpcFrames.hasToken(coordinatorHello, token)) {
+						System.out.println("Rejecting coordinator with missing or invalid token");
+						out.write(IpcFrames.encodeJson(IpcFrames.createRejection("Invalid worker token")));
+						out.flush();
+						continue;
+					}
+					final AtomicBoolean connectionIsAlive = new AtomicBoolean(true);
+					final Consumer<byte[]> writeToCoordinator = frame -> {
+						synchronized (out) {
+							if (!connectionIsAlive.get()) {
+								return;
+							}
+							try {
+								out.write(frame);
+								out.flush();
+							} catch (IOException e) {
+								System.out.println("Error when writing to coordinator: " + e);
+								connectionIsAlive.set(false);
+							}
+						}
+					};
+					writeToCoordinator.accept(hello);
+					writeToCoordinator.accept(IpcFrames.encodeJson(IpcFrames.createReady()));
+					serveCoordinator(socket.getInputStream(), writeToCoordinator, binaryIpc, rpcHandler,
+							connectionIsAlive);
+					connectionIsAlive.set(false);
+				} catch (IOException e) {
+					System.out.println("Error in connection to coordinator");
+					e.printStackTrace();
+				}
+				System.out.println("Coordinator disconnected");
+				if (worker.hasJobs()) {
+					// Whatever the jobs are doing, nobody is waiting for the results. They may
+					// also be stuck, so a fresh process is the only way to be sure that the
+					// next coordinator gets an idle worker.
+					System.out.println("Jobs are still running, exiting");
+					System.exit(1);
+				}
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("Failed listening on '" + endpoint + "'");
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Read the first message from a coordinator, giving up after
+	 * {@link #COORDINATOR_HELLO_TIMEOUT_MS}.
+	 *
+	 * @return the message, or null if none arrived in time
+	 */
+	private static JSONObject readCoordinatorHello(Socket socket) throws IOException {
+		socket.setSoTimeout(COORDINATOR_HELLO_TIMEOUT_MS);
+		final String msg;
+		try {
+			msg = IpcReader.readSingleJsonFrame(socket.getInputStream());
+		} catch (SocketTimeoutException | EOFException e) {
+			return null;
+		}
+		socket.setSoTimeout(0);
+		if (msg == null) {
+			return null;
+		}
+		try {
+			return new JSONObject(msg);
+		} catch (JSONException e) {
+			System.out.println("Got non-json hello from coordinator");
+			return null;
+		}
+	}
+
 	public static void main(String[] mainArgs) throws IOException {
 		System.out.println("Starting server, version: " + VersionInfo.getInstance().toString() + "..");
 		final ParsedArgs parsedArgs = ParsedArgs.parse(mainArgs);
@@ -116,7 +306,7 @@ public class CodeProber {
 			StdIoInterceptor.tag = "Coordinator";
 			try {
 				userFacingHandler = new ConcurrentCoordinator(defaultHandler, parsedArgs.jarPath, parsedArgs.extraArgs,
-						parsedArgs.workerProcessCount);
+						parsedArgs.workerProcessCount, parsedArgs.minWorkerProcessCount, parsedArgs.remoteWorkers);
 			} catch (IOException e) {
 				System.err.println(
 						"Error while initializing concurrent mode. Are you running CodeProber from a jar file?");
@@ -129,53 +319,68 @@ public class CodeProber {
 			StdIoInterceptor.tag = "Worker";
 			final PrintStream realOut = System.out;
 
-			final StdIoInterceptor io = new StdIoInterceptor(false, OtherThreadDataHandling.MERGE) {
+			final boolean listening = parsedArgs.listenEndpoint != null;
+			if (!listening) {
+				// Standard out is used for talking to the coordinator, keep it clean
+				final StdIoInterceptor io = new StdIoInterceptor(false, OtherThreadDataHandling.MERGE) {
 
-				@Override
-				public void onLine(boolean stdout, String line) {
-					flog(line);
-				}
-			};
-			io.install();
-			final Consumer<JSONObject> writeToCoordinator = msgObj -> {
-				final byte[] data = msgObj.toString().getBytes(StandardCharsets.UTF_8);
+					@Override
+					public void onLine(boolean stdout, String line) {
+						flog(line);
+					}
+				};
+				io.install();
+			}
+
+			// The first instance uses the normal tool, any others get isolated copies
+			final List<UnderlyingTool> instanceTools = new ArrayList<>();
+			final List<JsonRequestHandler> instanceHandlers = new ArrayList<>();
+			instanceTools.add(underlyingTool);
+			instanceHandlers.add(defaultHandler);
+			for (int i = 1; i < ConcurrentWorker.getInstanceCount(); ++i) {
+				final UnderlyingTool isolatedTool = UnderlyingTool.fromIsolatedJar(parsedArgs.jarPath);
+				instanceTools.add(isolatedTool);
+				instanceHandlers.add(new DefaultRequestHandler(isolatedTool, parsedArgs.extraArgs, sessionLogger));
+			}
+			final ConcurrentWorker worker = new ConcurrentWorker(instanceHandlers);
+			userFacingHandler = worker;
+			final Function<ClientRequest, JSONObject> rpcHandler = JsonRequestHandler
+					.createTopRequestHandler(userFacingHandler::handleRequest);
+			final boolean binaryIpc = IpcFrames.isBinaryEnabled();
+			final byte[] hello = IpcFrames.encodeJson(IpcFrames.createHello(binaryIpc, instanceHandlers.size(),
+					ConcurrentWorker.getQueueDepth()));
+			if (listening) {
+				new Thread(() -> {
+					for (UnderlyingTool tool : instanceTools) {
+						ConcurrentWorker.warmUp(tool, parsedArgs.extraArgs);
+					}
+					listenForCoordinators(parsedArgs.listenEndpoint, worker, rpcHandler, hello, binaryIpc);
+				}).start();
+				return;
+			}
+
+			final Consumer<byte[]> writeToCoordinator = frame -> {
 				synchronized (realOut) {
-					realOut.println();
-					realOut.print("<" + data.length + ">");
 					try {
-						realOut.write(data);
+						realOut.write(frame);
 					} catch (IOException e) {
 						// 'should never happen'
 						flog("Error when writing to standard out");
 						e.printStackTrace();
 						throw new RuntimeException(e);
 					}
-					realOut.println();
+					realOut.flush();
 				}
-
 			};
-			userFacingHandler = new ConcurrentWorker(defaultHandler);
-			final Function<ClientRequest, JSONObject> rpcHandler = JsonRequestHandler
-					.createTopRequestHandler(userFacingHandler::handleRequest);
+			// Let the coordinator know how many instances we have, and whether it can
+			// switch to binary frames
+			writeToCoordinator.accept(hello);
 			new Thread(() -> {
-				final AtomicBoolean connectionIsAlive = new AtomicBoolean(true);
-				new IpcReader(System.in) {
-
-					protected void onMessage(String msg) {
-						JSONObject obj;
-						try {
-							obj = new JSONObject(msg);
-						} catch (JSONException e) {
-							flog("worker non-json input: " + e);
-							System.out.println("Got non-json message to worker: " + msg);
-							e.printStackTrace();
-							return;
-						}
-						writeToCoordinator.accept(rpcHandler.apply(new ClientRequest(obj,
-								asyncMsg -> writeToCoordinator.accept(asyncMsg.toJSON()), connectionIsAlive, (p) -> {
-								})));
-					}
-				}.runForever();
+				for (UnderlyingTool tool : instanceTools) {
+					ConcurrentWorker.warmUp(tool, parsedArgs.extraArgs);
+				}
+				writeToCoordinator.accept(IpcFrames.encodeJson(IpcFrames.createReady()));
+				serveCoordinator(System.in, writeToCoordinator, binaryIpc, rpcHandler, new AtomicBoolean(true));
 			}).start();
 			return; // not break, avoid starting websocket/http servers
 		}
@@ -209,7 +414,8 @@ public class CodeProber {
 				} else {
 					final RunWorkspaceTest.MergedResult res = RunWorkspaceTest.run(userFacingHandler,
 							WorkspaceHandler.getDefault(),
-							parsedArgs.workerProcessCount == null ? 0 : parsedArgs.workerProcessCount);
+							(parsedArgs.workerProcessCount == null ? 0 : parsedArgs.workerProcessCount)
+									+ parsedArgs.remoteWorkers.size());
 					System.exit(res == RunWorkspaceTest.MergedResult.ALL_PASS ? 0 : 1);
 				}
 			} else {
@@ -258,15 +464,27 @@ public class CodeProber {
 		CodespacesCompat.shouldApplyCompatHacks();
 		CodespacesCompat.getChangeBufferTime();
 		final File workspaceRoot = WorkspaceHandler.getWorkspaceRoot(true);
+		final JsonRequestHandler topUserFacingHandler;
 		if (workspaceRoot != null) {
 			if (backingFile != null) {
 				System.err.println("ERROR: Cannot mix cpr.backing_file and cpr.workspace");
 				System.exit(1);
 			}
-			new WorkspaceDirectoryMonitor(workspaceRoot, msgPusher).start();
+			// Speculative parsing only makes sense when the ASTs live in this process
+			if (SpeculativeParser.isEnabled() && userFacingHandler == defaultHandler) {
+				System.out.println("Speculatively re-parsing changed workspace files in the background");
+				final SpeculativeParser speculativeParser = new SpeculativeParser(defaultHandler);
+				topUserFacingHandler = speculativeParser;
+				new WorkspaceDirectoryMonitor(workspaceRoot, msgPusher, speculativeParser::schedule).start();
+			} else {
+				topUserFacingHandler = userFacingHandler;
+				new WorkspaceDirectoryMonitor(workspaceRoot, msgPusher).start();
+			}
+		} else {
+			topUserFacingHandler = userFacingHandler;
 		}
 
-		final RequestHandlerMonitor monitor = new RequestHandlerMonitor(userFacingHandler::handleRequest);
+		final RequestHandlerMonitor monitor = new RequestHandlerMonitor(topUserFacingHandler::handleRequest);
 		final Function<ClientRequest, JSONObject> unwrappedHandler = monitor::submit;
 		final Function<ClientRequest, JSONObject> topHandler = JsonRequestHandler
 				.createTopRequestHandler(unwrappedHandler);
@@ -321,7 +539,7 @@ public class CodeProber {
 			monitorPath.accept(parsedArgs.jarPath);
 		}
 
-		final Runnable onSomeClientDisconnected = userFacingHandler::onOneOrMoreClientsDisconnected;
+		final Runnable onSomeClientDisconnected = topUserFacingHandler::onOneOrMoreClientsDisconnected;
 		new Thread(() -> WebServer.start(parsedArgs, msgPusher, unwrappedHandler, onSomeClientDisconnected, needsTool,
 				setUnderlyingJarPath, sessionLogger)).start();
 		if (!WebSocketServer.shouldDelegateWebsocketToHttp() && WebSocketServer.getPort() != WebServer.getPort()) {
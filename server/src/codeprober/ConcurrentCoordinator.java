@@ -3,24 +3,34 @@ package codeprober;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
 import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import codeprober.protocol.BinaryInputStream;
 import codeprober.protocol.ClientRequest;
+import codeprober.protocol.JobPriority;
 import codeprober.protocol.data.AsyncRequestReq;
 import codeprober.protocol.data.AsyncRequestRes;
 import codeprober.protocol.data.AsyncResult;
@@ -31,9 +41,12 @@ import codeprober.protocol.data.EvaluatePropertyRes;
 import codeprober.protocol.data.GetWorkerStatusReq;
 import codeprober.protocol.data.GetWorkerStatusRes;
 import codeprober.protocol.data.PollWorkerStatusReq;
+import codeprober.protocol.data.ParsingSource;
 import codeprober.protocol.data.PollWorkerStatusRes;
 import codeprober.protocol.data.PropertyEvaluationResult;
 import codeprober.protocol.data.RequestAdapter;
+import codeprober.protocol.data.ResetWorkerInstanceReq;
+import codeprober.protocol.data.ResetWorkerInstanceRes;
 import codeprober.protocol.data.StopJobReq;
 import codeprober.protocol.data.StopJobRes;
 import codeprober.protocol.data.SubmitWorkerTaskReq;
@@ -43,34 +56,603 @@ import codeprober.protocol.data.TopRequestReq;
 import codeprober.protocol.data.TopRequestRes;
 import codeprober.protocol.data.UnsubscribeFromWorkerStatusReq;
 import codeprober.protocol.data.UnsubscribeFromWorkerStatusRes;
+import codeprober.protocol.data.WorkerQueueDepths;
+import codeprober.protocol.data.WorkerTaskDone;
 import codeprober.rpc.JsonRequestHandler;
+import codeprober.util.Util;
 
 public class ConcurrentCoordinator implements JsonRequestHandler {
 
 //	private final AtomicLong jobIdGenerator = new AtomicLong();
 	private final AtomicLong messageIdGenerator = new AtomicLong();
 
-	private final Worker[] workers;
-	private final ConcurrentLinkedQueue<ActiveJob> queuedJobs = new ConcurrentLinkedQueue<>();
+	// Structural changes (adding, removing or replacing workers) are done while
+	// holding the lock on the list. All instances of a worker process are added
+	// and removed together.
+	private final List<Worker> workers = new CopyOnWriteArrayList<>();
+	private final int instancesPerProcess = ConcurrentWorker.getInstanceCount();
+	// Bounds on the number of worker processes. Equal unless the worker count is
+	// adaptive
+	private final int minWorkers;
+	private final int maxWorkers;
+	private final ConcurrentJobQueue<ActiveJob> queuedJobs = new ConcurrentJobQueue<>(
+			Math.max(0, Util.getIntProperty("cpr.jobAgingMs", 30_000)) * 1_000_000L);
 //	private final Function<JSONObject, String> defaultHandler;
 	private final JsonRequestHandler nonConcurrentHandler;
 
 	private final String jarPath;
 	private final String[] mainArgs;
 
+	/**
+	 * How long a job may wait for a busy worker that already has its source
+	 * parsed, rather than being handed to another idle worker. Jobs that have
+	 * waited longer than this are served in FIFO order by any idle worker.
+	 */
+	private final long affinityWaitNanos = Math.max(0, Util.getIntProperty("cpr.workerAffinityWaitMs", 500))
+			* 1_000_000L;
+	/**
+	 * Max number of jobs submitted to a single worker at a time, i.e the running
+	 * job plus jobs staged in the worker's own queue. Staging avoids leaving the
+	 * worker idle during the round trip between finishing one job and receiving
+	 * the next. Each worker announces the size of its queue in its hello message,
+	 * and that value is used instead of this one once received.
+	 */
+	private final int workerQueueDepth = ConcurrentWorker.getQueueDepth();
+
+	/**
+	 * How long a job may take to react to a cancellation before its worker process
+	 * is killed and replaced. Zero means that workers are replaced immediately.
+	 */
+	private final long cancelGraceMillis = Math.max(0, Util.getIntProperty("cpr.workerCancelGraceMs", 2000));
+	/**
+	 * Whether superseded jobs (see {@link #supersedeOlderJobs(ActiveJob)}) should
+	 * be stopped even if they have started running. If false, only jobs that are
+	 * still waiting are stopped.
+	 */
+	private final boolean stopSupersededRunningJobs = "true"
+			.equals(System.getProperty("cpr.stopSupersededRunningJobs", "false"));
+	private final Timer redispatchTimer = new Timer("ConcurrentCoordinator-redispatch", true);
+
+	/**
+	 * Jobs that identical jobs can attach to instead of running themselves, keyed
+	 * by {@link ConcurrentResultMemo#getCoalescingKey(JSONObject, String)}. A job
+	 * is in here from when it is accepted until it is finished or stopped. Guarded
+	 * by itself.
+	 */
+	private final Map<String, ActiveJob> inFlightJobs = new HashMap<>();
+	private final ConcurrentResultMemo resultMemo = new ConcurrentResultMemo(
+			Math.max(0, Util.getIntProperty("cpr.resultMemoMs", 2000)) * 1_000_000L, 64);
+	private final AtomicBoolean redispatchScheduled = new AtomicBoolean();
+
+	/**
+	 * Worker processes that are started ahead of time, so that a worker that is
+	 * replaced (e.g because a job was stopped) can be swapped for one that has
+	 * already started and loaded the underlying tool. Guarded by itself.
+	 */
+	private final ArrayDeque<WorkerProcess> spareWorkers = new ArrayDeque<>();
+	private final int spareWorkerCount = Math.max(0, Util.getIntProperty("cpr.spareWorkers", 1));
+	private final Timer spareWorkerTimer = new Timer("ConcurrentCoordinator-spares", true);
+	// Set by shutdown(), while holding the lock on 'spareWorkers'
+	private volatile boolean shutDown;
+
+	/**
+	 * Timeout for connecting to a remote worker, and the interval between attempts
+	 * to reconnect to one that is unavailable.
+	 */
+	private static final int REMOTE_CONNECT_TIMEOUT_MS = 2000;
+
+	/**
+	 * With an adaptive worker count, a worker is added once a job has waited this
+	 * long while all workers were busy. At most one worker is added per period.
+	 */
+	private final long scaleUpWaitNanos = Math.max(0, Util.getIntProperty("cpr.workerScaleUpWaitMs", 1000))
+			* 1_000_000L;
+	private volatile long lastScaleUpNanos = System.nanoTime();
+	/**
+	 * With an adaptive worker count, workers that have been idle this long are
+	 * shut down.
+	 */
+	private final long retireIdleNanos = Math.max(1, Util.getIntProperty("cpr.workerIdleRetireMs", 60_000))
+			* 1_000_000L;
+	/**
+	 * How much memory all worker processes (including spares) may use together,
+	 * and how much a single worker is assumed to use. New workers are only added if
+	 * they fit in the budget.
+	 */
+	private final long workerMemoryBudgetBytes = getWorkerMemoryBudgetMb() * 1024L * 1024L;
+	/**
+	 * Workers whose heap usage after garbage collection exceeds this share (in
+	 * percent) of their max heap size are recycled once their submitted jobs are
+	 * done, before they run out of memory in the middle of a job. Zero disables
+	 * this. See {@link #finishRecycling(Worker)}.
+	 */
+	private final int heapHighWaterPercent = Math.max(0,
+			Math.min(100, Util.getIntProperty("cpr.workerHeapHighWaterPercent", 80)));
+	private final long workerMemoryEstimateBytes = Math.max(1, Util.getIntProperty("cpr.workerMemoryEstimateMb", 512))
+			* 1024L * 1024L;
+
 	private final AtomicInteger workerStatusSubscriberIdGenerator = new AtomicInteger(1);
 	private final CopyOnWriteArrayList<ActiveSubscriber> workerStatusSubscribers = new CopyOnWriteArrayList<>();
 
 	public ConcurrentCoordinator(JsonRequestHandler nonConcurrentHandler, String jarPath, String[] mainArgs,
 			Integer workerProcessCount) throws IOException {
+		this(nonConcurrentHandler, jarPath, mainArgs, workerProcessCount, null);
+	}
+
+	/**
+	 * @param workerProcessCount    the number of worker processes, or the max
+	 *                              number if <code>minWorkerProcessCount</code> is
+	 *                              set. Defaults to 4.
+	 * @param minWorkerProcessCount if non-null, the worker count is adaptive. It
+	 *                              starts at this value, and grows towards
+	 *                              <code>workerProcessCount</code> when jobs have
+	 *                              to wait for a worker.
+	 */
+	public ConcurrentCoordinator(JsonRequestHandler nonConcurrentHandler, String jarPath, String[] mainArgs,
+			Integer workerProcessCount, Integer minWorkerProcessCount) throws IOException {
+		this(nonConcurrentHandler, jarPath, mainArgs, workerProcessCount, minWorkerProcessCount,
+				Collections.emptyList());
+	}
+
+	/**
+	 * @param remoteWorkers <code>HOST:PORT</code> endpoints of workers started
+	 *                      with <code>--worker --listen</code>. They are used in
+	 *                      addition to the local worker processes.
+	 */
+	public ConcurrentCoordinator(JsonRequestHandler nonConcurrentHandler, String jarPath, String[] mainArgs,
+			Integer workerProcessCount, Integer minWorkerProcessCount, List<String> remoteWorkers)
+			throws IOException {
 		this.jarPath = jarPath;
 		this.mainArgs = mainArgs;
 		this.nonConcurrentHandler = nonConcurrentHandler;
-		workers = new Worker[workerProcessCount != null ? workerProcessCount : 4];
-		System.out.println("Starting " + workers.length + " worker process" + (workers.length == 1 ? "" : "es"));
-		for (int i = 0; i < workers.length; i++) {
-			workers[i] = new Worker(jarPath, mainArgs);
+		maxWorkers = workerProcessCount != null ? workerProcessCount : 4;
+		minWorkers = minWorkerProcessCount != null ? Math.min(minWorkerProcessCount, maxWorkers) : maxWorkers;
+		final String instanceInfo = instancesPerProcess > 1
+				? (", with " + instancesPerProcess + " tool instances each")
+				: "";
+		if (maxWorkers == 0) {
+			// Only remote workers
+		} else if (minWorkers < maxWorkers) {
+			System.out.println("Starting " + minWorkers + " worker process" + (minWorkers == 1 ? "" : "es")
+					+ ", adjusting to the load up to " + maxWorkers + instanceInfo);
+		} else {
+			System.out.println(
+					"Starting " + maxWorkers + " worker process" + (maxWorkers == 1 ? "" : "es") + instanceInfo);
+		}
+		for (int i = 0; i < minWorkers; i++) {
+			workers.addAll(new WorkerProcess(startLocalWorker(), null).instances);
+		}
+		for (String endpoint : remoteWorkers) {
+			connectRemoteWorker(endpoint);
+		}
+		refillSpareWorkers();
+		if (minWorkers < maxWorkers) {
+			final long checkIntervalMillis = Math.max(1000, retireIdleNanos / 4_000_000L);
+			redispatchTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					retireIdleWorkers();
+				}
+			}, checkIntervalMillis, checkIntervalMillis);
+		}
+	}
+
+	/**
+	 * Get the memory budget for all worker processes. Controlled by the system
+	 * property <code>cpr.workerMemoryBudgetMb</code>, defaulting to half of the
+	 * physical memory of the host. If the host memory cannot be determined, there
+	 * is no limit by default.
+	 */
+	private static long getWorkerMemoryBudgetMb() {
+		long defaultMb = Integer.MAX_VALUE;
+		final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			@SuppressWarnings("deprecation")
+			final long total = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+			if (total > 0) {
+				defaultMb = total / 2 / (1024L * 1024L);
+			}
+		}
+		return Math.max(0, Util.getIntProperty("cpr.workerMemoryBudgetMb", (int) Math.min(Integer.MAX_VALUE, defaultMb)));
+	}
+
+	/**
+	 * Add a worker if the worker count is adaptive, all workers are busy, and a
+	 * job has waited for longer than {@link #scaleUpWaitNanos}. If a job is waiting
+	 * but not for long enough yet, a new check is scheduled.
+	 *
+	 * @return true if a worker was added
+	 */
+	private boolean maybeAddWorker() {
+		if (countLocalProcesses() >= maxWorkers) {
+			return false;
+		}
+		long oldestQueuedAt = Long.MAX_VALUE;
+		for (ActiveJob job : queuedJobs.getJobs()) {
+			oldestQueuedAt = Math.min(oldestQueuedAt, job.queuedAtNanos);
+		}
+		if (oldestQueuedAt == Long.MAX_VALUE) {
+			return false;
+		}
+		for (Worker w : workers) {
+			if (w.jobs.isEmpty()) {
+				// Jobs are waiting for cache affinity, not for lack of workers
+				return false;
+			}
+		}
+		final long now = System.nanoTime();
+		final long waitLeft = Math.max(oldestQueuedAt, lastScaleUpNanos) + scaleUpWaitNanos - now;
+		if (waitLeft > 0) {
+			scheduleRedispatch(waitLeft);
+			return false;
+		}
+		final WorkerProcess added;
+		final int processCount;
+		synchronized (workers) {
+			processCount = countLocalProcesses();
+			if (processCount >= maxWorkers || now - lastScaleUpNanos < scaleUpWaitNanos) {
+				return false;
+			}
+			final long expectedUsage;
+			synchronized (spareWorkers) {
+				expectedUsage = (processCount + spareWorkers.size() + 1) * workerMemoryEstimateBytes;
+			}
+			if (expectedUsage > workerMemoryBudgetBytes) {
+				return false;
+			}
+			lastScaleUpNanos = now;
+			try {
+				added = takeSpareWorker();
+			} catch (IOException e) {
+				System.err.println("Error when adding worker");
+				e.printStackTrace();
+				return false;
+			}
+			workers.addAll(added.instances);
+		}
+		System.out.println("Jobs are waiting for a worker, added worker #" + (processCount + 1));
+		dispatchStatusToSubscribers();
+		return true;
+	}
+
+	/**
+	 * Called when a worker process has reported its status, see
+	 * {@link ConcurrentWorker#createStatus(List)}. Starts recycling the process if
+	 * its heap usage is above {@link #heapHighWaterPercent}.
+	 */
+	private void onWorkerStatus(WorkerProcess p, GetWorkerStatusRes status) {
+		p.lastStatus = status;
+		if (heapHighWaterPercent == 0 || status.heapLiveBytes == null || status.heapMaxBytes == null
+				|| status.heapMaxBytes <= 0 || status.heapLiveBytes * 100 < status.heapMaxBytes * heapHighWaterPercent) {
+			return;
+		}
+		boolean recycled = false;
+		synchronized (p) {
+			if (p.destroyed.get()) {
+				return;
+			}
+			for (Worker w : p.instances) {
+				if (w.recycling) {
+					// Already in progress
+					return;
+				}
+			}
+			System.out.println("Worker heap usage is " + (status.heapLiveBytes >> 20) + "MB of max "
+					+ (status.heapMaxBytes >> 20) + "MB, "
+					+ (p.isReplacedWhenRecycled() ? "replacing it" : "resetting its tool instances")
+					+ " once its jobs are done");
+			for (Worker w : p.instances) {
+				w.recycling = true;
+			}
+			for (Worker w : p.instances) {
+				if (w.jobs.isEmpty()) {
+					recycled |= finishRecycling(w);
+				}
+			}
+		}
+		if (recycled) {
+			dispatchStatusToSubscribers();
+			dispatchQueuedJobs();
+		}
+	}
+
+	/**
+	 * Recycle a worker that was marked for recycling, and whose jobs are done. A
+	 * local process with a single tool instance is replaced with a new process.
+	 * Otherwise the instance is reset, which releases its ASTs and loaded tool
+	 * without disturbing jobs in the other instances. Must be called while holding
+	 * the lock on the process.
+	 *
+	 * @return true if the worker was recycled
+	 */
+	private boolean finishRecycling(Worker w) {
+		if (w.proc.isReplacedWhenRecycled()) {
+			final boolean replaced = replaceWorker(w.proc, true);
+			// If no replacement could be started, keep using the worker
+			w.recycling = replaced;
+			return replaced;
+		}
+		w.reset();
+		w.recycling = false;
+		return true;
+	}
+
+	/**
+	 * Shut down workers that have been idle for longer than
+	 * {@link #retireIdleNanos}, as long as there are more than
+	 * {@link #minWorkers} workers.
+	 */
+	private void retireIdleWorkers() {
+		final long now = System.nanoTime();
+		boolean retiredAny = false;
+		for (WorkerProcess p : getProcesses()) {
+			if (!p.channel.isLocal()) {
+				continue;
+			}
+			synchronized (p) {
+				if (p.destroyed.get() || !isIdleSince(p, now - retireIdleNanos)) {
+					continue;
+				}
+				synchronized (workers) {
+					if (countLocalProcesses() <= minWorkers) {
+						break;
+					}
+					workers.removeAll(p.instances);
+				}
+				p.destroy();
+				retiredAny = true;
+			}
+			System.out.println("Shut down idle worker, " + countLocalProcesses() + " remaining");
+		}
+		if (retiredAny) {
+			dispatchStatusToSubscribers();
+		}
+	}
+
+	/**
+	 * Check whether no instance in a process has had any jobs since the given
+	 * time. Must be called while holding the lock on the process.
+	 */
+	private static boolean isIdleSince(WorkerProcess p, long sinceNanos) {
+		for (Worker w : p.instances) {
+			if (!w.jobs.isEmpty() || w.lastActiveNanos - sinceNanos > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get all active worker processes, in the order of their instances in
+	 * {@link #workers}.
+	 */
+	private List<WorkerProcess> getProcesses() {
+		final List<WorkerProcess> ret = new ArrayList<>();
+		for (Worker w : workers) {
+			if (!ret.contains(w.proc)) {
+				ret.add(w.proc);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Count the active worker processes that were started by this coordinator,
+	 * i.e excluding remote workers.
+	 */
+	private int countLocalProcesses() {
+		int ret = 0;
+		for (WorkerProcess p : getProcesses()) {
+			if (p.channel.isLocal()) {
+				++ret;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Connect to a remote worker and start giving it jobs. If the worker cannot be
+	 * reached, this is retried in the background until it can.
+	 */
+	private void connectRemoteWorker(String endpoint) {
+		if (!tryConnectRemoteWorker(endpoint)) {
+			System.err.println("Failed connecting to remote worker " + endpoint
+					+ ", retrying in the background. Make sure that cpr.workerToken matches the token printed by the worker.");
+			scheduleReconnect(endpoint);
+		}
+	}
+
+	/**
+	 * Try connecting to a remote worker every {@link #REMOTE_CONNECT_TIMEOUT_MS}
+	 * until it succeeds.
+	 */
+	private void scheduleReconnect(String endpoint) {
+		spareWorkerTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				if (!tryConnectRemoteWorker(endpoint)) {
+					scheduleReconnect(endpoint);
+					return;
+				}
+				dispatchStatusToSubscribers();
+				dispatchQueuedJobs();
+			}
+		}, REMOTE_CONNECT_TIMEOUT_MS);
+	}
+
+	private boolean tryConnectRemoteWorker(String endpoint) {
+		final WorkerChannel channel;
+		try {
+			channel = WorkerChannel.connect(endpoint, REMOTE_CONNECT_TIMEOUT_MS);
+		} catch (IOException e) {
+			return false;
+		}
+		final WorkerProcess proc;
+		try {
+			// The worker doesn't answer until it has seen a valid token
+			final OutputStream out = channel.getOutputStream();
+			out.write(IpcFrames.encodeJson(IpcFrames.createCoordinatorHello(IpcFrames.getWorkerToken())));
+			out.flush();
+			proc = new WorkerProcess(channel, endpoint);
+		} catch (IOException e) {
+			channel.close(true);
+			return false;
+		}
+		synchronized (workers) {
+			workers.addAll(proc.instances);
+		}
+		System.out.println("Connected to remote worker " + endpoint + ", with " + proc.instances.size()
+				+ " tool instance" + (proc.instances.size() == 1 ? "" : "s"));
+		return true;
+	}
+
+	/**
+	 * Start new spare workers in the background until there are
+	 * {@link #spareWorkerCount} of them.
+	 */
+	private void refillSpareWorkers() {
+		if (spareWorkerCount == 0 || maxWorkers == 0 || shutDown) {
+			return;
+		}
+		spareWorkerTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				while (true) {
+					synchronized (spareWorkers) {
+						if (shutDown || spareWorkers.size() >= spareWorkerCount) {
+							return;
+						}
+					}
+					final WorkerProcess spare;
+					try {
+						spare = new WorkerProcess(startLocalWorker(), null);
+					} catch (IOException e) {
+						System.err.println("Error when starting spare worker");
+						e.printStackTrace();
+						return;
+					}
+					synchronized (spareWorkers) {
+						if (shutDown) {
+							// Started while shutting down
+							spare.destroy();
+							return;
+						}
+						spareWorkers.add(spare);
+					}
+				}
+			}
+		}, 0);
+	}
+
+	/**
+	 * Start a local worker process. Tests override this to run without starting
+	 * real processes.
+	 */
+	WorkerChannel startLocalWorker() throws IOException {
+		return WorkerChannel.startProcess(createWorkerCommand(jarPath, mainArgs));
+	}
+
+	/**
+	 * Stop all workers, including spares. Jobs that are queued or running are not
+	 * finished, and no workers are started afterwards.
+	 */
+	public void shutdown() {
+		final List<WorkerProcess> procs;
+		synchronized (spareWorkers) {
+			shutDown = true;
+			procs = new ArrayList<>(spareWorkers);
+			spareWorkers.clear();
+		}
+		synchronized (workers) {
+			procs.addAll(getProcesses());
+			workers.clear();
+		}
+		for (WorkerProcess p : procs) {
+			p.destroy();
+		}
+	}
+
+	/**
+	 * Get a worker to replace another one with. Spare workers that have finished
+	 * warming up are preferred, and a new worker is only started here if there
+	 * are no spares at all.
+	 */
+	private WorkerProcess takeSpareWorker() throws IOException {
+		WorkerProcess ret = null;
+		synchronized (spareWorkers) {
+			// Spares that died are removed by 'onWorkerExited', but that may not
+			// have happened yet
+			spareWorkers.removeIf(spare -> {
+				if (spare.channel.isAlive()) {
+					return false;
+				}
+				spare.destroy();
+				return true;
+			});
+			for (WorkerProcess spare : spareWorkers) {
+				if (spare.ready) {
+					ret = spare;
+					break;
+				}
+			}
+			if (ret == null) {
+				// The oldest spare is closest to being ready
+				ret = spareWorkers.peekFirst();
+			}
+			if (ret != null) {
+				spareWorkers.remove(ret);
+			}
 		}
+		refillSpareWorkers();
+		return ret != null ? ret : new WorkerProcess(startLocalWorker(), null);
+	}
+
+	/**
+	 * Called when a worker process has exited, which is expected for workers that
+	 * have been destroyed. Otherwise the process has crashed (or for remote
+	 * workers, the connection was lost), and is replaced.
+	 */
+	private void onWorkerExited(WorkerProcess p) {
+		if (p.destroyed.get() || shutDown) {
+			return;
+		}
+		synchronized (spareWorkers) {
+			if (spareWorkers.remove(p)) {
+				System.err.println("Spare worker process exited unexpectedly");
+				p.destroy();
+				if (p.ready) {
+					// Don't refill if the process didn't even start properly, the
+					// replacement would likely fail too.
+					refillSpareWorkers();
+				}
+				return;
+			}
+		}
+		final List<ActiveJob> lost = new ArrayList<>();
+		synchronized (p) {
+			if (p.destroyed.get()) {
+				return;
+			}
+			System.err.println(p.channel.isLocal() //
+					? "Worker process exited unexpectedly, replacing it"
+					: ("Lost connection to remote worker " + p.endpoint + ", reconnecting in the background"));
+			for (Worker w : p.instances) {
+				if (!w.jobs.isEmpty()) {
+					lost.add(w.jobs.peekFirst());
+				}
+			}
+			// Any of the running jobs may have caused the crash, so don't retry them
+			if (!replaceWorker(p, false)) {
+				return;
+			}
+		}
+		for (ActiveJob running : lost) {
+			// The job is lost, finish it like any other failed job
+			p.handleAsyncUpdate(new AsyncRpcUpdate(running.jobId, true, AsyncRpcUpdateValue.fromWorkerTaskDone(
+					WorkerTaskDone.fromUnexpectedError(Arrays.asList("Worker process exited unexpectedly")))));
+		}
+		dispatchStatusToSubscribers();
+		dispatchQueuedJobs();
 	}
 
 	private void dispatchStatusToSubscribers() {
@@ -88,18 +670,30 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 				workerStatuses.add("Destroyed - failed to replace process");
 			} else {
 
-				final ActiveJob job = w.job;
+				final ActiveJob job = w.jobs.peekFirst();
+				final GetWorkerStatusRes lastStatus = w.proc.lastStatus;
+				final String heap = lastStatus != null && lastStatus.heapUsedBytes != null
+						&& lastStatus.heapMaxBytes != null
+								? String.format(" [heap %d/%dMB]", lastStatus.heapUsedBytes >> 20,
+										lastStatus.heapMaxBytes >> 20)
+								: "";
 				if (job != null) {
 					final String label = job.request.data.optString("jobLabel");
-					workerStatuses.add("Working" + (label == null ? "" : (": " + label)));
+					final int staged = w.jobs.size() - 1;
+					workerStatuses.add("Working" + (label == null ? "" : (": " + label))
+							+ (staged > 0 ? (" (+" + staged + " queued)") : "") + heap);
 				} else {
-					workerStatuses.add("Idle");
+					workerStatuses.add("Idle" + heap);
 				}
 
 			}
 		}
 //		final JSONObject status = new JSONObject().put(jarPath, false)
 
+		final Map<JobPriority, Integer> depths = queuedJobs.getDepths();
+		final WorkerQueueDepths queueDepths = new WorkerQueueDepths(depths.get(JobPriority.INTERACTIVE),
+				depths.get(JobPriority.BULK), depths.get(JobPriority.BACKGROUND));
+
 		for (ActiveJob subscriber : workerStatusSubscribers) {
 //			final JSONObject msg = new JSONObject();
 //			msg.put("type", "jobUpdate");
@@ -110,6 +704,8 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 			final AsyncRpcUpdate update = new AsyncRpcUpdate(subscriber.jobId, false,
 					AsyncRpcUpdateValue.fromWorkerStatuses(workerStatuses));
 			subscriber.request.sendAsyncResponse(update);
+			subscriber.request.sendAsyncResponse(new AsyncRpcUpdate(subscriber.jobId, false,
+					AsyncRpcUpdateValue.fromWorkerQueueDepths(queueDepths)));
 		}
 
 	}
@@ -117,28 +713,313 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 	@Override
 	public void onOneOrMoreClientsDisconnected() {
 		workerStatusSubscribers.removeIf(sub -> !sub.request.connectionIsAlive.get());
+		synchronized (inFlightJobs) {
+			for (ActiveJob leader : inFlightJobs.values()) {
+				for (ActiveJob follower : leader.followers) {
+					if (!follower.request.connectionIsAlive.get()) {
+						follower.cancelRequested = true;
+						leader.followers.remove(follower);
+					}
+				}
+			}
+		}
+		stopUnwantedJobs();
+	}
 
-		for (int i = 0; i < workers.length; i++) {
-			final Worker w = workers[i];
-			synchronized (w) {
+	/**
+	 * Stop all queued and submitted jobs that have been cancelled, or whose
+	 * client has disconnected.
+	 */
+	private void stopUnwantedJobs() {
+		for (ActiveJob job : queuedJobs.getJobs()) {
+			if (job.cancelRequested || !job.request.connectionIsAlive.get()) {
+				stopQueuedJob(job);
+			}
+		}
+
+		for (Worker w : workers) {
+			synchronized (w.proc) {
 				if (w.destroyed.get()) {
 					continue;
 				}
-				if (w.job != null && !w.job.request.connectionIsAlive.get()) {
-					try {
-						workers[i] = new Worker(jarPath, mainArgs);
-					} catch (IOException e) {
-						System.err.println("Error when replacing worker");
-						e.printStackTrace();
-						// Continue instead of destroying the previous worker
-						// It might not need to be destroyed
-						continue;
+				for (ActiveJob job : new ArrayList<>(w.jobs)) {
+					if (job.cancelRequested || !job.request.connectionIsAlive.get()) {
+						stopJob(w, job);
+					}
+				}
+			}
+		}
+		dispatchQueuedJobs();
+	}
+
+	/**
+	 * Cancel jobs that are made obsolete by a new job. A job is obsolete if it
+	 * came from the same connection and has the same <code>supersedes</code> key,
+	 * e.g because the user kept typing and the client sent a new hover request for
+	 * the same editor. The client of each obsolete job gets a final update saying
+	 * that the job was superseded.
+	 * <p>
+	 * Jobs that are queued (or staged in a worker) are always stopped. Running jobs
+	 * are only stopped if {@link #stopSupersededRunningJobs} is set.
+	 *
+	 * @return true if any job was superseded
+	 */
+	private boolean supersedeOlderJobs(ActiveJob newJob) {
+		if (newJob.supersedesKey == null) {
+			return false;
+		}
+		final Predicate<ActiveJob> isSuperseded = job -> job != newJob //
+				&& !job.cancelRequested //
+				&& newJob.supersedesKey.equals(job.supersedesKey) //
+				&& job.request.connectionIsAlive == newJob.request.connectionIsAlive;
+		boolean any = false;
+
+		synchronized (inFlightJobs) {
+			for (ActiveJob leader : inFlightJobs.values()) {
+				for (ActiveJob follower : leader.followers) {
+					if (isSuperseded.test(follower)) {
+						notifySuperseded(follower, newJob);
+						leader.followers.remove(follower);
+						any = true;
+					}
+				}
+			}
+		}
+		for (ActiveJob job : queuedJobs.getJobs()) {
+			if (isSuperseded.test(job)) {
+				notifySuperseded(job, newJob);
+				any = true;
+			}
+		}
+		for (Worker w : workers) {
+			synchronized (w.proc) {
+				if (w.destroyed.get()) {
+					continue;
+				}
+				for (ActiveJob job : w.jobs) {
+					if (isSuperseded.test(job) && (stopSupersededRunningJobs || w.jobs.peekFirst() != job)) {
+						notifySuperseded(job, newJob);
+						any = true;
+					}
+				}
+			}
+		}
+		if (any) {
+			stopUnwantedJobs();
+		}
+		return any;
+	}
+
+	private static void notifySuperseded(ActiveJob job, ActiveJob newJob) {
+		CodeProber.flog("Job " + job.jobId + " superseded by " + newJob.jobId);
+		job.cancelRequested = true;
+		job.request.sendAsyncResponse(new AsyncRpcUpdate(job.jobId, true, AsyncRpcUpdateValue.fromWorkerTaskDone(
+				WorkerTaskDone.fromUnexpectedError(Arrays.asList("Superseded by job " + newJob.jobId)))));
+	}
+
+	/**
+	 * Stop a job that has been submitted to a worker. The worker is first asked
+	 * to cancel the job, which lets it keep its loaded tool and (if possible) its
+	 * parsed ASTs. Staged jobs are simply dropped by the worker. If the job is
+	 * still running after {@link #cancelGraceMillis}, the worker process is
+	 * replaced. Jobs in other tool instances of the same process are moved to
+	 * other workers.
+	 * <p>
+	 * If other identical jobs are waiting for the result of this job, the job
+	 * keeps running for them, and is only stopped once they are stopped too.
+	 * <p>
+	 * Must be called while holding the lock on the worker process.
+	 *
+	 * @return an error message, or null if the job is being stopped
+	 */
+	private String stopJob(Worker w, ActiveJob job) {
+		job.cancelRequested = true;
+		if (job.workStopped || !releaseIfUnwanted(job)) {
+			return null;
+		}
+		job.workStopped = true;
+		if (cancelGraceMillis == 0 && w.jobs.peekFirst() == job) {
+			return replaceWorker(w.proc, true) ? null : "Failed initializing replacement worker";
+		}
+		w.requestCancellation(job);
+		redispatchTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				boolean replaced = false;
+				synchronized (w.proc) {
+					// Only replace the worker if the job is actually running, staged jobs
+					// cannot be stuck.
+					if (!w.destroyed.get() && w.jobs.peekFirst() == job) {
+						System.out.println("Job " + job.jobId + " did not stop within " + cancelGraceMillis
+								+ "ms, replacing its worker process");
+						replaced = replaceWorker(w.proc, true);
 					}
+				}
+				if (replaced) {
+					dispatchStatusToSubscribers();
+					dispatchQueuedJobs();
+				}
+			}
+		}, cancelGraceMillis);
+		return null;
+	}
+
+	private void stopQueuedJob(ActiveJob job) {
+		job.cancelRequested = true;
+		if (releaseIfUnwanted(job)) {
+			job.workStopped = true;
+			queuedJobs.removeIf(queued -> queued == job);
+		}
+	}
+
+	/**
+	 * Check whether any identical jobs are waiting for the result of a job. If
+	 * not, the job no longer accepts new followers.
+	 *
+	 * @return true if the job can be stopped
+	 */
+	private boolean releaseIfUnwanted(ActiveJob job) {
+		synchronized (inFlightJobs) {
+			if (!job.followers.isEmpty()) {
+				return false;
+			}
+			if (job.coalescingKey != null) {
+				inFlightJobs.remove(job.coalescingKey, job);
+			}
+			return true;
+		}
+	}
 
-					w.destroy();
+	/**
+	 * Find the job that the given job id is attached to as a follower, if any.
+	 *
+	 * @param detach if true, the follower is removed from the job
+	 */
+	private ActiveJob findLeader(long followerJobId, boolean detach) {
+		synchronized (inFlightJobs) {
+			for (ActiveJob leader : inFlightJobs.values()) {
+				for (ActiveJob follower : leader.followers) {
+					if (follower.jobId == followerJobId) {
+						if (detach) {
+							follower.cancelRequested = true;
+							leader.followers.remove(follower);
+						}
+						return leader;
+					}
 				}
 			}
 		}
+		return null;
+	}
+
+	/**
+	 * Called when a job finishes. Stops new followers from attaching, and memoizes
+	 * the result.
+	 *
+	 * @return all followers of the job
+	 */
+	private List<ActiveJob> completeInFlightJob(ActiveJob job, AsyncRpcUpdateValue finalValue) {
+		if (job.coalescingKey == null) {
+			return Collections.emptyList();
+		}
+		synchronized (inFlightJobs) {
+			inFlightJobs.remove(job.coalescingKey, job);
+			if (!job.workStopped && finalValue.isWorkerTaskDone() && finalValue.asWorkerTaskDone().isNormal()) {
+				resultMemo.put(job.coalescingKey, finalValue.asWorkerTaskDone().asNormal(), System.nanoTime());
+			}
+			return new ArrayList<>(job.followers);
+		}
+	}
+
+	private static void dispatchToRecipients(ActiveJob job, List<ActiveJob> followers, boolean isFinalUpdate,
+			AsyncRpcUpdateValue value) {
+		if (!job.cancelRequested) {
+			job.request.sendAsyncResponse(new AsyncRpcUpdate(job.jobId, isFinalUpdate, value));
+		}
+		for (ActiveJob follower : followers) {
+			if (!follower.cancelRequested) {
+				follower.request.sendAsyncResponse(new AsyncRpcUpdate(follower.jobId, isFinalUpdate, value));
+			}
+		}
+	}
+
+	private String getToolStamp() {
+		final File jar = new File(jarPath);
+		return jar.lastModified() + ":" + jar.length();
+	}
+
+	/**
+	 * Start a new worker process in place of an existing one, and destroy the old
+	 * one. Remote workers cannot be started from here, so they are instead
+	 * disconnected, and reconnected once they are available again (see
+	 * {@link #scheduleReconnect(String)}). Must be called while holding the lock
+	 * on the process.
+	 *
+	 * @param requeueRunningJobs whether jobs that were running in the old process
+	 *                           should be run again. Stopped jobs are never
+	 *                           requeued, and running jobs that have already sent
+	 *                           updates to their client fail instead.
+	 */
+	private boolean replaceWorker(WorkerProcess p, boolean requeueRunningJobs) {
+		if (!workers.contains(p.instances.get(0))) {
+			return false;
+		}
+		if (p.channel.isLocal()) {
+			final WorkerProcess replacement;
+			try {
+				replacement = takeSpareWorker();
+			} catch (IOException e) {
+				System.err.println("Error when replacing worker");
+				e.printStackTrace();
+				// Keep the previous worker instead, it may still recover
+				return false;
+			}
+			synchronized (workers) {
+				// Workers are only removed while holding the lock on their process, which
+				// the caller has, so all instances are still in the list.
+				for (int i = 0; i < p.instances.size(); ++i) {
+					workers.set(workers.indexOf(p.instances.get(i)), replacement.instances.get(i));
+				}
+			}
+		} else {
+			synchronized (workers) {
+				workers.removeAll(p.instances);
+			}
+			// A remote worker exits if it loses the connection while running jobs, and
+			// is expected to be restarted by whoever started it.
+			scheduleReconnect(p.endpoint);
+		}
+		p.destroy();
+		// Give the jobs to other workers. They keep their original queue time, and
+		// therefore their place in the queue.
+		final List<ActiveJob> interrupted = new ArrayList<>();
+		for (Worker w : p.instances) {
+			for (ActiveJob job : w.jobs) {
+				if (job.workStopped) {
+					continue;
+				}
+				if (job == w.jobs.peekFirst()) {
+					if (!requeueRunningJobs) {
+						continue;
+					}
+					if (job.sentUpdates) {
+						// Running it again would repeat what the client has already seen
+						interrupted.add(job);
+						continue;
+					}
+				}
+				p.concurrentUpdateHandlers.remove(job.jobId);
+				queuedJobs.add(job, job.priority, job.request.connectionIsAlive, job.queuedAtNanos);
+			}
+			w.jobs.clear();
+		}
+		for (ActiveJob job : interrupted) {
+			p.concurrentUpdateHandlers.remove(job.jobId);
+			final AsyncRpcUpdateValue value = AsyncRpcUpdateValue.fromWorkerTaskDone(WorkerTaskDone
+					.fromUnexpectedError(Arrays.asList("Worker process was replaced while running this job")));
+			dispatchToRecipients(job, completeInFlightJob(job, value), true, value);
+		}
+		return true;
 	}
 
 	@Override
@@ -167,24 +1048,40 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 
 				@Override
 				protected StopJobRes handleStopJob(StopJobReq req) {
-					for (int i = 0; i < workers.length; i++) {
-						final Worker w = workers[i];
-						synchronized (w) {
+					long target = req.job;
+					final ActiveJob leader = findLeader(req.job, true);
+					if (leader != null) {
+						if (!leader.cancelRequested) {
+							// The job that does the work is still wanted by its own client
+							return new StopJobRes();
+						}
+						// Maybe nobody wants the result anymore, try stopping the actual work
+						target = leader.jobId;
+					}
+					for (Worker w : workers) {
+						final String err;
+						synchronized (w.proc) {
 							if (w.destroyed.get()) {
 								continue;
 							}
-							if (w.job != null && w.job.jobId == req.job) {
-								try {
-									workers[i] = new Worker(jarPath, mainArgs);
-								} catch (IOException e) {
-									// TODO Auto-generated catch block
-									e.printStackTrace();
-									return new StopJobRes("Failed initializing replacement worker");
-								}
-								w.destroy();
-								dispatchStatusToSubscribers();
-								return new StopJobRes();
+							final ActiveJob job = w.findJob(target);
+							if (job == null) {
+								continue;
 							}
+							err = stopJob(w, job);
+						}
+						if (err != null) {
+							return new StopJobRes(err);
+						}
+						dispatchStatusToSubscribers();
+						dispatchQueuedJobs();
+						return new StopJobRes();
+					}
+					for (ActiveJob job : queuedJobs.getJobs()) {
+						if (job.jobId == target) {
+							stopQueuedJob(job);
+							dispatchStatusToSubscribers();
+							return new StopJobRes();
 						}
 					}
 					return new StopJobRes("No such active job");
@@ -192,17 +1089,26 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 
 				@Override
 				protected PollWorkerStatusRes handlePollWorkerStatus(PollWorkerStatusReq req) {
+					final ActiveJob leader = findLeader(req.job, false);
+					final long target = leader != null ? leader.jobId : req.job;
 					for (Worker w : workers) {
-						synchronized (w) {
+						synchronized (w.proc) {
 							if (w.destroyed.get()) {
 								continue;
 							}
-							if (w.job != null && w.job.jobId == req.job) {
-								w.pollStack();
+							final ActiveJob job = w.findJob(target);
+							if (job != null) {
+								if (w.jobs.peekFirst() == job) {
+									w.pollStack();
+								}
 								return new PollWorkerStatusRes(true);
 							}
 						}
 					}
+					if (leader != null || queuedJobs.getJobs().stream().anyMatch(job -> job.jobId == target)) {
+						// Still waiting for a worker
+						return new PollWorkerStatusRes(true);
+					}
 					return new PollWorkerStatusRes(false);
 				}
 
@@ -212,9 +1118,18 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 						// 'Fall down' to nonConcurrent handler below
 						throw new JSONException("Synchronous requests not supported");
 					}
-					// TODO possible optimization: first find a worker with equal 'src'/'text' as
-					// previous request. Would help caching!
-					acceptJob(req.job);
+					// Workers don't have their own copies of synced documents
+					request.getDocuments().inlineDocuments(request.data);
+					final String coalescingKey = ConcurrentResultMemo.getCoalescingKey(request.data, getToolStamp());
+					if (coalescingKey != null) {
+						final JSONObject memoized = resultMemo.get(coalescingKey, System.nanoTime());
+						if (memoized != null) {
+							// Keep the async response shape, the client expects the result as a job update
+							sendMemoizedResult(request, req.job, memoized);
+							return new EvaluatePropertyRes(PropertyEvaluationResult.fromJob(req.job));
+						}
+					}
+					acceptJob(req.job, coalescingKey);
 					return new EvaluatePropertyRes(PropertyEvaluationResult.fromJob(req.job));
 				}
 
@@ -222,22 +1137,53 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 					if (req.job == null) {
 						throw new JSONException("Synchronous requests not supported");
 					}
-					acceptJob(req.job);
+					request.getDocuments().inlineDocuments(request.data);
+					acceptJob(req.job, null);
 					return new AsyncRequestRes(AsyncResult.fromJob(req.job));
 				}
 
-				private void acceptJob(long jobId) {
-					final ActiveJob job = new ActiveJob(jobId, request);
-					queuedJobs.add(job);
-
-					for (Worker w : workers) {
-						synchronized (w) {
-							if (w.maybeTakeWork()) {
-								return;
+				private void acceptJob(long jobId, String coalescingKey) {
+					final ActiveJob job = new ActiveJob(jobId, request, getSourceDigest(request.data),
+							getPriority(request.data), coalescingKey, getSupersedesKey(request.data));
+					boolean coalesced = false;
+					boolean raisedLeader = false;
+					if (coalescingKey != null) {
+						synchronized (inFlightJobs) {
+							final ActiveJob leader = inFlightJobs.get(coalescingKey);
+							if (leader != null) {
+								// An identical job is already queued or running, share its result
+								leader.followers.add(job);
+								CodeProber.flog("Coalesced " + job.jobId + " with " + leader.jobId);
+								coalesced = true;
+								if (job.priority.ordinal() < leader.priority.ordinal()) {
+									// Run the shared work as urgently as its most urgent recipient
+									leader.priority = job.priority;
+									raisedLeader = queuedJobs.raisePriority(leader, job.priority);
+								}
+							} else {
+								inFlightJobs.put(coalescingKey, job);
 							}
 						}
 					}
-					CodeProber.flog("Put into queue " + job.jobId);
+					// Supersede after coalescing, so that if the new job is identical to the job it
+					// replaces, the work already done for the old job is reused.
+					if (supersedeOlderJobs(job)) {
+						dispatchStatusToSubscribers();
+					}
+					if (coalesced) {
+						if (raisedLeader) {
+							dispatchQueuedJobs();
+							dispatchStatusToSubscribers();
+						}
+						return;
+					}
+					// Each connection is a separate client for the purpose of fair scheduling
+					queuedJobs.add(job, job.priority, request.connectionIsAlive, job.queuedAtNanos);
+					dispatchQueuedJobs();
+					if (queuedJobs.contains(job)) {
+						CodeProber.flog("Put into queue " + job.jobId);
+						dispatchStatusToSubscribers();
+					}
 				}
 
 			}.handle(request.data);
@@ -252,13 +1198,139 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 		return nonConcurrentHandler.handleRequest(request);
 	}
 
+	private void dispatchQueuedJobs() {
+		// Let idle workers pick first, so that jobs are only staged behind running
+		// jobs when all workers are busy.
+		for (Worker w : workers) {
+			w.maybeTakeWork(1);
+		}
+		for (Worker w : workers) {
+			if (w.proc.queueDepth > 1) {
+				w.maybeTakeWork(w.proc.queueDepth);
+			}
+		}
+		if (minWorkers < maxWorkers && maybeAddWorker()) {
+			dispatchQueuedJobs();
+		}
+	}
+
+	private void sendMemoizedResult(ClientRequest request, long jobId, JSONObject memoized) {
+		// Sent from the timer thread so that it usually arrives after the response
+		// that tells the client that the job was accepted.
+		redispatchTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				request.sendAsyncResponse(new AsyncRpcUpdate(jobId, true,
+						AsyncRpcUpdateValue.fromWorkerTaskDone(WorkerTaskDone.fromNormal(memoized))));
+			}
+		}, 0L);
+	}
+
+	private void scheduleRedispatch(long delayNanos) {
+		if (!redispatchScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		redispatchTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				redispatchScheduled.set(false);
+				dispatchQueuedJobs();
+			}
+		}, Math.max(1L, delayNanos / 1_000_000L));
+	}
+
+	/**
+	 * Get a digest identifying the parsing source of a job, or null if the job
+	 * doesn't have one. Used to route jobs to workers that are likely to have the
+	 * AST cached already.
+	 */
+	static Long getSourceDigest(JSONObject jobData) {
+		// Requests are wrapped in one or more layers of "src", e.g
+		// AsyncRequest.src -> EvaluateProperty.src -> ParsingRequestData.src
+		JSONObject obj = jobData;
+		while (obj.optJSONObject("src") != null) {
+			obj = obj.getJSONObject("src");
+		}
+		if (obj == jobData) {
+			return null;
+		}
+		final ParsingSource src;
+		try {
+			src = ParsingSource.fromJSON(obj);
+		} catch (JSONException e) {
+			return null;
+		}
+		switch (src.type) {
+		case text:
+		case workspacePath:
+			// Computed while decoding, so the text doesn't need to be hashed again here
+			return src.contentDigest;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Get the priority of a job. An explicit <code>priority</code> field takes
+	 * precedence, otherwise it is decided by the request type.
+	 */
+	static JobPriority getPriority(JSONObject jobData) {
+		if (jobData.has("priority")) {
+			return JobPriority.parseFromJson(jobData.getString("priority"));
+		}
+		final JSONObject wrapped = jobData.optJSONObject("src");
+		if ("AsyncRequest".equals(jobData.optString("type")) && wrapped != null
+				&& "ide:decorations".equals(wrapped.optString("type"))) {
+			// Decorations evaluate all text probes in a file, which can be a lot of
+			// work
+			return JobPriority.BULK;
+		}
+		return JobPriority.INTERACTIVE;
+	}
+
+	/**
+	 * Get the key that identifies which earlier jobs a job supersedes, or null if
+	 * it doesn't supersede anything.
+	 */
+	static String getSupersedesKey(JSONObject jobData) {
+		final String key = jobData.optString("supersedes", "");
+		return key.isEmpty() ? null : key;
+	}
+
 	private static class ActiveJob {
 		public final long jobId;
 		public final ClientRequest request;
-
-		public ActiveJob(long jobId, ClientRequest request) {
+		public final Long srcDigest;
+		// May be raised while queued, see acceptJob
+		public volatile JobPriority priority;
+		public final String coalescingKey;
+		public final String supersedesKey;
+		public final long queuedAtNanos = System.nanoTime();
+
+		// Identical jobs that wait for the result of this job instead of running
+		// themselves. Only modified while holding the lock on 'inFlightJobs'.
+		public final List<ActiveJob> followers = new CopyOnWriteArrayList<>();
+
+		// Set once the client has asked to stop this job. Later updates from the
+		// worker are not forwarded.
+		public volatile boolean cancelRequested;
+
+		// Set once the work itself is being stopped, i.e when neither the client
+		// nor any followers want the result.
+		public volatile boolean workStopped;
+
+		// Set once the worker has sent any update for this job. Such a job cannot be
+		// restarted on another worker without the client seeing some updates twice.
+		public volatile boolean sentUpdates;
+
+		public ActiveJob(long jobId, ClientRequest request, Long srcDigest, JobPriority priority,
+				String coalescingKey, String supersedesKey) {
 			this.jobId = jobId;
 			this.request = request;
+			this.srcDigest = srcDigest;
+			this.priority = priority;
+			this.coalescingKey = coalescingKey;
+			this.supersedesKey = supersedesKey;
 		}
 	}
 
@@ -266,7 +1338,7 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 		public final int subscriberId;
 
 		public ActiveSubscriber(int jobId, ClientRequest request, int subscriberId) {
-			super(jobId, request);
+			super(jobId, request, null, JobPriority.INTERACTIVE, null, null);
 			this.subscriberId = subscriberId;
 		}
 
@@ -276,9 +1348,48 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 		return ConcurrentCoordinator.class.desiredAssertionStatus();
 	}
 
-	private class Worker {
-		public ActiveJob job;
-		public final Process process;
+	private static List<String> createWorkerCommand(String jarPath, String[] args) throws IOException {
+		final List<String> cmd = new ArrayList<>();
+		cmd.add("java");
+		if (isAssertionEnabled()) {
+			cmd.add("-enableassertions");
+		}
+		for (Entry<Object, Object> props : System.getProperties().entrySet()) {
+			final String key = String.valueOf(props.getKey());
+			if (key.startsWith("cpr.")) {
+				final String val = String.valueOf(props.getValue());
+				cmd.add(String.format("-D%s=%s", key, val));
+			}
+		}
+		cmd.add("-jar");
+
+		try {
+			cmd.add(new File(CodeProber.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+					.getPath());
+		} catch (URISyntaxException e) {
+			e.printStackTrace();
+			throw new IOException(e);
+		}
+		cmd.add("--worker");
+		cmd.add(jarPath);
+		for (String arg : args) {
+			cmd.add(arg);
+		}
+		return cmd;
+	}
+
+	/**
+	 * A worker process, either started by this coordinator or remote (see
+	 * {@link WorkerChannel}). Each process runs one or more isolated copies of the
+	 * underlying tool (see {@link ConcurrentWorker}), and each copy is a separate
+	 * {@link Worker} from the point of view of job scheduling. The instances of a
+	 * process share its lock.
+	 */
+	private class WorkerProcess {
+		public final WorkerChannel channel;
+		// For remote workers, the endpoint to reconnect to. Null for local workers.
+		public final String endpoint;
+		public final List<Worker> instances = new ArrayList<>();
 		private final OutputStream outStream;
 
 		private Map<Long, Consumer<TopRequestRes>> rpcHandlers = new ConcurrentHashMap<>();
@@ -287,43 +1398,34 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 		private final Consumer<Boolean> destroyer;
 		private final AtomicBoolean destroyed = new AtomicBoolean(); // TODO prevent accepting new jobs when destroyed
 
-		public Worker(String jarPath, String[] args) throws IOException {
-			final List<String> cmd = new ArrayList<>();
-			cmd.add("java");
-			if (isAssertionEnabled()) {
-				cmd.add("-enableassertions");
-			}
-			for (Entry<Object, Object> props : System.getProperties().entrySet()) {
-				final String key = String.valueOf(props.getKey());
-				if (key.startsWith("cpr.")) {
-					final String val = String.valueOf(props.getValue());
-					cmd.add(String.format("-D%s=%s", key, val));
-				}
-			}
-			cmd.add("-jar");
+		// Set once the worker has announced that it accepts binary frames
+		private volatile boolean binaryIpc;
 
-			try {
-				cmd.add(new File(CodeProber.class.getProtectionDomain().getCodeSource().getLocation().toURI())
-						.getPath());
-			} catch (URISyntaxException e) {
-				e.printStackTrace();
-				throw new IOException(e);
-			}
-			cmd.add("--worker");
-			cmd.add(jarPath);
-			for (String arg : args) {
-				cmd.add(arg);
-			}
-			process = new ProcessBuilder() //
-					.command(cmd) //
-					.start();
+		// Number of tool instances announced by the worker, or 0 if not announced yet
+		private volatile int announcedInstances;
+
+		// Max number of jobs submitted to each instance at a time. Nothing is staged
+		// until the worker has announced how many jobs it accepts.
+		public volatile int queueDepth = 1;
 
-			outStream = process.getOutputStream();
+		// Set once the worker has loaded the underlying tool
+		private volatile boolean ready;
 
-			final IpcReader stdoutReader = new IpcReader(process.getInputStream()) {
+		// The most recent status reported by the worker, or null if none
+		private volatile GetWorkerStatusRes lastStatus;
+
+		/**
+		 * @param endpoint for remote workers, the endpoint that the channel is
+		 *                 connected to. Must be null for local workers.
+		 */
+		public WorkerProcess(WorkerChannel channel, String endpoint) throws IOException {
+			this.channel = channel;
+			this.endpoint = endpoint;
+			outStream = channel.getOutputStream();
+
+			final IpcReader stdoutReader = new IpcReader(channel.getInputStream()) {
 				@Override
 				protected void onMessage(String data) {
-//					System.out.println("msg from worker: " + data);
 					JSONObject obj;
 					try {
 						obj = new JSONObject(data);
@@ -335,13 +1437,7 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 
 					switch (obj.getString("type")) {
 					case "rpc": {
-						final long id = obj.getLong("id");
-						final Consumer<TopRequestRes> handler = rpcHandlers.remove(id);
-						if (handler == null) {
-							System.err.println("Got response for '" + id + "', for which no handler exists");
-							return;
-						}
-						handler.accept(TopRequestRes.fromJSON(obj));
+						handleRpcResponse(TopRequestRes.fromJSON(obj));
 						break;
 					}
 
@@ -355,18 +1451,30 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 							e.printStackTrace();
 							return;
 						}
+						handleAsyncUpdate(update);
+						break;
+					}
 
-//						System.out.println("Got asyncUpdate for " + update.job +", type: " + update.value.type);
-						final Consumer<AsyncRpcUpdate> handler = concurrentUpdateHandlers.get(update.job);
-						if (handler == null) {
-							System.err
-									.println("Got response for job '" + update.job + "', for which no handler exists");
-							return;
+					case IpcFrames.HELLO_TYPE: {
+						final String error = IpcFrames.getHelloError(obj);
+						if (error != null) {
+							System.err.println("Worker " + (endpoint != null ? endpoint : "process")
+									+ " rejected the connection: " + error);
+							break;
+						}
+						if (IpcFrames.isBinaryHello(obj) && IpcFrames.isBinaryEnabled()) {
+							binaryIpc = true;
 						}
-						if (update.isFinalUpdate) {
-							concurrentUpdateHandlers.remove(update.job);
+						announcedInstances = IpcFrames.getHelloInstances(obj);
+						queueDepth = IpcFrames.getHelloQueueDepth(obj, workerQueueDepth);
+						if (queueDepth > 1) {
+							dispatchQueuedJobs();
 						}
-						handler.accept(update);
+						break;
+					}
+
+					case IpcFrames.READY_TYPE: {
+						ready = true;
 						break;
 					}
 
@@ -377,35 +1485,92 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 
 					}
 				}
-			};
-			final Thread stdoutThread = new Thread(stdoutReader::runForever);
-			stdoutThread.start();
 
-			final IpcReader stderrReader = new IpcReader(process.getErrorStream()) {
 				@Override
-				protected void onMessage(String data) {
-					System.out.println("Got worker stdErr msg: " + data);
+				protected void onBinaryMessage(byte[] data) {
+					try {
+						final BinaryInputStream in = IpcFrames.openBinary(data);
+						final int kind = in.readInt();
+						switch (kind) {
+						case IpcFrames.KIND_TOP_REQUEST_RES:
+							handleRpcResponse(new TopRequestRes(in));
+							break;
+						case IpcFrames.KIND_ASYNC_RPC_UPDATE:
+							handleAsyncUpdate(new AsyncRpcUpdate(in));
+							break;
+						default:
+							System.out.println("Got unknown binary message kind from worker: " + kind);
+							break;
+						}
+					} catch (IOException | JSONException e) {
+						System.out.println("Got invalid binary data from worker");
+						e.printStackTrace();
+					}
 				}
 			};
-			final Thread stderrThread = new Thread(() -> {
-				stderrReader.runForever();
-			});
-			stderrThread.start();
+			final int instanceCount;
+			if (endpoint != null) {
+				// Remote workers may run any number of instances, wait for them to say how many
+				try {
+					channel.setReadTimeout(REMOTE_CONNECT_TIMEOUT_MS);
+					while (announcedInstances == 0) {
+						if (!stdoutReader.readFrame()) {
+							throw new IOException("Connection closed before the worker said hello");
+						}
+					}
+					channel.setReadTimeout(0);
+				} catch (IOException e) {
+					channel.close(true);
+					throw e;
+				}
+				instanceCount = announcedInstances;
+			} else {
+				instanceCount = instancesPerProcess;
+			}
+			for (int i = 0; i < instanceCount; ++i) {
+				instances.add(new Worker(this, i));
+			}
 
 			final List<Thread> threads = new ArrayList<>();
+			final List<IpcReader> readers = new ArrayList<>();
+			final Thread stdoutThread = new Thread(() -> {
+				try {
+					stdoutReader.runForever();
+				} finally {
+					onWorkerExited(WorkerProcess.this);
+				}
+			});
 			threads.add(stdoutThread);
-			threads.add(stderrThread);
+			readers.add(stdoutReader);
+			stdoutThread.start();
+
+			if (channel.getErrorStream() != null) {
+				final IpcReader stderrReader = new IpcReader(channel.getErrorStream()) {
+					@Override
+					protected void onMessage(String data) {
+						System.out.println("Got worker stdErr msg: " + data);
+					}
+
+					@Override
+					protected void onNonProtocolOutput(String line) {
+						System.err.println("[worker] " + line);
+					}
+				};
+				final Thread stderrThread = new Thread(() -> {
+					stderrReader.runForever();
+				});
+				threads.add(stderrThread);
+				readers.add(stderrReader);
+				stderrThread.start();
+			}
 
 			destroyer = forcibly -> {
-				synchronized (Worker.this) {
+				synchronized (WorkerProcess.this) {
 					destroyed.set(true);
-					stdoutReader.setSrcWasClosed();
-					stderrReader.setSrcWasClosed();
-					if (forcibly) {
-						process.destroyForcibly();
-					} else {
-						process.destroy();
+					for (IpcReader reader : readers) {
+						reader.setSrcWasClosed();
 					}
+					channel.close(forcibly);
 					for (Thread t : threads) {
 						t.interrupt();
 					}
@@ -414,60 +1579,280 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
 				destroyer.accept(false);
 			}));
+		}
 
+		/**
+		 * Whether recycling this process means replacing it, rather than resetting
+		 * its instances, see {@link ConcurrentCoordinator#finishRecycling(Worker)}.
+		 */
+		public boolean isReplacedWhenRecycled() {
+			return channel.isLocal() && instances.size() == 1;
 		}
 
 		public synchronized void destroy() {
 			destroyer.accept(true);
 		}
 
-		public synchronized void pollStack() {
-			final ActiveJob job = this.job;
+		private void handleRpcResponse(TopRequestRes res) {
+			final Consumer<TopRequestRes> handler = rpcHandlers.remove(res.id);
+			if (handler == null) {
+				System.err.println("Got response for '" + res.id + "', for which no handler exists");
+				return;
+			}
+			handler.accept(res);
+		}
+
+		private void handleAsyncUpdate(AsyncRpcUpdate update) {
+			final Consumer<AsyncRpcUpdate> handler = concurrentUpdateHandlers.get(update.job);
+			if (handler == null) {
+				System.err.println("Got response for job '" + update.job + "', for which no handler exists");
+				return;
+			}
+			if (update.isFinalUpdate) {
+				concurrentUpdateHandlers.remove(update.job);
+			}
+			handler.accept(update);
+		}
+
+		/**
+		 * Ask the worker for its status, mainly to check its memory usage.
+		 */
+		public synchronized void requestStatus() {
+			if (destroyed.get()) {
+				return;
+			}
 			final long msgId = messageIdGenerator.getAndIncrement();
 			rpcHandlers.put(msgId, rawResp -> {
-				final GetWorkerStatusRes resp = GetWorkerStatusRes.fromJSON(rawResp.data.asSuccess());
-				dispatchUpdate(job, false, //
-						AsyncRpcUpdateValue.fromWorkerStackTrace(resp.stackTrace));
+				if (rawResp.data.isSuccess()) {
+					onWorkerStatus(this, GetWorkerStatusRes.fromJSON(rawResp.data.asSuccess()));
+				}
 			});
 			write(new TopRequestReq(msgId, new GetWorkerStatusReq().toJSON()));
-//			write(new GetWorkerStatusReq().toJSON());
 		}
 
-		public synchronized boolean maybeTakeWork() {
-			if (this.job != null || destroyed.get()) {
-				return false;
+		public synchronized void write(TopRequestReq obj) {
+			final byte[] frame = binaryIpc //
+					? IpcFrames.encodeBinary(IpcFrames.KIND_TOP_REQUEST_REQ, obj::writeTo)
+					: IpcFrames.encodeJson(obj.toJSON());
+			try {
+				outStream.write(frame);
+				outStream.flush();
+//				CodeProber.flog("Wrote to worker for " + job.jobId);
+			} catch (IOException e) {
+				CodeProber.flog("error while writing to worker: " + e);
+				e.printStackTrace();
+				throw new RuntimeException("Sub-process communication failed", e);
+			}
+
+		}
+	}
+
+	/**
+	 * One tool instance in a {@link WorkerProcess}. Runs one job at a time.
+	 */
+	private class Worker {
+		public final WorkerProcess proc;
+		public final int instance;
+
+		// Submitted jobs in submission order. The first one is running (or about to
+		// run), the rest are staged in the worker's queue.
+		public final ArrayDeque<ActiveJob> jobs = new ArrayDeque<>();
+
+		// Digest of the source of the most recent job, i.e the AST most likely to be
+		// cached in this worker.
+		private volatile Long lastSrcDigest;
+
+		// Shared with the process
+		private final AtomicBoolean destroyed;
+
+		// When the worker last started or finished a job
+		private volatile long lastActiveNanos = System.nanoTime();
+
+		// Set once the worker process uses too much memory. It gets no new jobs, and
+		// is recycled once its submitted jobs are done, see 'finishRecycling'.
+		// Guarded by the process.
+		private boolean recycling;
+
+		public Worker(WorkerProcess proc, int instance) {
+			this.proc = proc;
+			this.instance = instance;
+			this.destroyed = proc.destroyed;
+		}
+
+		public void pollStack() {
+			synchronized (proc) {
+				final ActiveJob job = jobs.peekFirst();
+				final long msgId = messageIdGenerator.getAndIncrement();
+				proc.rpcHandlers.put(msgId, rawResp -> {
+					final GetWorkerStatusRes resp = GetWorkerStatusRes.fromJSON(rawResp.data.asSuccess());
+					dispatchToRecipients(job, job.followers, false, //
+							AsyncRpcUpdateValue.fromWorkerStackTrace(resp.stackTrace));
+					onWorkerStatus(proc, resp);
+				});
+				proc.write(new TopRequestReq(msgId, new GetWorkerStatusReq(instance).toJSON()));
+			}
+		}
+
+		/**
+		 * Drop everything cached by this instance, e.g parsed ASTs and the loaded
+		 * tool. Must only be called when the instance has no jobs.
+		 */
+		public void reset() {
+			synchronized (proc) {
+				final long msgId = messageIdGenerator.getAndIncrement();
+				proc.rpcHandlers.put(msgId, rawResp -> {
+					if (rawResp.data.isSuccess() && !ResetWorkerInstanceRes.fromJSON(rawResp.data.asSuccess()).ok) {
+						System.out.println("Worker failed resetting instance " + instance);
+					}
+				});
+				lastSrcDigest = null;
+				proc.write(new TopRequestReq(msgId, new ResetWorkerInstanceReq(instance).toJSON()));
+			}
+		}
+
+		public ActiveJob findJob(long jobId) {
+			synchronized (proc) {
+				for (ActiveJob job : jobs) {
+					if (job.jobId == jobId) {
+						return job;
+					}
+				}
+				return null;
 			}
-			final ActiveJob next = queuedJobs.poll();
-			if (next != null) {
-				submit(next);
+		}
+
+		/**
+		 * Submit the next queued job, unless this worker already has
+		 * <code>maxJobs</code> jobs submitted.
+		 */
+		public boolean maybeTakeWork(int maxJobs) {
+			synchronized (proc) {
+				if (jobs.size() >= maxJobs || destroyed.get() || recycling) {
+					return false;
+				}
+				while (true) {
+					final ActiveJob next = selectJob();
+					if (next == null) {
+						return false;
+					}
+					if (queuedJobs.take(next)) {
+						submit(next);
+						return true;
+					}
+					// Another worker took it first, try again
+				}
+			}
+		}
+
+		/**
+		 * Pick the next job for this worker. Jobs are considered in the order given by
+		 * {@link ConcurrentJobQueue#visitInOrder(long, java.util.function.Predicate)},
+		 * and in order of preference this picks:
+		 * <ol>
+		 * <li>The first job, if it has waited longer than the affinity wait bound.
+		 * <li>The first job with the same source as this worker parsed last, unless
+		 * that would mean skipping over jobs of a higher priority.
+		 * <li>The first job whose source no other worker has parsed last.
+		 * </ol>
+		 * Jobs that another worker has parsed last are left in the queue, either for
+		 * that worker or until they have waited long enough. Only as much of the queue
+		 * as needed to make the choice is visited.
+		 */
+		private ActiveJob selectJob() {
+			final long now = System.nanoTime();
+			final Long ownDigest = lastSrcDigest;
+			final AtomicReference<JobPriority> topPriority = new AtomicReference<>();
+			final AtomicReference<ActiveJob> selected = new AtomicReference<>();
+			final AtomicReference<ActiveJob> fallback = new AtomicReference<>();
+			final AtomicReference<ActiveJob> firstHeldElsewhere = new AtomicReference<>();
+			queuedJobs.visitInOrder(now, ent -> {
+				final ActiveJob job = ent.job;
+				final JobPriority prio = queuedJobs.getEffectivePriority(ent, now);
+				if (topPriority.get() == null) {
+					topPriority.set(prio);
+					if (now - job.queuedAtNanos >= affinityWaitNanos) {
+						selected.set(job);
+						return false;
+					}
+				}
+				if (prio != topPriority.get()) {
+					// Past the top priority class, no more affinity matches are possible
+					if (fallback.get() != null) {
+						return false;
+					}
+				} else if (job.srcDigest != null && job.srcDigest.equals(ownDigest)) {
+					selected.set(job);
+					return false;
+				}
+				if (fallback.get() == null || firstHeldElsewhere.get() == null) {
+					if (job.srcDigest == null || now - job.queuedAtNanos >= affinityWaitNanos
+							|| !isHeldByOtherWorker(job.srcDigest)) {
+						if (fallback.get() == null) {
+							fallback.set(job);
+						}
+					} else if (firstHeldElsewhere.get() == null) {
+						firstHeldElsewhere.set(job);
+					}
+				}
 				return true;
+			});
+			if (selected.get() != null) {
+				return selected.get();
 			}
-			return false;
+			final ActiveJob skipped = firstHeldElsewhere.get();
+			if (skipped != null) {
+				// Make sure the skipped job is reconsidered once it has waited long enough
+				scheduleRedispatch(skipped.queuedAtNanos + affinityWaitNanos - now);
+			}
+			return fallback.get();
 		}
 
-		private void dispatchUpdate(ActiveJob job, boolean isFinalUpdate, AsyncRpcUpdateValue value) {
-			job.request.sendAsyncResponse(new AsyncRpcUpdate(job.jobId, isFinalUpdate, value));
+		private boolean isHeldByOtherWorker(Long srcDigest) {
+			for (Worker other : workers) {
+				if (other != this && !other.destroyed.get() && srcDigest.equals(other.lastSrcDigest)) {
+					return true;
+				}
+			}
+			return false;
 		}
 
-		public synchronized void submit(ActiveJob job) {
-			this.job = job;
+		private void submit(ActiveJob job) {
+			jobs.addLast(job);
+			lastActiveNanos = System.nanoTime();
+			if (job.srcDigest != null) {
+				lastSrcDigest = job.srcDigest;
+			}
 			dispatchStatusToSubscribers();
 
 			final long msgId = messageIdGenerator.getAndIncrement();
-			rpcHandlers.put(msgId, resp -> {
+			proc.rpcHandlers.put(msgId, resp -> {
 				// TODO check this response?
 //				System.out.println("Task submission res: " + resp.toJSON());
 //				final SubmitWorkerTaskRes res = SubmitWorkerTaskRes.fromJSON(resp.data.asSuccess());
 //				dispatchUpdate(job, false, AsyncRpcUpdateValue.fromJSON(resp));
 			});
-			concurrentUpdateHandlers.put(job.jobId, resp -> {
+			proc.concurrentUpdateHandlers.put(job.jobId, resp -> {
 //				System.out.println("Conc update: " + resp.toJSON() +" --- isFinal: " + resp.isFinalUpdate);
-				dispatchUpdate(job, resp.isFinalUpdate, resp.value);
+				job.sentUpdates = true;
+				dispatchToRecipients(job,
+						resp.isFinalUpdate ? completeInFlightJob(job, resp.value) : job.followers,
+						resp.isFinalUpdate, resp.value);
 				if (resp.isFinalUpdate) {
-					synchronized (this) {
-						this.job = null;
+					boolean recycled = false;
+					synchronized (proc) {
+						jobs.remove(job);
+						lastActiveNanos = System.nanoTime();
+						if (recycling && jobs.isEmpty()) {
+							recycled = finishRecycling(this);
+						} else {
+							// Memory usage is most interesting right after a job
+							proc.requestStatus();
+						}
 					}
-					maybeTakeWork();
+					if (recycled) {
+						System.out.println("Recycled worker due to high heap usage");
+					}
+					dispatchQueuedJobs();
 					dispatchStatusToSubscribers();
 				}
 			});
@@ -481,23 +1866,22 @@ public class ConcurrentCoordinator implements JsonRequestHandler {
 //			write(jobWrapper.toString());
 
 			// NOW
-			write(new TopRequestReq(msgId, new SubmitWorkerTaskReq(job.jobId, job.request.data).toJSON()));
+			proc.write(new TopRequestReq(msgId, new SubmitWorkerTaskReq(job.jobId, job.request.data, instance).toJSON()));
 		}
 
-		private synchronized void write(TopRequestReq obj) {
-			final byte[] msgData = obj.toJSON().toString().getBytes(StandardCharsets.UTF_8);
-			try {
-				outStream.write('\n');
-				outStream.write(("<" + msgData.length + ">").getBytes(StandardCharsets.UTF_8));
-				outStream.write(msgData);
-				outStream.flush();
-//				CodeProber.flog("Wrote to worker for " + job.jobId);
-			} catch (IOException e) {
-				CodeProber.flog("error while writing to worker: " + e);
-				e.printStackTrace();
-				throw new RuntimeException("Sub-process communication failed", e);
+		public void requestCancellation(ActiveJob job) {
+			synchronized (proc) {
+				final long msgId = messageIdGenerator.getAndIncrement();
+				proc.rpcHandlers.put(msgId, rawResp -> {
+					if (rawResp.data.isSuccess()) {
+						final StopJobRes resp = StopJobRes.fromJSON(rawResp.data.asSuccess());
+						if (resp.err != null) {
+							System.out.println("Worker failed stopping job " + job.jobId + ": " + resp.err);
+						}
+					}
+				});
+				proc.write(new TopRequestReq(msgId, new StopJobReq((int) job.jobId).toJSON()));
 			}
-
 		}
 	}
 
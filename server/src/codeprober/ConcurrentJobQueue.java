@@ -0,0 +1,399 @@
+package codeprober;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.WeakHashMap;
+import java.util.function.Predicate;
+
+import codeprober.protocol.JobPriority;
+
+/**
+ * Jobs waiting for a worker in {@link ConcurrentCoordinator}. Jobs are ordered
+ * by:
+ * <ol>
+ * <li>Priority. A job is promoted one {@link JobPriority} class for every
+ * <code>agingNanos</code> it has waited, so that lower classes cannot be
+ * starved forever.
+ * <li>Client. Clients take turns, so one client submitting many jobs doesn't
+ * block other clients with jobs in the same class.
+ * <li>Time of queueing.
+ * </ol>
+ * Each priority class has a heap of clients, and each client has a heap of
+ * jobs per class. Keys that change over time are updated lazily: a client that
+ * was just served is only moved back once it reaches the top of a heap, and
+ * aging promotions are applied from a separate heap ordered by when each job is
+ * due for its next promotion. Finding the next job therefore doesn't require
+ * sorting the whole queue.
+ */
+public class ConcurrentJobQueue<T> {
+
+	public static class Entry<T> {
+		public final T job;
+		public final JobPriority priority;
+		public final Object client;
+		public final long queuedAtNanos;
+
+		// The class that this entry currently is queued in, i.e its effective
+		// priority as of the last time aging was applied.
+		private int effectiveClass;
+		private long nextPromotionAtNanos;
+		private boolean removed;
+
+		private Entry(T job, JobPriority priority, Object client, long queuedAtNanos) {
+			this.job = job;
+			this.priority = priority;
+			this.client = client;
+			this.queuedAtNanos = queuedAtNanos;
+		}
+	}
+
+	/**
+	 * The jobs of one client in one priority class.
+	 */
+	private static class ClientSlot<T> {
+		public final Object client;
+		public final int effectiveClass;
+		public final PriorityQueue<Entry<T>> entries = new PriorityQueue<>(
+				(a, b) -> Long.compare(a.queuedAtNanos - b.queuedAtNanos, 0));
+
+		// Key of the most recently added node for this slot in the class heap, or null
+		// if there is none. Older nodes for the same slot are stale.
+		private SlotNode<T> current;
+
+		public ClientSlot(Object client, int effectiveClass) {
+			this.client = client;
+			this.effectiveClass = effectiveClass;
+		}
+
+		/**
+		 * Get the oldest live entry, dropping entries that have been removed or moved
+		 * to another class.
+		 */
+		public Entry<T> peek() {
+			Entry<T> head;
+			while ((head = entries.peek()) != null && (head.removed || head.effectiveClass != effectiveClass)) {
+				entries.poll();
+			}
+			return head;
+		}
+	}
+
+	/**
+	 * Position of a {@link ClientSlot} in a class heap, with the key it had when
+	 * it was added.
+	 */
+	private static class SlotNode<T> {
+		public final ClientSlot<T> slot;
+		public final long lastServed;
+		public final long headQueuedAtNanos;
+
+		public SlotNode(ClientSlot<T> slot, long lastServed, long headQueuedAtNanos) {
+			this.slot = slot;
+			this.lastServed = lastServed;
+			this.headQueuedAtNanos = headQueuedAtNanos;
+		}
+
+		public int compareTo(SlotNode<T> other) {
+			final int byClient = Long.compare(lastServed, other.lastServed);
+			return byClient != 0 ? byClient : Long.compare(headQueuedAtNanos - other.headQueuedAtNanos, 0);
+		}
+	}
+
+	private final long agingNanos;
+
+	// Live entries, by job
+	private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+
+	// One heap per effective priority class
+	private final List<PriorityQueue<SlotNode<T>>> classHeaps = new ArrayList<>();
+	private final List<Map<Object, ClientSlot<T>>> classSlots = new ArrayList<>();
+
+	// Entries that can still be promoted, by when they are due for promotion
+	private final PriorityQueue<Entry<T>> agingHeap = new PriorityQueue<>(
+			(a, b) -> Long.compare(a.nextPromotionAtNanos - b.nextPromotionAtNanos, 0));
+
+	// Value of 'serveCounter' when each client last had a job taken. Clients that
+	// haven't been served yet get the counter value from when they first queued
+	// something, so that they don't cut in front of everybody else.
+	private final Map<Object, Long> lastServed = new WeakHashMap<>();
+	private long serveCounter;
+
+	// Number of entries and slot nodes that have been removed, moved or superseded
+	// since the last rebuild. They stay in the heaps until they reach the top, or
+	// until the next rebuild.
+	private int staleEntries;
+
+	public ConcurrentJobQueue(long agingNanos) {
+		this.agingNanos = agingNanos;
+		for (int i = 0; i < JobPriority.values().length; ++i) {
+			classHeaps.add(new PriorityQueue<>(SlotNode::compareTo));
+			classSlots.add(new IdentityHashMap<>());
+		}
+	}
+
+	/**
+	 * Add a job.
+	 *
+	 * @param client        identifies who submitted the job, e.g the connection it
+	 *                      came from. Compared by identity. If null, the job is
+	 *                      treated as its own client.
+	 * @param queuedAtNanos when the job was first queued, as given by
+	 *                      {@link System#nanoTime()}. Used for both aging and
+	 *                      ordering, so jobs that are put back keep their place.
+	 */
+	public synchronized void add(T job, JobPriority priority, Object client, long queuedAtNanos) {
+		final Object clientKey = client != null ? client : job;
+		if (!lastServed.containsKey(clientKey)) {
+			lastServed.put(clientKey, serveCounter);
+		}
+		final Entry<T> prev = entries.remove(job);
+		if (prev != null) {
+			markRemoved(prev);
+		}
+		final Entry<T> ent = new Entry<>(job, priority, clientKey, queuedAtNanos);
+		entries.put(job, ent);
+		ent.effectiveClass = priority.ordinal();
+		if (agingNanos > 0 && ent.effectiveClass > 0) {
+			ent.nextPromotionAtNanos = queuedAtNanos + agingNanos;
+			agingHeap.add(ent);
+		}
+		insert(ent);
+	}
+
+	/**
+	 * Move a queued job to a higher priority class, e.g because a more urgent
+	 * request is waiting for its result. The job keeps its client and time of
+	 * queueing.
+	 *
+	 * @return true if the job was queued and had a lower priority
+	 */
+	public synchronized boolean raisePriority(T job, JobPriority priority) {
+		final Entry<T> ent = entries.get(job);
+		if (ent == null || priority.ordinal() >= ent.priority.ordinal()) {
+			return false;
+		}
+		add(job, priority, ent.client, ent.queuedAtNanos);
+		return true;
+	}
+
+	public JobPriority getEffectivePriority(Entry<T> entry, long nowNanos) {
+		if (agingNanos <= 0) {
+			return entry.priority;
+		}
+		final long promotions = Math.max(0, (nowNanos - entry.queuedAtNanos) / agingNanos);
+		return JobPriority.values()[(int) Math.max(0, entry.priority.ordinal() - promotions)];
+	}
+
+	private void insert(Entry<T> ent) {
+		final Map<Object, ClientSlot<T>> slots = classSlots.get(ent.effectiveClass);
+		ClientSlot<T> slot = slots.get(ent.client);
+		if (slot == null) {
+			slot = new ClientSlot<>(ent.client, ent.effectiveClass);
+			slots.put(ent.client, slot);
+		}
+		slot.entries.add(ent);
+		final SlotNode<T> cur = slot.current;
+		if (cur == null || cur.headQueuedAtNanos - ent.queuedAtNanos > 0) {
+			// The slot got a better key than what is in the heap. Worse keys are fixed
+			// lazily in peekSlot.
+			pushSlot(slot, ent.queuedAtNanos);
+		}
+	}
+
+	private void pushSlot(ClientSlot<T> slot, long headQueuedAtNanos) {
+		final SlotNode<T> node = new SlotNode<>(slot, lastServed.get(slot.client), headQueuedAtNanos);
+		if (slot.current != null) {
+			++staleEntries;
+		}
+		slot.current = node;
+		classHeaps.get(slot.effectiveClass).add(node);
+	}
+
+	/**
+	 * Get the first slot of a class heap, re-keying or dropping stale nodes on the
+	 * way.
+	 */
+	private ClientSlot<T> peekSlot(int effectiveClass) {
+		final PriorityQueue<SlotNode<T>> heap = classHeaps.get(effectiveClass);
+		SlotNode<T> top;
+		while ((top = heap.peek()) != null) {
+			final ClientSlot<T> slot = top.slot;
+			if (slot.current != top) {
+				// Superseded by a newer node for the same slot
+				heap.poll();
+				continue;
+			}
+			final Entry<T> head = slot.peek();
+			if (head == null) {
+				heap.poll();
+				slot.current = null;
+				classSlots.get(effectiveClass).remove(slot.client);
+				continue;
+			}
+			if (top.lastServed != lastServed.get(slot.client) || top.headQueuedAtNanos != head.queuedAtNanos) {
+				heap.poll();
+				slot.current = null;
+				pushSlot(slot, head.queuedAtNanos);
+				continue;
+			}
+			return slot;
+		}
+		return null;
+	}
+
+	/**
+	 * Move entries that have waited long enough to their new priority class.
+	 */
+	private void applyAging(long nowNanos) {
+		Entry<T> ent;
+		while ((ent = agingHeap.peek()) != null && ent.nextPromotionAtNanos - nowNanos <= 0) {
+			agingHeap.poll();
+			if (ent.removed) {
+				continue;
+			}
+			final int newClass = getEffectivePriority(ent, nowNanos).ordinal();
+			if (newClass != ent.effectiveClass) {
+				// The old slot drops the entry lazily once it sees the changed class
+				ent.effectiveClass = newClass;
+				++staleEntries;
+				insert(ent);
+			}
+			if (newClass > 0) {
+				final long promotions = ent.priority.ordinal() - newClass;
+				ent.nextPromotionAtNanos = ent.queuedAtNanos + (promotions + 1) * agingNanos;
+				agingHeap.add(ent);
+			}
+		}
+	}
+
+	/**
+	 * Visit queued jobs in the order they should be started, until the visitor
+	 * returns false. Only the visited part of the queue is examined, so stopping
+	 * early is cheap. The visitor must not modify the queue.
+	 */
+	public synchronized void visitInOrder(long nowNanos, Predicate<Entry<T>> visitor) {
+		applyAging(nowNanos);
+		if (staleEntries > 16 + 2 * entries.size()) {
+			rebuild();
+		}
+		// Visited entries are temporarily taken out of their slots, and put back
+		// afterwards. That leaves the order unchanged, since it only depends on
+		// timestamps and on which clients have been served.
+		final List<Entry<T>> visited = new ArrayList<>();
+		try {
+			for (int cls = 0; cls < classHeaps.size(); ++cls) {
+				ClientSlot<T> slot;
+				while ((slot = peekSlot(cls)) != null) {
+					final Entry<T> ent = slot.entries.poll();
+					visited.add(ent);
+					if (!visitor.test(ent)) {
+						return;
+					}
+				}
+			}
+		} finally {
+			for (Entry<T> ent : visited) {
+				insert(ent);
+			}
+		}
+	}
+
+	private void markRemoved(Entry<T> ent) {
+		ent.removed = true;
+		++staleEntries;
+	}
+
+	/**
+	 * Recreate all heaps from the live entries, to get rid of stale entries that
+	 * haven't reached the top of any heap yet.
+	 */
+	private void rebuild() {
+		for (int i = 0; i < classHeaps.size(); ++i) {
+			classHeaps.get(i).clear();
+			classSlots.get(i).clear();
+		}
+		agingHeap.clear();
+		for (Entry<T> ent : entries.values()) {
+			if (ent.effectiveClass > 0 && agingNanos > 0) {
+				agingHeap.add(ent);
+			}
+			insert(ent);
+		}
+		staleEntries = 0;
+	}
+
+	/**
+	 * Get all queued jobs, in the order they should be started. This examines the
+	 * whole queue, prefer {@link #visitInOrder(long, Predicate)} when only the
+	 * first few jobs are needed.
+	 */
+	public List<Entry<T>> getOrdered(long nowNanos) {
+		final List<Entry<T>> ret = new ArrayList<>();
+		visitInOrder(nowNanos, ret::add);
+		return ret;
+	}
+
+	/**
+	 * Remove a job because it is about to be started.
+	 *
+	 * @return true if the job was queued, false if somebody else took it first
+	 */
+	public synchronized boolean take(T job) {
+		final Entry<T> ent = entries.remove(job);
+		if (ent == null) {
+			return false;
+		}
+		markRemoved(ent);
+		// This moves the client back in all class heaps. That is done lazily, see
+		// peekSlot.
+		lastServed.put(ent.client, ++serveCounter);
+		return true;
+	}
+
+	/**
+	 * Remove jobs without starting them, e.g because they were cancelled.
+	 */
+	public synchronized boolean removeIf(Predicate<T> predicate) {
+		return entries.values().removeIf(ent -> {
+			if (predicate.test(ent.job)) {
+				markRemoved(ent);
+				return true;
+			}
+			return false;
+		});
+	}
+
+	/**
+	 * Get all queued jobs, in no particular order.
+	 */
+	public synchronized List<T> getJobs() {
+		return new ArrayList<>(entries.keySet());
+	}
+
+	public synchronized boolean contains(T job) {
+		return entries.containsKey(job);
+	}
+
+	public synchronized boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * Get the number of queued jobs in each priority class. Aging is not taken into
+	 * account.
+	 */
+	public synchronized Map<JobPriority, Integer> getDepths() {
+		final Map<JobPriority, Integer> ret = new EnumMap<>(JobPriority.class);
+		for (JobPriority prio : JobPriority.values()) {
+			ret.put(prio, 0);
+		}
+		for (Entry<T> ent : entries.values()) {
+			ret.put(ent.priority, ret.get(ent.priority) + 1);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,154 @@
+package codeprober;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import codeprober.protocol.AstCacheStrategy;
+import codeprober.requesthandler.WorkspaceHandler;
+import codeprober.util.ContentDigest;
+
+/**
+ * Support for {@link ConcurrentCoordinator} to avoid evaluating the same
+ * property more than once. Identical requests are recognized by their
+ * {@link #getCoalescingKey(JSONObject, String) coalescing key}. Recent results
+ * are kept for a short while, so that identical requests that arrive just after
+ * a job finished can be answered directly.
+ */
+public class ConcurrentResultMemo {
+
+	// Fields that identify or describe a job, but don't affect its result
+	private static final List<String> IGNORED_FIELDS = Arrays.asList("job", "jobLabel", "priority", "supersedes");
+
+	private static class Memo {
+		public final JSONObject result;
+		public final long createdAtNanos;
+
+		public Memo(JSONObject result, long createdAtNanos) {
+			this.result = result;
+			this.createdAtNanos = createdAtNanos;
+		}
+	}
+
+	private final long maxAgeNanos;
+	private final int maxEntries;
+	private final LinkedHashMap<String, Memo> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	public ConcurrentResultMemo(long maxAgeNanos, int maxEntries) {
+		this.maxAgeNanos = maxAgeNanos;
+		this.maxEntries = Math.max(1, maxEntries);
+	}
+
+	public synchronized JSONObject get(String key, long nowNanos) {
+		final Memo memo = entries.get(key);
+		if (memo == null) {
+			return null;
+		}
+		if (nowNanos - memo.createdAtNanos > maxAgeNanos) {
+			entries.remove(key);
+			return null;
+		}
+		return memo.result;
+	}
+
+	public synchronized void put(String key, JSONObject result, long nowNanos) {
+		if (maxAgeNanos <= 0) {
+			return;
+		}
+		entries.put(key, new Memo(result, nowNanos));
+		final Iterator<Memo> iter = entries.values().iterator();
+		while (iter.hasNext()) {
+			final Memo memo = iter.next();
+			if (entries.size() > maxEntries || nowNanos - memo.createdAtNanos > maxAgeNanos) {
+				iter.remove();
+			}
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Get a string that is equal for two requests if and only if they produce the
+	 * same result, or null if the request should not be shared with other
+	 * requests. Only EvaluateProperty requests are supported.
+	 *
+	 * @param toolStamp identifies the current version of the underlying tool
+	 */
+	public static String getCoalescingKey(JSONObject requestData, String toolStamp) {
+		if (!"EvaluateProperty".equals(requestData.optString("type"))) {
+			return null;
+		}
+		final JSONObject prd = requestData.optJSONObject("src");
+		if (prd == null) {
+			return null;
+		}
+		switch (AstCacheStrategy.fallbackParse(prd.optString("cache"))) {
+		case NONE:
+		case PURGE:
+			// The user explicitly wants everything to be recomputed
+			return null;
+		default:
+			break;
+		}
+		final StringBuilder sb = new StringBuilder();
+		sb.append(toolStamp).append('|');
+
+		// Workspace files may change between requests, include the current contents
+		final JSONObject src = prd.optJSONObject("src");
+		if (src != null && "workspacePath".equals(src.optString("type"))) {
+			final File file = WorkspaceHandler.getDefault().getWorkspaceFile(src.optString("value"));
+			final Long fileDigest = file == null ? null : WorkspaceHandler.getWorkspaceFileDigest(file);
+			if (fileDigest == null) {
+				return null;
+			}
+			sb.append(Long.toHexString(fileDigest)).append('|');
+		}
+		appendCanonical(sb, requestData, true);
+
+		// The key can contain the full source text, so store a digest instead
+		return Long.toHexString(ContentDigest.of(sb)) + ":" + sb.length();
+	}
+
+	/**
+	 * Append a JSON value with object keys in sorted order, so that equal values
+	 * always produce equal strings.
+	 */
+	private static void appendCanonical(StringBuilder sb, Object val, boolean isTopLevel) {
+		if (val instanceof JSONObject) {
+			final JSONObject obj = (JSONObject) val;
+			final List<String> keys = new ArrayList<>(obj.keySet());
+			Collections.sort(keys);
+			sb.append('{');
+			for (String key : keys) {
+				if (isTopLevel && IGNORED_FIELDS.contains(key)) {
+					continue;
+				}
+				sb.append(JSONObject.quote(key)).append(':');
+				appendCanonical(sb, obj.get(key), false);
+				sb.append(',');
+			}
+			sb.append('}');
+		} else if (val instanceof JSONArray) {
+			final JSONArray arr = (JSONArray) val;
+			sb.append('[');
+			for (int i = 0; i < arr.length(); ++i) {
+				appendCanonical(sb, arr.get(i), false);
+				sb.append(',');
+			}
+			sb.append(']');
+		} else if (val instanceof String) {
+			sb.append(JSONObject.quote((String) val));
+		} else {
+			sb.append(JSONObject.valueToString(val));
+		}
+	}
+}
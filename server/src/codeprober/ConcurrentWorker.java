@@ -1,12 +1,19 @@
 package codeprober;
 
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import codeprober.metaprogramming.Reflect;
 import codeprober.metaprogramming.StreamInterceptor;
 import codeprober.protocol.ClientRequest;
 import codeprober.protocol.data.AsyncRpcUpdate;
@@ -14,10 +21,17 @@ import codeprober.protocol.data.AsyncRpcUpdateValue;
 import codeprober.protocol.data.GetWorkerStatusReq;
 import codeprober.protocol.data.GetWorkerStatusRes;
 import codeprober.protocol.data.RequestAdapter;
+import codeprober.protocol.data.ResetWorkerInstanceReq;
+import codeprober.protocol.data.ResetWorkerInstanceRes;
+import codeprober.protocol.data.StopJobReq;
+import codeprober.protocol.data.StopJobRes;
 import codeprober.protocol.data.SubmitWorkerTaskReq;
 import codeprober.protocol.data.SubmitWorkerTaskRes;
 import codeprober.protocol.data.WorkerTaskDone;
 import codeprober.rpc.JsonRequestHandler;
+import codeprober.toolglue.UnderlyingTool;
+import codeprober.util.HeapMonitor;
+import codeprober.util.Util;
 
 public class ConcurrentWorker implements JsonRequestHandler {
 
@@ -25,67 +39,82 @@ public class ConcurrentWorker implements JsonRequestHandler {
 		IDLE, RUNNING
 	};
 
-	private final Thread workerThread;
-	private final Monitor monitor;
+	private final List<Instance> instances = new ArrayList<>();
 //	private final JsonRequestHandler underlyingHandler;
 
+	/**
+	 * Max number of jobs that the coordinator may submit to a worker at a time,
+	 * controlled by the system property <code>cpr.workerQueueDepth</code>. One
+	 * job runs, the rest wait in the worker's queue.
+	 */
+	public static int getQueueDepth() {
+		return Math.max(1, Util.getIntProperty("cpr.workerQueueDepth", 2));
+	}
+
+	/**
+	 * Number of tool instances in each worker process, controlled by the system
+	 * property <code>cpr.workerInstances</code>. Each instance has its own copy of
+	 * the underlying tool (loaded through a separate class loader), its own AST
+	 * cache and its own thread, so one process can run several jobs at once.
+	 */
+	public static int getInstanceCount() {
+		return Math.max(1, Util.getIntProperty("cpr.workerInstances", 1));
+	}
+
+	/**
+	 * Prepare the underlying tool before the first job arrives, so that a new
+	 * worker process responds about as fast as one that has been running for a
+	 * while. This loads the tool jar, and if the system property
+	 * <code>cpr.workerWarmupFile</code> is set, parses that file once.
+	 */
+	public static void warmUp(UnderlyingTool tool, String[] extraArgs) {
+		final long start = System.currentTimeMillis();
+		// Loads the jar and looks up its main class
+		tool.supportsParseText();
+
+		final String warmupFile = System.getProperty("cpr.workerWarmupFile");
+		if (warmupFile != null) {
+			final String[] fwdArgs = extraArgs != null ? extraArgs : new String[0];
+			final String[] args = Arrays.copyOf(fwdArgs, fwdArgs.length + 1);
+			args[fwdArgs.length] = new File(warmupFile).getAbsolutePath();
+			try {
+				tool.parse(args);
+			} catch (RuntimeException e) {
+				System.err.println("Error when parsing warm-up file " + warmupFile);
+				e.printStackTrace();
+			}
+		}
+		CodeProber.flog("Worker warm-up done in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
 	public ConcurrentWorker(JsonRequestHandler underlyingHandler) {
-		monitor = new Monitor();
-		workerThread = new Thread(() -> {
-			while (true) {
-				Job task;
-				try {
-					System.out.println("workerThread starting take()");
-					task = monitor.take();
-					System.out.println("workerThread got task: " + task.jobId);
-				} catch (InterruptedException e) {
-					System.out.println("Worker thread interrupted");
-					e.printStackTrace();
-					continue; // Or kill thread here?
-				}
-				monitor.status.set(JobStatus.RUNNING);
+		this(Arrays.asList(underlyingHandler));
+	}
 
-				try {
-					System.out.println("running conc worker.. START");
-					CodeProber.flog("🕵️ conc start " + task.jobId);
-					final JSONObject result = underlyingHandler.handleRequest(new ClientRequest( //
-							task.parsedRequestData.data,
-							task.request::sendAsyncResponse, //
-							task.request.connectionIsAlive,
-							task.request.onDidUpdateWorkspacePath));
-					CodeProber.flog("🕵️ conc done " + task.jobId);
-					System.out.println("running conc worker.. DONE");
-
-					task.request.sendAsyncResponse(
-							new AsyncRpcUpdate(task.jobId, true, AsyncRpcUpdateValue.fromWorkerTaskDone(WorkerTaskDone.fromNormal(result)) //
-					));
-				} catch (Throwable t) {
-					CodeProber.flog("🕵 conc caught for " + task.jobId + ": " + t);
-					System.out.println("Got throwable: " + t);
-					final List<String> stackTrace = new ArrayList<>();
-					stackTrace.add(t.toString());
-					t.printStackTrace(new StreamInterceptor(System.err, false) {
-
-						@Override
-						protected void onLine(String line) {
-							stackTrace.add(line);
-							CodeProber.flog(line);
-						}
-					});
-					task.request.sendAsyncResponse(
-							new AsyncRpcUpdate(task.jobId, true, AsyncRpcUpdateValue.fromWorkerTaskDone(WorkerTaskDone.fromUnexpectedError(stackTrace)) //
-					));
-
-//					task.request.sendAsyncResponse(
-//							new AsyncRpcUpdate(task.jobId, true, AsyncRpcUpdateValue.fromTaskDone(result) //
-//					));
-//					throw t;
-				} finally {
-					monitor.status.set(JobStatus.IDLE);
+	/**
+	 * @param instanceHandlers one handler per tool instance. Jobs submitted to
+	 *                         instance <code>i</code> are handled by the
+	 *                         <code>i</code>:th handler, in a thread of its own.
+	 */
+	public ConcurrentWorker(List<JsonRequestHandler> instanceHandlers) {
+		HeapMonitor.install();
+		for (JsonRequestHandler handler : instanceHandlers) {
+			instances.add(new Instance(handler));
+		}
+	}
+
+	/**
+	 * Check whether any instance has a job that is running or waiting to run.
+	 */
+	public boolean hasJobs() {
+		for (Instance inst : instances) {
+			synchronized (inst.monitor) {
+				if (inst.monitor.running != null || !inst.monitor.pending.isEmpty()) {
+					return true;
 				}
 			}
-		});
-		workerThread.start();
+		}
+		return false;
 	}
 
 	@Override
@@ -97,21 +126,44 @@ public class ConcurrentWorker implements JsonRequestHandler {
 
 			@Override
 			protected GetWorkerStatusRes handleGetWorkerStatus(GetWorkerStatusReq req) {
-				final List<String> stackTrace = new ArrayList<>();
-				for (StackTraceElement ste : workerThread.getStackTrace()) {
-					if (ste.getClassName().equals(DefaultRequestHandler.class.getName())) {
-						stackTrace.add("...codeprober internals..");
+				return createStatus(getInstance(req.instance).getStackTrace());
+			}
+
+			@Override
+			protected StopJobRes handleStopJob(StopJobReq req) {
+				// Job ids are unique across all instances
+				Job dropped = null;
+				for (Instance inst : instances) {
+					final Monitor monitor = inst.monitor;
+					synchronized (monitor) {
+						final Job running = monitor.running;
+						if (running != null && running.jobId == req.job) {
+							if (!running.cancelled) {
+								running.cancelled = true;
+								Reflect.requestCancellation(inst.workerThread);
+								inst.workerThread.interrupt();
+							}
+							return new StopJobRes();
+						}
+						dropped = monitor.removePending(req.job);
+					}
+					if (dropped != null) {
 						break;
 					}
-					stackTrace.add(ste.toString());
 				}
-				return new GetWorkerStatusRes(stackTrace);
+				if (dropped == null) {
+					return new StopJobRes("No such active job");
+				}
+				// Never started, but the coordinator still expects a final update
+				dropped.request.sendAsyncResponse(new AsyncRpcUpdate(dropped.jobId, true, AsyncRpcUpdateValue
+						.fromWorkerTaskDone(WorkerTaskDone.fromUnexpectedError(Arrays.asList("Job cancelled")))));
+				return new StopJobRes();
 			}
 
 			@Override
 			protected SubmitWorkerTaskRes handleSubmitWorkerTask(SubmitWorkerTaskReq req) {
 				try {
-					monitor.submit(new Job(req.job, request, req));
+					getInstance(req.instance).monitor.submit(new Job(req.job, request, req));
 					return new SubmitWorkerTaskRes(true);
 				} catch (InterruptedException e) {
 					System.out.println("Failed to submit");
@@ -119,6 +171,31 @@ public class ConcurrentWorker implements JsonRequestHandler {
 					return new SubmitWorkerTaskRes(false);
 				}
 			}
+
+			@Override
+			protected ResetWorkerInstanceRes handleResetWorkerInstance(ResetWorkerInstanceReq req) {
+				final Instance inst = getInstance(req.instance);
+				synchronized (inst.monitor) {
+					if (!inst.monitor.pending.isEmpty()) {
+						return new ResetWorkerInstanceRes(false);
+					}
+					// The coordinator only resets instances once it has seen their last job
+					// finish, but the worker thread may still be wrapping up.
+					try {
+						while (inst.monitor.running != null) {
+							inst.monitor.wait();
+						}
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+						return new ResetWorkerInstanceRes(false);
+					}
+					// Holding the monitor stops the instance from taking new jobs meanwhile
+					inst.underlyingHandler.onResetRequested();
+				}
+				// Collect now, so that the next status reflects the released memory
+				System.gc();
+				return new ResetWorkerInstanceRes(true);
+			}
 		}.handle(request.data); // TODO remove this wrapper
 		if (handled == null) {
 			throw new JSONException("Unknown request type on " + request.data);
@@ -156,11 +233,125 @@ public class ConcurrentWorker implements JsonRequestHandler {
 //		return null;
 	}
 
+	private Instance getInstance(Integer index) {
+		if (index == null) {
+			return instances.get(0);
+		}
+		if (index < 0 || index >= instances.size()) {
+			throw new JSONException("No such worker instance: " + index);
+		}
+		return instances.get(index);
+	}
+
+	/**
+	 * Create a status message, including the memory usage of this process. The
+	 * "live" heap usage is taken from {@link HeapMonitor}, and is omitted if no
+	 * full garbage collection has happened yet.
+	 */
+	static GetWorkerStatusRes createStatus(List<String> stackTrace) {
+		final Runtime rt = Runtime.getRuntime();
+		long gcTime = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcTime += Math.max(0, gc.getCollectionTime());
+		}
+		return new GetWorkerStatusRes(stackTrace, rt.totalMemory() - rt.freeMemory(),
+				HeapMonitor.getUsedAfterLastFullGc(), rt.maxMemory(), gcTime);
+	}
+
+	/**
+	 * One copy of the underlying tool, with its own thread and job queue.
+	 */
+	private static class Instance {
+		public final JsonRequestHandler underlyingHandler;
+		public final Monitor monitor = new Monitor(getQueueDepth());
+		public final Thread workerThread;
+
+		public Instance(JsonRequestHandler underlyingHandler) {
+			this.underlyingHandler = underlyingHandler;
+			workerThread = new Thread(() -> {
+				while (true) {
+					Job task;
+					try {
+						System.out.println("workerThread starting take()");
+						task = monitor.take();
+						System.out.println("workerThread got task: " + task.jobId);
+					} catch (InterruptedException e) {
+						System.out.println("Worker thread interrupted");
+						e.printStackTrace();
+						continue; // Or kill thread here?
+					}
+					monitor.status.set(JobStatus.RUNNING);
+
+					try {
+						System.out.println("running conc worker.. START");
+						CodeProber.flog("🕵️ conc start " + task.jobId);
+						final JSONObject result = underlyingHandler.handleRequest(new ClientRequest( //
+								task.parsedRequestData.data,
+								task.request::sendAsyncResponse, //
+								task.request.connectionIsAlive,
+								task.request.onDidUpdateWorkspacePath));
+						CodeProber.flog("🕵️ conc done " + task.jobId);
+						System.out.println("running conc worker.. DONE");
+
+						task.request.sendAsyncResponse(
+								new AsyncRpcUpdate(task.jobId, true, AsyncRpcUpdateValue.fromWorkerTaskDone(WorkerTaskDone.fromNormal(result)) //
+						));
+					} catch (Throwable t) {
+						CodeProber.flog("🕵 conc caught for " + task.jobId + ": " + t);
+						System.out.println("Got throwable: " + t);
+						final List<String> stackTrace = new ArrayList<>();
+						stackTrace.add(t.toString());
+						t.printStackTrace(new StreamInterceptor(System.err, false) {
+
+							@Override
+							protected void onLine(String line) {
+								stackTrace.add(line);
+								CodeProber.flog(line);
+							}
+						});
+						task.request.sendAsyncResponse(
+								new AsyncRpcUpdate(task.jobId, true, AsyncRpcUpdateValue.fromWorkerTaskDone(WorkerTaskDone.fromUnexpectedError(stackTrace)) //
+						));
+
+	//					task.request.sendAsyncResponse(
+	//							new AsyncRpcUpdate(task.jobId, true, AsyncRpcUpdateValue.fromTaskDone(result) //
+	//					));
+	//					throw t;
+					} finally {
+						if (monitor.finish(task)) {
+							// Clear any pending interrupt so that it doesn't affect the next job
+							Thread.interrupted();
+							Reflect.clearCancellation(Thread.currentThread());
+							underlyingHandler.onRequestCancelled();
+						}
+						monitor.status.set(JobStatus.IDLE);
+					}
+				}
+			});
+			workerThread.start();
+		}
+
+		public List<String> getStackTrace() {
+			final List<String> stackTrace = new ArrayList<>();
+			for (StackTraceElement ste : workerThread.getStackTrace()) {
+				if (ste.getClassName().equals(DefaultRequestHandler.class.getName())) {
+					stackTrace.add("...codeprober internals..");
+					break;
+				}
+				stackTrace.add(ste.toString());
+			}
+			return stackTrace;
+		}
+	}
+
 	private static class Job {
 		public final long jobId;
 		public final ClientRequest request;
 		public final SubmitWorkerTaskReq parsedRequestData;
 
+		// Guarded by the monitor
+		public boolean cancelled;
+
 		public Job(long jobId, ClientRequest request, SubmitWorkerTaskReq parsedRequestData) {
 			this.jobId = jobId;
 			this.request = request;
@@ -172,24 +363,59 @@ public class ConcurrentWorker implements JsonRequestHandler {
 
 		public final AtomicReference<JobStatus> status = new AtomicReference<>(JobStatus.IDLE);
 
-		private Job pending;
+		private final int capacity;
+		private final ArrayDeque<Job> pending = new ArrayDeque<>();
+		private Job running;
+
+		public Monitor(int capacity) {
+			this.capacity = capacity;
+		}
 
 		public synchronized Job take() throws InterruptedException {
-			while (pending == null) {
+			while (pending.isEmpty()) {
 				wait();
 			}
-			final Job ret = pending;
-			pending = null;
+			final Job ret = pending.removeFirst();
+			running = ret;
 			notifyAll();
 			return ret;
 		}
 
+		/**
+		 * Mark a job as no longer running.
+		 *
+		 * @return true if the job was cancelled while it was running
+		 */
+		public synchronized boolean finish(Job job) {
+			if (running == job) {
+				running = null;
+				notifyAll();
+			}
+			return job.cancelled;
+		}
+
+		public synchronized Job removePending(long jobId) {
+			final Iterator<Job> iter = pending.iterator();
+			while (iter.hasNext()) {
+				final Job job = iter.next();
+				if (job.jobId == jobId) {
+					iter.remove();
+					notifyAll();
+					return job;
+				}
+			}
+			return null;
+		}
+
 		public synchronized void submit(Job task) throws InterruptedException {
-			CodeProber.flog("🕵️ conc submit " + task.jobId + ", hasPending " + (pending != null));
-			while (pending != null) {
+			CodeProber.flog("🕵️ conc submit " + task.jobId + ", numPending " + pending.size());
+			// The coordinator never has more than 'capacity' jobs submitted (announced in
+			// the hello message), and 'pending' excludes the running job, so this
+			// normally doesn't block.
+			while (pending.size() >= capacity) {
 				wait();
 			}
-			pending = task;
+			pending.addLast(task);
 			notifyAll();
 		}
 	}
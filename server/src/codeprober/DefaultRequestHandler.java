@@ -9,8 +9,9 @@ import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
@@ -67,25 +68,30 @@ import codeprober.protocol.data.PutWorkspaceMetadataRes;
 import codeprober.protocol.data.RenameWorkspacePathReq;
 import codeprober.protocol.data.RenameWorkspacePathRes;
 import codeprober.protocol.data.RequestAdapter;
+import codeprober.protocol.data.ResolveLocatorsReq;
+import codeprober.protocol.data.ResolveLocatorsRes;
 import codeprober.protocol.data.RpcBodyLine;
+import codeprober.protocol.data.SyncDocumentReq;
+import codeprober.protocol.data.SyncDocumentRes;
 import codeprober.protocol.data.UnlinkWorkspacePathReq;
 import codeprober.protocol.data.UnlinkWorkspacePathRes;
 import codeprober.requesthandler.BlessFileHandler;
 import codeprober.requesthandler.CompleteHandler;
 import codeprober.requesthandler.DecorationsHandler;
+import codeprober.requesthandler.DocumentStore;
 import codeprober.requesthandler.EvaluatePropertyHandler;
 import codeprober.requesthandler.HoverHandler;
 import codeprober.requesthandler.LazyParser;
 import codeprober.requesthandler.ListNodesHandler;
 import codeprober.requesthandler.ListPropertiesHandler;
 import codeprober.requesthandler.ListTreeRequestHandler;
+import codeprober.requesthandler.ResolveLocatorsHandler;
 import codeprober.requesthandler.TestRequestHandler;
 import codeprober.requesthandler.WorkspaceHandler;
 import codeprober.rpc.JsonRequestHandler;
 import codeprober.server.BackingFileSettings;
 import codeprober.toolglue.ParseResult;
 import codeprober.toolglue.UnderlyingTool;
-import codeprober.util.ASTProvider;
 import codeprober.util.SessionLogger;
 
 public class DefaultRequestHandler implements JsonRequestHandler {
@@ -95,12 +101,24 @@ public class DefaultRequestHandler implements JsonRequestHandler {
 	private final SessionLogger logger;
 	private final WorkspaceHandler workspaceHandler;
 
-	private AstInfo lastInfo = null;
-	private ParsingSource lastParsedInput = null;
-	private String[] lastForwardArgs;
-	private Long lastToolVersionId;
+	private final AstCache astCache = AstCache.createDefault();
+	private AstCache.Key lastUsedCacheKey;
 
-	private KnownFileData lastParsedWorkspaceInput;
+	/**
+	 * A scratch file for text sources, and the digest of the text it currently
+	 * holds.
+	 */
+	private static class ScratchFile {
+		public final File file;
+		public Long digest;
+
+		public ScratchFile(File file) {
+			this.file = file;
+		}
+	}
+
+	// Scratch files per suffix, least recently used first
+	private final Map<String, List<ScratchFile>> scratchFiles = new HashMap<>();
 
 	public DefaultRequestHandler(UnderlyingTool underlyingTool) {
 		this(underlyingTool, null, null);
@@ -118,7 +136,6 @@ public class DefaultRequestHandler implements JsonRequestHandler {
 			WorkspaceHandler workspaceHandler) {
 		this.underlyingTool = underlyingTool;
 		this.defaultForwardArgs = forwardArgs != null ? forwardArgs : new String[0];
-		this.lastForwardArgs = this.defaultForwardArgs;
 		this.logger = logger;
 		this.workspaceHandler = workspaceHandler != null ? workspaceHandler : WorkspaceHandler.getDefault();
 	}
@@ -127,6 +144,10 @@ public class DefaultRequestHandler implements JsonRequestHandler {
 		return workspaceHandler;
 	}
 
+	public AstCache getAstCache() {
+		return astCache;
+	}
+
 	private AstInfo parsedAstToInfo(Object ast, PositionRecoveryStrategy posRecovery) {
 		AstNode astNode = new AstNode(ast);
 
@@ -201,20 +222,25 @@ public class DefaultRequestHandler implements JsonRequestHandler {
 				System.getProperty("cpr.type_identification_style",
 						// Upper case (old version) as fallback
 						System.getProperty("CPR.TYPE_IDENTIFICATION_STYLE"))));
-		lastInfo = info;
 		return info;
 	}
 
 	@Override
 	public JSONObject handleRequest(ClientRequest request) {
 		final AtomicBoolean addLog = new AtomicBoolean(logger != null);
-		JSONObject ret = performParsedRequest(lp -> new RequestAdapter() {
+		final DocumentStore documents = request.getDocuments();
+		JSONObject ret = performParsedRequest(documents, lp -> new RequestAdapter() {
 
 			@Override
 			protected ListTreeRes handleListTree(ListTreeReq req) {
 				return ListTreeRequestHandler.apply(req, lp);
 			}
 
+			@Override
+			protected ResolveLocatorsRes handleResolveLocators(ResolveLocatorsReq req) {
+				return ResolveLocatorsHandler.apply(req, lp);
+			}
+
 			@Override
 			protected ListNodesRes handleListNodes(ListNodesReq req) {
 				if (addLog.getAndSet(false)) {
@@ -281,6 +307,11 @@ public class DefaultRequestHandler implements JsonRequestHandler {
 				return BlessFileHandler.apply(req, workspaceHandler, lp);
 			}
 
+			@Override
+			protected SyncDocumentRes handleSyncDocument(SyncDocumentReq req) {
+				return documents.handleSyncDocument(req);
+			}
+
 			@Override
 			protected GetWorkspaceFileRes handleGetWorkspaceFile(GetWorkspaceFileReq req) {
 				return workspaceHandler.handleGetWorkspaceFile(req);
@@ -338,9 +369,33 @@ public class DefaultRequestHandler implements JsonRequestHandler {
 		throw new JSONException("Unexpected request type");
 	}
 
+	@Override
+	public void onRequestCancelled() {
+		// Attribute evaluation may have been interrupted half-way, which can leave
+		// cached values in a bad state. Keep the ASTs where this can be repaired.
+		astCache.flushOrRemoveAll();
+	}
+
+	@Override
+	public void onResetRequested() {
+		underlyingTool.purgeCache();
+		astCache.clear();
+	}
+
 	public <T> T performParsedRequest(Function<LazyParser, T> performWithParser) {
+		return performParsedRequest(null, performWithParser);
+	}
+
+	/**
+	 * Perform a request that may need to parse an AST.
+	 *
+	 * @param documents the documents that document sources are resolved against,
+	 *                  or null if there are none (e.g outside of a client
+	 *                  connection).
+	 */
+	public <T> T performParsedRequest(DocumentStore documents, Function<LazyParser, T> performWithParser) {
 		final AtomicReference<File> tmp = new AtomicReference<>(null);
-		final BiFunction<String, String, File> createTmpFile = (inputText, tmpSuffix) -> {
+		final BiFunction<ParsingSource, String, File> createTmpFile = (inputSource, tmpSuffix) -> {
 			final File existing = tmp.get();
 			if (existing != null) {
 				return existing;
@@ -348,8 +403,8 @@ public class DefaultRequestHandler implements JsonRequestHandler {
 			final File backingFile = BackingFileSettings.getRealFileToBeUsedInRequests();
 			if (backingFile != null) {
 				try {
-					BackingFileSettings.write(inputText);
-					// Do NOT set 'tmp' to backingFile, as that would cause it to be deleted.
+					BackingFileSettings.write(inputSource.asText(), inputSource.contentDigest);
+					tmp.set(backingFile);
 					return backingFile;
 				} catch (IOException e) {
 					System.out.println("Failed while copying source text to the backing file " + backingFile);
@@ -359,111 +414,178 @@ public class DefaultRequestHandler implements JsonRequestHandler {
 				}
 			}
 			try {
-				final File tmpFile = File.createTempFile("code-prober", tmpSuffix);
-				try {
-					Files.write(tmpFile.toPath(), inputText.getBytes(StandardCharsets.UTF_8),
-							StandardOpenOption.CREATE);
-				} catch (IOException e) {
-					System.out.println("Failed while copying source text to disk");
-					e.printStackTrace();
-					throw new RuntimeException(e);
-				}
-				tmp.set(tmpFile);
-				return tmpFile;
+				final File scratchFile = getScratchFile(inputSource, tmpSuffix);
+				tmp.set(scratchFile);
+				return scratchFile;
 			} catch (IOException e) {
+				System.out.println("Failed while copying source text to disk");
 				e.printStackTrace();
 				throw new RuntimeException(e);
 			}
 		};
-		try {
-			final String slowdown = System.getenv("SIMULATED_SLOWDOWN_MS");
-			if (slowdown != null) {
-				try {
-					Thread.sleep(Integer.parseInt(slowdown));
-				} catch (InterruptedException | NumberFormatException e) {
-					System.out.println("Interrupted while performing simulated slowdown");
-					e.printStackTrace();
-				}
+		final String slowdown = System.getenv("SIMULATED_SLOWDOWN_MS");
+		if (slowdown != null) {
+			try {
+				Thread.sleep(Integer.parseInt(slowdown));
+			} catch (InterruptedException | NumberFormatException e) {
+				System.out.println("Interrupted while performing simulated slowdown");
+				e.printStackTrace();
 			}
+		}
 
-			final LazyParser lp = new LazyParser() {
+		final LazyParser lp = new LazyParser() {
 
-				@Override
-				public ParsedAst parse(ParsingSource src, AstCacheStrategy cacheStrategy, List<String> mainArgs,
-						PositionRecoveryStrategy posRecovery, String tmpFileSuffix) {
-					final ParseResultWithExtraInfo res = doParse(src,
-							cacheStrategy != null ? cacheStrategy.name() : null, mainArgs, tmpFileSuffix,
-							createTmpFile);
-					if (res == null) {
-						return new ParsedAst(null);
-					}
-					if (res.rootNode == null) {
-						return new ParsedAst(null, res.parseTime, res.captures);
-					}
-					return new ParsedAst(parsedAstToInfo(res.rootNode, posRecovery), res.parseTime, res.captures);
+			@Override
+			public ParsingSource resolveSource(ParsingSource src) {
+				return documents != null ? documents.resolveSource(src) : LazyParser.super.resolveSource(src);
+			}
+
+			@Override
+			public ParsedAst parse(ParsingSource requestedSrc, AstCacheStrategy cacheStrategy, List<String> mainArgs,
+					PositionRecoveryStrategy posRecovery, String tmpFileSuffix) {
+				final ParsingSource src = resolveSource(requestedSrc);
+				if (src == null) {
+					return new ParsedAst(null, 0L, Arrays.asList( //
+							RpcBodyLine.fromPlain("Unknown document version " + requestedSrc.asDocument().toJSON()),
+							RpcBodyLine.fromPlain("Please resend the document with SyncDocument.")));
+				}
+				final ParseResultWithExtraInfo res = doParse(src,
+						cacheStrategy != null ? cacheStrategy.name() : null, mainArgs, tmpFileSuffix,
+						createTmpFile);
+				if (res == null) {
+					return new ParsedAst(null);
+				}
+				if (res.rootNode == null) {
+					return new ParsedAst(null, res.parseTime, res.captures, astCache.getHits(),
+							astCache.getMisses());
+				}
+				final AstInfo info = parsedAstToInfo(res.rootNode, posRecovery);
+				final AstCache.Key key = lastUsedCacheKey;
+				final AstCache.Entry cached = key != null ? astCache.get(key) : null;
+				if (cached != null && cached.rootNode == res.rootNode) {
+					// Let locators resolved in earlier requests be reused until the tree changes
+					info.setResolvedLocatorCache(cached.resolvedLocators);
+					info.setSpanIndexCache(cached.spanIndex);
+				}
+				return new ParsedAst(info, res.parseTime, res.captures, astCache.getHits(), astCache.getMisses());
+			}
+
+			@Override
+			public void discardCachedAst() {
+				final AstCache.Key key = lastUsedCacheKey;
+				if (key != null) {
+					astCache.remove(key);
 				}
+			}
+		};
+		return performWithParser.apply(lp);
+	}
 
-				@Override
-				public void discardCachedAst() {
-					lastParsedInput = null;
+	/**
+	 * Get a scratch file with the given suffix that holds the text of
+	 * <code>src</code>. Each suffix has a fixed pool of files, one per AST that
+	 * can be in the AST cache plus the one being parsed, so cached ASTs for
+	 * different texts normally point to different files. If no file holds the text
+	 * already, the least recently used one is truncated and rewritten in place.
+	 */
+	private File getScratchFile(ParsingSource src, String tmpSuffix) throws IOException {
+		synchronized (scratchFiles) {
+			final List<ScratchFile> pool = scratchFiles.computeIfAbsent(tmpSuffix, k -> new ArrayList<>());
+			ScratchFile ret = null;
+			for (ScratchFile sf : pool) {
+				if (sf.digest != null && sf.digest == src.contentDigest) {
+					ret = sf;
+					break;
 				}
-			};
-			return performWithParser.apply(lp);
-		} finally {
-			final File tmpFile = tmp.get();
-			if (tmpFile != null) {
-				tmpFile.delete();
 			}
+			if (ret == null) {
+				if (pool.size() <= astCache.getMaxEntries()) {
+					final File file = File.createTempFile("code-prober-", tmpSuffix);
+					file.deleteOnExit();
+					ret = new ScratchFile(file);
+				} else {
+					ret = pool.get(0);
+				}
+				// Unknown contents until the write succeeds
+				ret.digest = null;
+				Files.write(ret.file.toPath(), src.asText().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+				ret.digest = src.contentDigest;
+			}
+			pool.remove(ret);
+			pool.add(ret);
+			return ret.file;
 		}
 	}
 
-	private boolean parsingSourceIsEqualToLast(ParsingSource newSrc) {
-		if (lastParsedInput == null) {
-			return newSrc == null;
+	/**
+	 * Re-parse a cached workspace AST if its file has changed since it was parsed.
+	 * Used for background parsing, see {@link SpeculativeParser}. Unlike normal
+	 * requests this doesn't count as a use of the AST: the cache eviction order,
+	 * the hit/miss counters and the "last used" AST are left untouched.
+	 *
+	 * @return true if a new AST was parsed and stored in the cache
+	 */
+	boolean reparseInBackground(AstCache.Key key) {
+		final AstCache.Entry cached = astCache.peek(key);
+		if (cached == null || key.workspacePath == null || key.toolVersionId != underlyingTool.getVersionId()) {
+			return false;
+		}
+		if (cacheEntryIsUpToDate(ParsingSource.fromWorkspacePath(key.workspacePath), cached)) {
+			return false;
 		}
-		if (lastParsedInput.type != newSrc.type) {
+		final File file = workspaceHandler.getWorkspaceFile(key.workspacePath);
+		if (file == null || Reflect.isCancellationRequested()) {
+			return false;
+		}
+		final AstCache.FileStamp fileStamp = AstCache.FileStamp.of(file);
+		final String[] astArgs = new String[1 + key.forwardArgs.length];
+		System.arraycopy(key.forwardArgs, 0, astArgs, 0, key.forwardArgs.length);
+		astArgs[key.forwardArgs.length] = file.getAbsolutePath();
+
+		final Runtime rt = Runtime.getRuntime();
+		final long heapBefore = rt.totalMemory() - rt.freeMemory();
+		final ParseResult parsed = underlyingTool.parse(astArgs);
+		if (parsed.rootNode == null) {
+			// Leave the old AST in place, the next user request will report the error
 			return false;
 		}
-		switch (lastParsedInput.type) {
+		final long heapDelta = (rt.totalMemory() - rt.freeMemory()) - heapBefore;
+		return astCache.replaceQuietly(key,
+				new AstCache.Entry(parsed.rootNode, fileStamp, Math.max(heapDelta, file.length() * 2)));
+	}
+
+	private boolean cacheEntryIsUpToDate(ParsingSource src, AstCache.Entry entry) {
+		switch (src.type) {
 		case text:
-			return lastParsedInput.asText().equals(newSrc.asText());
+			// The text is part of the cache key, so the entry is up to date by definition
+			return true;
 
 		case workspacePath:
-			final String p1Path = lastParsedInput.asWorkspacePath();
-			final String p2Path = newSrc.asWorkspacePath();
-			if (!p1Path.equals(p2Path)) {
-				return false;
-			}
-			final File wsFile = workspaceHandler.getWorkspaceFile(p1Path);
+			final File wsFile = workspaceHandler.getWorkspaceFile(src.asWorkspacePath());
 			if (wsFile == null) {
 				// Both point to the same (nonexisting) file -> equal
 				return true;
 			}
-
-			if (lastParsedWorkspaceInput == null) {
-				System.err.println("?? There should be workspace input info since last input is workspace");
+			if (entry.fileStamp == null) {
+				System.err.println("?? There should be a file stamp since the input is a workspace path");
 				return false;
 			}
-			KnownFileData freshStat = statFile(wsFile);
-			return freshStat.equals(lastParsedWorkspaceInput);
+			return AstCache.FileStamp.of(wsFile).equals(entry.fileStamp);
+
 		default: {
-			System.err.println("Unknown ParsingSource type: " + lastParsedInput.type);
+			System.err.println("Unknown ParsingSource type: " + src.type);
 			return false;
 		}
 		}
 	}
 
-	private KnownFileData statFile(File f) {
-		return new KnownFileData(f.lastModified(), f.length(), WorkspaceHandler.getWorkspaceFileWriteCounter(f));
-	}
-
 	private ParseResultWithExtraInfo doParse(final ParsingSource inputSource, String optCacheStrategyVal,
-			List<String> optArgsOverrideVal, String tmpFileSuffix, BiFunction<String, String, File> createTmpFile) {
+			List<String> optArgsOverrideVal, String tmpFileSuffix, BiFunction<ParsingSource, String, File> createTmpFile) {
 
 		final AstCacheStrategy cacheStrategy = AstCacheStrategy.fallbackParse(optCacheStrategyVal);
 		if (cacheStrategy == AstCacheStrategy.PURGE) {
-			ASTProvider.purgeCache();
-			lastInfo = null;
+			onResetRequested();
 		}
 
 		final String[] fwdArgs;
@@ -473,22 +595,21 @@ public class DefaultRequestHandler implements JsonRequestHandler {
 			fwdArgs = defaultForwardArgs;
 		}
 
-		final boolean newFwdArgs = !Arrays.equals(lastForwardArgs, fwdArgs);
-		boolean maybeCacheAST = cacheStrategy.canCacheAST() //
-				&& lastParsedInput != null //
-				&& lastInfo != null //
-				&& !newFwdArgs //
-				&& lastToolVersionId != null && lastToolVersionId == underlyingTool.getVersionId();
+		final long toolVersionId = underlyingTool.getVersionId();
+		astCache.retainToolVersion(toolVersionId);
+		final AstCache.Key cacheKey = new AstCache.Key(inputSource, fwdArgs, toolVersionId);
+		lastUsedCacheKey = cacheKey;
 
+		final AtomicReference<AstCache.FileStamp> fileStamp = new AtomicReference<>();
 		final Supplier<File> convertInputToFile = () -> {
 			switch (inputSource.type) {
 			case text: {
-				return createTmpFile.apply(inputSource.asText(), tmpFileSuffix);
+				return createTmpFile.apply(inputSource, tmpFileSuffix);
 			}
 			case workspacePath: {
 				final File ret = workspaceHandler.getWorkspaceFile(inputSource.asWorkspacePath());
 				if (ret != null) {
-					lastParsedWorkspaceInput = statFile(ret);
+					fileStamp.set(AstCache.FileStamp.of(ret));
 				}
 				return ret;
 			}
@@ -498,82 +619,108 @@ public class DefaultRequestHandler implements JsonRequestHandler {
 			}
 			}
 		};
-		if (maybeCacheAST && !parsingSourceIsEqualToLast(inputSource)) {
-			maybeCacheAST = false;
-			// Something changed, must replace the AST,
-			// UNLESS flushTreeCacheAndReplaceLastFile is present.
-			Method optimizedFlusher = null;
-			try {
-				optimizedFlusher = lastInfo.ast.underlyingAstNode.getClass()
-						.getMethod("flushTreeCacheAndReplaceLastFile", String.class);
-			} catch (NoSuchMethodException | SecurityException e) {
-				// OK, it is an optional method after all
-			}
-			if (optimizedFlusher != null) {
-				try {
-					final File tmpFile = convertInputToFile.get();
-					if (tmpFile == null) {
-						System.err.println("Illegal input file");
-						return null;
-					}
+
+		if (cacheStrategy.canCacheAST()) {
+			final AstCache.Entry cached = astCache.get(cacheKey);
+			if (cached != null && cacheEntryIsUpToDate(inputSource, cached)) {
+				if (cacheStrategy != AstCacheStrategy.PARTIAL || cached.supportsFlushTreeCache()) {
 					final long flushStart = System.nanoTime();
-					final Boolean replacedOk = (Boolean) optimizedFlusher.invoke(lastInfo.ast.underlyingAstNode,
-							tmpFile.getAbsolutePath());
-					System.out.println("Tried optimized flush, result: " + replacedOk);
-					if (replacedOk) {
-						lastParsedInput = inputSource;
-						return new ParseResultWithExtraInfo(lastInfo.ast.underlyingAstNode, null,
-								System.nanoTime() - flushStart);
+					try {
+						if (cacheStrategy == AstCacheStrategy.PARTIAL) {
+							Reflect.invoke0(cached.rootNode, "flushTreeCache");
+							cached.resolvedLocators.invalidate();
+							cached.spanIndex.invalidate();
+						}
+						astCache.registerHit();
+						return new ParseResultWithExtraInfo(cached.rootNode, null, System.nanoTime() - flushStart);
+					} catch (InvokeProblem ip) {
+						System.out.println("Problem when flushing previous tree");
+						ip.printStackTrace();
+						astCache.remove(cacheKey);
 					}
-				} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-					System.out.println("Error when calling 'flushTreeCacheAndReplaceLastFile'");
-					e.printStackTrace();
 				}
-			}
-		}
-
-		if (maybeCacheAST && (cacheStrategy != AstCacheStrategy.PARTIAL
-				|| lastInfo.hasOverride0(lastInfo.ast.underlyingAstNode.getClass(), "flushTreeCache"))) {
-			final long flushStart = System.nanoTime();
-			try {
-				if (cacheStrategy == AstCacheStrategy.PARTIAL) {
-					Reflect.invoke0(lastInfo.ast.underlyingAstNode, "flushTreeCache");
+			} else {
+				// Something changed, must replace the AST,
+				// UNLESS flushTreeCacheAndReplaceLastFile is present on the most recent AST.
+				final Map.Entry<AstCache.Key, AstCache.Entry> mostRecent = astCache.getMostRecent();
+				Method optimizedFlusher = null;
+				if (mostRecent != null && Arrays.equals(mostRecent.getKey().forwardArgs, fwdArgs)) {
+					try {
+						optimizedFlusher = mostRecent.getValue().rootNode.getClass()
+								.getMethod("flushTreeCacheAndReplaceLastFile", String.class);
+					} catch (NoSuchMethodException | SecurityException e) {
+						// OK, it is an optional method after all
+					}
+				}
+				if (optimizedFlusher != null) {
+					try {
+						final File tmpFile = convertInputToFile.get();
+						if (tmpFile == null) {
+							System.err.println("Illegal input file");
+							return null;
+						}
+						final long flushStart = System.nanoTime();
+						final Object prevRoot = mostRecent.getValue().rootNode;
+						final Boolean replacedOk = (Boolean) optimizedFlusher.invoke(prevRoot,
+								tmpFile.getAbsolutePath());
+						System.out.println("Tried optimized flush, result: " + replacedOk);
+						if (replacedOk) {
+							astCache.remove(mostRecent.getKey());
+							astCache.put(cacheKey, new AstCache.Entry(prevRoot, fileStamp.get(),
+									mostRecent.getValue().estimatedHeapBytes));
+							astCache.registerHit();
+							return new ParseResultWithExtraInfo(prevRoot, null, System.nanoTime() - flushStart);
+						}
+					} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+						System.out.println("Error when calling 'flushTreeCacheAndReplaceLastFile'");
+						e.printStackTrace();
+					}
 				}
-				return new ParseResultWithExtraInfo(lastInfo.ast.underlyingAstNode, null,
-						System.nanoTime() - flushStart);
-			} catch (InvokeProblem ip) {
-				System.out.println("Problem when flushing previous tree");
-				ip.printStackTrace();
-				lastInfo = null;
 			}
 		}
-		lastParsedInput = inputSource;
-		lastToolVersionId = underlyingTool.getVersionId();
+		astCache.registerMiss();
+
+		final Runtime rt = Runtime.getRuntime();
+		final long heapBefore = rt.totalMemory() - rt.freeMemory();
+		final long parseStart;
+		final ParseResult parsed;
+		final long sourceLength;
+		if (inputSource.isText() && BackingFileSettings.getRealFileToBeUsedInRequests() == null
+				&& underlyingTool.supportsParseText()) {
+			// Parse straight from memory, no need to involve the file system
+			final String text = inputSource.asText();
+			sourceLength = text.length();
+			parseStart = System.nanoTime();
+			parsed = underlyingTool.parseText(fwdArgs, text);
+		} else {
+			final File tmpFile = convertInputToFile.get();
+			if (tmpFile == null) {
+				System.err.println("Illegal input file");
+				return null;
+			}
+			final String[] astArgs = new String[1 + fwdArgs.length];
+			System.arraycopy(fwdArgs, 0, astArgs, 0, fwdArgs.length);
+			astArgs[fwdArgs.length] = tmpFile.getAbsolutePath();
 
-		final File tmpFile = convertInputToFile.get();
-		if (tmpFile == null) {
-			System.err.println("Illegal input file");
-			return null;
+			sourceLength = tmpFile.length();
+			parseStart = System.nanoTime();
+			parsed = underlyingTool.parse(astArgs);
 		}
-		final String[] astArgs = new String[1 + fwdArgs.length];
-		System.arraycopy(fwdArgs, 0, astArgs, 0, fwdArgs.length);
-		astArgs[fwdArgs.length] = tmpFile.getAbsolutePath();
-		lastForwardArgs = fwdArgs;
-
-		final long parseStart = System.nanoTime();
-		final ParseResult parsed = underlyingTool.parse(astArgs);
 		if (parsed.rootNode != null) {
-			return new ParseResultWithExtraInfo(parsed.rootNode, parsed.captures, System.nanoTime() - parseStart);
+			final long parseTime = System.nanoTime() - parseStart;
+			// The heap delta is a rough estimate, a GC during parsing may even make it
+			// negative. Use the size of the source file as a lower bound.
+			final long heapDelta = (rt.totalMemory() - rt.freeMemory()) - heapBefore;
+			astCache.put(cacheKey, new AstCache.Entry(parsed.rootNode, fileStamp.get(),
+					Math.max(heapDelta, sourceLength * 2)));
+			return new ParseResultWithExtraInfo(parsed.rootNode, parsed.captures, parseTime);
 		} else {
 			final List<RpcBodyLine> captures = new ArrayList<>();
 			captures.add(RpcBodyLine.fromPlain("Parsing failed."));
 
-			// Consider this sequence of requests:
-			// 1) Successful parse -> lastInfo set
-			// 2) Failed parse
-			// 3) Cacheable parse -> reuse lastInfo if available
-			// To avoid step 3 reusing a faulty 'lastInfo' from step 1, clear it in step 2.
-			lastInfo = null;
+			// Any previous AST for this source is outdated, remove it so it won't be
+			// reused by a later request.
+			astCache.remove(cacheKey);
 
 			if (parsed.captures != null && parsed.captures.size() > 0) {
 				captures.add(RpcBodyLine.fromPlain("Extra information that may help diagnose the problem:"));
@@ -584,7 +731,6 @@ public class DefaultRequestHandler implements JsonRequestHandler {
 			}
 			return new ParseResultWithExtraInfo(null, captures, System.nanoTime() - parseStart);
 		}
-//		});
 	}
 
 	private static class ParseResultWithExtraInfo {
@@ -598,38 +744,4 @@ public class DefaultRequestHandler implements JsonRequestHandler {
 			this.parseTime = parseTime;
 		}
 	}
-
-	private static class KnownFileData {
-		private long lastModified;
-		private long length;
-		private int workspaceWriteCounter;
-
-		public KnownFileData(long lastModified, long length, int workspaceWriteCounter) {
-			this.lastModified = lastModified;
-			this.length = length;
-			this.workspaceWriteCounter = workspaceWriteCounter;
-		}
-
-		@Override
-		public int hashCode() {
-			return Objects.hash(lastModified, length, workspaceWriteCounter);
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj) {
-				return true;
-			}
-			if (obj == null) {
-				return false;
-			}
-			if (getClass() != obj.getClass()) {
-				return false;
-			}
-			KnownFileData other = (KnownFileData) obj;
-			return lastModified == other.lastModified && length == other.length
-					&& workspaceWriteCounter == other.workspaceWriteCounter;
-		}
-
-	}
 }
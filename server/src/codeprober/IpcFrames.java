@@ -0,0 +1,183 @@
+package codeprober;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.json.JSONObject;
+
+import codeprober.protocol.BinaryInputStream;
+import codeprober.protocol.BinaryOutputStream;
+
+/**
+ * Message framing for communication between {@link ConcurrentCoordinator} and
+ * its worker processes. There are two frame formats, both read by
+ * {@link IpcReader}:
+ * <ul>
+ * <li>JSON: <code>\n&lt;LENGTH&gt;JSON_UTF8_BYTES</code></li>
+ * <li>Binary: <code>\n</code>, {@link #BINARY_MARKER}, a 4-byte length, the
+ * bitwise complement of the length, and then the payload. The complement lets
+ * the reader tell a real frame header apart from stray output that happens to
+ * start with the marker byte. The payload is a 4-byte message kind (e.g
+ * {@link #KIND_TOP_REQUEST_REQ}) followed by the output of the
+ * <code>writeTo</code> method of the corresponding protocol class.</li>
+ * </ul>
+ * Workers always start in JSON mode, and first send a {@link #HELLO_TYPE}
+ * message with the number of tool instances they run and how many jobs each
+ * instance accepts at a time. If binary mode is enabled, the hello message says
+ * so, after which both sides use binary frames.
+ * <p>
+ * Over TCP, the coordinator speaks first. It sends a {@link #HELLO_TYPE}
+ * message with the shared worker token (see {@link #getWorkerToken()}), and the
+ * worker only answers if the token matches.
+ * <p>
+ * Once the worker has loaded the underlying tool, it sends a
+ * {@link #READY_TYPE} message.
+ */
+public class IpcFrames {
+
+	// Never part of valid UTF-8, so it cannot be confused with a JSON frame or
+	// stray text output.
+	public static final int BINARY_MARKER = 0xFE;
+
+	public static final int KIND_TOP_REQUEST_REQ = 1;
+	public static final int KIND_TOP_REQUEST_RES = 2;
+	public static final int KIND_ASYNC_RPC_UPDATE = 3;
+
+	// Upper bound on frame sizes. Anything larger is treated as a corrupt header
+	// rather than allocated.
+	public static final int MAX_FRAME_LENGTH = 1 << 30;
+
+	public static final String HELLO_TYPE = "ipcHello";
+	public static final String READY_TYPE = "workerReady";
+
+	public static interface BinaryWritable {
+		void writeTo(BinaryOutputStream dst) throws IOException;
+	}
+
+	/**
+	 * Whether binary frames should be used. Controlled by the system property
+	 * <code>cpr.workerIpc</code>, either "binary" (default) or "json".
+	 */
+	public static boolean isBinaryEnabled() {
+		return !"json".equals(System.getProperty("cpr.workerIpc", "binary"));
+	}
+
+	public static JSONObject createHello(boolean binary, int instances, int queueDepth) {
+		return new JSONObject().put("type", HELLO_TYPE).put("binary", binary).put("instances", instances)
+				.put("queueDepth", queueDepth);
+	}
+
+	/**
+	 * Create the message that a coordinator sends when connecting to a worker over
+	 * TCP.
+	 */
+	public static JSONObject createCoordinatorHello(String token) {
+		return new JSONObject().put("type", HELLO_TYPE).put("token", token != null ? token : "");
+	}
+
+	/**
+	 * Get the token that coordinators must present to workers that listen for
+	 * connections, controlled by the system property <code>cpr.workerToken</code>.
+	 *
+	 * @return the token, or null if not set
+	 */
+	public static String getWorkerToken() {
+		final String ret = System.getProperty("cpr.workerToken", "");
+		return ret.isEmpty() ? null : ret;
+	}
+
+	/**
+	 * Create the message that a worker sends before closing a connection from a
+	 * coordinator that it didn't accept.
+	 */
+	public static JSONObject createRejection(String reason) {
+		return new JSONObject().put("type", HELLO_TYPE).put("error", reason);
+	}
+
+	/**
+	 * Get the reason that a worker gave for rejecting the connection, or null if
+	 * the hello message is not a rejection.
+	 */
+	public static String getHelloError(JSONObject msg) {
+		return msg.optString("error", null);
+	}
+
+	/**
+	 * Check whether a coordinator hello message has the expected token. The
+	 * comparison takes the same time no matter where the tokens differ.
+	 */
+	public static boolean hasToken(JSONObject msg, String expectedToken) {
+		if (!HELLO_TYPE.equals(msg.optString("type"))) {
+			return false;
+		}
+		return MessageDigest.isEqual(msg.optString("token", "").getBytes(StandardCharsets.UTF_8),
+				expectedToken.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static JSONObject createReady() {
+		return new JSONObject().put("type", READY_TYPE);
+	}
+
+	public static boolean isBinaryHello(JSONObject msg) {
+		return HELLO_TYPE.equals(msg.optString("type")) && msg.optBoolean("binary");
+	}
+
+	/**
+	 * Get the number of tool instances announced in a hello message.
+	 */
+	public static int getHelloInstances(JSONObject msg) {
+		return Math.max(1, msg.optInt("instances", 1));
+	}
+
+	/**
+	 * Get the number of jobs that each instance of a worker accepts at a time, as
+	 * announced in its hello message.
+	 *
+	 * @param fallback the value to use if the worker didn't say
+	 */
+	public static int getHelloQueueDepth(JSONObject msg, int fallback) {
+		return msg.has("queueDepth") ? Math.max(1, msg.optInt("queueDepth", fallback)) : fallback;
+	}
+
+	public static byte[] encodeJson(JSONObject msg) {
+		final byte[] data = msg.toString().getBytes(StandardCharsets.UTF_8);
+		final byte[] prefix = ("\n<" + data.length + ">").getBytes(StandardCharsets.UTF_8);
+		final byte[] ret = new byte[prefix.length + data.length];
+		System.arraycopy(prefix, 0, ret, 0, prefix.length);
+		System.arraycopy(data, 0, ret, prefix.length, data.length);
+		return ret;
+	}
+
+	public static byte[] encodeBinary(int kind, BinaryWritable msg) {
+		try {
+			final BinaryOutputStream.ByteArrayWrapper payload = new BinaryOutputStream.ByteArrayWrapper();
+			payload.writeInt(kind);
+			msg.writeTo(payload);
+			final byte[] payloadBytes = payload.toByteArray();
+
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream(payloadBytes.length + 10);
+			final DataOutputStream dos = new DataOutputStream(baos);
+			dos.write('\n');
+			dos.write(BINARY_MARKER);
+			dos.writeInt(payloadBytes.length);
+			dos.writeInt(~payloadBytes.length);
+			dos.write(payloadBytes);
+			return baos.toByteArray();
+		} catch (IOException e) {
+			// 'should never happen', everything is in memory
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Open a binary payload (as received by
+	 * {@link IpcReader#onBinaryMessage(byte[])}) for reading. The message kind
+	 * must be read first, via {@link BinaryInputStream#readInt()}.
+	 */
+	public static BinaryInputStream openBinary(byte[] payload) {
+		return new BinaryInputStream.ByteArrayWrapper(payload);
+	}
+}
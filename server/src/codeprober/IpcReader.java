@@ -1,21 +1,26 @@
 package codeprober;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 
+/**
+ * Reads messages framed by {@link IpcFrames}. Both JSON and binary frames are
+ * accepted at any time. Anything else (e.g stray output from the underlying
+ * tool) is passed line by line to {@link #onNonProtocolOutput(String)}.
+ */
 public abstract class IpcReader {
 
-	private enum IpcReaderState {
-		NEUTRAL, READING_MESSAGE_LENGTH, READING_MESSAGE_CONTENTS, //
-		READING_GARBAGE,
-	}
-
 	private final InputStream src;
-	private ByteArrayOutputStream baos = new ByteArrayOutputStream();
-	private int messageLength = 0;
-	private IpcReaderState state = IpcReaderState.NEUTRAL;
+	private DataInputStream in;
+	// Longer lines of non-protocol output are truncated
+	private static final int MAX_GARBAGE_LINE_LENGTH = 4096;
+
+	private final ByteArrayOutputStream garbage = new ByteArrayOutputStream();
 	private boolean hasClosedSrc;
 
 	public IpcReader(InputStream src) {
@@ -28,91 +33,155 @@ public abstract class IpcReader {
 	}
 
 	private void onMessage(byte[] data) {
-//		System.out.println("Response message: " + Arrays.toString(data));
-//		System.out.println("asStr: " + new String(data, 0, data.length, StandardCharsets.UTF_8));
 		onMessage(new String(data, 0, data.length, StandardCharsets.UTF_8));
 	}
 
 	protected abstract void onMessage(String data);
 
-	private void onGarbageEnd() {
-//		final byte[] data = baos.toByteArray();
-		baos.reset();
-//		System.out.println("♻️: " + new String(data, 0, data.length, StandardCharsets.UTF_8));
+	protected void onBinaryMessage(byte[] data) {
+		System.err.println("Got unexpected binary message of length " + data.length);
 	}
 
-	protected void handleByte(byte b) {
-//		System.out.println("ipc << " + b);
-		switch (state) {
-		case NEUTRAL: {
-			if (b == '\n') {
-				state = IpcReaderState.NEUTRAL;
-			} else if (b == (byte) '<') {
-				messageLength = 0;
-				state = IpcReaderState.READING_MESSAGE_LENGTH;
-				return;
-			} else {
-				baos.write(b);
-				state = IpcReaderState.READING_GARBAGE;
+	/**
+	 * Called with each line of output that isn't part of a frame. Ignored by
+	 * default.
+	 */
+	protected void onNonProtocolOutput(String line) {
+	}
+
+	private void skipGarbage(DataInputStream in) throws IOException {
+		// Skip until newline
+		int b;
+		while ((b = in.read()) != -1 && b != '\n') {
+			if (garbage.size() < MAX_GARBAGE_LINE_LENGTH) {
+				garbage.write(b);
 			}
-			break;
 		}
-		case READING_GARBAGE: {
-			if (b == '\n') {
-				onGarbageEnd();
-				state = IpcReaderState.NEUTRAL;
-			} else {
-				baos.write(b);
+		final String line = new String(garbage.toByteArray(), StandardCharsets.UTF_8);
+		garbage.reset();
+		onNonProtocolOutput(line);
+	}
+
+	/**
+	 * Read one frame and pass it to {@link #onMessage(String)} or
+	 * {@link #onBinaryMessage(byte[])}, or skip a frame separator or one line of
+	 * garbage. This can be used to handle some messages synchronously before
+	 * {@link #runForever()}.
+	 *
+	 * @return false if the end of the stream was reached
+	 */
+	public boolean readFrame() throws IOException {
+		if (in == null) {
+			in = new DataInputStream(new BufferedInputStream(src, 64 * 1024));
+		}
+		try {
+			return readFrame(in);
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	private boolean readFrame(DataInputStream in) throws IOException {
+		final int first = in.read();
+		if (first == -1) {
+			return false;
+		}
+		if (first == '\n') {
+			return true;
+		}
+		garbage.write(first);
+		if (first == IpcFrames.BINARY_MARKER) {
+			// Stray output may also start with the marker byte. Validate the header, and
+			// if it doesn't look right, go back and treat the line as garbage instead.
+			in.mark(8);
+			final int len = in.readInt();
+			final int check = in.readInt();
+			if (len < 0 || len > IpcFrames.MAX_FRAME_LENGTH || check != ~len) {
+				in.reset();
+				skipGarbage(in);
+				return true;
 			}
-			break;
+			garbage.reset();
+			final byte[] data = new byte[len];
+			in.readFully(data);
+			onBinaryMessage(data);
+			return true;
+		}
+		if (first != '<') {
+			skipGarbage(in);
+			return true;
 		}
-		case READING_MESSAGE_LENGTH: {
+		int messageLength = 0;
+		while (true) {
+			final int b = in.read();
+			if (b == -1) {
+				return false;
+			}
 			if (b == '\n') {
-				onGarbageEnd();
-				state = IpcReaderState.NEUTRAL;
+				// Not a frame after all, the line is garbage
+				onNonProtocolOutput(new String(garbage.toByteArray(), StandardCharsets.UTF_8));
+				garbage.reset();
+				return true;
+			}
+			garbage.write(b);
+			if (b >= '0' && b <= '9' && messageLength <= IpcFrames.MAX_FRAME_LENGTH / 10) {
+				messageLength = (messageLength * 10) + (b - '0');
+			} else if (b == '>' && messageLength > 0) {
+				garbage.reset();
+				break;
 			} else {
-				baos.write(b);
-				if ((b >= '0') && (b <= '9')) {
-					messageLength = (messageLength * 10) + (b - '0');
-				} else if (b == '>') {
-					if (messageLength == 0) {
-						state = IpcReaderState.READING_GARBAGE;
-					} else {
-						baos.reset();
-						state = IpcReaderState.READING_MESSAGE_CONTENTS;
-					}
-				} else {
-					baos.write(b);
-					state = IpcReaderState.READING_GARBAGE;
-				}
-
+				skipGarbage(in);
+				return true;
 			}
-			break;
 		}
-		case READING_MESSAGE_CONTENTS: {
-			baos.write(b);
-			--messageLength;
-			if (messageLength == 0) {
-				onMessage(baos.toByteArray());
-				baos.reset();
-				state = IpcReaderState.NEUTRAL;
+		final byte[] data = new byte[messageLength];
+		in.readFully(data);
+		onMessage(data);
+		return true;
+	}
+
+	/**
+	 * Read a single JSON frame directly from <code>src</code>, without reading
+	 * anything past the end of the frame. This is slow, but lets a different
+	 * reader take over the stream afterwards.
+	 *
+	 * @return the message, or null if the stream doesn't start with a JSON frame
+	 */
+	public static String readSingleJsonFrame(InputStream src) throws IOException {
+		int b = src.read();
+		while (b == '\n') {
+			b = src.read();
+		}
+		if (b != '<') {
+			return null;
+		}
+		int messageLength = 0;
+		while ((b = src.read()) >= '0' && b <= '9') {
+			if (messageLength > IpcFrames.MAX_FRAME_LENGTH / 10) {
+				return null;
 			}
-			break;
+			messageLength = (messageLength * 10) + (b - '0');
 		}
+		if (b != '>' || messageLength == 0) {
+			return null;
 		}
+		final byte[] data = new byte[messageLength];
+		new DataInputStream(src).readFully(data);
+		return new String(data, StandardCharsets.UTF_8);
 	}
 
 	public void runForever() {
-		final byte[] buf = new byte[512];
-
+		if (in == null) {
+			in = new DataInputStream(new BufferedInputStream(src, 64 * 1024));
+		}
 		try {
 			while (!hasClosedSrc) {
-				final int read = src.read(buf);
-
-				for (int i = 0; i < read; i++) {
-					handleByte(buf[i]);
+				if (!readFrame(in)) {
+					break;
 				}
 			}
+		} catch (EOFException e) {
+			// Stream closed in the middle of a frame, fall down to below
 		} catch (IOException e) {
 			if (!hasClosedSrc) {
 				System.err.println("Worker process died");
@@ -0,0 +1,162 @@
+package codeprober;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+import org.json.JSONObject;
+
+import codeprober.metaprogramming.InvokeCancelled;
+import codeprober.metaprogramming.Reflect;
+import codeprober.protocol.ClientRequest;
+import codeprober.rpc.JsonRequestHandler;
+
+/**
+ * Wrapper around {@link DefaultRequestHandler} that re-parses workspace files
+ * in the background when they change on disk. Only files that already have an
+ * AST in the {@link AstCache} are re-parsed, so that the next probe on them
+ * gets a warm cache instead of paying for the parse.
+ * <p>
+ * Background parses never run concurrently with user requests. Any pending
+ * background parses are cancelled as soon as a user request arrives, and a
+ * running one is asked to stop via {@link Reflect#requestCancellation(Thread)}.
+ * Background parses don't count as uses of the cached ASTs, see
+ * {@link DefaultRequestHandler#reparseInBackground(AstCache.Key)}.
+ * <p>
+ * Enabled with the system property <code>cpr.speculativeParse=true</code>.
+ */
+public class SpeculativeParser implements JsonRequestHandler {
+
+	public static boolean isEnabled() {
+		return "true".equals(System.getProperty("cpr.speculativeParse", "false"));
+	}
+
+	private final DefaultRequestHandler handler;
+
+	// Held while performing any request, user or speculative, in 'handler'
+	private final Object handlerLock = new Object();
+
+	private final LinkedHashSet<String> pendingPaths = new LinkedHashSet<>();
+
+	// Incremented each time a user request arrives
+	private long userRequestCounter = 0;
+	private Thread parseThread;
+
+	// True while parseThread is performing a background parse
+	private boolean parsing = false;
+
+	public SpeculativeParser(DefaultRequestHandler handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public JSONObject handleRequest(ClientRequest request) {
+		synchronized (pendingPaths) {
+			++userRequestCounter;
+			pendingPaths.clear();
+			if (parsing) {
+				Reflect.requestCancellation(parseThread);
+			}
+		}
+		synchronized (handlerLock) {
+			return handler.handleRequest(request);
+		}
+	}
+
+	@Override
+	public void onOneOrMoreClientsDisconnected() {
+		handler.onOneOrMoreClientsDisconnected();
+	}
+
+	/**
+	 * Schedule background parses of the given workspace paths. Paths without a
+	 * cached AST are ignored.
+	 */
+	public void schedule(Collection<String> workspacePaths) {
+		synchronized (pendingPaths) {
+			pendingPaths.addAll(workspacePaths);
+			if (parseThread == null) {
+				parseThread = new Thread(this::runForever, "SpeculativeParser");
+				parseThread.setDaemon(true);
+				parseThread.setPriority(Thread.MIN_PRIORITY);
+				parseThread.start();
+			}
+			pendingPaths.notifyAll();
+		}
+	}
+
+	private void runForever() {
+		while (true) {
+			final String path;
+			final long requestCounterAtStart;
+			synchronized (pendingPaths) {
+				while (pendingPaths.isEmpty()) {
+					try {
+						pendingPaths.wait();
+					} catch (InterruptedException e) {
+						System.out.println("Speculative parse thread interrupted");
+						e.printStackTrace();
+						return;
+					}
+				}
+				final Iterator<String> iter = pendingPaths.iterator();
+				path = iter.next();
+				iter.remove();
+				requestCounterAtStart = userRequestCounter;
+			}
+			synchronized (handlerLock) {
+				synchronized (pendingPaths) {
+					if (userRequestCounter != requestCounterAtStart) {
+						// A user request arrived while we were waiting for the lock.
+						continue;
+					}
+					parsing = true;
+				}
+				try {
+					reparse(path, requestCounterAtStart);
+				} catch (InvokeCancelled e) {
+					// A user request arrived, it is now waiting for handlerLock
+				} catch (RuntimeException e) {
+					System.out.println("Error during speculative parse of " + path);
+					e.printStackTrace();
+				} finally {
+					synchronized (pendingPaths) {
+						parsing = false;
+						Reflect.clearCancellation(Thread.currentThread());
+					}
+				}
+			}
+		}
+	}
+
+	int reparse(String workspacePath) {
+		final long requestCounterAtStart;
+		synchronized (pendingPaths) {
+			requestCounterAtStart = userRequestCounter;
+		}
+		return reparse(workspacePath, requestCounterAtStart);
+	}
+
+	/**
+	 * Re-parse all cached ASTs of a workspace path whose file has changed since
+	 * they were parsed. Stops early if a user request arrives.
+	 *
+	 * @param requestCounterAtStart the value of {@link #userRequestCounter} when
+	 *                              the path was picked from the queue.
+	 * @return the number of ASTs that were re-parsed
+	 */
+	private int reparse(String workspacePath, long requestCounterAtStart) {
+		int numParsed = 0;
+		for (AstCache.Key key : handler.getAstCache().getWorkspacePathKeys(workspacePath)) {
+			synchronized (pendingPaths) {
+				if (userRequestCounter != requestCounterAtStart) {
+					break;
+				}
+			}
+			if (handler.reparseInBackground(key)) {
+				++numParsed;
+			}
+		}
+		return numParsed;
+	}
+}
@@ -16,6 +16,7 @@ import org.json.JSONObject;
 
 import codeprober.metaprogramming.StdIoInterceptor;
 import codeprober.protocol.ClientRequest;
+import codeprober.protocol.JobPriority;
 import codeprober.protocol.data.EvaluatePropertyReq;
 import codeprober.protocol.data.EvaluatePropertyRes;
 import codeprober.protocol.data.GetTestSuiteReq;
@@ -197,7 +198,8 @@ public class TestClient {
 			}
 
 			final EvaluatePropertyReq req = new EvaluatePropertyReq(src, locator, nt.property, false,
-					allowAsync ? jobIdGenerator.getAndIncrement() : null, null, null, null);
+					allowAsync ? jobIdGenerator.getAndIncrement() : null, null, null, null, null, null,
+					JobPriority.BULK);
 			runEvaluateProperty(req, sync -> {
 				if (!(identityComparison //
 						? compareIdentityLines(nt.expectedOutput, sync.body)
@@ -341,7 +343,7 @@ public class TestClient {
 			}
 
 			final EvaluatePropertyReq req = new EvaluatePropertyReq(tcase.src, tcase.locator, tcase.property, false,
-					job, null, null, null);
+					job, null, null, null, null, null, JobPriority.BULK);
 
 			runEvaluateProperty(req, handleResponse);
 //			handleCallback.accept(requestHandler.handleRequest(new ClientRequest(req.toJSON(), asyncMsg -> {
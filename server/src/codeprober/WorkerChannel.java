@@ -0,0 +1,191 @@
+package codeprober;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * A connection between {@link ConcurrentCoordinator} and a worker (see
+ * {@link ConcurrentWorker}). Messages in both directions are framed by
+ * {@link IpcFrames}. A worker is either a local process that the coordinator
+ * started itself, or a remote process started with
+ * <code>--worker --listen=PORT</code> that the coordinator connects to.
+ */
+public abstract class WorkerChannel {
+
+	/**
+	 * Messages from the worker.
+	 */
+	public abstract InputStream getInputStream();
+
+	/**
+	 * Messages to the worker.
+	 */
+	public abstract OutputStream getOutputStream();
+
+	/**
+	 * Diagnostic output from the worker, or null if not available.
+	 */
+	public InputStream getErrorStream() {
+		return null;
+	}
+
+	public abstract boolean isAlive();
+
+	/**
+	 * Set a timeout for reads from {@link #getInputStream()}, or 0 for no timeout.
+	 * Not all channels support this, for those it does nothing.
+	 */
+	public void setReadTimeout(int millis) throws IOException {
+		// Default: no-op
+	}
+
+	/**
+	 * Close the channel. For local processes, this also stops the process.
+	 */
+	public abstract void close(boolean forcibly);
+
+	/**
+	 * Whether the worker is a process that the coordinator started itself, and
+	 * can therefore replace by starting another one.
+	 */
+	public abstract boolean isLocal();
+
+	public static WorkerChannel startProcess(List<String> cmd) throws IOException {
+		final Process process = new ProcessBuilder() //
+				.command(cmd) //
+				.start();
+		return new WorkerChannel() {
+
+			@Override
+			public InputStream getInputStream() {
+				return process.getInputStream();
+			}
+
+			@Override
+			public OutputStream getOutputStream() {
+				return process.getOutputStream();
+			}
+
+			@Override
+			public InputStream getErrorStream() {
+				return process.getErrorStream();
+			}
+
+			@Override
+			public boolean isAlive() {
+				return process.isAlive();
+			}
+
+			@Override
+			public void close(boolean forcibly) {
+				if (forcibly) {
+					process.destroyForcibly();
+				} else {
+					process.destroy();
+				}
+			}
+
+			@Override
+			public boolean isLocal() {
+				return true;
+			}
+
+			@Override
+			public String toString() {
+				return "local process";
+			}
+		};
+	}
+
+	/**
+	 * Connect to a worker that was started with <code>--worker --listen</code>.
+	 *
+	 * @param endpoint <code>HOST:PORT</code>, or just <code>PORT</code> for
+	 *                 localhost.
+	 */
+	public static WorkerChannel connect(String endpoint, int timeoutMillis) throws IOException {
+		final Socket socket = new Socket();
+		try {
+			socket.connect(parseEndpoint(endpoint, "localhost"), timeoutMillis);
+			socket.setTcpNoDelay(true);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		return fromSocket(socket, endpoint);
+	}
+
+	private static WorkerChannel fromSocket(Socket socket, String description) throws IOException {
+		final InputStream in = socket.getInputStream();
+		final OutputStream out = socket.getOutputStream();
+		return new WorkerChannel() {
+
+			@Override
+			public InputStream getInputStream() {
+				return in;
+			}
+
+			@Override
+			public OutputStream getOutputStream() {
+				return out;
+			}
+
+			@Override
+			public boolean isAlive() {
+				return !socket.isClosed();
+			}
+
+			@Override
+			public void setReadTimeout(int millis) throws IOException {
+				socket.setSoTimeout(millis);
+			}
+
+			@Override
+			public void close(boolean forcibly) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					System.err.println("Error when closing connection to " + description);
+					e.printStackTrace();
+				}
+			}
+
+			@Override
+			public boolean isLocal() {
+				return false;
+			}
+
+			@Override
+			public String toString() {
+				return description;
+			}
+		};
+	}
+
+	/**
+	 * Parse an endpoint on the form <code>HOST:PORT</code>, or just
+	 * <code>PORT</code>.
+	 *
+	 * @param defaultHost the host to use if the endpoint doesn't have one, or null
+	 *                    for the wildcard address (e.g to listen on all
+	 *                    interfaces).
+	 */
+	public static InetSocketAddress parseEndpoint(String endpoint, String defaultHost) {
+		final int sep = endpoint.lastIndexOf(':');
+		final String host = sep >= 0 ? endpoint.substring(0, sep) : defaultHost;
+		final int port;
+		try {
+			port = Integer.parseInt(endpoint.substring(sep + 1));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid worker endpoint '" + endpoint + "', expected HOST:PORT");
+		}
+		if (port <= 0 || port > 0xFFFF) {
+			throw new IllegalArgumentException("Invalid port in worker endpoint '" + endpoint + "'");
+		}
+		return host != null ? new InetSocketAddress(host, port) : new InetSocketAddress(port);
+	}
+}
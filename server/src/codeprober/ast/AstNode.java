@@ -4,10 +4,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 
 import codeprober.AstInfo;
 import codeprober.locator.Span;
@@ -25,7 +23,15 @@ public class AstNode {
 
 	private AstNode[] children;
 
-	private final Set<Object> visitedNodes = new HashSet<>();
+	/**
+	 * Used to detect cycles when walking upwards with {@link #parent()}. This is
+	 * the number of parent() expansions that lead to this node, and the
+	 * underlying node at the latest power-of-two number of expansions (Brent's
+	 * algorithm). Each wrapper stays constant size, and a cycle is still detected
+	 * after at most about twice as many expansions as it takes to complete it.
+	 */
+	private int upwardExpansions;
+	private Object loopCheckpoint;
 
 	private Span rawSpan;
 
@@ -291,12 +297,16 @@ public class AstNode {
 			if (parent == null) {
 				this.parent = null;
 			} else {
-				if (!visitedNodes.add(parent)) {
+				final Object checkpoint = loopCheckpoint != null ? loopCheckpoint : underlyingAstNode;
+				if (parent == checkpoint) {
 					System.out.println("Cycle detected in AST graph detected");
 					throw new AstLoopException();
 				}
-				this.parent = new AstNode(parent);
-				this.parent.visitedNodes.addAll(this.visitedNodes);
+				final AstNode expanded = new AstNode(parent);
+				final int expansions = upwardExpansions + 1;
+				expanded.upwardExpansions = expansions;
+				expanded.loopCheckpoint = (expansions & (expansions - 1)) == 0 ? parent : checkpoint;
+				this.parent = expanded;
 //				this.parent.registerChild(info, this);
 			}
 			expandedParent = true;
@@ -399,7 +409,6 @@ public class AstNode {
 			}
 			children[n].parent = this;
 			children[n].expandedParent = true;
-			children[n].visitedNodes.addAll(this.visitedNodes);
 		}
 		return children[n];
 
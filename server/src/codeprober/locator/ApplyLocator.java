@@ -1,6 +1,10 @@
 package codeprober.locator;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 import codeprober.AstInfo;
 import codeprober.ast.AstNode;
@@ -51,11 +55,38 @@ public class ApplyLocator {
 	private static class AmbiguousTal extends RuntimeException {
 	}
 
+	// The node filters used by 'getFirstPerfectMatch' and 'bestMatchingNode' respectively
+	private static SpanIndex.SpanFilter coversFilter(int startPos, int endPos) {
+		// Same as Span.covers
+		return (start, end) -> (start == 0 && end == 0) || (start <= startPos && end >= endPos);
+	}
+
+	private static SpanIndex.SpanFilter overlapsFilter(int startPos, int endPos) {
+		return (start, end) -> start == 0 || end == 0 || startPos == 0 || endPos == 0
+				|| !(start > endPos || end < startPos);
+	}
+
 	public static boolean isFirstPerfectMatchExpected(AstInfo info, AstNode src, TypeAtLoc tal, int depth,
 			AstNode expected) {
-		return getFirstPerfectMatch(info, src,
-				info.typeIdentificationStyle.createIdentifier(info.loadAstClass, tal.type, tal.label), tal.loc.start,
-				tal.loc.end, depth, expected) == expected;
+		final TypeIdentifier typeIdentifier = info.typeIdentificationStyle.createIdentifier(info.loadAstClass,
+				tal.type, tal.label);
+		final SpanIndex index = info.getSpanIndex();
+		if (index != null && src.underlyingAstNode != expected.underlyingAstNode) {
+			final int srcId = index.getId(src);
+			final int expectedId = index.getId(expected);
+			if (srcId != -1 && expectedId != -1) {
+				final SpanIndex.SpanFilter filter = coversFilter(tal.loc.start, tal.loc.end);
+				final int matchId = index.findFirstExact(srcId, typeIdentifier, tal.loc.start, tal.loc.end, depth,
+						filter);
+				// The search checks the identity of each child before entering it, so
+				// 'expected' is found one level deeper than other matches.
+				final boolean expectedIsReachable = index.isReachable(srcId, expectedId, filter)
+						&& index.getRelativeDepth(srcId, expectedId) <= depth + 1;
+				return expectedIsReachable && (matchId == -1 || expectedId <= matchId);
+			}
+		}
+		return getFirstPerfectMatch(info, src, typeIdentifier, tal.loc.start, tal.loc.end, depth,
+				expected) == expected;
 	}
 
 	private static AstNode getFirstPerfectMatch(AstInfo info, AstNode src, TypeIdentifier typeIdentifier, int startPos,
@@ -98,6 +129,28 @@ public class ApplyLocator {
 		return null;
 	}
 
+	/**
+	 * Look for a node that {@link #bestMatchingNode} would consider a perfect
+	 * match, i.e exactly at the right span and depth. If there is one, then the
+	 * first one in pre-order is what bestMatchingNode would return too.
+	 *
+	 * @return the match, or null if there is none or if the AST isn't indexed
+	 */
+	private static MatchedNode findPerfectMatchInIndex(AstInfo info, AstNode astNode, TypeIdentifier typeIdentifier,
+			int startPos, int endPos, int depth) {
+		final SpanIndex index = info.getSpanIndex();
+		if (index == null) {
+			return null;
+		}
+		final int srcId = index.getId(astNode);
+		if (srcId == -1) {
+			return null;
+		}
+		final int matchId = index.findFirstExact(srcId, typeIdentifier, startPos, endPos, depth,
+				overlapsFilter(startPos, endPos));
+		return matchId != -1 ? new MatchedNode(index.getNode(matchId), 0, 0) : null;
+	}
+
 	private static MatchedNode bestMatchingNode(AstInfo info, AstNode astNode, TypeIdentifier typeIdentifier,
 			int startPos, int endPos, int depth, boolean failOnAmbiguity) {
 		return bestMatchingNode(info, astNode, typeIdentifier, startPos, endPos, depth, failOnAmbiguity, null,
@@ -206,7 +259,199 @@ public class ApplyLocator {
 		return toNode(info, locator, true);
 	}
 
+	/**
+	 * Check whether a resolved node has exactly the type, label and span that
+	 * <code>locator</code> asked for, as opposed to being the closest match.
+	 */
+	public static boolean isExactMatch(ResolvedNode resolved, NodeLocator locator) {
+		final TALStep expected = locator.result;
+		return resolved.pos.start == expected.start && resolved.pos.end == expected.end
+				&& resolved.node.underlyingAstNode.getClass().getName().equals(expected.type)
+				&& Objects.equals(resolved.node.getNodeLabel(), expected.label);
+	}
+
 	public static ResolvedNode toNode(AstInfo info, NodeLocator locator, boolean createFreshLocator) {
+		final ResolvedLocatorCache cache = info.getResolvedLocatorCache();
+		if (!cache.isEnabled()) {
+			return resolve(info, locator, createFreshLocator);
+		}
+		final String cacheKey;
+		final ResolvedLocatorCache.Entry cached;
+		BenchmarkTimer.APPLY_LOCATOR.enter();
+		try {
+			cacheKey = ResolvedLocatorCache.createKey(locator, info.recoveryStrategy);
+			cached = cache.get(cacheKey);
+		} finally {
+			BenchmarkTimer.APPLY_LOCATOR.exit();
+		}
+		if (cached != null) {
+			info.registerResolvedLocatorHit();
+			return fromCacheEntry(info, cached, createFreshLocator);
+		}
+		info.registerResolvedLocatorMiss();
+		final ResolvedNode ret = resolve(info, locator, createFreshLocator);
+		if (ret != null) {
+			cache.put(cacheKey, new ResolvedLocatorCache.Entry(ret.node.underlyingAstNode, ret.pos, ret.nodeLocator));
+		}
+		return ret;
+	}
+
+	private static ResolvedNode fromCacheEntry(AstInfo info, ResolvedLocatorCache.Entry cached,
+			boolean createFreshLocator) {
+		final AstNode node = new AstNode(cached.node);
+		NodeLocator resultLocator = null;
+		if (createFreshLocator) {
+			resultLocator = cached.getResultLocator();
+			if (resultLocator == null) {
+				resultLocator = CreateLocator.fromNode(info, node);
+				if (resultLocator == null) {
+					return null;
+				}
+				cached.setResultLocator(resultLocator);
+			}
+		}
+		return new ResolvedNode(node, cached.pos, resultLocator);
+	}
+
+	/**
+	 * Resolve many locators against the same AST. The result is the same as
+	 * calling {@link #toNode(AstInfo, NodeLocator, boolean)} for each locator, but
+	 * locators are sorted by their steps so that steps they have in common (e.g
+	 * the TAL step to a shared enclosing method) are only applied once. Fresh
+	 * locators are created with {@link CreateLocator#fromNodes(AstInfo, List)}.
+	 *
+	 * @return one resolved node (or null) per locator, in the same order as
+	 *         <code>locators</code>
+	 */
+	public static List<ResolvedNode> toNodes(AstInfo info, List<NodeLocator> locators, boolean createFreshLocator) {
+		final int numLocators = locators.size();
+		final ResolvedNode[] results = new ResolvedNode[numLocators];
+		final String[] cacheKeys = new String[numLocators];
+		final List<Integer> pending = new ArrayList<>();
+
+		final ResolvedLocatorCache cache = info.getResolvedLocatorCache();
+		for (int i = 0; i < numLocators; ++i) {
+			if (!cache.isEnabled()) {
+				pending.add(i);
+				continue;
+			}
+			final ResolvedLocatorCache.Entry cached;
+			BenchmarkTimer.APPLY_LOCATOR.enter();
+			try {
+				cacheKeys[i] = ResolvedLocatorCache.createKey(locators.get(i), info.recoveryStrategy);
+				cached = cache.get(cacheKeys[i]);
+			} finally {
+				BenchmarkTimer.APPLY_LOCATOR.exit();
+			}
+			if (cached != null) {
+				info.registerResolvedLocatorHit();
+				results[i] = fromCacheEntry(info, cached, createFreshLocator);
+			} else {
+				info.registerResolvedLocatorMiss();
+				pending.add(i);
+			}
+		}
+		if (pending.isEmpty() || info.ast == null) {
+			return Arrays.asList(results);
+		}
+
+		final List<Integer> found = new ArrayList<>();
+		final List<AstNode> foundNodes = new ArrayList<>();
+		final Span[] foundPositions = new Span[numLocators];
+		BenchmarkTimer.APPLY_LOCATOR.enter();
+		try {
+			final List<List<String>> stepKeys = new ArrayList<>(numLocators);
+			for (int i = 0; i < numLocators; ++i) {
+				stepKeys.add(null);
+			}
+			for (int idx : pending) {
+				final List<NodeLocatorStep> steps = locators.get(idx).steps;
+				final List<String> keys = new ArrayList<>(steps.size());
+				for (NodeLocatorStep step : steps) {
+					keys.add(step.toJSON().toString());
+				}
+				stepKeys.set(idx, keys);
+			}
+			// Sort by steps, so that locators with a common prefix end up next to each other
+			pending.sort((a, b) -> compareSteps(stepKeys.get(a), stepKeys.get(b)));
+
+			// path.get(n) is the node reached after the first n steps of the previous
+			// locator, or null if matching failed at that step.
+			final List<AstNode> path = new ArrayList<>();
+			path.add(info.ast);
+			List<String> prevKeys = Collections.emptyList();
+			for (int idx : pending) {
+				final List<String> keys = stepKeys.get(idx);
+				int common = 0;
+				while (common < keys.size() && common < prevKeys.size() && common + 1 < path.size()
+						&& keys.get(common).equals(prevKeys.get(common))) {
+					++common;
+				}
+				path.subList(common + 1, path.size()).clear();
+				prevKeys = keys;
+
+				final List<NodeLocatorStep> steps = locators.get(idx).steps;
+				AstNode matchedNode = path.get(common);
+				for (int i = common; matchedNode != null && i < steps.size(); ++i) {
+					final NodeLocatorStep step = steps.get(i);
+					try {
+						matchedNode = applyStep(info, matchedNode, step);
+					} catch (RuntimeException e) {
+						System.out.println("Error while applying step index " + i + ", step = " + step);
+						e.printStackTrace();
+						matchedNode = null;
+					}
+					if (matchedNode == null) {
+						System.out.println("Failed matching after step index " + i + ", step = " + step);
+					}
+					path.add(matchedNode);
+				}
+				if (matchedNode == null) {
+					continue;
+				}
+				try {
+					foundPositions[idx] = matchedNode.getRecoveredSpan(info);
+				} catch (InvokeProblem e) {
+					System.out.println("Error while extracting position of matched node");
+					e.printStackTrace();
+					continue;
+				}
+				found.add(idx);
+				foundNodes.add(matchedNode);
+			}
+		} finally {
+			BenchmarkTimer.APPLY_LOCATOR.exit();
+		}
+
+		final List<NodeLocator> freshLocators = createFreshLocator ? CreateLocator.fromNodes(info, foundNodes) : null;
+		for (int i = 0; i < found.size(); ++i) {
+			final int idx = found.get(i);
+			final AstNode node = foundNodes.get(i);
+			final NodeLocator freshLocator = freshLocators != null ? freshLocators.get(i) : null;
+			if (createFreshLocator && freshLocator == null) {
+				continue;
+			}
+			results[idx] = new ResolvedNode(node, foundPositions[idx], freshLocator);
+			if (cacheKeys[idx] != null) {
+				cache.put(cacheKeys[idx],
+						new ResolvedLocatorCache.Entry(node.underlyingAstNode, foundPositions[idx], freshLocator));
+			}
+		}
+		return Arrays.asList(results);
+	}
+
+	private static int compareSteps(List<String> a, List<String> b) {
+		final int len = Math.min(a.size(), b.size());
+		for (int i = 0; i < len; ++i) {
+			final int cmp = a.get(i).compareTo(b.get(i));
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return Integer.compare(a.size(), b.size());
+	}
+
+	private static ResolvedNode resolve(AstInfo info, NodeLocator locator, boolean createFreshLocator) {
 		AstNode matchedNode = info.ast;
 		Span matchPos = null;
 
@@ -216,71 +461,7 @@ public class ApplyLocator {
 				final List<NodeLocatorStep> steps = locator.steps;
 				for (int i = 0; i < steps.size(); i++) {
 					final NodeLocatorStep step = steps.get(i);
-					switch (step.type) {
-					case nta: {
-						final FNStep nta = step.asNta();
-//						final JSONObject mth = step.getJSONObject("value");
-						final List<PropertyArg> args = nta.property.args;
-						final Object[] argsValues = new Object[args != null ? args.size() : 0];
-						final Class<?>[] argsTypes = new Class<?>[argsValues.length];
-						final String ntaName = nta.property.name;
-						for (int j = 0; j < argsValues.length; ++j) {
-//							final ParameterValue param = DecodeValue.decode(info, args.get(j),
-//									new JSONArray());
-							final UnpackedAttrValue uav = EvaluatePropertyHandler.unpackAttrValue(info, args.get(j),
-									System.out::println);
-							argsValues[j] = uav.unpacked;
-							argsTypes[j] = EvaluatePropertyHandler.getValueType(info, uav.response);
-						}
-						Object match;
-						if (ntaName.startsWith("l:")) {
-							if (argsValues.length != 0) {
-								System.err.println("Unexpected args in presense of labeled attribute NTA step");
-								return null;
-							}
-							// TODO? if there are args, throw an error?
-							match = Reflect.invokeN(matchedNode.underlyingAstNode, "cpr_lInvoke",
-									new Class[] { String.class }, new Object[] { ntaName.substring(2) });
-						} else {
-							match = Reflect.invokeN(matchedNode.underlyingAstNode, ntaName, argsTypes, argsValues);
-						}
-						matchedNode = match == null ? null : new AstNode(match);
-						break;
-					}
-					case tal: {
-						final TALStep tal = step.asTal();
-
-//						final JSONObject tal = step.getJSONObject("value");
-						final int start = tal.start;
-						final int end = tal.end;
-						final int depth = tal.depth;
-						TypeIdentifier typeIdentifier = info.typeIdentificationStyle.createIdentifier(info.loadAstClass,
-								tal.type, tal.label);
-						final AstNode parent = matchedNode;
-						MatchedNode result = bestMatchingNode(info, parent, typeIdentifier, start, end, depth, false);
-
-						if (result == null) {
-							// Sometimes the locator can shift 1 or 2 characters off,
-							// especially if the document enters an invalid state while typing.
-							// We can permit a tiny bit of error and try again
-							result = bestMatchingNode(info, parent, typeIdentifier, start - 2, end + 2, depth, false);
-						}
-						matchedNode = result != null ? result.matchedNode : null;
-						break;
-					}
-					case child: {
-						final int childIndex = step.asChild();
-						if (childIndex < 0 || childIndex >= matchedNode.getNumChildren(info)) {
-							return null;
-						}
-						matchedNode = matchedNode.getNthChild(info, childIndex);
-						break;
-					}
-					default: {
-						throw new RuntimeException("Unknown locator step '" + step.toJSON() + "'");
-
-					}
-					}
+					matchedNode = applyStep(info, matchedNode, step);
 					if (matchedNode == null) {
 						System.out.println("Failed matching after step index " + i + ", step = " + step);
 						break;
@@ -314,4 +495,77 @@ public class ApplyLocator {
 		}
 		return new ResolvedNode(matchedNode, matchPos, matchedNodeLocator);
 	}
+
+	/**
+	 * Apply a single locator step, starting from <code>matchedNode</code>.
+	 *
+	 * @return the node that the step leads to, or null if there is no such node
+	 */
+	private static AstNode applyStep(AstInfo info, AstNode matchedNode, NodeLocatorStep step) {
+		switch (step.type) {
+		case nta: {
+			final FNStep nta = step.asNta();
+//			final JSONObject mth = step.getJSONObject("value");
+			final List<PropertyArg> args = nta.property.args;
+			final Object[] argsValues = new Object[args != null ? args.size() : 0];
+			final Class<?>[] argsTypes = new Class<?>[argsValues.length];
+			final String ntaName = nta.property.name;
+			for (int j = 0; j < argsValues.length; ++j) {
+//				final ParameterValue param = DecodeValue.decode(info, args.get(j),
+//						new JSONArray());
+				final UnpackedAttrValue uav = EvaluatePropertyHandler.unpackAttrValue(info, args.get(j),
+						System.out::println);
+				argsValues[j] = uav.unpacked;
+				argsTypes[j] = EvaluatePropertyHandler.getValueType(info, uav.response);
+			}
+			Object match;
+			if (ntaName.startsWith("l:")) {
+				if (argsValues.length != 0) {
+					System.err.println("Unexpected args in presense of labeled attribute NTA step");
+					return null;
+				}
+				// TODO? if there are args, throw an error?
+				match = Reflect.invokeN(matchedNode.underlyingAstNode, "cpr_lInvoke", new Class[] { String.class },
+						new Object[] { ntaName.substring(2) });
+			} else {
+				match = Reflect.invokeN(matchedNode.underlyingAstNode, ntaName, argsTypes, argsValues);
+			}
+			return match == null ? null : new AstNode(match);
+		}
+		case tal: {
+			final TALStep tal = step.asTal();
+
+//			final JSONObject tal = step.getJSONObject("value");
+			final int start = tal.start;
+			final int end = tal.end;
+			final int depth = tal.depth;
+			TypeIdentifier typeIdentifier = info.typeIdentificationStyle.createIdentifier(info.loadAstClass, tal.type,
+					tal.label);
+			final AstNode parent = matchedNode;
+			MatchedNode result = findPerfectMatchInIndex(info, parent, typeIdentifier, start, end, depth);
+			if (result == null) {
+				result = bestMatchingNode(info, parent, typeIdentifier, start, end, depth, false);
+			}
+
+			if (result == null) {
+				// Sometimes the locator can shift 1 or 2 characters off,
+				// especially if the document enters an invalid state while typing.
+				// We can permit a tiny bit of error and try again
+				result = bestMatchingNode(info, parent, typeIdentifier, start - 2, end + 2, depth, false);
+			}
+			return result != null ? result.matchedNode : null;
+		}
+		case child: {
+			final int childIndex = step.asChild();
+			if (childIndex < 0 || childIndex >= matchedNode.getNumChildren(info)) {
+				return null;
+			}
+			return matchedNode.getNthChild(info, childIndex);
+		}
+		default: {
+			throw new RuntimeException("Unknown locator step '" + step.toJSON() + "'");
+
+		}
+		}
+	}
 }
@@ -13,6 +13,7 @@ import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
@@ -32,6 +33,7 @@ import codeprober.protocol.data.PropertyArg;
 import codeprober.protocol.data.TALStep;
 import codeprober.util.BenchmarkTimer;
 import codeprober.util.Util;
+import codeprober.util.WeakIdentityMap;
 
 public class CreateLocator {
 
@@ -56,8 +58,6 @@ public class CreateLocator {
 		}
 	}
 
-	public static IdentityHashMap<Object, NodeLocator> identityLocatorCache = null;
-
 	public static class Edges {
 		public final int unmergedLength;
 		public final List<StepWithTarget> mergedEdges;
@@ -68,14 +68,19 @@ public class CreateLocator {
 		}
 	}
 
-	private static LocatorMergeMethod mergeMethod = LocatorMergeMethod.DEFAULT_METHOD;
+	// Per thread, since workers can run multiple tool instances in parallel
+	private static final ThreadLocal<LocatorMergeMethod> mergeMethod = ThreadLocal
+			.withInitial(() -> LocatorMergeMethod.DEFAULT_METHOD);
 
+	/**
+	 * Set the merge method for locators created by the current thread.
+	 */
 	public static void setMergeMethod(LocatorMergeMethod mth) {
-		mergeMethod = mth;
+		mergeMethod.set(mth);
 	}
 
 	public static LocatorMergeMethod getMergeMethod() {
-		return mergeMethod;
+		return mergeMethod.get();
 	}
 
 	public static void putNodeTypeValues(AstNode node, JSONObject dst) {
@@ -97,36 +102,173 @@ public class CreateLocator {
 		return new TALStep(type, lbl, start, end, depth, isExternal);
 	}
 
-	private static List<Object> fromNodeCycleDetectorStack = new ArrayList<>();
+	private static final ThreadLocal<List<Object>> fromNodeCycleDetectorStacks = ThreadLocal
+			.withInitial(ArrayList::new);
 
 	public static int numEncounteredUnattachedNodes = 0;
 
 	public static NodeLocator fromNode(AstInfo info, AstNode astNode) {
-		if (identityLocatorCache != null) {
-			if (identityLocatorCache.containsKey(astNode.underlyingAstNode)) {
-				return identityLocatorCache.get(astNode.underlyingAstNode);
+		// Locators depend on the merge method, only cache those with the default one
+		final WeakIdentityMap<Object, Optional<NodeLocator>> cache = getMergeMethod() == LocatorMergeMethod.DEFAULT_METHOD
+				? info.getLocatorCache()
+				: null;
+		if (cache != null) {
+			final Optional<NodeLocator> cached = cache.get(astNode.underlyingAstNode);
+			if (cached != null) {
+				return cached.orElse(null);
 			}
 		}
+		final NodeLocator ret = createLocator(info, astNode);
+		if (cache != null) {
+			cache.put(astNode.underlyingAstNode, Optional.ofNullable(ret));
+		}
+		return ret;
+	}
+
+	private static NodeLocator createLocator(AstInfo info, AstNode astNode) {
 		final Edges edges = getEdgesTo(info, astNode);
 		if (edges == null) {
-			if (identityLocatorCache != null) {
-				identityLocatorCache.put(astNode.underlyingAstNode, null);
-			}
 			return null;
 		}
 
 		final Span astPos = astNode.getRecoveredSpan(info);
-		final NodeLocator ret = new NodeLocator(
+		return new NodeLocator(
 				createTALStep(astNode, astPos.start, astPos.end, edges.unmergedLength,
 						astNode.isInsideExternalFile(info)),
 				edges.mergedEdges.stream().map(x -> x.step).collect(Collectors.toList()));
-		if (identityLocatorCache != null) {
-			identityLocatorCache.put(astNode.underlyingAstNode, ret);
+	}
+
+	/**
+	 * Create locators for many nodes at once. The result is the same as calling
+	 * {@link #fromNode(AstInfo, AstNode)} for each node, but steps and merge
+	 * decisions for ancestors that the nodes have in common are only computed
+	 * once.
+	 *
+	 * @return one locator (or null) per node, in the same order as
+	 *         <code>nodes</code>
+	 */
+	public static List<NodeLocator> fromNodes(AstInfo info, List<AstNode> nodes) {
+		final WeakIdentityMap<Object, Optional<NodeLocator>> cache = getMergeMethod() == LocatorMergeMethod.DEFAULT_METHOD
+				? info.getLocatorCache()
+				: null;
+		final List<NodeLocator> ret = new ArrayList<>(nodes.size());
+		final List<Object> fromNodeCycleDetectorStack = fromNodeCycleDetectorStacks.get();
+		final IdentityHashMap<Object, ParentSteps> parentSteps = new IdentityHashMap<>();
+		MergeMemo memo = new MergeMemo();
+		BenchmarkTimer.CREATE_LOCATOR.enter();
+		try {
+			for (AstNode node : nodes) {
+				if (cache != null) {
+					final Optional<NodeLocator> cached = cache.get(node.underlyingAstNode);
+					if (cached != null) {
+						ret.add(cached.orElse(null));
+						continue;
+					}
+				}
+				NodeLocator loc;
+				if (fromNodeCycleDetectorStack.contains(node.underlyingAstNode)) {
+					// Let fromNode report the problem
+					loc = null;
+				} else {
+					fromNodeCycleDetectorStack.add(node.underlyingAstNode);
+					try {
+						loc = createLocatorInBatch(info, node, parentSteps, memo);
+					} catch (RuntimeException | IllegalAccessException | NoSuchFieldException | NoSuchMethodException
+							| InvocationTargetException e) {
+						// Parts of the memo may be incomplete, start over with a new one
+						memo = new MergeMemo();
+						parentSteps.clear();
+						loc = null;
+					} finally {
+						fromNodeCycleDetectorStack.remove(fromNodeCycleDetectorStack.size() - 1);
+					}
+				}
+				if (loc == null) {
+					// Something unexpected happened. fromNode handles all special cases and
+					// reports any problems, so use it instead.
+					ret.add(fromNode(info, node));
+					continue;
+				}
+				if (cache != null) {
+					cache.put(node.underlyingAstNode, Optional.of(loc));
+				}
+				ret.add(loc);
+			}
+		} finally {
+			BenchmarkTimer.CREATE_LOCATOR.exit();
 		}
 		return ret;
 	}
 
+	/**
+	 * The steps from the parent of a node to the node, as found by
+	 * {@link CreateLocator#extractParentSteps(AstInfo, AstNode, Field, List)}.
+	 */
+	private static class ParentSteps {
+		public final List<StepWithTarget> steps;
+		public final AstNode next;
+
+		public ParentSteps(List<StepWithTarget> steps, AstNode next) {
+			this.steps = steps;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * Create a locator in the same way as {@link #fromNode(AstInfo, AstNode)}, but
+	 * reuse steps and merges from previous nodes in the same batch. Returns null if
+	 * the locator cannot be created without special handling.
+	 */
+	private static NodeLocator createLocatorInBatch(AstInfo info, AstNode astNode,
+			IdentityHashMap<Object, ParentSteps> parentSteps, MergeMemo memo) throws IllegalAccessException,
+			NoSuchFieldException, NoSuchMethodException, InvocationTargetException {
+		final Field childIndexField = info.getChildIndexField();
+		final List<StepWithTarget> naive = new ArrayList<>();
+		for (AstNode next = astNode; next != null;) {
+			ParentSteps found = parentSteps.get(next.underlyingAstNode);
+			if (found == null) {
+				final List<StepWithTarget> steps = new ArrayList<>();
+				found = new ParentSteps(steps, extractParentSteps(info, next, childIndexField, steps));
+				parentSteps.put(next.underlyingAstNode, found);
+			}
+			naive.addAll(found.steps);
+			next = found.next;
+		}
+		if (naive.isEmpty()) {
+			if (astNode.underlyingAstNode != info.ast.underlyingAstNode) {
+				return null;
+			}
+		} else {
+			if (naive.get(naive.size() - 1) == null) {
+				return null;
+			}
+			Collections.reverse(naive);
+			if (naive.get(0).source.underlyingAstNode != info.ast.underlyingAstNode) {
+				return null;
+			}
+		}
+
+		final List<StepWithTarget> merged;
+		switch (getMergeMethod()) {
+		case PAPER_VERSION: {
+			merged = mergePaperVersion(info, astNode, naive, memo);
+			Collections.reverse(merged);
+			break;
+		}
+		default: {
+			merged = naive;
+			break;
+		}
+		}
+
+		final Span astPos = astNode.getRecoveredSpan(info);
+		return new NodeLocator(
+				createTALStep(astNode, astPos.start, astPos.end, naive.size(), astNode.isInsideExternalFile(info)),
+				merged.stream().map(x -> x.step).collect(Collectors.toList()));
+	}
+
 	public static Edges getEdgesTo(AstInfo info, AstNode astNode) {
+		final List<Object> fromNodeCycleDetectorStack = fromNodeCycleDetectorStacks.get();
 		if (fromNodeCycleDetectorStack.contains(astNode.underlyingAstNode)) {
 			System.err.println("Illegal cycle in AST parent chain");
 			for (Object n : fromNodeCycleDetectorStack) {
@@ -213,7 +355,7 @@ public class CreateLocator {
 			return null;
 		}
 
-		switch (mergeMethod) {
+		switch (getMergeMethod()) {
 
 		case SKIP: {
 			// No merge needed
@@ -221,60 +363,7 @@ public class CreateLocator {
 		}
 
 		case PAPER_VERSION: {
-			// Functional, non-optimized version
-			final BiFunction<AstNode, AstNode, Integer> distance = (src, dst) -> {
-				int depth = 0;
-				while (src.underlyingAstNode != dst.underlyingAstNode) {
-					dst = dst.parent();
-					++depth;
-				}
-				return depth;
-			};
-			final BiFunction<AstNode, AstNode, StepWithTarget> createTAL = (src, dst) -> {
-				final Span pos = dst.getRecoveredSpan(info);
-				return new StepWithTarget( //
-						NodeLocatorStep.fromTal(createTALStep(dst, pos.start, pos.end, distance.apply(src, dst),
-								dst.isInsideExternalFile(info))), //
-						src, dst);
-			};
-
-			final BiPredicate<AstNode, AstNode> canUseTal = (src, dst) -> ApplyLocator.isFirstPerfectMatchExpected(info,
-					src.parent(), TypeAtLoc.from(info, dst), distance.apply(src.parent(), dst), src);
-
-			AstNode src = astNode;
-			AstNode dst = astNode;
-			final List<StepWithTarget> ret = new ArrayList<>();
-
-			// 'foundTALRoot' differs from naive paper version.
-			// Optimizes performance greatly, especially in a multi-file scenario.
-			// Included to make it behave more like the 'optimized' version.
-			// Remove to simulate paper algorithm.
-			boolean foundTALRoot = astNode.isLocatorTALRoot(info);
-
-			final int endIdx = naive.size() - 1;
-			for (int i = endIdx; i >= 0; --i) {
-				final StepWithTarget swt = naive.get(i);
-				final NodeLocatorStep step = swt.step;
-				if (!foundTALRoot) {
-					foundTALRoot = src.isLocatorTALRoot(info);
-				}
-
-				if (src != dst && (step.isNta() || foundTALRoot || !canUseTal.test(src, dst))) {
-					ret.add(createTAL.apply(src, dst));
-					dst = src;
-				}
-
-				if (step.isNta() || foundTALRoot || !canUseTal.test(src, dst)) {
-					ret.add(swt);
-					dst = swt.source;
-				} else {
-					// Let it grow
-				}
-				src = swt.source;
-			}
-			if (src != dst) {
-				ret.add(createTAL.apply(src, dst));
-			}
+			final List<StepWithTarget> ret = mergePaperVersion(info, astNode, naive, null);
 			Collections.reverse(ret);
 			return new Edges(naive.size(), ret);
 		}
@@ -336,10 +425,28 @@ public class CreateLocator {
 	private static void extractStepsTo(AstInfo info, AstNode astNode, Field childIndexField, List<StepWithTarget> out)
 			throws IllegalArgumentException, IllegalAccessException, NoSuchFieldException, SecurityException,
 			NoSuchMethodException, InvocationTargetException {
+		AstNode next = astNode;
+		while (next != null) {
+			next = extractParentSteps(info, next, childIndexField, out);
+		}
+	}
+
+	/**
+	 * Add the step(s) from the parent of <code>astNode</code> to
+	 * <code>astNode</code>.
+	 *
+	 * @return the node that the added steps start from, whose own parent steps
+	 *         come next. Null if <code>astNode</code> has no parent, or if no step
+	 *         could be found, in which case a null entry is added to
+	 *         <code>out</code>.
+	 */
+	private static AstNode extractParentSteps(AstInfo info, AstNode astNode, Field childIndexField,
+			List<StepWithTarget> out) throws IllegalArgumentException, IllegalAccessException, NoSuchFieldException,
+			SecurityException, NoSuchMethodException, InvocationTargetException {
 		final AstNode parent = astNode.parent();
 		if (parent == null) {
 			// No edge needed
-			return;
+			return null;
 		}
 
 		final int numChildren = parent.getNumChildren(info);
@@ -355,8 +462,7 @@ public class CreateLocator {
 			final AstNode child = parent.getNthChild(info, guessedChildIndex);
 			if (child.sharesUnderlyingNode(astNode)) {
 				out.add(new StepWithTarget(NodeLocatorStep.fromChild(guessedChildIndex), parent, astNode));
-				extractStepsTo(info, parent, childIndexField, out);
-				return;
+				return parent;
 			}
 		}
 
@@ -364,13 +470,12 @@ public class CreateLocator {
 			final AstNode child = parent.getNthChild(info, childIdx);
 			if (child.sharesUnderlyingNode(astNode)) {
 				out.add(new StepWithTarget(NodeLocatorStep.fromChild(childIdx), parent, astNode));
-				extractStepsTo(info, parent, childIndexField, out);
-				return;
+				return parent;
 			}
 		}
 
 		if (extractNtaEdge(info, astNode, childIndexField, out, parent)) {
-			return;
+			return parent;
 		}
 
 		if (numChildren == 0) {
@@ -380,7 +485,7 @@ public class CreateLocator {
 			final AstNode realParent = parent.parent();
 			if (realParent != null) {
 				if (extractNtaEdge(info, astNode, childIndexField, out, realParent)) {
-					return;
+					return realParent;
 				}
 			}
 		}
@@ -396,8 +501,7 @@ public class CreateLocator {
 							NodeLocatorStep.fromNta(new FNStep(new Property(getChildNoTransformMthName,
 									Arrays.asList(PropertyArg.fromInteger(guessedChildIndex))))),
 							parent, astNode));
-					extractStepsTo(info, parent, childIndexField, out);
-					return;
+					return parent;
 				}
 			}
 
@@ -409,8 +513,7 @@ public class CreateLocator {
 							NodeLocatorStep.fromNta(new FNStep(new Property(getChildNoTransformMthName,
 									Arrays.asList(PropertyArg.fromInteger(childIdx))))),
 							parent, astNode));
-					extractStepsTo(info, parent, childIndexField, out);
-					return;
+					return parent;
 				}
 			}
 		}
@@ -431,8 +534,13 @@ public class CreateLocator {
 			search = search.parent();
 			System.out.println("Grandparent.. " + search);
 		}
+		return null;
 	}
 
+	/**
+	 * Add the step from <code>parent</code> to <code>astNode</code> if it is an
+	 * NTA step. The steps above <code>parent</code> are not added.
+	 */
 	private static boolean extractNtaEdge(AstInfo info, AstNode astNode, Field childIndexField,
 			List<StepWithTarget> out, final AstNode parent)
 			throws IllegalAccessException, NoSuchFieldException, NoSuchMethodException, InvocationTargetException {
@@ -454,8 +562,6 @@ public class CreateLocator {
 
 						out.add(new StepWithTarget(NodeLocatorStep.fromNta(new FNStep(new Property(propName))), parent,
 								astNode));
-
-						extractStepsTo(info, parent, childIndexField, out);
 						return true;
 					}
 					default: {
@@ -551,7 +657,6 @@ public class CreateLocator {
 								new FNStep(new Property(m.getName(), Collections.<PropertyArg>emptyList(), null))),
 						parent, astNode));
 				BenchmarkTimer.CREATE_LOCATOR_NTA_STEP.exit();
-				extractStepsTo(info, parent, childIndexField, out);
 				return true;
 			}
 //			if (m.getpar)
@@ -614,7 +719,6 @@ public class CreateLocator {
 								parent, astNode));
 					}
 					BenchmarkTimer.CREATE_LOCATOR_NTA_STEP.exit();
-					extractStepsTo(info, parent, childIndexField, out);
 					return true;
 
 				}
@@ -624,6 +728,129 @@ public class CreateLocator {
 		return false;
 	}
 
+	/**
+	 * Remembers parts of merged locators while creating locators for many nodes,
+	 * see {@link CreateLocator#fromNodes(AstInfo, List)}.
+	 * <p>
+	 * When merging the steps to a node, each time the merge reaches an ancestor
+	 * without any pending TAL step, the rest of the merge only depends on that
+	 * ancestor and on whether a TAL root has been found below it. The steps
+	 * produced from such an ancestor up to the next one are stored in a
+	 * {@link MergedSegment}, keyed by the ancestor.
+	 */
+	private static class MergeMemo {
+		public final IdentityHashMap<Object, MergedSegment> belowTALRoot = new IdentityHashMap<>();
+		public final IdentityHashMap<Object, MergedSegment> notBelowTALRoot = new IdentityHashMap<>();
+
+		public IdentityHashMap<Object, MergedSegment> get(boolean foundTALRoot) {
+			return foundTALRoot ? belowTALRoot : notBelowTALRoot;
+		}
+	}
+
+	private static class MergedSegment {
+		public final List<StepWithTarget> steps = new ArrayList<>();
+		public MergedSegment rest;
+	}
+
+	/**
+	 * Merge the naive steps to a node, as described in the paper.
+	 *
+	 * @param naive the naive steps, root-first
+	 * @param memo  optional memo of previous merges, to reuse merges of shared
+	 *              ancestors. May be null.
+	 * @return the merged steps, node-first
+	 */
+	private static List<StepWithTarget> mergePaperVersion(AstInfo info, AstNode astNode, List<StepWithTarget> naive,
+			MergeMemo memo) {
+		// Functional, non-optimized version
+		final BiFunction<AstNode, AstNode, Integer> distance = (src, dst) -> {
+			int depth = 0;
+			while (src.underlyingAstNode != dst.underlyingAstNode) {
+				dst = dst.parent();
+				++depth;
+			}
+			return depth;
+		};
+		final BiFunction<AstNode, AstNode, StepWithTarget> createTAL = (src, dst) -> {
+			final Span pos = dst.getRecoveredSpan(info);
+			return new StepWithTarget( //
+					NodeLocatorStep.fromTal(createTALStep(dst, pos.start, pos.end, distance.apply(src, dst),
+							dst.isInsideExternalFile(info))), //
+					src, dst);
+		};
+
+		final BiPredicate<AstNode, AstNode> canUseTal = (src, dst) -> ApplyLocator.isFirstPerfectMatchExpected(info,
+				src.parent(), TypeAtLoc.from(info, dst), distance.apply(src.parent(), dst), src);
+
+		AstNode src = astNode;
+		AstNode dst = astNode;
+		final List<StepWithTarget> ret = new ArrayList<>();
+		MergedSegment segment = null;
+
+		// 'foundTALRoot' differs from naive paper version.
+		// Optimizes performance greatly, especially in a multi-file scenario.
+		// Included to make it behave more like the 'optimized' version.
+		// Remove to simulate paper algorithm.
+		boolean foundTALRoot = astNode.isLocatorTALRoot(info);
+
+		final int endIdx = naive.size() - 1;
+		for (int i = endIdx; i >= 0; --i) {
+			final StepWithTarget swt = naive.get(i);
+			final NodeLocatorStep step = swt.step;
+			if (!foundTALRoot) {
+				foundTALRoot = src.isLocatorTALRoot(info);
+			}
+
+			if (memo != null && src == dst) {
+				final IdentityHashMap<Object, MergedSegment> known = memo.get(foundTALRoot);
+				final MergedSegment prev = known.get(src.underlyingAstNode);
+				if (prev != null) {
+					if (segment != null) {
+						segment.rest = prev;
+					}
+					for (MergedSegment seg = prev; seg != null; seg = seg.rest) {
+						ret.addAll(seg.steps);
+					}
+					return ret;
+				}
+				final MergedSegment fresh = new MergedSegment();
+				if (segment != null) {
+					segment.rest = fresh;
+				}
+				segment = fresh;
+				known.put(src.underlyingAstNode, fresh);
+			}
+
+			if (src != dst && (step.isNta() || foundTALRoot || !canUseTal.test(src, dst))) {
+				final StepWithTarget tal = createTAL.apply(src, dst);
+				ret.add(tal);
+				if (segment != null) {
+					segment.steps.add(tal);
+				}
+				dst = src;
+			}
+
+			if (step.isNta() || foundTALRoot || !canUseTal.test(src, dst)) {
+				ret.add(swt);
+				if (segment != null) {
+					segment.steps.add(swt);
+				}
+				dst = swt.source;
+			} else {
+				// Let it grow
+			}
+			src = swt.source;
+		}
+		if (src != dst) {
+			final StepWithTarget tal = createTAL.apply(src, dst);
+			ret.add(tal);
+			if (segment != null) {
+				segment.steps.add(tal);
+			}
+		}
+		return ret;
+	}
+
 	public static String extractSimpleNames(Type type) {
 		if (type instanceof ParameterizedType) {
 			ParameterizedType pt = (ParameterizedType) type;
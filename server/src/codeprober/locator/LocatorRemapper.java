@@ -0,0 +1,339 @@
+package codeprober.locator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import codeprober.protocol.data.NodeLocator;
+import codeprober.protocol.data.ParsingSource;
+import codeprober.util.Util;
+
+/**
+ * Moves the TAL steps of locators to follow edits in the source text.
+ * <p>
+ * Every locator that the server sends to a client was created for a specific
+ * source text. Those locators are remembered with {@link #remember}, together
+ * with that text and the identity of the source (see {@link #getSourceId}).
+ * If a client later sends back an unchanged locator with an edited text for
+ * the same source, then {@link #remap} finds the edit by diffing the two texts
+ * and shifts all TAL positions after it. The shifted locator usually matches
+ * the new AST exactly, so {@link ApplyLocator} can skip the fuzzy search.
+ * <p>
+ * Plain text sources have no identity, so equal locators for different texts
+ * may still be confused. Callers should only trust a remapped locator if it
+ * matches a node exactly.
+ * <p>
+ * Clients that adjust locators themselves while the user types send locators
+ * that were never remembered, and these are left alone. The same goes for
+ * locators with a position inside the edited text, since there is no reliable
+ * way to know where such a position ends up.
+ */
+public class LocatorRemapper {
+
+	/**
+	 * System property for the max number of locators to remember. 0 disables
+	 * remapping.
+	 */
+	public static final String maxLocatorsKey = "cpr.remapLocatorsLimit";
+
+	private static final int MAX_TEXTS = 8;
+
+	private static LocatorRemapper defaultRemapper;
+
+	public static synchronized LocatorRemapper getDefault() {
+		if (defaultRemapper == null) {
+			defaultRemapper = new LocatorRemapper(Util.getIntProperty(maxLocatorsKey, 1024));
+		}
+		return defaultRemapper;
+	}
+
+	private static class Text {
+		public final String text;
+		public final int[] lineStarts;
+
+		public Text(String text) {
+			this.text = text;
+			final List<Integer> starts = new ArrayList<>();
+			starts.add(0);
+			for (int i = 0; i < text.length(); ++i) {
+				if (text.charAt(i) == '\n') {
+					starts.add(i + 1);
+				}
+			}
+			this.lineStarts = new int[starts.size()];
+			for (int i = 0; i < lineStarts.length; ++i) {
+				lineStarts[i] = starts.get(i);
+			}
+		}
+
+		/**
+		 * Convert an offset to a packed line/column position (see {@link Span}), or -1
+		 * if the column doesn't fit.
+		 */
+		public int toPos(int offset) {
+			int lo = 0;
+			int hi = lineStarts.length - 1;
+			while (lo < hi) {
+				final int mid = (lo + hi + 1) >>> 1;
+				if (lineStarts[mid] <= offset) {
+					lo = mid;
+				} else {
+					hi = mid - 1;
+				}
+			}
+			final int col = offset - lineStarts[lo] + 1;
+			if (col < 0 || col > 0xFFF) {
+				return -1;
+			}
+			return ((lo + 1) << 12) + col;
+		}
+	}
+
+	/**
+	 * A single replacement that turns one text into another. Positions in
+	 * <code>[start, oldEnd)</code> in the old text were replaced by
+	 * <code>[start, newEnd)</code> in the new text. All positions are packed
+	 * line/column values, which compare in the same order as offsets.
+	 */
+	private static class Edit {
+		public final int start;
+		public final int oldEnd;
+		public final int newEnd;
+
+		public Edit(int start, int oldEnd, int newEnd) {
+			this.start = start;
+			this.oldEnd = oldEnd;
+			this.newEnd = newEnd;
+		}
+
+		/**
+		 * Find the smallest single replacement between two texts, or null if it
+		 * cannot be expressed as line/column positions.
+		 */
+		public static Edit diff(Text oldText, Text newText) {
+			final String oldStr = oldText.text;
+			final String newStr = newText.text;
+			final int maxPrefix = Math.min(oldStr.length(), newStr.length());
+			int prefix = 0;
+			while (prefix < maxPrefix && oldStr.charAt(prefix) == newStr.charAt(prefix)) {
+				++prefix;
+			}
+			int suffix = 0;
+			while (suffix < maxPrefix - prefix
+					&& oldStr.charAt(oldStr.length() - 1 - suffix) == newStr.charAt(newStr.length() - 1 - suffix)) {
+				++suffix;
+			}
+			final int start = oldText.toPos(prefix);
+			final int oldEnd = oldText.toPos(oldStr.length() - suffix);
+			final int newEnd = newText.toPos(newStr.length() - suffix);
+			if (start == -1 || oldEnd == -1 || newEnd == -1) {
+				return null;
+			}
+			return new Edit(start, oldEnd, newEnd);
+		}
+	}
+
+	private final int maxLocators;
+	private final Map<String, Long> locatorDigests;
+	private final Map<Long, Text> texts = new LinkedHashMap<Long, Text>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Text> eldest) {
+			return size() > MAX_TEXTS;
+		}
+	};
+
+	public LocatorRemapper(int maxLocators) {
+		this.maxLocators = maxLocators;
+		this.locatorDigests = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > LocatorRemapper.this.maxLocators;
+			}
+		};
+	}
+
+	/**
+	 * Get an identifier for the source that a request refers to, before any
+	 * document reference is resolved. Requests for different documents get
+	 * different identifiers, all plain text sources share the same one.
+	 */
+	public static String getSourceId(ParsingSource requestedSrc) {
+		if (requestedSrc == null) {
+			return null;
+		}
+		switch (requestedSrc.type) {
+		case document:
+			return "document:" + requestedSrc.asDocument().id;
+		case workspacePath:
+			return "workspacePath:" + requestedSrc.asWorkspacePath();
+		default:
+			return requestedSrc.type.name();
+		}
+	}
+
+	private static String createKey(NodeLocator locator, String sourceId) {
+		return sourceId + "\n" + ResolvedLocatorCache.createKey(locator);
+	}
+
+	/**
+	 * Remember that a locator was created for the AST of a text-based source.
+	 *
+	 * @param sourceId identity of the source, see {@link #getSourceId}
+	 * @param src      the source, with document references resolved
+	 */
+	public void remember(NodeLocator locator, String sourceId, ParsingSource src) {
+		if (maxLocators <= 0 || locator == null || src == null || !src.isText()) {
+			return;
+		}
+		final long digest = src.contentDigest;
+		final String key = createKey(locator, sourceId);
+		synchronized (this) {
+			locatorDigests.put(key, digest);
+			if (!texts.containsKey(digest)) {
+				texts.put(digest, new Text(src.asText()));
+			}
+		}
+	}
+
+	/**
+	 * Get a copy of a remembered locator, with its TAL positions shifted to
+	 * match the edit between the text it was created for and <code>src</code>.
+	 * Only locators remembered for the same <code>sourceId</code> are remapped.
+	 *
+	 * @return the shifted locator, or null if the locator isn't known, the text
+	 *         hasn't changed, or the locator cannot be shifted safely.
+	 */
+	public NodeLocator remap(NodeLocator locator, String sourceId, ParsingSource src) {
+		if (maxLocators <= 0 || locator == null || src == null || !src.isText()) {
+			return null;
+		}
+		final long digest = src.contentDigest;
+		final Text oldText;
+		synchronized (this) {
+			final Long oldDigest = locatorDigests.get(createKey(locator, sourceId));
+			if (oldDigest == null || oldDigest == digest) {
+				return null;
+			}
+			oldText = texts.get(oldDigest);
+		}
+		if (oldText == null) {
+			return null;
+		}
+		final Edit edit = Edit.diff(oldText, new Text(src.asText()));
+		if (edit == null) {
+			return null;
+		}
+		final JSONObject json = locator.toJSON();
+		if (!remapLocator(json, edit)) {
+			return null;
+		}
+		return NodeLocator.fromJSON(json);
+	}
+
+	private static boolean remapLocator(JSONObject locator, Edit edit) {
+		if (!remapTal(locator.getJSONObject("result"), edit)) {
+			return false;
+		}
+		final JSONArray steps = locator.getJSONArray("steps");
+		for (int i = 0; i < steps.length(); ++i) {
+			final JSONObject step = steps.getJSONObject(i);
+			switch (step.getString("type")) {
+			case "tal": {
+				if (!remapTal(step.getJSONObject("value"), edit)) {
+					return false;
+				}
+				break;
+			}
+			case "nta": {
+				final JSONArray args = step.getJSONObject("value").getJSONObject("property").optJSONArray("args");
+				if (args != null && !remapArgs(args, edit)) {
+					return false;
+				}
+				break;
+			}
+			default: {
+				break;
+			}
+			}
+		}
+		return true;
+	}
+
+	private static boolean remapArgs(JSONArray args, Edit edit) {
+		for (int i = 0; i < args.length(); ++i) {
+			if (!remapArg(args.getJSONObject(i), edit)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean remapArg(JSONObject arg, Edit edit) {
+		switch (arg.getString("type")) {
+		case "nodeLocator": {
+			final JSONObject loc = arg.getJSONObject("value").optJSONObject("value");
+			return loc == null || remapLocator(loc, edit);
+		}
+		case "collection": {
+			return remapArgs(arg.getJSONObject("value").getJSONArray("entries"), edit);
+		}
+		case "any": {
+			return remapArg(arg.getJSONObject("value"), edit);
+		}
+		default: {
+			return true;
+		}
+		}
+	}
+
+	private static boolean remapTal(JSONObject tal, Edit edit) {
+		if (tal.optBoolean("external", false)) {
+			// Positions in other files are not affected by the edit
+			return true;
+		}
+		final int start = remapPos(tal.getInt("start"), edit);
+		final int end = remapPos(tal.getInt("end"), edit);
+		if (start == -1 || end == -1) {
+			return false;
+		}
+		tal.put("start", start);
+		tal.put("end", end);
+		return true;
+	}
+
+	private static int remapPos(int pos, Edit edit) {
+		if (pos == 0) {
+			// Unknown position
+			return pos;
+		}
+		if (pos < edit.start) {
+			// Text before the edit is unchanged
+			return pos;
+		}
+		if (pos < edit.oldEnd) {
+			// Inside the edited text
+			return -1;
+		}
+		final int line = pos >>> 12;
+		final int col = pos & 0xFFF;
+		final int oldEndLine = edit.oldEnd >>> 12;
+		final int newEndLine = edit.newEnd >>> 12;
+		if (line > oldEndLine) {
+			return ((line + newEndLine - oldEndLine) << 12) + col;
+		}
+		// Same line as the end of the edit, the column moves too
+		final int newCol = col - (edit.oldEnd & 0xFFF) + (edit.newEnd & 0xFFF);
+		if (newCol > 0xFFF) {
+			return -1;
+		}
+		return (newEndLine << 12) + newCol;
+	}
+}
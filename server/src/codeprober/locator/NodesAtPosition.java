@@ -13,13 +13,14 @@ import codeprober.protocol.data.NodeLocator;
 public class NodesAtPosition {
 
 	public static List<NodeLocator> get(AstInfo info, AstNode astNode, int pos) {
-		List<NodeLocator> ret = new ArrayList<>();
+		List<AstNode> ret = new ArrayList<>();
 		getTo(ret, info, astNode, pos);
 		Collections.reverse(ret); // Narrowest/smallest node first in the list
-		return ret;
+		// The nodes share most of their ancestors, so create the locators together
+		return CreateLocator.fromNodes(info, ret);
 	}
 
-	private static void getTo(List<NodeLocator> out, AstInfo info, AstNode astNode, int pos) {
+	private static void getTo(List<AstNode> out, AstInfo info, AstNode astNode, int pos) {
 		final Span nodePos;
 		try {
 			nodePos = astNode.getRecoveredSpan(info);
@@ -40,7 +41,7 @@ public class NodesAtPosition {
 
 			final Boolean override = astNode.showInNodeList(info);
 			if (override != null ? override : show) {
-				out.add(CreateLocator.fromNode(info, astNode));
+				out.add(astNode);
 			}
 		}
 		if (astNode == info.ast) {
@@ -0,0 +1,108 @@
+package codeprober.locator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import codeprober.protocol.PositionRecoveryStrategy;
+import codeprober.protocol.data.NodeLocator;
+import codeprober.util.Util;
+
+/**
+ * Remembers which node each {@link NodeLocator} resolved to, so that
+ * {@link ApplyLocator} doesn't have to run all steps of a locator again when it
+ * is resolved repeatedly, e.g when the same probe is refreshed.
+ * <p>
+ * An instance belongs to a single AST, and the entries are only valid while the
+ * AST is unchanged. Whenever the tree cache of the AST is flushed,
+ * {@link #invalidate()} must be called.
+ */
+public class ResolvedLocatorCache {
+
+	/**
+	 * System property for the max number of resolved locators to remember per
+	 * AST. 0 disables the cache.
+	 */
+	public static final String maxEntriesKey = "cpr.resolvedLocatorCacheSize";
+
+	public static class Entry {
+		public final Object node;
+		public final Span pos;
+		private NodeLocator resultLocator;
+
+		public Entry(Object node, Span pos, NodeLocator resultLocator) {
+			this.node = node;
+			this.pos = pos;
+			this.resultLocator = resultLocator;
+		}
+
+		public synchronized NodeLocator getResultLocator() {
+			return resultLocator;
+		}
+
+		public synchronized void setResultLocator(NodeLocator resultLocator) {
+			this.resultLocator = resultLocator;
+		}
+	}
+
+	private final int maxEntries;
+	private final Map<String, Entry> entries;
+
+	public ResolvedLocatorCache() {
+		this(Util.getIntProperty(maxEntriesKey, 1024));
+	}
+
+	public ResolvedLocatorCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > ResolvedLocatorCache.this.maxEntries;
+			}
+		};
+	}
+
+	public boolean isEnabled() {
+		return maxEntries > 0;
+	}
+
+	/**
+	 * Get the key to use for a locator. Locators with the same steps and result
+	 * get the same key, regardless of where they came from.
+	 */
+	public static String createKey(NodeLocator locator) {
+		return locator.toJSON().toString();
+	}
+
+	/**
+	 * Get the key to use for a locator resolved with the given position recovery
+	 * strategy. The cache is shared by all requests for an AST, and requests may
+	 * use different strategies, which can make the same locator resolve to
+	 * different nodes.
+	 */
+	public static String createKey(NodeLocator locator, PositionRecoveryStrategy recoveryStrategy) {
+		return recoveryStrategy + ":" + createKey(locator);
+	}
+
+	public synchronized Entry get(String key) {
+		return entries.get(key);
+	}
+
+	public synchronized void put(String key, Entry entry) {
+		if (maxEntries > 0) {
+			entries.put(key, entry);
+		}
+	}
+
+	/**
+	 * Forget all entries.
+	 */
+	public synchronized void invalidate() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+}
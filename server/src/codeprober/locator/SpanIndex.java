@@ -0,0 +1,238 @@
+package codeprober.locator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import codeprober.AstInfo;
+import codeprober.ast.AstNode;
+import codeprober.metaprogramming.InvokeProblem;
+import codeprober.metaprogramming.TypeIdentifier;
+
+/**
+ * An index over the recovered spans of all nodes in an AST, used by
+ * {@link ApplyLocator} to resolve TAL steps without searching through the AST.
+ * <p>
+ * Nodes are numbered in pre-order, so the subtree of a node is a contiguous
+ * range of ids. For each span, the ids of all nodes with exactly that span are
+ * kept in a sorted array. Finding the first node with a given span below some
+ * node is therefore a binary search, followed by a scan over the nodes that
+ * share the span.
+ * <p>
+ * Lookups give the same results as the recursive searches in ApplyLocator,
+ * including for nodes that the searches would never reach because an ancestor
+ * span doesn't contain the target span. Nodes whose span cannot be computed
+ * are left out of the index, along with their subtrees.
+ */
+public class SpanIndex {
+
+	/**
+	 * Decides whether a search enters a node with the given span.
+	 */
+	public static interface SpanFilter {
+		boolean canEnter(int nodeStart, int nodeEnd);
+	}
+
+	private final IdentityHashMap<Object, Integer> ids;
+	private final AstNode[] nodes;
+	private final int[] starts;
+	private final int[] ends;
+	private final int[] depths;
+	private final int[] parents;
+	private final int[] subtreeEnds;
+	private final Map<Long, int[]> idsBySpan;
+
+	private SpanIndex(IdentityHashMap<Object, Integer> ids, AstNode[] nodes, int[] starts, int[] ends, int[] depths,
+			int[] parents, int[] subtreeEnds) {
+		this.ids = ids;
+		this.nodes = nodes;
+		this.starts = starts;
+		this.ends = ends;
+		this.depths = depths;
+		this.parents = parents;
+		this.subtreeEnds = subtreeEnds;
+
+		final Map<Long, List<Integer>> grouped = new HashMap<>();
+		for (int id = 0; id < nodes.length; ++id) {
+			grouped.computeIfAbsent(spanKey(starts[id], ends[id]), k -> new ArrayList<>()).add(id);
+		}
+		idsBySpan = new HashMap<>(grouped.size() * 2);
+		for (Map.Entry<Long, List<Integer>> ent : grouped.entrySet()) {
+			final List<Integer> list = ent.getValue();
+			final int[] arr = new int[list.size()];
+			for (int i = 0; i < arr.length; ++i) {
+				arr[i] = list.get(i);
+			}
+			// Ids were added in increasing order, so no need to sort
+			idsBySpan.put(ent.getKey(), arr);
+		}
+	}
+
+	private static long spanKey(int start, int end) {
+		return ((long) start << 32) | (end & 0xFFFF_FFFFL);
+	}
+
+	private static class Frame {
+		public final AstNode node;
+		public final int id;
+		public final int numChildren;
+		public int nextChild;
+
+		public Frame(AstNode node, int id, int numChildren) {
+			this.node = node;
+			this.id = id;
+			this.numChildren = numChildren;
+		}
+	}
+
+	/**
+	 * Index all nodes in <code>info.ast</code>.
+	 *
+	 * @return the index, or null if the AST cannot be indexed, e.g because
+	 *         traversing it failed or because the same node appears in multiple
+	 *         places.
+	 */
+	public static SpanIndex build(AstInfo info) {
+		final IdentityHashMap<Object, Integer> ids = new IdentityHashMap<>();
+		final List<AstNode> nodes = new ArrayList<>();
+		int[] starts = new int[64];
+		int[] ends = new int[64];
+		int[] depths = new int[64];
+		int[] parents = new int[64];
+		int[] subtreeEnds = new int[64];
+
+		try {
+			final Span rootSpan = info.ast.getRecoveredSpan(info);
+			final ArrayDeque<Frame> stack = new ArrayDeque<>();
+			AstNode next = info.ast;
+			Span nextSpan = rootSpan;
+			int nextParent = -1;
+			while (true) {
+				if (next != null) {
+					final int id = nodes.size();
+					if (ids.put(next.underlyingAstNode, id) != null) {
+						// Not a tree, spans alone cannot tell the occurrences apart
+						return null;
+					}
+					nodes.add(next);
+					if (id == starts.length) {
+						final int newLen = starts.length * 2;
+						starts = Arrays.copyOf(starts, newLen);
+						ends = Arrays.copyOf(ends, newLen);
+						depths = Arrays.copyOf(depths, newLen);
+						parents = Arrays.copyOf(parents, newLen);
+						subtreeEnds = Arrays.copyOf(subtreeEnds, newLen);
+					}
+					starts[id] = nextSpan.start;
+					ends[id] = nextSpan.end;
+					depths[id] = nextParent == -1 ? 0 : (depths[nextParent] + 1);
+					parents[id] = nextParent;
+					stack.push(new Frame(next, id, next.getNumChildren(info)));
+					next = null;
+				}
+				final Frame top = stack.peek();
+				if (top == null) {
+					break;
+				}
+				if (top.nextChild >= top.numChildren) {
+					subtreeEnds[top.id] = nodes.size();
+					stack.pop();
+					continue;
+				}
+				final AstNode child = top.node.getNthChild(info, top.nextChild++);
+				try {
+					nextSpan = child.getRecoveredSpan(info);
+				} catch (InvokeProblem e) {
+					// The searches in ApplyLocator skip these subtrees too
+					continue;
+				}
+				next = child;
+				nextParent = top.id;
+			}
+		} catch (RuntimeException e) {
+			System.out.println("Failed building span index, falling back to searching the AST");
+			e.printStackTrace();
+			return null;
+		}
+		final int len = nodes.size();
+		return new SpanIndex(ids, nodes.toArray(new AstNode[len]), Arrays.copyOf(starts, len),
+				Arrays.copyOf(ends, len), Arrays.copyOf(depths, len), Arrays.copyOf(parents, len),
+				Arrays.copyOf(subtreeEnds, len));
+	}
+
+	/**
+	 * Get the id of a node, or -1 if it isn't in the index.
+	 */
+	public int getId(AstNode node) {
+		final Integer id = ids.get(node.underlyingAstNode);
+		return id != null ? id : -1;
+	}
+
+	public AstNode getNode(int id) {
+		return nodes[id];
+	}
+
+	/**
+	 * Find the first node, in pre-order, that is <code>depth</code> levels below
+	 * <code>srcId</code> (or is <code>srcId</code> itself if depth is 0), has
+	 * exactly the given span and matches <code>typeIdentifier</code>. Only nodes
+	 * that can be reached from <code>srcId</code> according to
+	 * <code>filter</code> are considered.
+	 *
+	 * @return the id of the found node, or -1 if there is no such node
+	 */
+	public int findFirstExact(int srcId, TypeIdentifier typeIdentifier, int start, int end, int depth,
+			SpanFilter filter) {
+		final int[] candidates = idsBySpan.get(spanKey(start, end));
+		if (candidates == null || depth < 0) {
+			return -1;
+		}
+		final int targetDepth = depths[srcId] + depth;
+		final int limit = subtreeEnds[srcId];
+		int pos = Arrays.binarySearch(candidates, srcId);
+		if (pos < 0) {
+			pos = -(pos + 1);
+		}
+		for (; pos < candidates.length && candidates[pos] < limit; ++pos) {
+			final int id = candidates[pos];
+			if (depths[id] == targetDepth && isReachable(srcId, id, filter)
+					&& typeIdentifier.matchesDesiredType(nodes[id])) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Check whether <code>id</code> is in the subtree of <code>srcId</code>, and a
+	 * search from <code>srcId</code> enters all nodes on the way there, not
+	 * counting <code>id</code> itself.
+	 */
+	public boolean isReachable(int srcId, int id, SpanFilter filter) {
+		if (id == srcId) {
+			return true;
+		}
+		if (id < srcId || id >= subtreeEnds[srcId]) {
+			return false;
+		}
+		for (int parent = parents[id];; parent = parents[parent]) {
+			if (!filter.canEnter(starts[parent], ends[parent])) {
+				return false;
+			}
+			if (parent == srcId) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Get how many levels below <code>srcId</code> that <code>id</code> is.
+	 */
+	public int getRelativeDepth(int srcId, int id) {
+		return depths[id] - depths[srcId];
+	}
+}
@@ -0,0 +1,57 @@
+package codeprober.locator;
+
+import codeprober.AstInfo;
+import codeprober.protocol.PositionRecoveryStrategy;
+import codeprober.util.Util;
+
+/**
+ * Holds the {@link SpanIndex} of an AST, so that it can be shared by all
+ * requests that use the AST instead of being rebuilt for each of them.
+ * <p>
+ * Like {@link ResolvedLocatorCache}, an instance belongs to a single AST, and
+ * {@link #invalidate()} must be called whenever the tree cache of the AST is
+ * flushed.
+ */
+public class SpanIndexCache {
+
+	private final int minLookups = Util.getIntProperty(AstInfo.spanIndexMinLookupsKey, 8);
+	private int lookups;
+	private boolean built;
+	// Spans in the index depend on how positions are recovered
+	private PositionRecoveryStrategy builtFor;
+	private SpanIndex index;
+
+	/**
+	 * Get the index for the AST in <code>info</code>, building it if it has been
+	 * asked for as many times as configured by
+	 * {@link AstInfo#spanIndexMinLookupsKey}.
+	 *
+	 * @return the index, or null if it isn't built (yet), or if the AST cannot be
+	 *         indexed
+	 */
+	public synchronized SpanIndex get(AstInfo info) {
+		if (!built || builtFor != info.recoveryStrategy) {
+			if (minLookups < 0 || ++lookups < minLookups) {
+				return null;
+			}
+			built = true;
+			builtFor = info.recoveryStrategy;
+			index = SpanIndex.build(info);
+		}
+		return index;
+	}
+
+	/**
+	 * Forget the index, and start counting lookups from zero again.
+	 */
+	public synchronized void invalidate() {
+		lookups = 0;
+		built = false;
+		builtFor = null;
+		index = null;
+	}
+
+	public synchronized boolean isBuilt() {
+		return built;
+	}
+}
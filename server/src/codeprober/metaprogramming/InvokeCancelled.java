@@ -0,0 +1,15 @@
+package codeprober.metaprogramming;
+
+/**
+ * Thrown by {@link Reflect} when the current thread has been asked to stop
+ * what it is doing, see {@link Reflect#requestCancellation(Thread)}.
+ * Intentionally not an {@link InvokeProblem}, since those are often caught and
+ * ignored.
+ */
+@SuppressWarnings("serial")
+public class InvokeCancelled extends RuntimeException {
+
+	public InvokeCancelled() {
+		super("Job cancelled");
+	}
+}
@@ -1,9 +1,15 @@
 package codeprober.metaprogramming;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Reflect {
 
@@ -14,15 +20,255 @@ public class Reflect {
 		}
 	};
 
+	private static final Set<Thread> cancelledThreads = ConcurrentHashMap.newKeySet();
+
+	// Fast path for the (very common) case where nothing is cancelled
+	private static volatile boolean anyCancelled;
+
+	/**
+	 * Ask a thread to stop invoking methods. The next time the thread calls
+	 * invoke0/invokeN, {@link InvokeCancelled} is thrown. The thread remains
+	 * cancelled until {@link #clearCancellation(Thread)} is called.
+	 * <p>
+	 * This cannot stop a thread that is stuck inside a single invocation. Use
+	 * {@link Thread#interrupt()} as well for tools that react to interrupts.
+	 */
+	public static void requestCancellation(Thread thread) {
+		synchronized (cancelledThreads) {
+			cancelledThreads.add(thread);
+			anyCancelled = true;
+		}
+	}
+
+	public static void clearCancellation(Thread thread) {
+		synchronized (cancelledThreads) {
+			cancelledThreads.remove(thread);
+			anyCancelled = !cancelledThreads.isEmpty();
+		}
+	}
+
+	public static boolean isCancellationRequested() {
+		return anyCancelled && cancelledThreads.contains(Thread.currentThread());
+	}
+
+	private static void checkCancellation() {
+		if (isCancellationRequested()) {
+			throw new InvokeCancelled();
+		}
+	}
+
+	/**
+	 * System property for the accessor cache used by
+	 * {@link #invoke0(Object, String)} and
+	 * {@link #invokeN(Object, String, Class[], Object[])}. Set to "false" to look
+	 * up the method on every invocation instead.
+	 */
+	public static final String accessorCacheKey = "cpr.reflectAccessorCache";
+
+	private static final boolean accessorCacheEnabled = !"false".equals(System.getProperty(accessorCacheKey));
+
+	/**
+	 * A method that has been looked up for a class, along with a method handle for
+	 * calling it. Calling the handle skips the access checks that
+	 * {@link Method#invoke} does each time. Methods that the handle cannot be used
+	 * for (static and varargs methods, or arguments that would need conversion)
+	 * are called reflectively like before.
+	 */
+	private static class Accessor {
+		public final Method method;
+		public final MethodHandle handle;
+		public final Class<?>[] paramTypes;
+		public final Class<?>[] boxedParamTypes;
+		public final boolean returnsVoid;
+		public final Throwable lookupProblem;
+
+		/**
+		 * @param numArgs the number of arguments for invokeN, or -1 for invoke0.
+		 */
+		public Accessor(Method method, int numArgs) {
+			this.method = method;
+			this.handle = createHandle(method, numArgs);
+			this.paramTypes = method.getParameterTypes();
+			this.boxedParamTypes = new Class<?>[paramTypes.length];
+			for (int i = 0; i < paramTypes.length; ++i) {
+				boxedParamTypes[i] = paramTypes[i].isPrimitive() ? boxPrimitive(paramTypes[i]) : paramTypes[i];
+			}
+			this.returnsVoid = method.getReturnType() == Void.TYPE;
+			this.lookupProblem = null;
+		}
+
+		public Accessor(Throwable lookupProblem) {
+			this.method = null;
+			this.handle = null;
+			this.paramTypes = null;
+			this.boxedParamTypes = null;
+			this.returnsVoid = false;
+			this.lookupProblem = lookupProblem;
+		}
+
+		private static MethodHandle createHandle(Method method, int numArgs) {
+			if (method.isVarArgs() || Modifier.isStatic(method.getModifiers())
+					|| method.getParameterCount() != Math.max(numArgs, 0)) {
+				return null;
+			}
+			try {
+				method.setAccessible(true);
+				final MethodHandle handle = MethodHandles.lookup().unreflect(method);
+				if (numArgs == -1) {
+					return handle.asType(MethodType.methodType(Object.class, Object.class));
+				}
+				return handle.asSpreader(Object[].class, numArgs)
+						.asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+			} catch (IllegalAccessException | RuntimeException e) {
+				// Fall back to reflective calls
+				return null;
+			}
+		}
+
+		private boolean acceptsWithoutConversion(Object[] argValues) {
+			if (argValues == null || argValues.length != boxedParamTypes.length) {
+				return false;
+			}
+			for (int i = 0; i < argValues.length; ++i) {
+				final Object arg = argValues[i];
+				if (arg == null ? paramTypes[i].isPrimitive() : !boxedParamTypes[i].isInstance(arg)) {
+					// Let Method.invoke do the conversion, or report the problem
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public Object invoke0(Object astNode) {
+			if (method == null) {
+				throw new InvokeProblem(lookupProblem);
+			}
+			if (handle == null) {
+				return Reflect.invoke0(astNode, method);
+			}
+			checkCancellation();
+			final Object val;
+			try {
+				val = (Object) handle.invokeExact(astNode);
+			} catch (Throwable e) {
+				// Same wrapping as Method.invoke
+				throw new InvokeProblem(new InvocationTargetException(e));
+			}
+			return returnsVoid ? VOID_RETURN_VALUE : val;
+		}
+
+		public Object invokeN(Object astNode, Object[] argValues) {
+			if (method == null) {
+				throw new InvokeProblem(lookupProblem);
+			}
+			if (handle == null || !acceptsWithoutConversion(argValues)) {
+				return Reflect.invokeN(astNode, method, argValues);
+			}
+			checkCancellation();
+			final Object val;
+			try {
+				val = (Object) handle.invokeExact(astNode, argValues);
+			} catch (Throwable e) {
+				throw new InvokeProblem(new InvocationTargetException(e));
+			}
+			return returnsVoid ? VOID_RETURN_VALUE : val;
+		}
+	}
+
+	private static class Signature {
+		public final String name;
+		public final Class<?>[] argTypes;
+		private final int hash;
+
+		public Signature(String name, Class<?>[] argTypes) {
+			this.name = name;
+			this.argTypes = argTypes;
+			this.hash = name.hashCode() * 31 + Arrays.hashCode(argTypes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Signature)) {
+				return false;
+			}
+			final Signature other = (Signature) obj;
+			return name.equals(other.name) && Arrays.equals(argTypes, other.argTypes);
+		}
+	}
+
+	private static class ClassAccessors {
+		public final int generation;
+		public final ConcurrentHashMap<String, Accessor> zeroArg = new ConcurrentHashMap<>();
+		public final ConcurrentHashMap<Signature, Accessor> nArg = new ConcurrentHashMap<>();
+
+		public ClassAccessors(int generation) {
+			this.generation = generation;
+		}
+	}
+
+	private static volatile int accessorGeneration;
+
+	// ClassValue ties the entries to the lifetime of each class, so they don't keep
+	// classes from old tool class loaders alive.
+	private static final ClassValue<AtomicReference<ClassAccessors>> accessors = //
+			new ClassValue<AtomicReference<ClassAccessors>>() {
+				@Override
+				protected AtomicReference<ClassAccessors> computeValue(Class<?> type) {
+					return new AtomicReference<>();
+				}
+			};
+
+	private static ClassAccessors getAccessors(Class<?> clazz) {
+		final AtomicReference<ClassAccessors> ref = accessors.get(clazz);
+		final int generation = accessorGeneration;
+		final ClassAccessors existing = ref.get();
+		if (existing != null && existing.generation == generation) {
+			return existing;
+		}
+		final ClassAccessors fresh = new ClassAccessors(generation);
+		ref.set(fresh);
+		return fresh;
+	}
+
+	/**
+	 * Forget all looked up methods. Called whenever the tool is (re)loaded
+	 * through a new class loader.
+	 */
+	public static synchronized void invalidateAccessorCache() {
+		++accessorGeneration;
+	}
+
 	public static Object getParent(Object astNode) {
 		return Reflect.invoke0(astNode, "getParent");
 	}
 
 	public static Object invokeN(Object astNode, String mth, Class<?>[] argTypes, Object[] argValues) {
-		return invokeN(astNode, findCompatibleMethod(astNode.getClass(), mth, argTypes), argValues);
+		if (!accessorCacheEnabled) {
+			return invokeN(astNode, findCompatibleMethod(astNode.getClass(), mth, argTypes), argValues);
+		}
+		final Class<?> clazz = astNode.getClass();
+		final Class<?>[] types = argTypes != null ? argTypes : new Class<?>[0];
+		final ConcurrentHashMap<Signature, Accessor> cache = getAccessors(clazz).nArg;
+		Accessor accessor = cache.get(new Signature(mth, types));
+		if (accessor == null) {
+			try {
+				accessor = new Accessor(findCompatibleMethod(clazz, mth, types), types.length);
+			} catch (InvokeProblem e) {
+				accessor = new Accessor(e.getCause());
+			}
+			// Copy the types, the caller may reuse the array
+			cache.put(new Signature(mth, types.clone()), accessor);
+		}
+		return accessor.invokeN(astNode, argValues);
 	}
 
 	public static Object invokeN(Object astNode, Method m, Object[] argValues) {
+		checkCancellation();
 		try {
 			m.setAccessible(true);
 
@@ -140,10 +386,24 @@ public class Reflect {
 	}
 
 	public static Object invoke0(Object astNode, String mth) {
-		return invoke0(astNode, findMostAccessibleMethod(astNode, mth));
+		if (!accessorCacheEnabled || astNode == null) {
+			return invoke0(astNode, findMostAccessibleMethod(astNode, mth));
+		}
+		final ConcurrentHashMap<String, Accessor> cache = getAccessors(astNode.getClass()).zeroArg;
+		Accessor accessor = cache.get(mth);
+		if (accessor == null) {
+			try {
+				accessor = new Accessor(findMostAccessibleMethod(astNode, mth), -1);
+			} catch (InvokeProblem e) {
+				accessor = new Accessor(e.getCause());
+			}
+			cache.put(mth, accessor);
+		}
+		return accessor.invoke0(astNode);
 	}
 
 	public static Object invoke0(Object astNode, Method mth) {
+		checkCancellation();
 		try {
 			mth.setAccessible(true);
 
@@ -13,6 +13,27 @@ import codeprober.protocol.data.RpcBodyLine;
 
 public abstract class StdIoInterceptor {
 
+	/**
+	 * The stream installed as System.out/err by {@link StdIoInterceptor#install()}.
+	 */
+	private static class InstalledStream extends PrintStream {
+		public final StreamInterceptor src;
+
+		public InstalledStream(StreamInterceptor src) {
+			super(src, true);
+			this.src = src;
+		}
+	}
+
+	// Interceptors may be installed and restored by several threads at once, e.g
+	// when a worker process runs multiple tool instances. Restoring is then not
+	// necessarily done in the reverse order of installing. An interceptor that is
+	// restored while another one is installed on top of it is detached instead,
+	// and removed from System.out/err once everything above it is restored.
+	private static final Object installLock = new Object();
+
+	private final boolean autoPrintLinesToPrev;
+	private final OtherThreadDataHandling otherThreadHandling;
 	private StreamInterceptor out;
 	private StreamInterceptor err;
 
@@ -25,20 +46,8 @@ public abstract class StdIoInterceptor {
 	}
 
 	public StdIoInterceptor(boolean autoPrintLinesToPrev, OtherThreadDataHandling otherThreadHandling) {
-		out = new StreamInterceptor(System.out, autoPrintLinesToPrev, otherThreadHandling) {
-
-			@Override
-			protected void onLine(String line) {
-				StdIoInterceptor.this.onLine(true, line);
-			}
-		};
-		err = new StreamInterceptor(System.err, autoPrintLinesToPrev, otherThreadHandling) {
-
-			@Override
-			protected void onLine(String line) {
-				StdIoInterceptor.this.onLine(false, line);
-			}
-		};
+		this.autoPrintLinesToPrev = autoPrintLinesToPrev;
+		this.otherThreadHandling = otherThreadHandling;
 	}
 
 	public static String tag = "";
@@ -48,8 +57,24 @@ public abstract class StdIoInterceptor {
 	public void install() {
 		CodeProber.flog("++intercept " + tag +", count: " + installCount.incrementAndGet());
 
-		System.setOut(new PrintStream(out, true));
-		System.setErr(new PrintStream(err, true));
+		synchronized (installLock) {
+			out = new StreamInterceptor(System.out, autoPrintLinesToPrev, otherThreadHandling) {
+
+				@Override
+				protected void onLine(String line) {
+					StdIoInterceptor.this.onLine(true, line);
+				}
+			};
+			err = new StreamInterceptor(System.err, autoPrintLinesToPrev, otherThreadHandling) {
+
+				@Override
+				protected void onLine(String line) {
+					StdIoInterceptor.this.onLine(false, line);
+				}
+			};
+			System.setOut(new InstalledStream(out));
+			System.setErr(new InstalledStream(err));
+		}
 	}
 
 	public void flush() {
@@ -59,8 +84,16 @@ public abstract class StdIoInterceptor {
 
 	public void restore() {
 		CodeProber.flog("--intercept " + tag +", count: " + installCount.decrementAndGet());
-		System.setOut(out.getPrev());
-		System.setErr(err.getPrev());
+		synchronized (installLock) {
+			out.detach();
+			err.detach();
+			while (System.out instanceof InstalledStream && ((InstalledStream) System.out).src.isDetached()) {
+				System.setOut(((InstalledStream) System.out).src.getPrev());
+			}
+			while (System.err instanceof InstalledStream && ((InstalledStream) System.err).src.isDetached()) {
+				System.setErr(((InstalledStream) System.err).src.getPrev());
+			}
+		}
 	}
 
 	public abstract void onLine(boolean stdout, String line);
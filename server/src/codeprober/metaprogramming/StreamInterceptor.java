@@ -43,6 +43,8 @@ public abstract class StreamInterceptor extends PrintStream {
 
 		private final OtherThreadDataHandling otherThreadHandling;
 
+		private volatile boolean detached;
+
 		public StreamInterceptorImpl(PrintStream prev, boolean autoPrintLinesToPrev,
 				OtherThreadDataHandling otherThreadHandling) {
 			this.prev = prev;
@@ -52,6 +54,10 @@ public abstract class StreamInterceptor extends PrintStream {
 
 		@Override
 		public void write(int b) throws IOException {
+			if (detached) {
+				prev.write(b);
+				return;
+			}
 			switch (otherThreadHandling) {
 			case WRITE_TO_PREV: // Fall through
 			default: {
@@ -150,5 +156,18 @@ public abstract class StreamInterceptor extends PrintStream {
 		return dst.prev;
 	}
 
+	/**
+	 * Stop intercepting. All data written after this, from any thread, is
+	 * forwarded to the previous stream.
+	 */
+	public void detach() {
+		super.flush();
+		dst.detached = true;
+	}
+
+	public boolean isDetached() {
+		return dst.detached;
+	}
+
 	protected abstract void onLine(String line);
 }
@@ -1,7 +1,9 @@
 package codeprober.protocol;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 public interface BinaryInputStream {
 	int readInt() throws IOException;
@@ -37,4 +39,54 @@ public interface BinaryInputStream {
 			return dis.readUTF();
 		}
 	}
+
+	/**
+	 * Reads data written by {@link BinaryOutputStream.ByteArrayWrapper}.
+	 */
+	public static class ByteArrayWrapper implements BinaryInputStream {
+
+		private final byte[] data;
+		private int pos;
+
+		public ByteArrayWrapper(byte[] data) {
+			this.data = data;
+		}
+
+		private void require(int numBytes) throws EOFException {
+			if (numBytes < 0 || pos + numBytes > data.length) {
+				throw new EOFException();
+			}
+		}
+
+		@Override
+		public int readInt() throws IOException {
+			require(4);
+			final int ret = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16)
+					| ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+			pos += 4;
+			return ret;
+		}
+
+		@Override
+		public long readLong() throws IOException {
+			final long hi = readInt() & 0xFFFFFFFFL;
+			final long lo = readInt() & 0xFFFFFFFFL;
+			return (hi << 32) | lo;
+		}
+
+		@Override
+		public boolean readBoolean() throws IOException {
+			require(1);
+			return data[pos++] != 0;
+		}
+
+		@Override
+		public String readUTF() throws IOException {
+			final int len = readInt();
+			require(len);
+			final String ret = new String(data, pos, len, StandardCharsets.UTF_8);
+			pos += len;
+			return ret;
+		}
+	}
 }
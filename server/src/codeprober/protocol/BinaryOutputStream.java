@@ -1,7 +1,9 @@
 package codeprober.protocol;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 public interface BinaryOutputStream {
 	void writeInt(int v) throws IOException;
@@ -37,4 +39,41 @@ public interface BinaryOutputStream {
 			this.dos.writeUTF(v);
 		}
 	}
+
+	/**
+	 * Writes to an in-memory buffer. Unlike {@link DataOutputStreamWrapper},
+	 * strings are not limited to 64KB. Read with
+	 * {@link BinaryInputStream.ByteArrayWrapper}.
+	 */
+	public static class ByteArrayWrapper implements BinaryOutputStream {
+
+		private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		private final DataOutputStream dos = new DataOutputStream(baos);
+
+		@Override
+		public void writeInt(int v) throws IOException {
+			dos.writeInt(v);
+		}
+
+		@Override
+		public void writeLong(long v) throws IOException {
+			dos.writeLong(v);
+		}
+
+		@Override
+		public void writeBoolean(boolean v) throws IOException {
+			dos.writeBoolean(v);
+		}
+
+		@Override
+		public void writeUTF(String v) throws IOException {
+			final byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+			dos.writeInt(bytes.length);
+			dos.write(bytes);
+		}
+
+		public byte[] toByteArray() {
+			return baos.toByteArray();
+		}
+	}
 }
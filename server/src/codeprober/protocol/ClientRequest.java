@@ -6,12 +6,18 @@ import java.util.function.Consumer;
 import org.json.JSONObject;
 
 import codeprober.protocol.data.AsyncRpcUpdate;
+import codeprober.requesthandler.DocumentStore;
 import codeprober.server.WorkspacePathFilteringUpdateListener;
 
 public class ClientRequest {
 
 	public final JSONObject data;
 	private final Consumer<AsyncRpcUpdate> asyncResponseConsumer;
+
+	/**
+	 * Whether the client connection is still alive. Shared by all requests on the
+	 * same connection, so this also serves as the identity of the connection.
+	 */
 	public final AtomicBoolean connectionIsAlive;
 	public final Consumer<String> onDidUpdateWorkspacePath;
 
@@ -28,6 +34,13 @@ public class ClientRequest {
 		this(data, asyncResponseConsumer, connectionIsAlive, listener::onWorkspacePathChanged);
 	}
 
+	/**
+	 * Get the documents that the client has synced over this connection.
+	 */
+	public DocumentStore getDocuments() {
+		return DocumentStore.forConnection(connectionIsAlive);
+	}
+
 	public void sendAsyncResponse(AsyncRpcUpdate message) {
 		asyncResponseConsumer.accept(message);
 	}
@@ -0,0 +1,39 @@
+package codeprober.protocol;
+
+/**
+ * Scheduling class of a job in concurrent mode. When all workers are busy,
+ * queued jobs of a higher priority class are started before jobs of a lower
+ * class. See {@link codeprober.ConcurrentJobQueue}.
+ */
+public enum JobPriority {
+
+	/**
+	 * Requests that a user is actively waiting for, e.g hovers, completions and
+	 * probe evaluations.
+	 */
+	INTERACTIVE,
+
+	/**
+	 * Large batches of requests, e.g running all tests or checking all text
+	 * probes in a file.
+	 */
+	BULK,
+
+	/**
+	 * Work that nobody is waiting for yet, e.g warming caches ahead of time.
+	 */
+	BACKGROUND;
+
+	public static JobPriority fallbackParse(String paramValue) {
+		try {
+			return JobPriority.valueOf(paramValue);
+		} catch (IllegalArgumentException e) {
+			System.out.println("Got invalid job priority: " + paramValue);
+			return INTERACTIVE;
+		}
+	}
+
+	public static JobPriority parseFromJson(String string) {
+		return fallbackParse(string);
+	}
+}
@@ -5,6 +5,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -38,10 +39,63 @@ public class EncodeResponseValue {
 
 	private static final RpcBodyLine nullLine = RpcBodyLine.fromPlain("null");
 
-	public static boolean shouldExpandListNodes = true;
+	// Per thread, like the merge method in CreateLocator
+	private static final ThreadLocal<Boolean> shouldExpandListNodes = ThreadLocal.withInitial(() -> true);
 
+	/**
+	 * Set whether list nodes encoded by the current thread are expanded into their
+	 * children.
+	 */
+	public static void setShouldExpandListNodes(boolean expand) {
+		shouldExpandListNodes.set(expand);
+	}
+
+	public static boolean getShouldExpandListNodes() {
+		return shouldExpandListNodes.get();
+	}
+
+	/**
+	 * Create locators for all AST nodes in a collection at once, which is much
+	 * faster than one by one if the nodes share ancestors. The locators end up in
+	 * the locator cache of <code>info</code>, where encoding the individual
+	 * entries finds them.
+	 */
+	private static void prepareLocators(AstInfo info, Collection<?> values) {
+		if (values.size() < 2 || info.getLocatorCache() == null
+				|| CreateLocator.getMergeMethod() != CreateLocator.LocatorMergeMethod.DEFAULT_METHOD) {
+			return;
+		}
+		final List<AstNode> nodes = new ArrayList<>();
+		for (Object o : values) {
+			final AstNode node;
+			if (o instanceof AstNode) {
+				node = (AstNode) o;
+			} else if (info.baseAstClazz.isInstance(o)) {
+				node = new AstNode(o);
+			} else {
+				continue;
+			}
+			// Nodes with cpr_getOutput are encoded as something else, no locator needed
+			if (!info.hasOverride0(node.underlyingAstNode.getClass(), "cpr_getOutput")) {
+				nodes.add(node);
+			}
+		}
+		if (nodes.size() >= 2) {
+			CreateLocator.fromNodes(info, nodes);
+		}
+	}
+
+	/**
+	 * Encode a value into <code>out</code>. Locators created for nodes in the value
+	 * are cached while encoding, see {@link AstInfo#getLocatorCache()}.
+	 */
 	public static void encodeTyped(AstInfo info, List<RpcBodyLine> out, List<Diagnostic> diagnostics, Object value,
 			HashSet<Object> alreadyVisitedNodes) {
+		info.runWithLocatorCache(() -> encodeValue(info, out, diagnostics, value, alreadyVisitedNodes));
+	}
+
+	private static void encodeValue(AstInfo info, List<RpcBodyLine> out, List<Diagnostic> diagnostics, Object value,
+			HashSet<Object> alreadyVisitedNodes) {
 		if (value == null) {
 			out.add(nullLine);
 			return;
@@ -110,7 +164,7 @@ public class EncodeResponseValue {
 				try {
 					Object preferredView = Reflect.invoke0(node.underlyingAstNode, "cpr_getOutput");
 					alreadyVisitedNodes.add(node.underlyingAstNode);
-					encodeTyped(info, out, diagnostics, preferredView, alreadyVisitedNodes);
+					encodeValue(info, out, diagnostics, preferredView, alreadyVisitedNodes);
 					return;
 				} catch (InvokeProblem e) {
 					// Fall down to default view
@@ -123,7 +177,7 @@ public class EncodeResponseValue {
 					out.add(RpcBodyLine.fromNode(locator));
 
 					out.add(RpcBodyLine.fromPlain("\n"));
-					if (shouldExpandListNodes && node.isList() && !alreadyVisitedNodes.contains(node.underlyingAstNode)) {
+					if (shouldExpandListNodes.get() && node.isList() && !alreadyVisitedNodes.contains(node.underlyingAstNode)) {
 						final int numEntries = node.getNumChildren(info);
 						out.add(RpcBodyLine.fromPlain(""));
 						if (numEntries == 0) {
@@ -132,7 +186,7 @@ public class EncodeResponseValue {
 							alreadyVisitedNodes.add(node.underlyingAstNode);
 							out.add(RpcBodyLine.fromPlain("List contents [" + numEntries + "]:"));
 							for (AstNode child : node.getChildren(info)) {
-								encodeTyped(info, out, diagnostics, child, alreadyVisitedNodes);
+								encodeValue(info, out, diagnostics, child, alreadyVisitedNodes);
 							}
 						}
 						return;
@@ -159,7 +213,7 @@ public class EncodeResponseValue {
 				try {
 					Object preferredView = Reflect.invoke0(value, "cpr_getOutput");
 					alreadyVisitedNodes.add(value);
-					encodeTyped(info, out, diagnostics, preferredView, alreadyVisitedNodes);
+					encodeValue(info, out, diagnostics, preferredView, alreadyVisitedNodes);
 					return;
 				} catch (InvokeProblem e) {
 					// Fall down to default view
@@ -174,10 +228,13 @@ public class EncodeResponseValue {
 			}
 			alreadyVisitedNodes.add(value);
 
+			if (value instanceof Collection<?>) {
+				prepareLocators(info, (Collection<?>) value);
+			}
 			List<RpcBodyLine> indent = new ArrayList<>();
 			Iterable<?> iter = (Iterable<?>) value;
 			for (Object o : iter) {
-				encodeTyped(info, indent, diagnostics, o, alreadyVisitedNodes);
+				encodeValue(info, indent, diagnostics, o, alreadyVisitedNodes);
 			}
 			if (shouldSortSetAndMapContents && indent.size() > 1) {
 				// Cheating a bit here. Checking "instanceof Set" is good, checking if the name
@@ -209,7 +266,7 @@ public class EncodeResponseValue {
 			final List<RpcBodyLine> indent = new ArrayList<>();
 			Iterator<?> iter = (Iterator<?>) value;
 			while (iter.hasNext()) {
-				encodeTyped(info, indent, diagnostics, iter.next(), alreadyVisitedNodes);
+				encodeValue(info, indent, diagnostics, iter.next(), alreadyVisitedNodes);
 			}
 			out.add(RpcBodyLine.fromArr(indent));
 			return;
@@ -227,9 +284,9 @@ public class EncodeResponseValue {
 				// encodeTyped(info, indent, diagnostics, o, alreadyVisitedNodes);
 				// Version 2: Encode key/value separately
 				final List<RpcBodyLine> indenterer = new ArrayList<>();
-				encodeTyped(info, indenterer, diagnostics, o.getKey(), alreadyVisitedNodes);
+				encodeValue(info, indenterer, diagnostics, o.getKey(), alreadyVisitedNodes);
 				indenterer.add(RpcBodyLine.fromPlain(" = "));
-				encodeTyped(info, indenterer, diagnostics, o.getValue(), alreadyVisitedNodes);
+				encodeValue(info, indenterer, diagnostics, o.getValue(), alreadyVisitedNodes);
 				indent.add(RpcBodyLine.fromArr(indenterer));
 			}
 			if (indent.size() > 1) {
@@ -248,7 +305,7 @@ public class EncodeResponseValue {
 
 			final List<RpcBodyLine> indent = new ArrayList<>();
 			for (Object child : (Object[]) value) {
-				encodeTyped(info, indent, diagnostics, child, alreadyVisitedNodes);
+				encodeValue(info, indent, diagnostics, child, alreadyVisitedNodes);
 			}
 			out.add(RpcBodyLine.fromArr(indent));
 			return;
@@ -6,13 +6,23 @@ public class AsyncRequestReq implements codeprober.util.JsonUtil.ToJsonable {
   public final String type;
   public final org.json.JSONObject src;
   public final Long job;
-  public AsyncRequestReq(org.json.JSONObject src) {
-    this(src, (Long)null);
+  public final codeprober.protocol.JobPriority priority;
+  public final String supersedes;
+  public AsyncRequestReq(org.json.JSONObject src, Long job, codeprober.protocol.JobPriority priority) {
+    this(src, job, priority, (String)null);
   }
   public AsyncRequestReq(org.json.JSONObject src, Long job) {
+    this(src, job, (codeprober.protocol.JobPriority)null, (String)null);
+  }
+  public AsyncRequestReq(org.json.JSONObject src) {
+    this(src, (Long)null, (codeprober.protocol.JobPriority)null, (String)null);
+  }
+  public AsyncRequestReq(org.json.JSONObject src, Long job, codeprober.protocol.JobPriority priority, String supersedes) {
     this.type = "AsyncRequest";
     this.src = src;
     this.job = job;
+    this.priority = priority;
+    this.supersedes = supersedes;
   }
   public AsyncRequestReq(java.io.DataInputStream src) throws java.io.IOException {
     this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
@@ -21,6 +31,8 @@ public class AsyncRequestReq implements codeprober.util.JsonUtil.ToJsonable {
     this.type = "AsyncRequest";
     this.src = new org.json.JSONObject(src.readUTF());
     this.job = src.readBoolean() ? src.readLong() : null;
+    this.priority = src.readBoolean() ? codeprober.protocol.JobPriority.values()[src.readInt()] : null;
+    this.supersedes = src.readBoolean() ? src.readUTF() : null;
   }
 
   public static AsyncRequestReq fromJSON(JSONObject obj) {
@@ -28,6 +40,8 @@ public class AsyncRequestReq implements codeprober.util.JsonUtil.ToJsonable {
     return new AsyncRequestReq(
       obj.getJSONObject("src")
     , obj.has("job") ? (obj.getLong("job")) : null
+    , obj.has("priority") ? (codeprober.protocol.JobPriority.parseFromJson(obj.getString("priority"))) : null
+    , obj.has("supersedes") ? (obj.getString("supersedes")) : null
     );
   }
   public JSONObject toJSON() {
@@ -35,6 +49,8 @@ public class AsyncRequestReq implements codeprober.util.JsonUtil.ToJsonable {
     _ret.put("type", type);
     _ret.put("src", src);
     if (job != null) _ret.put("job", job);
+    if (priority != null) _ret.put("priority", priority.name());
+    if (supersedes != null) _ret.put("supersedes", supersedes);
     return _ret;
   }
   public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
@@ -44,5 +60,7 @@ public class AsyncRequestReq implements codeprober.util.JsonUtil.ToJsonable {
     
     dst.writeUTF(src.toString());
     if (job != null) { dst.writeBoolean(true); dst.writeLong(job);; } else { dst.writeBoolean(false); }
+    if (priority != null) { dst.writeBoolean(true); dst.writeInt(priority.ordinal());; } else { dst.writeBoolean(false); }
+    if (supersedes != null) { dst.writeBoolean(true); dst.writeUTF(supersedes);; } else { dst.writeBoolean(false); }
   }
 }
@@ -9,6 +9,7 @@ public class AsyncRpcUpdateValue implements codeprober.util.JsonUtil.ToJsonable
     status,
     workerStackTrace,
     workerStatuses,
+    workerQueueDepths,
     workerTaskDone,
   }
   private static final Type[] typeValues = Type.values();
@@ -34,6 +35,9 @@ public class AsyncRpcUpdateValue implements codeprober.util.JsonUtil.ToJsonable
     case workerStatuses:
         this.value = codeprober.util.JsonUtil.<String>readDataArr(src, () -> src.readUTF());
         break;
+    case workerQueueDepths:
+        this.value = new WorkerQueueDepths(src);
+        break;
     case workerTaskDone:
     default:
         this.value = new WorkerTaskDone(src);
@@ -43,6 +47,7 @@ public class AsyncRpcUpdateValue implements codeprober.util.JsonUtil.ToJsonable
   public static AsyncRpcUpdateValue fromStatus(String val) { return new AsyncRpcUpdateValue(Type.status, val); }
   public static AsyncRpcUpdateValue fromWorkerStackTrace(java.util.List<String> val) { return new AsyncRpcUpdateValue(Type.workerStackTrace, val); }
   public static AsyncRpcUpdateValue fromWorkerStatuses(java.util.List<String> val) { return new AsyncRpcUpdateValue(Type.workerStatuses, val); }
+  public static AsyncRpcUpdateValue fromWorkerQueueDepths(WorkerQueueDepths val) { return new AsyncRpcUpdateValue(Type.workerQueueDepths, val); }
   public static AsyncRpcUpdateValue fromWorkerTaskDone(WorkerTaskDone val) { return new AsyncRpcUpdateValue(Type.workerTaskDone, val); }
 
   public boolean isStatus() { return type == Type.status; }
@@ -51,6 +56,8 @@ public class AsyncRpcUpdateValue implements codeprober.util.JsonUtil.ToJsonable
   public java.util.List<String> asWorkerStackTrace() { if (type != Type.workerStackTrace) { throw new IllegalStateException("This AsyncRpcUpdateValue is not of type workerStackTrace, it is '" + type + "'"); } return (java.util.List<String>)value; }
   public boolean isWorkerStatuses() { return type == Type.workerStatuses; }
   public java.util.List<String> asWorkerStatuses() { if (type != Type.workerStatuses) { throw new IllegalStateException("This AsyncRpcUpdateValue is not of type workerStatuses, it is '" + type + "'"); } return (java.util.List<String>)value; }
+  public boolean isWorkerQueueDepths() { return type == Type.workerQueueDepths; }
+  public WorkerQueueDepths asWorkerQueueDepths() { if (type != Type.workerQueueDepths) { throw new IllegalStateException("This AsyncRpcUpdateValue is not of type workerQueueDepths, it is '" + type + "'"); } return (WorkerQueueDepths)value; }
   public boolean isWorkerTaskDone() { return type == Type.workerTaskDone; }
   public WorkerTaskDone asWorkerTaskDone() { if (type != Type.workerTaskDone) { throw new IllegalStateException("This AsyncRpcUpdateValue is not of type workerTaskDone, it is '" + type + "'"); } return (WorkerTaskDone)value; }
 
@@ -80,6 +87,13 @@ public class AsyncRpcUpdateValue implements codeprober.util.JsonUtil.ToJsonable
       } catch (org.json.JSONException e) {
         throw new org.json.JSONException("Not a valid AsyncRpcUpdateValue", e);
       }
+    case workerQueueDepths:
+      try {
+        final WorkerQueueDepths val = WorkerQueueDepths.fromJSON(obj.getJSONObject("value"));
+        return fromWorkerQueueDepths(val);
+      } catch (org.json.JSONException e) {
+        throw new org.json.JSONException("Not a valid AsyncRpcUpdateValue", e);
+      }
     case workerTaskDone:
     default:
       try {
@@ -103,6 +117,9 @@ public class AsyncRpcUpdateValue implements codeprober.util.JsonUtil.ToJsonable
     case workerStatuses:
       ret.put("value", new org.json.JSONArray(((java.util.List<String>)value)));
       break;
+    case workerQueueDepths:
+      ret.put("value", ((WorkerQueueDepths)value).toJSON());
+      break;
     case workerTaskDone:
     default:
       ret.put("value", ((WorkerTaskDone)value).toJSON());
@@ -125,6 +142,9 @@ public class AsyncRpcUpdateValue implements codeprober.util.JsonUtil.ToJsonable
     case workerStatuses:
       codeprober.util.JsonUtil.<String>writeDataArr(dst, ((java.util.List<String>)value), ent2 -> dst.writeUTF(ent2));
       break;
+    case workerQueueDepths:
+      ((WorkerQueueDepths)value).writeTo(dst);
+      break;
     case workerTaskDone:
     default:
       ((WorkerTaskDone)value).writeTo(dst);
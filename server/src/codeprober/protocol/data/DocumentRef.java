@@ -0,0 +1,39 @@
+package codeprober.protocol.data;
+
+import org.json.JSONObject;
+
+public class DocumentRef implements codeprober.util.JsonUtil.ToJsonable {
+  public final String id;
+  public final int version;
+  public DocumentRef(String id, int version) {
+    this.id = id;
+    this.version = version;
+  }
+  public DocumentRef(java.io.DataInputStream src) throws java.io.IOException {
+    this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
+  }
+  public DocumentRef(codeprober.protocol.BinaryInputStream src) throws java.io.IOException {
+    this.id = src.readUTF();
+    this.version = src.readInt();
+  }
+
+  public static DocumentRef fromJSON(JSONObject obj) {
+    return new DocumentRef(
+      obj.getString("id")
+    , obj.getInt("version")
+    );
+  }
+  public JSONObject toJSON() {
+    JSONObject _ret = new JSONObject();
+    _ret.put("id", id);
+    _ret.put("version", version);
+    return _ret;
+  }
+  public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
+    writeTo(new codeprober.protocol.BinaryOutputStream.DataOutputStreamWrapper(dst));
+  }
+  public void writeTo(codeprober.protocol.BinaryOutputStream dst) throws java.io.IOException {
+    dst.writeUTF(id);
+    dst.writeInt(version);
+  }
+}
@@ -14,25 +14,33 @@ public class EvaluatePropertyReq implements codeprober.util.JsonUtil.ToJsonable
   public final Boolean captureTraces;
   public final Boolean flushBeforeTraceCollection;
   public final Boolean flattenForTextProbes;
+  public final codeprober.protocol.JobPriority priority;
+  public final String supersedes;
+  public EvaluatePropertyReq(ParsingRequestData src, NodeLocator locator, Property property, boolean captureStdout, Long job, String jobLabel, Boolean skipResultLocator, Boolean captureTraces, Boolean flushBeforeTraceCollection, Boolean flattenForTextProbes, codeprober.protocol.JobPriority priority) {
+    this(src, locator, property, captureStdout, job, jobLabel, skipResultLocator, captureTraces, flushBeforeTraceCollection, flattenForTextProbes, priority, (String)null);
+  }
+  public EvaluatePropertyReq(ParsingRequestData src, NodeLocator locator, Property property, boolean captureStdout, Long job, String jobLabel, Boolean skipResultLocator, Boolean captureTraces, Boolean flushBeforeTraceCollection, Boolean flattenForTextProbes) {
+    this(src, locator, property, captureStdout, job, jobLabel, skipResultLocator, captureTraces, flushBeforeTraceCollection, flattenForTextProbes, (codeprober.protocol.JobPriority)null, (String)null);
+  }
   public EvaluatePropertyReq(ParsingRequestData src, NodeLocator locator, Property property, boolean captureStdout, Long job, String jobLabel, Boolean skipResultLocator, Boolean captureTraces, Boolean flushBeforeTraceCollection) {
-    this(src, locator, property, captureStdout, job, jobLabel, skipResultLocator, captureTraces, flushBeforeTraceCollection, (Boolean)null);
+    this(src, locator, property, captureStdout, job, jobLabel, skipResultLocator, captureTraces, flushBeforeTraceCollection, (Boolean)null, (codeprober.protocol.JobPriority)null, (String)null);
   }
   public EvaluatePropertyReq(ParsingRequestData src, NodeLocator locator, Property property, boolean captureStdout, Long job, String jobLabel, Boolean skipResultLocator, Boolean captureTraces) {
-    this(src, locator, property, captureStdout, job, jobLabel, skipResultLocator, captureTraces, (Boolean)null, (Boolean)null);
+    this(src, locator, property, captureStdout, job, jobLabel, skipResultLocator, captureTraces, (Boolean)null, (Boolean)null, (codeprober.protocol.JobPriority)null, (String)null);
   }
   public EvaluatePropertyReq(ParsingRequestData src, NodeLocator locator, Property property, boolean captureStdout, Long job, String jobLabel, Boolean skipResultLocator) {
-    this(src, locator, property, captureStdout, job, jobLabel, skipResultLocator, (Boolean)null, (Boolean)null, (Boolean)null);
+    this(src, locator, property, captureStdout, job, jobLabel, skipResultLocator, (Boolean)null, (Boolean)null, (Boolean)null, (codeprober.protocol.JobPriority)null, (String)null);
   }
   public EvaluatePropertyReq(ParsingRequestData src, NodeLocator locator, Property property, boolean captureStdout, Long job, String jobLabel) {
-    this(src, locator, property, captureStdout, job, jobLabel, (Boolean)null, (Boolean)null, (Boolean)null, (Boolean)null);
+    this(src, locator, property, captureStdout, job, jobLabel, (Boolean)null, (Boolean)null, (Boolean)null, (Boolean)null, (codeprober.protocol.JobPriority)null, (String)null);
   }
   public EvaluatePropertyReq(ParsingRequestData src, NodeLocator locator, Property property, boolean captureStdout, Long job) {
-    this(src, locator, property, captureStdout, job, (String)null, (Boolean)null, (Boolean)null, (Boolean)null, (Boolean)null);
+    this(src, locator, property, captureStdout, job, (String)null, (Boolean)null, (Boolean)null, (Boolean)null, (Boolean)null, (codeprober.protocol.JobPriority)null, (String)null);
   }
   public EvaluatePropertyReq(ParsingRequestData src, NodeLocator locator, Property property, boolean captureStdout) {
-    this(src, locator, property, captureStdout, (Long)null, (String)null, (Boolean)null, (Boolean)null, (Boolean)null, (Boolean)null);
+    this(src, locator, property, captureStdout, (Long)null, (String)null, (Boolean)null, (Boolean)null, (Boolean)null, (Boolean)null, (codeprober.protocol.JobPriority)null, (String)null);
   }
-  public EvaluatePropertyReq(ParsingRequestData src, NodeLocator locator, Property property, boolean captureStdout, Long job, String jobLabel, Boolean skipResultLocator, Boolean captureTraces, Boolean flushBeforeTraceCollection, Boolean flattenForTextProbes) {
+  public EvaluatePropertyReq(ParsingRequestData src, NodeLocator locator, Property property, boolean captureStdout, Long job, String jobLabel, Boolean skipResultLocator, Boolean captureTraces, Boolean flushBeforeTraceCollection, Boolean flattenForTextProbes, codeprober.protocol.JobPriority priority, String supersedes) {
     this.type = "EvaluateProperty";
     this.src = src;
     this.locator = locator;
@@ -44,6 +52,8 @@ public class EvaluatePropertyReq implements codeprober.util.JsonUtil.ToJsonable
     this.captureTraces = captureTraces;
     this.flushBeforeTraceCollection = flushBeforeTraceCollection;
     this.flattenForTextProbes = flattenForTextProbes;
+    this.priority = priority;
+    this.supersedes = supersedes;
   }
   public EvaluatePropertyReq(java.io.DataInputStream src) throws java.io.IOException {
     this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
@@ -60,6 +70,8 @@ public class EvaluatePropertyReq implements codeprober.util.JsonUtil.ToJsonable
     this.captureTraces = src.readBoolean() ? src.readBoolean() : null;
     this.flushBeforeTraceCollection = src.readBoolean() ? src.readBoolean() : null;
     this.flattenForTextProbes = src.readBoolean() ? src.readBoolean() : null;
+    this.priority = src.readBoolean() ? codeprober.protocol.JobPriority.values()[src.readInt()] : null;
+    this.supersedes = src.readBoolean() ? src.readUTF() : null;
   }
 
   public static EvaluatePropertyReq fromJSON(JSONObject obj) {
@@ -75,6 +87,8 @@ public class EvaluatePropertyReq implements codeprober.util.JsonUtil.ToJsonable
     , obj.has("captureTraces") ? (obj.getBoolean("captureTraces")) : null
     , obj.has("flushBeforeTraceCollection") ? (obj.getBoolean("flushBeforeTraceCollection")) : null
     , obj.has("flattenForTextProbes") ? (obj.getBoolean("flattenForTextProbes")) : null
+    , obj.has("priority") ? (codeprober.protocol.JobPriority.parseFromJson(obj.getString("priority"))) : null
+    , obj.has("supersedes") ? (obj.getString("supersedes")) : null
     );
   }
   public JSONObject toJSON() {
@@ -90,6 +104,8 @@ public class EvaluatePropertyReq implements codeprober.util.JsonUtil.ToJsonable
     if (captureTraces != null) _ret.put("captureTraces", captureTraces);
     if (flushBeforeTraceCollection != null) _ret.put("flushBeforeTraceCollection", flushBeforeTraceCollection);
     if (flattenForTextProbes != null) _ret.put("flattenForTextProbes", flattenForTextProbes);
+    if (priority != null) _ret.put("priority", priority.name());
+    if (supersedes != null) _ret.put("supersedes", supersedes);
     return _ret;
   }
   public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
@@ -107,5 +123,7 @@ public class EvaluatePropertyReq implements codeprober.util.JsonUtil.ToJsonable
     if (captureTraces != null) { dst.writeBoolean(true); dst.writeBoolean(captureTraces);; } else { dst.writeBoolean(false); }
     if (flushBeforeTraceCollection != null) { dst.writeBoolean(true); dst.writeBoolean(flushBeforeTraceCollection);; } else { dst.writeBoolean(false); }
     if (flattenForTextProbes != null) { dst.writeBoolean(true); dst.writeBoolean(flattenForTextProbes);; } else { dst.writeBoolean(false); }
+    if (priority != null) { dst.writeBoolean(true); dst.writeInt(priority.ordinal());; } else { dst.writeBoolean(false); }
+    if (supersedes != null) { dst.writeBoolean(true); dst.writeUTF(supersedes);; } else { dst.writeBoolean(false); }
   }
 }
@@ -4,24 +4,32 @@ import org.json.JSONObject;
 
 public class GetWorkerStatusReq implements codeprober.util.JsonUtil.ToJsonable {
   public final String type;
+  public final Integer instance;
   public GetWorkerStatusReq() {
+    this((Integer)null);
+  }
+  public GetWorkerStatusReq(Integer instance) {
     this.type = "Concurrent:GetWorkerStatus";
+    this.instance = instance;
   }
   public GetWorkerStatusReq(java.io.DataInputStream src) throws java.io.IOException {
     this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
   }
   public GetWorkerStatusReq(codeprober.protocol.BinaryInputStream src) throws java.io.IOException {
     this.type = "Concurrent:GetWorkerStatus";
+    this.instance = src.readBoolean() ? src.readInt() : null;
   }
 
   public static GetWorkerStatusReq fromJSON(JSONObject obj) {
     codeprober.util.JsonUtil.requireString(obj.getString("type"), "Concurrent:GetWorkerStatus");
     return new GetWorkerStatusReq(
+      obj.has("instance") ? (obj.getInt("instance")) : null
     );
   }
   public JSONObject toJSON() {
     JSONObject _ret = new JSONObject();
     _ret.put("type", type);
+    if (instance != null) _ret.put("instance", instance);
     return _ret;
   }
   public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
@@ -29,5 +37,6 @@ public class GetWorkerStatusReq implements codeprober.util.JsonUtil.ToJsonable {
   }
   public void writeTo(codeprober.protocol.BinaryOutputStream dst) throws java.io.IOException {
     
+    if (instance != null) { dst.writeBoolean(true); dst.writeInt(instance);; } else { dst.writeBoolean(false); }
   }
 }
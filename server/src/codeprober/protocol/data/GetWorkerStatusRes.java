@@ -4,24 +4,56 @@ import org.json.JSONObject;
 
 public class GetWorkerStatusRes implements codeprober.util.JsonUtil.ToJsonable {
   public final java.util.List<String> stackTrace;
+  public final Long heapUsedBytes;
+  public final Long heapLiveBytes;
+  public final Long heapMaxBytes;
+  public final Long gcTimeMillis;
+  public GetWorkerStatusRes(java.util.List<String> stackTrace, Long heapUsedBytes, Long heapLiveBytes, Long heapMaxBytes) {
+    this(stackTrace, heapUsedBytes, heapLiveBytes, heapMaxBytes, (Long)null);
+  }
+  public GetWorkerStatusRes(java.util.List<String> stackTrace, Long heapUsedBytes, Long heapLiveBytes) {
+    this(stackTrace, heapUsedBytes, heapLiveBytes, (Long)null, (Long)null);
+  }
+  public GetWorkerStatusRes(java.util.List<String> stackTrace, Long heapUsedBytes) {
+    this(stackTrace, heapUsedBytes, (Long)null, (Long)null, (Long)null);
+  }
   public GetWorkerStatusRes(java.util.List<String> stackTrace) {
+    this(stackTrace, (Long)null, (Long)null, (Long)null, (Long)null);
+  }
+  public GetWorkerStatusRes(java.util.List<String> stackTrace, Long heapUsedBytes, Long heapLiveBytes, Long heapMaxBytes, Long gcTimeMillis) {
     this.stackTrace = stackTrace;
+    this.heapUsedBytes = heapUsedBytes;
+    this.heapLiveBytes = heapLiveBytes;
+    this.heapMaxBytes = heapMaxBytes;
+    this.gcTimeMillis = gcTimeMillis;
   }
   public GetWorkerStatusRes(java.io.DataInputStream src) throws java.io.IOException {
     this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
   }
   public GetWorkerStatusRes(codeprober.protocol.BinaryInputStream src) throws java.io.IOException {
     this.stackTrace = codeprober.util.JsonUtil.<String>readDataArr(src, () -> src.readUTF());
+    this.heapUsedBytes = src.readBoolean() ? src.readLong() : null;
+    this.heapLiveBytes = src.readBoolean() ? src.readLong() : null;
+    this.heapMaxBytes = src.readBoolean() ? src.readLong() : null;
+    this.gcTimeMillis = src.readBoolean() ? src.readLong() : null;
   }
 
   public static GetWorkerStatusRes fromJSON(JSONObject obj) {
     return new GetWorkerStatusRes(
       codeprober.util.JsonUtil.<String>mapArr(obj.getJSONArray("stackTrace"), (arr1, idx1) -> arr1.getString(idx1))
+    , obj.has("heapUsedBytes") ? (obj.getLong("heapUsedBytes")) : null
+    , obj.has("heapLiveBytes") ? (obj.getLong("heapLiveBytes")) : null
+    , obj.has("heapMaxBytes") ? (obj.getLong("heapMaxBytes")) : null
+    , obj.has("gcTimeMillis") ? (obj.getLong("gcTimeMillis")) : null
     );
   }
   public JSONObject toJSON() {
     JSONObject _ret = new JSONObject();
     _ret.put("stackTrace", new org.json.JSONArray(stackTrace));
+    if (heapUsedBytes != null) _ret.put("heapUsedBytes", heapUsedBytes);
+    if (heapLiveBytes != null) _ret.put("heapLiveBytes", heapLiveBytes);
+    if (heapMaxBytes != null) _ret.put("heapMaxBytes", heapMaxBytes);
+    if (gcTimeMillis != null) _ret.put("gcTimeMillis", gcTimeMillis);
     return _ret;
   }
   public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
@@ -29,5 +61,9 @@ public class GetWorkerStatusRes implements codeprober.util.JsonUtil.ToJsonable {
   }
   public void writeTo(codeprober.protocol.BinaryOutputStream dst) throws java.io.IOException {
     codeprober.util.JsonUtil.<String>writeDataArr(dst, stackTrace, ent1 -> dst.writeUTF(ent1));
+    if (heapUsedBytes != null) { dst.writeBoolean(true); dst.writeLong(heapUsedBytes);; } else { dst.writeBoolean(false); }
+    if (heapLiveBytes != null) { dst.writeBoolean(true); dst.writeLong(heapLiveBytes);; } else { dst.writeBoolean(false); }
+    if (heapMaxBytes != null) { dst.writeBoolean(true); dst.writeLong(heapMaxBytes);; } else { dst.writeBoolean(false); }
+    if (gcTimeMillis != null) { dst.writeBoolean(true); dst.writeLong(gcTimeMillis);; } else { dst.writeBoolean(false); }
   }
 }
@@ -7,14 +7,18 @@ public class ParsingSource implements codeprober.util.JsonUtil.ToJsonable {
   public static enum Type {
     text,
     workspacePath,
+    document,
   }
   private static final Type[] typeValues = Type.values();
 
   public final Type type;
   public final Object value;
+  /** Digest of the value if it is a String, otherwise 0. Computed once, on creation/decoding. */
+  public final long contentDigest;
   private ParsingSource(Type type, Object value) {
     this.type = type;
     this.value = value;
+    this.contentDigest = value instanceof String ? codeprober.util.ContentDigest.of((String) value) : 0L;
   }
   public ParsingSource(java.io.DataInputStream src) throws java.io.IOException {
     this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
@@ -26,18 +30,25 @@ public class ParsingSource implements codeprober.util.JsonUtil.ToJsonable {
         this.value = src.readUTF();
         break;
     case workspacePath:
-    default:
         this.value = src.readUTF();
         break;
+    case document:
+    default:
+        this.value = new DocumentRef(src);
+        break;
     }
+    this.contentDigest = this.value instanceof String ? codeprober.util.ContentDigest.of((String) this.value) : 0L;
   }
   public static ParsingSource fromText(String val) { return new ParsingSource(Type.text, val); }
   public static ParsingSource fromWorkspacePath(String val) { return new ParsingSource(Type.workspacePath, val); }
+  public static ParsingSource fromDocument(DocumentRef val) { return new ParsingSource(Type.document, val); }
 
   public boolean isText() { return type == Type.text; }
   public String asText() { if (type != Type.text) { throw new IllegalStateException("This ParsingSource is not of type text, it is '" + type + "'"); } return (String)value; }
   public boolean isWorkspacePath() { return type == Type.workspacePath; }
   public String asWorkspacePath() { if (type != Type.workspacePath) { throw new IllegalStateException("This ParsingSource is not of type workspacePath, it is '" + type + "'"); } return (String)value; }
+  public boolean isDocument() { return type == Type.document; }
+  public DocumentRef asDocument() { if (type != Type.document) { throw new IllegalStateException("This ParsingSource is not of type document, it is '" + type + "'"); } return (DocumentRef)value; }
 
   public static ParsingSource fromJSON(JSONObject obj) {
     final Type type;
@@ -52,13 +63,20 @@ public class ParsingSource implements codeprober.util.JsonUtil.ToJsonable {
         throw new org.json.JSONException("Not a valid ParsingSource", e);
       }
     case workspacePath:
-    default:
       try {
         final String val = obj.getString("value");
         return fromWorkspacePath(val);
       } catch (org.json.JSONException e) {
         throw new org.json.JSONException("Not a valid ParsingSource", e);
       }
+    case document:
+    default:
+      try {
+        final DocumentRef val = DocumentRef.fromJSON(obj.getJSONObject("value"));
+        return fromDocument(val);
+      } catch (org.json.JSONException e) {
+        throw new org.json.JSONException("Not a valid ParsingSource", e);
+      }
     }
   }
 
@@ -69,9 +87,12 @@ public class ParsingSource implements codeprober.util.JsonUtil.ToJsonable {
       ret.put("value", ((String)value));
       break;
     case workspacePath:
-    default:
       ret.put("value", ((String)value));
       break;
+    case document:
+    default:
+      ret.put("value", ((DocumentRef)value).toJSON());
+      break;
     }
     return ret;
   }
@@ -85,9 +106,12 @@ public class ParsingSource implements codeprober.util.JsonUtil.ToJsonable {
       dst.writeUTF(((String)value));
       break;
     case workspacePath:
-    default:
       dst.writeUTF(((String)value));
       break;
+    case document:
+    default:
+      ((DocumentRef)value).writeTo(dst);
+      break;
     }
   }
 }
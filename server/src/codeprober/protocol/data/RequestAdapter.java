@@ -26,6 +26,9 @@ public abstract class RequestAdapter {
       case "ListTreeDownwards": {
         return handleListTree(ListTreeReq.fromJSON(request)).toJSON();
       }
+      case "ResolveLocators": {
+        return handleResolveLocators(ResolveLocatorsReq.fromJSON(request)).toJSON();
+      }
       case "Test:ListTestSuites": {
         return handleListTestSuites(ListTestSuitesReq.fromJSON(request)).toJSON();
       }
@@ -50,6 +53,9 @@ public abstract class RequestAdapter {
       case "BlessFile": {
         return handleBlessFile(BlessFileReq.fromJSON(request)).toJSON();
       }
+      case "SyncDocument": {
+        return handleSyncDocument(SyncDocumentReq.fromJSON(request)).toJSON();
+      }
       case "GetWorkspaceFile": {
         return handleGetWorkspaceFile(GetWorkspaceFileReq.fromJSON(request)).toJSON();
       }
@@ -95,6 +101,9 @@ public abstract class RequestAdapter {
       case "Concurrent:SubmitTask": {
         return handleSubmitWorkerTask(SubmitWorkerTaskReq.fromJSON(request)).toJSON();
       }
+      case "Concurrent:ResetInstance": {
+        return handleResetWorkerInstance(ResetWorkerInstanceReq.fromJSON(request)).toJSON();
+      }
       case "AsyncRequest": {
         return handleAsyncRequest(AsyncRequestReq.fromJSON(request)).toJSON();
       }
@@ -122,6 +131,10 @@ public abstract class RequestAdapter {
     throw new JSONException("Request ListTree is not implemented");
   }
 
+  protected ResolveLocatorsRes handleResolveLocators(ResolveLocatorsReq req) {
+    throw new JSONException("Request ResolveLocators is not implemented");
+  }
+
   protected ListTestSuitesRes handleListTestSuites(ListTestSuitesReq req) {
     throw new JSONException("Request ListTestSuites is not implemented");
   }
@@ -154,6 +167,10 @@ public abstract class RequestAdapter {
     throw new JSONException("Request BlessFile is not implemented");
   }
 
+  protected SyncDocumentRes handleSyncDocument(SyncDocumentReq req) {
+    throw new JSONException("Request SyncDocument is not implemented");
+  }
+
   protected GetWorkspaceFileRes handleGetWorkspaceFile(GetWorkspaceFileReq req) {
     throw new JSONException("Request GetWorkspaceFile is not implemented");
   }
@@ -214,6 +231,10 @@ public abstract class RequestAdapter {
     throw new JSONException("Request SubmitWorkerTask is not implemented");
   }
 
+  protected ResetWorkerInstanceRes handleResetWorkerInstance(ResetWorkerInstanceReq req) {
+    throw new JSONException("Request ResetWorkerInstance is not implemented");
+  }
+
   protected AsyncRequestRes handleAsyncRequest(AsyncRequestReq req) {
     throw new JSONException("Request AsyncRequest is not implemented");
   }
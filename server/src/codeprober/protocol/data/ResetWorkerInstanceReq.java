@@ -0,0 +1,39 @@
+package codeprober.protocol.data;
+
+import org.json.JSONObject;
+
+public class ResetWorkerInstanceReq implements codeprober.util.JsonUtil.ToJsonable {
+  public final String type;
+  public final int instance;
+  public ResetWorkerInstanceReq(int instance) {
+    this.type = "Concurrent:ResetInstance";
+    this.instance = instance;
+  }
+  public ResetWorkerInstanceReq(java.io.DataInputStream src) throws java.io.IOException {
+    this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
+  }
+  public ResetWorkerInstanceReq(codeprober.protocol.BinaryInputStream src) throws java.io.IOException {
+    this.type = "Concurrent:ResetInstance";
+    this.instance = src.readInt();
+  }
+
+  public static ResetWorkerInstanceReq fromJSON(JSONObject obj) {
+    codeprober.util.JsonUtil.requireString(obj.getString("type"), "Concurrent:ResetInstance");
+    return new ResetWorkerInstanceReq(
+      obj.getInt("instance")
+    );
+  }
+  public JSONObject toJSON() {
+    JSONObject _ret = new JSONObject();
+    _ret.put("type", type);
+    _ret.put("instance", instance);
+    return _ret;
+  }
+  public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
+    writeTo(new codeprober.protocol.BinaryOutputStream.DataOutputStreamWrapper(dst));
+  }
+  public void writeTo(codeprober.protocol.BinaryOutputStream dst) throws java.io.IOException {
+    
+    dst.writeInt(instance);
+  }
+}
@@ -0,0 +1,33 @@
+package codeprober.protocol.data;
+
+import org.json.JSONObject;
+
+public class ResetWorkerInstanceRes implements codeprober.util.JsonUtil.ToJsonable {
+  public final boolean ok;
+  public ResetWorkerInstanceRes(boolean ok) {
+    this.ok = ok;
+  }
+  public ResetWorkerInstanceRes(java.io.DataInputStream src) throws java.io.IOException {
+    this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
+  }
+  public ResetWorkerInstanceRes(codeprober.protocol.BinaryInputStream src) throws java.io.IOException {
+    this.ok = src.readBoolean();
+  }
+
+  public static ResetWorkerInstanceRes fromJSON(JSONObject obj) {
+    return new ResetWorkerInstanceRes(
+      obj.getBoolean("ok")
+    );
+  }
+  public JSONObject toJSON() {
+    JSONObject _ret = new JSONObject();
+    _ret.put("ok", ok);
+    return _ret;
+  }
+  public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
+    writeTo(new codeprober.protocol.BinaryOutputStream.DataOutputStreamWrapper(dst));
+  }
+  public void writeTo(codeprober.protocol.BinaryOutputStream dst) throws java.io.IOException {
+    dst.writeBoolean(ok);
+  }
+}
@@ -0,0 +1,45 @@
+package codeprober.protocol.data;
+
+import org.json.JSONObject;
+
+public class ResolveLocatorsReq implements codeprober.util.JsonUtil.ToJsonable {
+  public final String type;
+  public final ParsingRequestData src;
+  public final java.util.List<NodeLocator> locators;
+  public ResolveLocatorsReq(ParsingRequestData src, java.util.List<NodeLocator> locators) {
+    this.type = "ResolveLocators";
+    this.src = src;
+    this.locators = locators;
+  }
+  public ResolveLocatorsReq(java.io.DataInputStream src) throws java.io.IOException {
+    this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
+  }
+  public ResolveLocatorsReq(codeprober.protocol.BinaryInputStream src) throws java.io.IOException {
+    this.type = "ResolveLocators";
+    this.src = new ParsingRequestData(src);
+    this.locators = codeprober.util.JsonUtil.<NodeLocator>readDataArr(src, () -> new NodeLocator(src));
+  }
+
+  public static ResolveLocatorsReq fromJSON(JSONObject obj) {
+    codeprober.util.JsonUtil.requireString(obj.getString("type"), "ResolveLocators");
+    return new ResolveLocatorsReq(
+      ParsingRequestData.fromJSON(obj.getJSONObject("src"))
+    , codeprober.util.JsonUtil.<NodeLocator>mapArr(obj.getJSONArray("locators"), (arr1, idx1) -> NodeLocator.fromJSON(arr1.getJSONObject(idx1)))
+    );
+  }
+  public JSONObject toJSON() {
+    JSONObject _ret = new JSONObject();
+    _ret.put("type", type);
+    _ret.put("src", src.toJSON());
+    _ret.put("locators", new org.json.JSONArray(locators.stream().<Object>map(x->x.toJSON()).collect(java.util.stream.Collectors.toList())));
+    return _ret;
+  }
+  public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
+    writeTo(new codeprober.protocol.BinaryOutputStream.DataOutputStreamWrapper(dst));
+  }
+  public void writeTo(codeprober.protocol.BinaryOutputStream dst) throws java.io.IOException {
+    
+    src.writeTo(dst);
+    codeprober.util.JsonUtil.<NodeLocator>writeDataArr(dst, locators, ent1 -> ent1.writeTo(dst));
+  }
+}
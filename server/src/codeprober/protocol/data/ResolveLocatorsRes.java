@@ -0,0 +1,42 @@
+package codeprober.protocol.data;
+
+import org.json.JSONObject;
+
+public class ResolveLocatorsRes implements codeprober.util.JsonUtil.ToJsonable {
+  public final java.util.List<RpcBodyLine> body;
+  public final java.util.List<NullableNodeLocator> results;
+  public ResolveLocatorsRes(java.util.List<RpcBodyLine> body) {
+    this(body, (java.util.List<NullableNodeLocator>)null);
+  }
+  public ResolveLocatorsRes(java.util.List<RpcBodyLine> body, java.util.List<NullableNodeLocator> results) {
+    this.body = body;
+    this.results = results;
+  }
+  public ResolveLocatorsRes(java.io.DataInputStream src) throws java.io.IOException {
+    this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
+  }
+  public ResolveLocatorsRes(codeprober.protocol.BinaryInputStream src) throws java.io.IOException {
+    this.body = codeprober.util.JsonUtil.<RpcBodyLine>readDataArr(src, () -> new RpcBodyLine(src));
+    this.results = src.readBoolean() ? codeprober.util.JsonUtil.<NullableNodeLocator>readDataArr(src, () -> new NullableNodeLocator(src)) : null;
+  }
+
+  public static ResolveLocatorsRes fromJSON(JSONObject obj) {
+    return new ResolveLocatorsRes(
+      codeprober.util.JsonUtil.<RpcBodyLine>mapArr(obj.getJSONArray("body"), (arr1, idx1) -> RpcBodyLine.fromJSON(arr1.getJSONObject(idx1)))
+    , obj.has("results") ? (codeprober.util.JsonUtil.<NullableNodeLocator>mapArr(obj.getJSONArray("results"), (arr2, idx2) -> NullableNodeLocator.fromJSON(arr2.getJSONObject(idx2)))) : null
+    );
+  }
+  public JSONObject toJSON() {
+    JSONObject _ret = new JSONObject();
+    _ret.put("body", new org.json.JSONArray(body.stream().<Object>map(x->x.toJSON()).collect(java.util.stream.Collectors.toList())));
+    if (results != null) _ret.put("results", new org.json.JSONArray(results.stream().<Object>map(x->x.toJSON()).collect(java.util.stream.Collectors.toList())));
+    return _ret;
+  }
+  public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
+    writeTo(new codeprober.protocol.BinaryOutputStream.DataOutputStreamWrapper(dst));
+  }
+  public void writeTo(codeprober.protocol.BinaryOutputStream dst) throws java.io.IOException {
+    codeprober.util.JsonUtil.<RpcBodyLine>writeDataArr(dst, body, ent1 -> ent1.writeTo(dst));
+    if (results != null) { dst.writeBoolean(true); codeprober.util.JsonUtil.<NullableNodeLocator>writeDataArr(dst, results, ent2 -> ent2.writeTo(dst));; } else { dst.writeBoolean(false); }
+  }
+}
@@ -6,10 +6,15 @@ public class SubmitWorkerTaskReq implements codeprober.util.JsonUtil.ToJsonable
   public final String type;
   public final long job;
   public final org.json.JSONObject data;
+  public final Integer instance;
   public SubmitWorkerTaskReq(long job, org.json.JSONObject data) {
+    this(job, data, (Integer)null);
+  }
+  public SubmitWorkerTaskReq(long job, org.json.JSONObject data, Integer instance) {
     this.type = "Concurrent:SubmitTask";
     this.job = job;
     this.data = data;
+    this.instance = instance;
   }
   public SubmitWorkerTaskReq(java.io.DataInputStream src) throws java.io.IOException {
     this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
@@ -18,6 +23,7 @@ public class SubmitWorkerTaskReq implements codeprober.util.JsonUtil.ToJsonable
     this.type = "Concurrent:SubmitTask";
     this.job = src.readLong();
     this.data = new org.json.JSONObject(src.readUTF());
+    this.instance = src.readBoolean() ? src.readInt() : null;
   }
 
   public static SubmitWorkerTaskReq fromJSON(JSONObject obj) {
@@ -25,6 +31,7 @@ public class SubmitWorkerTaskReq implements codeprober.util.JsonUtil.ToJsonable
     return new SubmitWorkerTaskReq(
       obj.getLong("job")
     , obj.getJSONObject("data")
+    , obj.has("instance") ? (obj.getInt("instance")) : null
     );
   }
   public JSONObject toJSON() {
@@ -32,6 +39,7 @@ public class SubmitWorkerTaskReq implements codeprober.util.JsonUtil.ToJsonable
     _ret.put("type", type);
     _ret.put("job", job);
     _ret.put("data", data);
+    if (instance != null) _ret.put("instance", instance);
     return _ret;
   }
   public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
@@ -41,5 +49,6 @@ public class SubmitWorkerTaskReq implements codeprober.util.JsonUtil.ToJsonable
     
     dst.writeLong(job);
     dst.writeUTF(data.toString());
+    if (instance != null) { dst.writeBoolean(true); dst.writeInt(instance);; } else { dst.writeBoolean(false); }
   }
 }
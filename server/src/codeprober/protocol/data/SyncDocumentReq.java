@@ -0,0 +1,72 @@
+package codeprober.protocol.data;
+
+import org.json.JSONObject;
+
+public class SyncDocumentReq implements codeprober.util.JsonUtil.ToJsonable {
+  public final String type;
+  public final String id;
+  public final int version;
+  public final String fullText;
+  public final Integer baseVersion;
+  public final java.util.List<TextEdit> edits;
+  public SyncDocumentReq(String id, int version, String fullText, Integer baseVersion) {
+    this(id, version, fullText, baseVersion, (java.util.List<TextEdit>)null);
+  }
+  public SyncDocumentReq(String id, int version, String fullText) {
+    this(id, version, fullText, (Integer)null, (java.util.List<TextEdit>)null);
+  }
+  public SyncDocumentReq(String id, int version) {
+    this(id, version, (String)null, (Integer)null, (java.util.List<TextEdit>)null);
+  }
+  public SyncDocumentReq(String id, int version, String fullText, Integer baseVersion, java.util.List<TextEdit> edits) {
+    this.type = "SyncDocument";
+    this.id = id;
+    this.version = version;
+    this.fullText = fullText;
+    this.baseVersion = baseVersion;
+    this.edits = edits;
+  }
+  public SyncDocumentReq(java.io.DataInputStream src) throws java.io.IOException {
+    this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
+  }
+  public SyncDocumentReq(codeprober.protocol.BinaryInputStream src) throws java.io.IOException {
+    this.type = "SyncDocument";
+    this.id = src.readUTF();
+    this.version = src.readInt();
+    this.fullText = src.readBoolean() ? src.readUTF() : null;
+    this.baseVersion = src.readBoolean() ? src.readInt() : null;
+    this.edits = src.readBoolean() ? codeprober.util.JsonUtil.<TextEdit>readDataArr(src, () -> new TextEdit(src)) : null;
+  }
+
+  public static SyncDocumentReq fromJSON(JSONObject obj) {
+    codeprober.util.JsonUtil.requireString(obj.getString("type"), "SyncDocument");
+    return new SyncDocumentReq(
+      obj.getString("id")
+    , obj.getInt("version")
+    , obj.has("fullText") ? (obj.getString("fullText")) : null
+    , obj.has("baseVersion") ? (obj.getInt("baseVersion")) : null
+    , obj.has("edits") ? (codeprober.util.JsonUtil.<TextEdit>mapArr(obj.getJSONArray("edits"), (arr1, idx1) -> TextEdit.fromJSON(arr1.getJSONObject(idx1)))) : null
+    );
+  }
+  public JSONObject toJSON() {
+    JSONObject _ret = new JSONObject();
+    _ret.put("type", type);
+    _ret.put("id", id);
+    _ret.put("version", version);
+    if (fullText != null) _ret.put("fullText", fullText);
+    if (baseVersion != null) _ret.put("baseVersion", baseVersion);
+    if (edits != null) _ret.put("edits", new org.json.JSONArray(edits.stream().<Object>map(x->x.toJSON()).collect(java.util.stream.Collectors.toList())));
+    return _ret;
+  }
+  public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
+    writeTo(new codeprober.protocol.BinaryOutputStream.DataOutputStreamWrapper(dst));
+  }
+  public void writeTo(codeprober.protocol.BinaryOutputStream dst) throws java.io.IOException {
+    
+    dst.writeUTF(id);
+    dst.writeInt(version);
+    if (fullText != null) { dst.writeBoolean(true); dst.writeUTF(fullText);; } else { dst.writeBoolean(false); }
+    if (baseVersion != null) { dst.writeBoolean(true); dst.writeInt(baseVersion);; } else { dst.writeBoolean(false); }
+    if (edits != null) { dst.writeBoolean(true); codeprober.util.JsonUtil.<TextEdit>writeDataArr(dst, edits, ent1 -> ent1.writeTo(dst));; } else { dst.writeBoolean(false); }
+  }
+}
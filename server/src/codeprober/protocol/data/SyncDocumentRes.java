@@ -0,0 +1,42 @@
+package codeprober.protocol.data;
+
+import org.json.JSONObject;
+
+public class SyncDocumentRes implements codeprober.util.JsonUtil.ToJsonable {
+  public final boolean ok;
+  public final Integer version;
+  public SyncDocumentRes(boolean ok) {
+    this(ok, (Integer)null);
+  }
+  public SyncDocumentRes(boolean ok, Integer version) {
+    this.ok = ok;
+    this.version = version;
+  }
+  public SyncDocumentRes(java.io.DataInputStream src) throws java.io.IOException {
+    this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
+  }
+  public SyncDocumentRes(codeprober.protocol.BinaryInputStream src) throws java.io.IOException {
+    this.ok = src.readBoolean();
+    this.version = src.readBoolean() ? src.readInt() : null;
+  }
+
+  public static SyncDocumentRes fromJSON(JSONObject obj) {
+    return new SyncDocumentRes(
+      obj.getBoolean("ok")
+    , obj.has("version") ? (obj.getInt("version")) : null
+    );
+  }
+  public JSONObject toJSON() {
+    JSONObject _ret = new JSONObject();
+    _ret.put("ok", ok);
+    if (version != null) _ret.put("version", version);
+    return _ret;
+  }
+  public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
+    writeTo(new codeprober.protocol.BinaryOutputStream.DataOutputStreamWrapper(dst));
+  }
+  public void writeTo(codeprober.protocol.BinaryOutputStream dst) throws java.io.IOException {
+    dst.writeBoolean(ok);
+    if (version != null) { dst.writeBoolean(true); dst.writeInt(version);; } else { dst.writeBoolean(false); }
+  }
+}
@@ -14,16 +14,32 @@ public class SynchronousEvaluationResult implements codeprober.util.JsonUtil.ToJ
   public final java.util.List<Diagnostic> errors;
   public final java.util.List<PropertyArg> args;
   public final NodeLocator locator;
+  public final Long astCacheHits;
+  public final Long astCacheMisses;
+  public final Long applyLocatorCacheHits;
+  public final Long applyLocatorCacheMisses;
+  public SynchronousEvaluationResult(java.util.List<RpcBodyLine> body, long totalTime, long parseTime, long createLocatorTime, long applyLocatorTime, long attrEvalTime, long listNodesTime, long listPropertiesTime, java.util.List<Diagnostic> errors, java.util.List<PropertyArg> args, NodeLocator locator, Long astCacheHits, Long astCacheMisses, Long applyLocatorCacheHits) {
+    this(body, totalTime, parseTime, createLocatorTime, applyLocatorTime, attrEvalTime, listNodesTime, listPropertiesTime, errors, args, locator, astCacheHits, astCacheMisses, applyLocatorCacheHits, (Long)null);
+  }
+  public SynchronousEvaluationResult(java.util.List<RpcBodyLine> body, long totalTime, long parseTime, long createLocatorTime, long applyLocatorTime, long attrEvalTime, long listNodesTime, long listPropertiesTime, java.util.List<Diagnostic> errors, java.util.List<PropertyArg> args, NodeLocator locator, Long astCacheHits, Long astCacheMisses) {
+    this(body, totalTime, parseTime, createLocatorTime, applyLocatorTime, attrEvalTime, listNodesTime, listPropertiesTime, errors, args, locator, astCacheHits, astCacheMisses, (Long)null, (Long)null);
+  }
+  public SynchronousEvaluationResult(java.util.List<RpcBodyLine> body, long totalTime, long parseTime, long createLocatorTime, long applyLocatorTime, long attrEvalTime, long listNodesTime, long listPropertiesTime, java.util.List<Diagnostic> errors, java.util.List<PropertyArg> args, NodeLocator locator, Long astCacheHits) {
+    this(body, totalTime, parseTime, createLocatorTime, applyLocatorTime, attrEvalTime, listNodesTime, listPropertiesTime, errors, args, locator, astCacheHits, (Long)null, (Long)null, (Long)null);
+  }
+  public SynchronousEvaluationResult(java.util.List<RpcBodyLine> body, long totalTime, long parseTime, long createLocatorTime, long applyLocatorTime, long attrEvalTime, long listNodesTime, long listPropertiesTime, java.util.List<Diagnostic> errors, java.util.List<PropertyArg> args, NodeLocator locator) {
+    this(body, totalTime, parseTime, createLocatorTime, applyLocatorTime, attrEvalTime, listNodesTime, listPropertiesTime, errors, args, locator, (Long)null, (Long)null, (Long)null, (Long)null);
+  }
   public SynchronousEvaluationResult(java.util.List<RpcBodyLine> body, long totalTime, long parseTime, long createLocatorTime, long applyLocatorTime, long attrEvalTime, long listNodesTime, long listPropertiesTime, java.util.List<Diagnostic> errors, java.util.List<PropertyArg> args) {
-    this(body, totalTime, parseTime, createLocatorTime, applyLocatorTime, attrEvalTime, listNodesTime, listPropertiesTime, errors, args, (NodeLocator)null);
+    this(body, totalTime, parseTime, createLocatorTime, applyLocatorTime, attrEvalTime, listNodesTime, listPropertiesTime, errors, args, (NodeLocator)null, (Long)null, (Long)null, (Long)null, (Long)null);
   }
   public SynchronousEvaluationResult(java.util.List<RpcBodyLine> body, long totalTime, long parseTime, long createLocatorTime, long applyLocatorTime, long attrEvalTime, long listNodesTime, long listPropertiesTime, java.util.List<Diagnostic> errors) {
-    this(body, totalTime, parseTime, createLocatorTime, applyLocatorTime, attrEvalTime, listNodesTime, listPropertiesTime, errors, (java.util.List<PropertyArg>)null, (NodeLocator)null);
+    this(body, totalTime, parseTime, createLocatorTime, applyLocatorTime, attrEvalTime, listNodesTime, listPropertiesTime, errors, (java.util.List<PropertyArg>)null, (NodeLocator)null, (Long)null, (Long)null, (Long)null, (Long)null);
   }
   public SynchronousEvaluationResult(java.util.List<RpcBodyLine> body, long totalTime, long parseTime, long createLocatorTime, long applyLocatorTime, long attrEvalTime, long listNodesTime, long listPropertiesTime) {
-    this(body, totalTime, parseTime, createLocatorTime, applyLocatorTime, attrEvalTime, listNodesTime, listPropertiesTime, (java.util.List<Diagnostic>)null, (java.util.List<PropertyArg>)null, (NodeLocator)null);
+    this(body, totalTime, parseTime, createLocatorTime, applyLocatorTime, attrEvalTime, listNodesTime, listPropertiesTime, (java.util.List<Diagnostic>)null, (java.util.List<PropertyArg>)null, (NodeLocator)null, (Long)null, (Long)null, (Long)null, (Long)null);
   }
-  public SynchronousEvaluationResult(java.util.List<RpcBodyLine> body, long totalTime, long parseTime, long createLocatorTime, long applyLocatorTime, long attrEvalTime, long listNodesTime, long listPropertiesTime, java.util.List<Diagnostic> errors, java.util.List<PropertyArg> args, NodeLocator locator) {
+  public SynchronousEvaluationResult(java.util.List<RpcBodyLine> body, long totalTime, long parseTime, long createLocatorTime, long applyLocatorTime, long attrEvalTime, long listNodesTime, long listPropertiesTime, java.util.List<Diagnostic> errors, java.util.List<PropertyArg> args, NodeLocator locator, Long astCacheHits, Long astCacheMisses, Long applyLocatorCacheHits, Long applyLocatorCacheMisses) {
     this.body = body;
     this.totalTime = totalTime;
     this.parseTime = parseTime;
@@ -35,6 +51,10 @@ public class SynchronousEvaluationResult implements codeprober.util.JsonUtil.ToJ
     this.errors = errors;
     this.args = args;
     this.locator = locator;
+    this.astCacheHits = astCacheHits;
+    this.astCacheMisses = astCacheMisses;
+    this.applyLocatorCacheHits = applyLocatorCacheHits;
+    this.applyLocatorCacheMisses = applyLocatorCacheMisses;
   }
   public SynchronousEvaluationResult(java.io.DataInputStream src) throws java.io.IOException {
     this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
@@ -51,6 +71,10 @@ public class SynchronousEvaluationResult implements codeprober.util.JsonUtil.ToJ
     this.errors = src.readBoolean() ? codeprober.util.JsonUtil.<Diagnostic>readDataArr(src, () -> new Diagnostic(src)) : null;
     this.args = src.readBoolean() ? codeprober.util.JsonUtil.<PropertyArg>readDataArr(src, () -> new PropertyArg(src)) : null;
     this.locator = src.readBoolean() ? new NodeLocator(src) : null;
+    this.astCacheHits = src.readBoolean() ? src.readLong() : null;
+    this.astCacheMisses = src.readBoolean() ? src.readLong() : null;
+    this.applyLocatorCacheHits = src.readBoolean() ? src.readLong() : null;
+    this.applyLocatorCacheMisses = src.readBoolean() ? src.readLong() : null;
   }
 
   public static SynchronousEvaluationResult fromJSON(JSONObject obj) {
@@ -66,6 +90,10 @@ public class SynchronousEvaluationResult implements codeprober.util.JsonUtil.ToJ
     , obj.has("errors") ? (codeprober.util.JsonUtil.<Diagnostic>mapArr(obj.getJSONArray("errors"), (arr2, idx2) -> Diagnostic.fromJSON(arr2.getJSONObject(idx2)))) : null
     , obj.has("args") ? (codeprober.util.JsonUtil.<PropertyArg>mapArr(obj.getJSONArray("args"), (arr3, idx3) -> PropertyArg.fromJSON(arr3.getJSONObject(idx3)))) : null
     , obj.has("locator") ? (NodeLocator.fromJSON(obj.getJSONObject("locator"))) : null
+    , obj.has("astCacheHits") ? (obj.getLong("astCacheHits")) : null
+    , obj.has("astCacheMisses") ? (obj.getLong("astCacheMisses")) : null
+    , obj.has("applyLocatorCacheHits") ? (obj.getLong("applyLocatorCacheHits")) : null
+    , obj.has("applyLocatorCacheMisses") ? (obj.getLong("applyLocatorCacheMisses")) : null
     );
   }
   public JSONObject toJSON() {
@@ -81,6 +109,10 @@ public class SynchronousEvaluationResult implements codeprober.util.JsonUtil.ToJ
     if (errors != null) _ret.put("errors", new org.json.JSONArray(errors.stream().<Object>map(x->x.toJSON()).collect(java.util.stream.Collectors.toList())));
     if (args != null) _ret.put("args", new org.json.JSONArray(args.stream().<Object>map(x->x.toJSON()).collect(java.util.stream.Collectors.toList())));
     if (locator != null) _ret.put("locator", locator.toJSON());
+    if (astCacheHits != null) _ret.put("astCacheHits", astCacheHits);
+    if (astCacheMisses != null) _ret.put("astCacheMisses", astCacheMisses);
+    if (applyLocatorCacheHits != null) _ret.put("applyLocatorCacheHits", applyLocatorCacheHits);
+    if (applyLocatorCacheMisses != null) _ret.put("applyLocatorCacheMisses", applyLocatorCacheMisses);
     return _ret;
   }
   public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
@@ -98,5 +130,9 @@ public class SynchronousEvaluationResult implements codeprober.util.JsonUtil.ToJ
     if (errors != null) { dst.writeBoolean(true); codeprober.util.JsonUtil.<Diagnostic>writeDataArr(dst, errors, ent2 -> ent2.writeTo(dst));; } else { dst.writeBoolean(false); }
     if (args != null) { dst.writeBoolean(true); codeprober.util.JsonUtil.<PropertyArg>writeDataArr(dst, args, ent3 -> ent3.writeTo(dst));; } else { dst.writeBoolean(false); }
     if (locator != null) { dst.writeBoolean(true); locator.writeTo(dst);; } else { dst.writeBoolean(false); }
+    if (astCacheHits != null) { dst.writeBoolean(true); dst.writeLong(astCacheHits);; } else { dst.writeBoolean(false); }
+    if (astCacheMisses != null) { dst.writeBoolean(true); dst.writeLong(astCacheMisses);; } else { dst.writeBoolean(false); }
+    if (applyLocatorCacheHits != null) { dst.writeBoolean(true); dst.writeLong(applyLocatorCacheHits);; } else { dst.writeBoolean(false); }
+    if (applyLocatorCacheMisses != null) { dst.writeBoolean(true); dst.writeLong(applyLocatorCacheMisses);; } else { dst.writeBoolean(false); }
   }
 }
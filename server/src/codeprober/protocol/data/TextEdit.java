@@ -0,0 +1,45 @@
+package codeprober.protocol.data;
+
+import org.json.JSONObject;
+
+public class TextEdit implements codeprober.util.JsonUtil.ToJsonable {
+  public final int start;
+  public final int end;
+  public final String text;
+  public TextEdit(int start, int end, String text) {
+    this.start = start;
+    this.end = end;
+    this.text = text;
+  }
+  public TextEdit(java.io.DataInputStream src) throws java.io.IOException {
+    this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
+  }
+  public TextEdit(codeprober.protocol.BinaryInputStream src) throws java.io.IOException {
+    this.start = src.readInt();
+    this.end = src.readInt();
+    this.text = src.readUTF();
+  }
+
+  public static TextEdit fromJSON(JSONObject obj) {
+    return new TextEdit(
+      obj.getInt("start")
+    , obj.getInt("end")
+    , obj.getString("text")
+    );
+  }
+  public JSONObject toJSON() {
+    JSONObject _ret = new JSONObject();
+    _ret.put("start", start);
+    _ret.put("end", end);
+    _ret.put("text", text);
+    return _ret;
+  }
+  public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
+    writeTo(new codeprober.protocol.BinaryOutputStream.DataOutputStreamWrapper(dst));
+  }
+  public void writeTo(codeprober.protocol.BinaryOutputStream dst) throws java.io.IOException {
+    dst.writeInt(start);
+    dst.writeInt(end);
+    dst.writeUTF(text);
+  }
+}
@@ -0,0 +1,45 @@
+package codeprober.protocol.data;
+
+import org.json.JSONObject;
+
+public class WorkerQueueDepths implements codeprober.util.JsonUtil.ToJsonable {
+  public final int interactive;
+  public final int bulk;
+  public final int background;
+  public WorkerQueueDepths(int interactive, int bulk, int background) {
+    this.interactive = interactive;
+    this.bulk = bulk;
+    this.background = background;
+  }
+  public WorkerQueueDepths(java.io.DataInputStream src) throws java.io.IOException {
+    this(new codeprober.protocol.BinaryInputStream.DataInputStreamWrapper(src));
+  }
+  public WorkerQueueDepths(codeprober.protocol.BinaryInputStream src) throws java.io.IOException {
+    this.interactive = src.readInt();
+    this.bulk = src.readInt();
+    this.background = src.readInt();
+  }
+
+  public static WorkerQueueDepths fromJSON(JSONObject obj) {
+    return new WorkerQueueDepths(
+      obj.getInt("interactive")
+    , obj.getInt("bulk")
+    , obj.getInt("background")
+    );
+  }
+  public JSONObject toJSON() {
+    JSONObject _ret = new JSONObject();
+    _ret.put("interactive", interactive);
+    _ret.put("bulk", bulk);
+    _ret.put("background", background);
+    return _ret;
+  }
+  public void writeTo(java.io.DataOutputStream dst) throws java.io.IOException {
+    writeTo(new codeprober.protocol.BinaryOutputStream.DataOutputStreamWrapper(dst));
+  }
+  public void writeTo(codeprober.protocol.BinaryOutputStream dst) throws java.io.IOException {
+    dst.writeInt(interactive);
+    dst.writeInt(bulk);
+    dst.writeInt(background);
+  }
+}
@@ -26,7 +26,7 @@ import codeprober.textprobe.ast.QueryAssert;
 public class BlessFileHandler {
 
 	public static BlessFileRes apply(BlessFileReq req, WorkspaceHandler workspaceHandler, LazyParser parser) {
-		final String txt = LazyParser.extractText(req.src.src, workspaceHandler);
+		final String txt = LazyParser.extractText(req.src.src, workspaceHandler, parser);
 		if (txt == null) {
 			return new BlessFileRes();
 		}
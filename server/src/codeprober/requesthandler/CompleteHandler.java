@@ -78,7 +78,7 @@ public class CompleteHandler {
 		}
 
 		// Else, perhaps text probe logic
-		final String txt = LazyParser.extractText(req.src.src, wsHandler);
+		final String txt = LazyParser.extractText(req.src.src, wsHandler, parser);
 		if (txt != null) {
 			final Document filteredDoc = FilteredTextProbeParser.parse(txt, parsed).document;
 			if (filteredDoc == null) {
@@ -23,7 +23,7 @@ public class DecorationsHandler {
 	}
 
 	public static GetDecorationsRes apply(GetDecorationsReq req, WorkspaceHandler workspaceHandler, LazyParser parser) {
-		final String txt = LazyParser.extractText(req.src.src, workspaceHandler);
+		final String txt = LazyParser.extractText(req.src.src, workspaceHandler, parser);
 		if (txt == null) {
 			return new GetDecorationsRes();
 		}
@@ -0,0 +1,208 @@
+package codeprober.requesthandler;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import codeprober.protocol.ClientRequest;
+import codeprober.protocol.data.DocumentRef;
+import codeprober.protocol.data.ParsingSource;
+import codeprober.protocol.data.SyncDocumentReq;
+import codeprober.protocol.data.SyncDocumentRes;
+import codeprober.protocol.data.TextEdit;
+import codeprober.util.Util;
+
+/**
+ * Server-side copies of client documents, kept in sync with
+ * {@link SyncDocumentReq}. Requests can then refer to a document by id and
+ * version (see {@link ParsingSource#fromDocument(DocumentRef)}) instead of
+ * sending the full text every time.
+ * <p>
+ * Each client connection has its own store, see
+ * {@link #forConnection(AtomicBoolean)}. Document ids are chosen by the
+ * client, so a shared store would let clients read and overwrite each other's
+ * documents.
+ * <p>
+ * A few recent versions of each document are kept, so that requests sent just
+ * before an edit still resolve. Versions are kept sorted by version number.
+ * Edits must be based on the latest version, otherwise the client is asked to
+ * resend the full text. The number of documents per connection is bounded by
+ * the system property <code>cpr.maxSyncedDocuments</code>, the least recently
+ * used document is dropped first.
+ */
+public class DocumentStore {
+
+	private static final int VERSIONS_PER_DOCUMENT = 4;
+
+	// Keyed by identity of the connection's liveness flag, which is unique per
+	// connection. Weak keys, so stores disappear together with their connection.
+	private static final Map<AtomicBoolean, DocumentStore> connectionStores = new WeakHashMap<>();
+
+	/**
+	 * Get the store for the connection that a request arrived on, see
+	 * {@link ClientRequest#connectionIsAlive}.
+	 */
+	public static DocumentStore forConnection(AtomicBoolean connectionIsAlive) {
+		synchronized (connectionStores) {
+			DocumentStore ret = connectionStores.get(connectionIsAlive);
+			if (ret == null) {
+				ret = new DocumentStore(Util.getIntProperty("cpr.maxSyncedDocuments", 64));
+				connectionStores.put(connectionIsAlive, ret);
+			}
+			return ret;
+		}
+	}
+
+	private static class Version {
+		public final int version;
+
+		// Text source, reused by all requests for this version so that its digest is
+		// only computed once.
+		public final ParsingSource src;
+
+		public Version(int version, String text) {
+			this.version = version;
+			this.src = ParsingSource.fromText(text);
+		}
+	}
+
+	private final int maxDocuments;
+	private final LinkedHashMap<String, ArrayDeque<Version>> documents = new LinkedHashMap<>(16, 0.75f, true);
+
+	public DocumentStore(int maxDocuments) {
+		this.maxDocuments = Math.max(1, maxDocuments);
+	}
+
+	public synchronized SyncDocumentRes handleSyncDocument(SyncDocumentReq req) {
+		ArrayDeque<Version> versions = documents.get(req.id);
+		final String newText;
+		if (req.fullText != null) {
+			newText = req.fullText;
+		} else {
+			final Version latest = versions == null ? null : versions.getLast();
+			if (latest == null || req.baseVersion == null || latest.version != req.baseVersion
+					|| req.version <= latest.version) {
+				// Either unknown, or the edits were made on top of an outdated version (e.g
+				// because messages were reordered). Client must resend with the full text.
+				return new SyncDocumentRes(false, latest == null ? null : latest.version);
+			}
+			newText = applyEdits(latest.src.asText(), req.edits);
+			if (newText == null) {
+				return new SyncDocumentRes(false, latest.version);
+			}
+		}
+		if (versions == null) {
+			versions = new ArrayDeque<>();
+			documents.put(req.id, versions);
+			final Iterator<ArrayDeque<Version>> iter = documents.values().iterator();
+			while (documents.size() > maxDocuments) {
+				iter.next();
+				iter.remove();
+			}
+		}
+		insertSorted(versions, new Version(req.version, newText));
+		while (versions.size() > VERSIONS_PER_DOCUMENT) {
+			versions.removeFirst();
+		}
+		return new SyncDocumentRes(true, req.version);
+	}
+
+	private static void insertSorted(ArrayDeque<Version> versions, Version added) {
+		versions.removeIf(v -> v.version == added.version);
+		final ArrayDeque<Version> newer = new ArrayDeque<>();
+		while (!versions.isEmpty() && versions.getLast().version > added.version) {
+			newer.addFirst(versions.removeLast());
+		}
+		versions.addLast(added);
+		versions.addAll(newer);
+	}
+
+	private static Version find(ArrayDeque<Version> versions, int version) {
+		for (Version v : versions) {
+			if (v.version == version) {
+				return v;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Apply edits in order, or return null if any edit is out of bounds.
+	 */
+	static String applyEdits(String text, Iterable<TextEdit> edits) {
+		if (edits == null) {
+			return text;
+		}
+		final StringBuilder sb = new StringBuilder(text);
+		for (TextEdit edit : edits) {
+			if (edit.start < 0 || edit.end < edit.start || edit.end > sb.length()) {
+				System.err.println("Invalid document edit [" + edit.start + "," + edit.end + "), document length is "
+						+ sb.length());
+				return null;
+			}
+			sb.replace(edit.start, edit.end, edit.text);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Resolve a document reference to a text source, or null if the referenced
+	 * version is not known.
+	 */
+	public synchronized ParsingSource resolve(DocumentRef ref) {
+		final ArrayDeque<Version> versions = documents.get(ref.id);
+		if (versions == null) {
+			return null;
+		}
+		final Version found = find(versions, ref.version);
+		return found != null ? found.src : null;
+	}
+
+	/**
+	 * Resolve a source if it is a document reference, otherwise return it as-is.
+	 * Returns null if the referenced version is not known.
+	 */
+	public ParsingSource resolveSource(ParsingSource src) {
+		return src.isDocument() ? resolve(src.asDocument()) : src;
+	}
+
+	/**
+	 * Replace all document sources in a request with the corresponding text.
+	 * Used when forwarding requests to processes that don't have their own copy
+	 * of the documents. Unknown documents are left as-is.
+	 */
+	public void inlineDocuments(JSONObject request) {
+		for (String key : request.keySet()) {
+			final Object val = request.get(key);
+			if (val instanceof JSONObject) {
+				final JSONObject obj = (JSONObject) val;
+				if (key.equals("src") && "document".equals(obj.optString("type"))) {
+					final ParsingSource resolved = resolve(DocumentRef.fromJSON(obj.getJSONObject("value")));
+					if (resolved != null) {
+						request.put(key, resolved.toJSON());
+					}
+				} else {
+					inlineDocuments(obj);
+				}
+			} else if (val instanceof JSONArray) {
+				final JSONArray arr = (JSONArray) val;
+				for (int i = 0; i < arr.length(); ++i) {
+					final Object ent = arr.get(i);
+					if (ent instanceof JSONObject) {
+						inlineDocuments((JSONObject) ent);
+					}
+				}
+			}
+		}
+	}
+
+	public synchronized int size() {
+		return documents.size();
+	}
+}
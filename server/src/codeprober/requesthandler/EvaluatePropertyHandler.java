@@ -19,6 +19,7 @@ import codeprober.locator.ApplyLocator;
 import codeprober.locator.ApplyLocator.ResolvedNode;
 import codeprober.locator.CreateLocator;
 import codeprober.locator.CreateLocator.LocatorMergeMethod;
+import codeprober.locator.LocatorRemapper;
 import codeprober.locator.NodesWithProperty;
 import codeprober.locator.PrettyPrintTree;
 import codeprober.metaprogramming.InvokeProblem;
@@ -31,6 +32,7 @@ import codeprober.protocol.data.EvaluatePropertyReq;
 import codeprober.protocol.data.EvaluatePropertyRes;
 import codeprober.protocol.data.NodeLocator;
 import codeprober.protocol.data.NullableNodeLocator;
+import codeprober.protocol.data.ParsingSource;
 import codeprober.protocol.data.PropertyArg;
 import codeprober.protocol.data.PropertyArgCollection;
 import codeprober.protocol.data.PropertyEvaluationResult;
@@ -199,6 +201,7 @@ public class EvaluatePropertyHandler {
 									"flushTreeCache")) {
 								try {
 									Reflect.invoke0(parsed.info.ast.underlyingAstNode, "flushTreeCache");
+									parsed.info.invalidateLocatorCache();
 								} catch (InvokeProblem e) {
 									System.out.println("Problem flushing tree during trace setup");
 									e.printStackTrace(System.out);
@@ -215,11 +218,27 @@ public class EvaluatePropertyHandler {
 					}
 
 				}
-				final ResolvedNode match;
+				final boolean createResultLocator = req.skipResultLocator == null ? true : !req.skipResultLocator;
+				final ParsingSource requestedSource = req.src != null ? req.src.src : null;
+				final ParsingSource source = requestedSource != null ? parser.resolveSource(requestedSource) : null;
+				final String sourceId = LocatorRemapper.getSourceId(requestedSource);
+				ResolvedNode match = null;
 				ignoreStdio.set(true);
 				try {
-					match = ApplyLocator.toNode(parsed.info, req.locator,
-							req.skipResultLocator == null ? true : !req.skipResultLocator);
+					// If the locator was created by us before the latest edit, shift it past the
+					// edit first. That often gives an exact match instead of a fuzzy search. Any
+					// other match may be a fuzzy match for a wrongly shifted locator, and the
+					// original locator is more trustworthy then.
+					final NodeLocator remapped = LocatorRemapper.getDefault().remap(req.locator, sourceId, source);
+					if (remapped != null) {
+						match = ApplyLocator.toNode(parsed.info, remapped, createResultLocator);
+						if (match != null && !ApplyLocator.isExactMatch(match, remapped)) {
+							match = null;
+						}
+					}
+					if (match == null) {
+						match = ApplyLocator.toNode(parsed.info, req.locator, createResultLocator);
+					}
 				} finally {
 					ignoreStdio.set(false);
 				}
@@ -229,6 +248,7 @@ public class EvaluatePropertyHandler {
 					return;
 				}
 				newLocator.set(match.nodeLocator);
+				LocatorRemapper.getDefault().remember(match.nodeLocator, sourceId, source);
 
 //				if (parsed.info.tracingRegistration != null) {
 //					parsed.info.tracingRegistration.accept(traceBuilder);
@@ -347,11 +367,11 @@ public class EvaluatePropertyHandler {
 							} else {
 
 								try {
-									EncodeResponseValue.shouldExpandListNodes = shouldExpandListNodes;
+									EncodeResponseValue.setShouldExpandListNodes(shouldExpandListNodes);
 									EncodeResponseValue.encodeTyped(parsed.info, body, diagnostics, value,
 											new HashSet<>());
 								} finally {
-									EncodeResponseValue.shouldExpandListNodes = true;
+									EncodeResponseValue.setShouldExpandListNodes(true);
 								}
 							}
 						} finally {
@@ -446,7 +466,11 @@ public class EvaluatePropertyHandler {
 				BenchmarkTimer.LIST_PROPERTIES.getAccumulatedNano(), //
 				diagnostics, //
 				updatedArgsPtr.get(), //
-				newLocator.get() //
+				newLocator.get(), //
+				parsed.astCacheHits, //
+				parsed.astCacheMisses, //
+				parsed.info != null ? (long) parsed.info.getResolvedLocatorHits() : null, //
+				parsed.info != null ? (long) parsed.info.getResolvedLocatorMisses() : null //
 		)));
 	}
 }
@@ -57,7 +57,7 @@ public class HoverHandler {
 			return new HoverRes(Arrays.asList(TextProbeEnvironment.flattenBody(parsed.captures)));
 		}
 
-		final String txt = LazyParser.extractText(req.src.src, wsHandler);
+		final String txt = LazyParser.extractText(req.src.src, wsHandler, parser);
 		if (txt != null) {
 			final Document filteredDoc = FilteredTextProbeParser.parse(txt, parsed).document;
 			if (filteredDoc == null) {
@@ -17,6 +17,15 @@ public interface LazyParser {
 
 	void discardCachedAst();
 
+	/**
+	 * Resolve a source if it is a document reference, otherwise return it as-is.
+	 * Returns null if the referenced document version is not known. By default no
+	 * documents are known.
+	 */
+	default ParsingSource resolveSource(ParsingSource src) {
+		return src.isDocument() ? null : src;
+	}
+
 	default ParsedAst parse(ParsingRequestData prd) {
 		return parse(prd.src, prd.cache, prd.mainArgs, prd.posRecovery, prd.tmpSuffix);
 	}
@@ -25,15 +34,24 @@ public interface LazyParser {
 		public final AstInfo info;
 		public final long parseTimeNanos;
 		public final List<RpcBodyLine> captures;
+		public final Long astCacheHits;
+		public final Long astCacheMisses;
 
 		public ParsedAst(AstInfo info) {
 			this(info, 0L, null);
 		}
 
 		public ParsedAst(AstInfo info, long parseTimeNanos, List<RpcBodyLine> captures) {
+			this(info, parseTimeNanos, captures, null, null);
+		}
+
+		public ParsedAst(AstInfo info, long parseTimeNanos, List<RpcBodyLine> captures, Long astCacheHits,
+				Long astCacheMisses) {
 			this.info = info;
 			this.parseTimeNanos = parseTimeNanos;
 			this.captures = captures;
+			this.astCacheHits = astCacheHits;
+			this.astCacheMisses = astCacheMisses;
 		}
 	}
 
@@ -42,10 +60,26 @@ public interface LazyParser {
 	}
 
 	public static String extractText(ParsingSource src, WorkspaceHandler wsHandler) {
+		return extractText(src, wsHandler, null);
+	}
+
+	/**
+	 * Get the text of a source. Documents are resolved via the given parser, see
+	 * {@link #resolveSource(ParsingSource)}.
+	 */
+	public static String extractText(ParsingSource src, WorkspaceHandler wsHandler, LazyParser parser) {
 		switch (src.type) {
 		case text: {
 			return src.asText();
 		}
+		case document: {
+			final ParsingSource resolved = parser != null ? parser.resolveSource(src) : null;
+			if (resolved == null) {
+				System.err.println("Tried parsing unknown document version " + src.asDocument().toJSON());
+				return null;
+			}
+			return resolved.asText();
+		}
 		case workspacePath: {
 			final GetWorkspaceFileRes res = wsHandler
 					.handleGetWorkspaceFile(new GetWorkspaceFileReq(src.asWorkspacePath()));
@@ -0,0 +1,30 @@
+package codeprober.requesthandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import codeprober.locator.ApplyLocator;
+import codeprober.locator.ApplyLocator.ResolvedNode;
+import codeprober.protocol.data.NodeLocator;
+import codeprober.protocol.data.NullableNodeLocator;
+import codeprober.protocol.data.ResolveLocatorsReq;
+import codeprober.protocol.data.ResolveLocatorsRes;
+import codeprober.requesthandler.LazyParser.ParsedAst;
+
+public class ResolveLocatorsHandler {
+
+	public static ResolveLocatorsRes apply(ResolveLocatorsReq req, LazyParser parser) {
+		final ParsedAst parsed = parser.parse(req.src);
+		if (parsed.info == null) {
+			return new ResolveLocatorsRes(parsed.captures, null);
+		}
+		final List<ResolvedNode> resolved = ApplyLocator.toNodes(parsed.info, req.locators, true);
+		final List<NullableNodeLocator> results = new ArrayList<>();
+		for (int i = 0; i < resolved.size(); ++i) {
+			final NodeLocator requested = req.locators.get(i);
+			final ResolvedNode match = resolved.get(i);
+			results.add(new NullableNodeLocator(requested.result.type, match != null ? match.nodeLocator : null));
+		}
+		return new ResolveLocatorsRes(parsed.captures, results);
+	}
+}
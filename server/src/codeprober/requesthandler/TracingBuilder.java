@@ -125,7 +125,8 @@ public class TracingBuilder implements Consumer<Object[]> {
 	final HashSet<Object> encodeAlreadyVisitedNodesCache = new HashSet<>();
 	private final List<RpcBodyLine> encodeLinesCache = new ArrayList<>();
 
-	private static Set<String> alreadyWarnedAttributesFailedArgumentDeterming = new HashSet<>();
+	private static Set<String> alreadyWarnedAttributesFailedArgumentDeterming = Collections
+			.synchronizedSet(new HashSet<>());
 
 	private boolean recursionProtection = false;
 	private boolean acceptTraces = true;
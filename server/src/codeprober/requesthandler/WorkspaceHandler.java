@@ -38,6 +38,8 @@ import codeprober.protocol.data.UnlinkWorkspacePathRes;
 import codeprober.protocol.data.WorkspaceEntry;
 import codeprober.protocol.data.WorkspaceFile;
 import codeprober.requesthandler.FuzzyMatcher.ScoredMatch;
+import codeprober.util.ContentDigest;
+import codeprober.util.ContentDigest.DigestingOutputStream;
 
 public class WorkspaceHandler {
 
@@ -306,19 +308,23 @@ public class WorkspaceHandler {
 		}
 		subFile.getParentFile().mkdirs();
 
-		try (FileOutputStream fos = new FileOutputStream(subFile)) {
-			writeFileContents.accept(fos);
+		final long writtenDigest;
+		try (DigestingOutputStream dos = new DigestingOutputStream(new FileOutputStream(subFile))) {
+			writeFileContents.accept(dos);
+			writtenDigest = dos.getDigest();
 		} catch (IOException e) {
 			System.err.println("Error when writing to workspace file " + subFile);
 			e.printStackTrace();
 			return new PutWorkspaceContentRes(false);
 		}
 
-		// Increment write counter
-		final String absPath = subFile.getAbsolutePath();
-		synchronized (workspaceFileWriteCounters) {
-			final Integer prevWriteCounter = workspaceFileWriteCounters.get(absPath);
-			workspaceFileWriteCounters.put(absPath, (prevWriteCounter == null ? -1 : prevWriteCounter) + 1);
+		// We know exactly what was written, no need to read it back when the digest is
+		// requested later. The file was just modified though, so like any other recent
+		// modification, the digest is only trusted until the file is checked again.
+		final long lastModified = subFile.lastModified();
+		synchronized (workspaceFileDigests) {
+			workspaceFileDigests.put(subFile.getAbsolutePath(), new KnownFileDigest(lastModified, subFile.length(),
+					writtenDigest, System.currentTimeMillis() - lastModified > SETTLED_FILE_AGE_MS));
 		}
 
 		return new PutWorkspaceContentRes(true);
@@ -458,15 +464,60 @@ public class WorkspaceHandler {
 		return new UnlinkWorkspacePathRes(true);
 	}
 
-	private static Map<String, Integer> workspaceFileWriteCounters = new HashMap<>();
+	private static class KnownFileDigest {
+		public final long lastModified;
+		public final long length;
+		public final long digest;
+
+		/**
+		 * Whether the digest can be trusted for as long as the modification time and
+		 * length of the file are unchanged. A file that is read during the same
+		 * timestamp tick as it was last modified could be modified again without
+		 * changing its timestamp, so such digests are not trusted.
+		 */
+		public final boolean settled;
+
+		public KnownFileDigest(long lastModified, long length, long digest, boolean settled) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.digest = digest;
+			this.settled = settled;
+		}
+	}
 
-	public static int getWorkspaceFileWriteCounter(File f) {
+	private static final long SETTLED_FILE_AGE_MS = 2_000L;
+	private static Map<String, KnownFileDigest> workspaceFileDigests = new HashMap<>();
+
+	/**
+	 * Get a digest of the contents of a file. The file is only read if its
+	 * modification time or length has changed since the last call, or if the last
+	 * known digest was computed too close to the modification time to be trusted.
+	 *
+	 * @return the digest, or <code>null</code> if the file couldn't be read.
+	 */
+	public static Long getWorkspaceFileDigest(File f) {
 		final String key = f.getAbsolutePath();
-		final Integer ret;
-		synchronized (workspaceFileWriteCounters) {
-			ret = workspaceFileWriteCounters.get(key);
+		final long lastModified = f.lastModified();
+		final long length = f.length();
+		synchronized (workspaceFileDigests) {
+			final KnownFileDigest known = workspaceFileDigests.get(key);
+			if (known != null && known.settled && known.lastModified == lastModified && known.length == length) {
+				return known.digest;
+			}
+		}
+		final long readTime = System.currentTimeMillis();
+		final byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(f.toPath());
+		} catch (IOException e) {
+			return null;
+		}
+		final long digest = ContentDigest.of(bytes);
+		synchronized (workspaceFileDigests) {
+			workspaceFileDigests.put(key, new KnownFileDigest(lastModified, bytes.length, digest,
+					readTime - lastModified > SETTLED_FILE_AGE_MS));
 		}
-		return ret == null ? -1 : ret;
+		return digest;
 	}
 
 	public FindWorkspaceFilesRes handleFindWorkspaceFiles(FindWorkspaceFilesReq req) {
@@ -25,6 +25,22 @@ public interface JsonRequestHandler {
 		 */
 	}
 
+	default void onRequestCancelled() {
+		/**
+		 * Default: noop. Called after a request was stopped part-way through (see
+		 * {@link codeprober.metaprogramming.Reflect#requestCancellation(Thread)}).
+		 * Override to discard any state that may have been left inconsistent.
+		 */
+	}
+
+	default void onResetRequested() {
+		/**
+		 * Default: noop. Called when all cached state (parsed ASTs, loaded tools,
+		 * etc) should be dropped, e.g to release memory. Only called while no request
+		 * is being handled.
+		 */
+	}
+
 	public static Function<ClientRequest, JSONObject> createTopRequestHandler(Function<ClientRequest, JSONObject> unwrappedHandler) {
 		return (request) -> {
 			final long start = System.nanoTime();
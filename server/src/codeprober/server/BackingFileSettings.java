@@ -8,8 +8,10 @@ import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+import codeprober.util.ContentDigest;
 import codeprober.util.FileMonitor;
 
 public class BackingFileSettings {
@@ -46,11 +48,27 @@ public class BackingFileSettings {
 	}
 
 	public static void write(String inputText) throws IOException {
+		write(inputText, ContentDigest.of(inputText));
+	}
+
+	/**
+	 * Write to the backing file, unless it already has the given contents.
+	 *
+	 * @param inputText the new contents of the file
+	 * @param digest    the {@link ContentDigest} of <code>inputText</code>
+	 */
+	public static void write(String inputText, long digest) throws IOException {
 		final File backingFile = getRealFileToBeUsedInRequests();
 		if (backingFile == null) {
 			System.out.println("No backing file configured, ignoring backing file write");
 			return;
 		}
+		final WrittenContents prev = lastWrittenContents.get();
+		if (prev != null && prev.digest == digest && prev.lastModified == backingFile.lastModified()
+				&& prev.length == backingFile.length()) {
+			// Same contents as our last write, and nobody else has touched the file since.
+			return;
+		}
 		final byte[] newBytes = inputText.getBytes(StandardCharsets.UTF_8);
 		if (newBytes.length != backingFile.length()
 				|| !Arrays.equals(Files.readAllBytes(backingFile.toPath()), newBytes)) {
@@ -63,8 +81,22 @@ public class BackingFileSettings {
 			}
 			lastModifiedThreshold.set(backingFile.lastModified() + 1L);
 		}
+		lastWrittenContents.set(new WrittenContents(digest, backingFile.lastModified(), newBytes.length));
+	}
+
+	private static class WrittenContents {
+		public final long digest;
+		public final long lastModified;
+		public final long length;
+
+		public WrittenContents(long digest, long lastModified, long length) {
+			this.digest = digest;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
 	}
 
+	private static AtomicReference<WrittenContents> lastWrittenContents = new AtomicReference<>();
 	private static AtomicBoolean ignoreChanges = new AtomicBoolean();
 	private static AtomicLong lastModifiedThreshold = new AtomicLong();
 
@@ -500,14 +500,14 @@ public class TextProbeEnvironment {
 		if (!Parser.permitImplicitStringConversion && qres.isStringCoercionCausingLiteral()) {
 			return String.valueOf(qres.value);
 		}
-		final boolean expandSave = EncodeResponseValue.shouldExpandListNodes;
-		EncodeResponseValue.shouldExpandListNodes = false;
+		final boolean expandSave = EncodeResponseValue.getShouldExpandListNodes();
+		EncodeResponseValue.setShouldExpandListNodes(false);
 		try {
 			final List<RpcBodyLine> body = new ArrayList<>();
 			EncodeResponseValue.encodeTyped(info, body, null, qres.value, new HashSet<>());
 			return flattenLine(body.size() == 1 ? body.get(0) : RpcBodyLine.fromArr(body));
 		} finally {
-			EncodeResponseValue.shouldExpandListNodes = expandSave;
+			EncodeResponseValue.setShouldExpandListNodes(expandSave);
 		}
 	}
 
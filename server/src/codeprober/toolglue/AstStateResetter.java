@@ -6,7 +6,8 @@ import java.lang.reflect.Method;
 /**
  * Proxy implementation of {@link UnderlyingTool} that additionally calls
  * '.state().reset()' on the result of {@link #parse(String[])}, in order to
- * reset any potential global circular state in JastAdd.
+ * reset any potential global circular state in JastAdd. The same applies to
+ * {@link #parseText(String[], CharSequence)}.
  */
 public class AstStateResetter implements UnderlyingTool {
 
@@ -23,7 +24,25 @@ public class AstStateResetter implements UnderlyingTool {
 
 	@Override
 	public ParseResult parse(String[] args) {
-		final ParseResult result = proxyTarget.parse(args);
+		return resetState(proxyTarget.parse(args));
+	}
+
+	@Override
+	public boolean supportsParseText() {
+		return proxyTarget.supportsParseText();
+	}
+
+	@Override
+	public ParseResult parseText(String[] args, CharSequence src) {
+		return resetState(proxyTarget.parseText(args, src));
+	}
+
+	@Override
+	public void purgeCache() {
+		proxyTarget.purgeCache();
+	}
+
+	private static ParseResult resetState(ParseResult result) {
 		if (result.rootNode != null) {
 			// Even though this is a fresh parse, we must reset global states that may or
 			// may not eixst. In JastAdd, this is done via '.state().reset()'
@@ -5,15 +5,25 @@ import codeprober.util.ASTProvider;
 public class UnderlyingJar implements UnderlyingTool {
 
 	private final String jarPath;
+	private final ASTProvider.JarCache jarCache;
 	private long changeCounter = 0;
 
 	public UnderlyingJar(String jarPath) {
+		this(jarPath, null);
+	}
+
+	/**
+	 * @param jarCache the cache to load the jar through, or null to use the
+	 *                 process-wide default cache.
+	 */
+	public UnderlyingJar(String jarPath, ASTProvider.JarCache jarCache) {
 		this.jarPath = jarPath;
+		this.jarCache = jarCache;
 	}
 
 	@Override
 	public long getVersionId() {
-		if (!ASTProvider.hasUnchangedJar(jarPath)) {
+		if (!(jarCache != null ? jarCache.hasUnchanged(jarPath) : ASTProvider.hasUnchangedJar(jarPath))) {
 			++changeCounter;
 		}
 		return changeCounter;
@@ -21,7 +31,29 @@ public class UnderlyingJar implements UnderlyingTool {
 
 	@Override
 	public ParseResult parse(String[] args) {
-		return ASTProvider.parseAst(jarPath, args);
+		return jarCache != null ? ASTProvider.parseAst(jarCache, jarPath, args, null)
+				: ASTProvider.parseAst(jarPath, args);
+	}
+
+	@Override
+	public boolean supportsParseText() {
+		return jarCache != null ? ASTProvider.hasParseTextMethod(jarCache, jarPath)
+				: ASTProvider.hasParseTextMethod(jarPath);
+	}
+
+	@Override
+	public ParseResult parseText(String[] args, CharSequence src) {
+		return jarCache != null ? ASTProvider.parseAst(jarCache, jarPath, args, src)
+				: ASTProvider.parseAst(jarPath, args, src);
+	}
+
+	@Override
+	public void purgeCache() {
+		if (jarCache != null) {
+			jarCache.purge();
+		} else {
+			ASTProvider.purgeCache();
+		}
 	}
 
 	@Override
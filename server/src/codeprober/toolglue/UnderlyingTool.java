@@ -1,5 +1,10 @@
 package codeprober.toolglue;
 
+import java.util.Arrays;
+
+import codeprober.protocol.data.RpcBodyLine;
+import codeprober.util.ASTProvider;
+
 /**
  * A representation of the "underlying tool" that parses files and constructs an
  * AST that CodeProber later will traverse and invoke attributes on.
@@ -23,8 +28,50 @@ public interface UnderlyingTool {
 
 	ParseResult parse(String[] args);
 
+	/**
+	 * Whether this tool can parse source text directly from memory, see
+	 * {@link #parseText(String[], CharSequence)}.
+	 */
+	default boolean supportsParseText() {
+		return false;
+	}
+
+	/**
+	 * Parse source text without going through a file on disk. Only called if
+	 * {@link #supportsParseText()} returns true.
+	 *
+	 * @param args the arguments to forward to the tool. Unlike
+	 *             {@link #parse(String[])}, there is no source file path at the
+	 *             end of the array.
+	 * @param src  the source text to parse.
+	 */
+	default ParseResult parseText(String[] args, CharSequence src) {
+		return new ParseResult(null, Arrays.asList(RpcBodyLine.fromStderr("Tool cannot parse text from memory")));
+	}
+
+	/**
+	 * Drop any loaded state of the tool (e.g the loaded jar file and its classes),
+	 * so that it is loaded from scratch on the next parse.
+	 */
+	default void purgeCache() {
+		ASTProvider.purgeCache();
+	}
+
 	public static UnderlyingTool fromJar(String jarPath) {
-		UnderlyingTool ret = new UnderlyingJar(jarPath);
+		return fromJar(jarPath, null);
+	}
+
+	/**
+	 * Like {@link #fromJar(String)}, but the jar is loaded through its own class
+	 * loader. Tools created this way share no static state with other tools in the
+	 * same JVM, even if they use the same jar file.
+	 */
+	public static UnderlyingTool fromIsolatedJar(String jarPath) {
+		return fromJar(jarPath, new ASTProvider.JarCache());
+	}
+
+	static UnderlyingTool fromJar(String jarPath, ASTProvider.JarCache jarCache) {
+		UnderlyingTool ret = new UnderlyingJar(jarPath, jarCache);
 		if ("true".equals(System.getProperty("cpr.resetASTStateOnParse", "true"))) {
 			ret = new AstStateResetter(ret);
 		}
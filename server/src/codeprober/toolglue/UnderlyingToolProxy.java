@@ -25,6 +25,29 @@ public class UnderlyingToolProxy implements UnderlyingTool {
 						Arrays.asList(RpcBodyLine.fromStderr("Tool not specified yet, please upload yourtool.jar")));
 	}
 
+	@Override
+	public boolean supportsParseText() {
+		final UnderlyingTool ut = target;
+		return ut != null && ut.supportsParseText();
+	}
+
+	@Override
+	public ParseResult parseText(String[] args, CharSequence src) {
+		final UnderlyingTool ut = target;
+		if (ut == null) {
+			return parse(args);
+		}
+		return ut.supportsParseText() ? ut.parseText(args, src) : UnderlyingTool.super.parseText(args, src);
+	}
+
+	@Override
+	public void purgeCache() {
+		final UnderlyingTool ut = target;
+		if (ut != null) {
+			ut.purgeCache();
+		}
+	}
+
 	@Override
 	public String toString() {
 		return String.format("%s:%s", getClass().getSimpleName(), target);
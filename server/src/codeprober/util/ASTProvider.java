@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.JarFile;
 
+import codeprober.metaprogramming.Reflect;
 import codeprober.metaprogramming.StdIoInterceptor;
 import codeprober.protocol.data.RpcBodyLine;
 import codeprober.toolglue.ParseResult;
@@ -35,55 +36,92 @@ public class ASTProvider {
 		// mainMth/drAstField.
 		public final Method parseMth;
 
+		// A method that returns an AST given the source text directly. Optional, and
+		// independent of the other entrypoints. Only used for text-based sources.
+		public final Method parseTextMth;
+
 		// The main method and AST root field. Is null if parseMth is non-null.
 		public final Method mainMth;
 		public final Field drAstField;
 
 		public LoadedJar(String jarPath, long jarLastModified, CompilerClassLoader classLoader, Class<?> mainClazz,
-				JarFile jar, Method parseMth, Method mainMth, Field drAstField) {
+				JarFile jar, Method parseMth, Method parseTextMth, Method mainMth, Field drAstField) {
 			this.jarPath = jarPath;
 			this.jarLastModified = jarLastModified;
 			this.classLoader = classLoader;
 			this.mainClazz = mainClazz;
 			this.jar = jar;
 			this.parseMth = parseMth;
+			this.parseTextMth = parseTextMth;
 			this.mainMth = mainMth;
 			this.drAstField = drAstField;
 		}
 	}
 
-	public static void purgeCache() {
-		if (lastJar != null) {
-			try {
+	/**
+	 * Holds the most recently loaded jar. Each cache loads classes through its own
+	 * {@link CompilerClassLoader}, so tools loaded via different caches don't share
+	 * any static state, even if they are loaded from the same jar file.
+	 */
+	public static class JarCache {
+		private LoadedJar lastJar = null;
+
+		public synchronized void purge() {
+			if (lastJar != null) {
+				try {
+					lastJar.jar.close();
+				} catch (IOException e) {
+					System.out.println("Error when closing jar file");
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
+			}
+			lastJar = null;
+			Reflect.invalidateAccessorCache();
+		}
+
+		public synchronized LoadedJar load(String jarPath) throws ClassNotFoundException, IOException,
+				NoSuchMethodException, SecurityException, NoSuchFieldException {
+			if (hasUnchanged(jarPath)) {
+				return lastJar;
+			}
+			final File jarFile = new File(jarPath);
+			if (lastJar != null) {
 				lastJar.jar.close();
-			} catch (IOException e) {
-				System.out.println("Error when closing jar file");
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				try {
+					// Helps close the previous jar file
+					// This is part of a bugfix for Windows, cannot remember the exact symptom
+					URLConnection connection = jarFile.toURI().toURL().openConnection();
+					connection.setDefaultUseCaches(false);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
 			}
+			lastJar = loadFresh(jarPath, jarFile);
+			Reflect.invalidateAccessorCache();
+			return lastJar;
+		}
+
+		public synchronized boolean hasUnchanged(String jarPath) {
+			File jarFile = new File(jarPath);
+			final long jarLastMod = jarFile.lastModified();
+			return lastJar != null && lastJar.jarPath.equals(jarPath) && lastJar.jarLastModified == jarLastMod;
 		}
-		lastJar = null;
 	}
 
-	private static LoadedJar lastJar = null;
+	private static final JarCache defaultCache = new JarCache();
+
+	public static void purgeCache() {
+		defaultCache.purge();
+	}
 
 	public static LoadedJar loadJar(String jarPath)
 			throws ClassNotFoundException, IOException, NoSuchMethodException, SecurityException, NoSuchFieldException {
-		if (hasUnchangedJar(jarPath)) {
-			return lastJar;
-		}
-		final File jarFile = new File(jarPath);
-		if (lastJar != null) {
-			lastJar.jar.close();
-			try {
-				// Helps close the previous jar file
-				// This is part of a bugfix for Windows, cannot remember the exact symptom
-				URLConnection connection = jarFile.toURI().toURL().openConnection();
-				connection.setDefaultUseCaches(false);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		}
+		return defaultCache.load(jarPath);
+	}
+
+	private static LoadedJar loadFresh(String jarPath, File jarFile)
+			throws ClassNotFoundException, IOException, NoSuchMethodException, SecurityException, NoSuchFieldException {
 		final long jarLastMod = jarFile.lastModified();
 		CompilerClassLoader urlClassLoader = new CompilerClassLoader(jarFile.toURI().toURL());
 
@@ -92,6 +130,7 @@ public class ASTProvider {
 		String mainClassName = jar.getManifest().getMainAttributes().getValue("Main-Class");
 		Class<?> klass = Class.forName(mainClassName, false, urlClassLoader);
 		Method parseMethod = null;
+		Method parseTextMethod = null;
 		Method mainMethod = null;
 		Field rootField = null;
 		try {
@@ -99,6 +138,11 @@ public class ASTProvider {
 		} catch (NoSuchMethodException e) {
 			// OK, this is optional
 		}
+		try {
+			parseTextMethod = klass.getMethod("CodeProber_parseText", String[].class, CharSequence.class);
+		} catch (NoSuchMethodException e) {
+			// OK, this is optional too
+		}
 		if (parseMethod == null) {
 			mainMethod = klass.getMethod("main", String[].class);
 
@@ -117,14 +161,30 @@ public class ASTProvider {
 			rootField.setAccessible(true);
 		}
 
-		lastJar = new LoadedJar(jarPath, jarLastMod, urlClassLoader, klass, jar, parseMethod, mainMethod, rootField);
-		return lastJar;
+		return new LoadedJar(jarPath, jarLastMod, urlClassLoader, klass, jar, parseMethod, parseTextMethod,
+				mainMethod, rootField);
 	}
 
 	public static boolean hasUnchangedJar(String jarPath) {
-		File jarFile = new File(jarPath);
-		final long jarLastMod = jarFile.lastModified();
-		return lastJar != null && lastJar.jarPath.equals(jarPath) && lastJar.jarLastModified == jarLastMod;
+		return defaultCache.hasUnchanged(jarPath);
+	}
+
+	/**
+	 * Check if the jar declares <code>CodeProber_parseText</code>, i.e if it can
+	 * parse source text directly from memory.
+	 */
+	public static boolean hasParseTextMethod(String jarPath) {
+		return hasParseTextMethod(defaultCache, jarPath);
+	}
+
+	public static boolean hasParseTextMethod(JarCache cache, String jarPath) {
+		try {
+			return cache.load(jarPath).parseTextMth != null;
+		} catch (ClassNotFoundException | IOException | NoSuchMethodException | SecurityException
+				| NoSuchFieldException e) {
+			// The error will be reported properly on the next call to parseAst
+			return false;
+		}
 	}
 
 	public static boolean printDebugInfo = false;
@@ -133,28 +193,53 @@ public class ASTProvider {
 	 * Runs the target compiler.
 	 */
 	public static ParseResult parseAst(String jarPath, String[] args) {
+		return parseAst(jarPath, args, null);
+	}
+
+	/**
+	 * Runs the target compiler.
+	 *
+	 * @param src the source text to parse via <code>CodeProber_parseText</code>,
+	 *            or null to parse the file that is the last entry of
+	 *            <code>args</code>.
+	 */
+	public static ParseResult parseAst(String jarPath, String[] args, CharSequence src) {
+		return parseAst(defaultCache, jarPath, args, src);
+	}
+
+	/**
+	 * Runs the target compiler, loaded via the given cache.
+	 *
+	 * @see #parseAst(String, String[], CharSequence)
+	 */
+	public static ParseResult parseAst(JarCache cache, String jarPath, String[] args, CharSequence src) {
 		if (printDebugInfo) {
-			System.out.println("parsing w/ args: " + Arrays.toString(args));
+			System.out.println("parsing w/ args: " + Arrays.toString(args) + (src != null ? " + in-memory text" : ""));
 		}
 		boolean installedSystemExitInterceptor = false;
 		try {
-			LoadedJar ljar = loadJar(jarPath);
+			LoadedJar ljar = cache.load(jarPath);
+			final Method returningParseMth = src != null ? ljar.parseTextMth : ljar.parseMth;
+			if (src != null && returningParseMth == null) {
+				// Callers are expected to check hasParseTextMethod first
+				return new ParseResult(null, Arrays.asList(RpcBodyLine
+						.fromStderr("Tool has no 'CodeProber_parseText' method, cannot parse text from memory")));
+			}
 
 			// Find the main method we are looking for and invoke the method to get the new
 			// root.
 			try {
 				long start = System.currentTimeMillis();
-				Object prevRoot = ljar.drAstField == null ? null : ljar.drAstField.get(ljar.mainClazz);
+				Object prevRoot = returningParseMth != null || ljar.drAstField == null ? null
+						: ljar.drAstField.get(ljar.mainClazz);
 				List<RpcBodyLine> captures = null;
 				final AtomicReference<Object> parseMthReturnValue = new AtomicReference<>(null);
 				try {
-					if (ljar.parseMth == null) {
+					if (returningParseMth == null) {
 						System.setProperty("java.security.manager", "allow");
-						try {
-							SystemExitControl.disableSystemExit();
+						if (SystemExitControl.tryDisableSystemExit()) {
 							installedSystemExitInterceptor = true;
-						} catch (UnsupportedOperationException uoe) {
-							uoe.printStackTrace();
+						} else {
 							captures = StdIoInterceptor.performDefaultCapture(() -> {
 								System.err.println("Failed installing System.exit interceptor");
 								System.err.println(
@@ -180,9 +265,11 @@ public class ASTProvider {
 
 					final AtomicReference<Exception> innerError = new AtomicReference<>();
 					final List<RpcBodyLine> mainCaptures = StdIoInterceptor.performDefaultCapture(() -> {
-						if (ljar.parseMth != null) {
+						if (returningParseMth != null) {
 							try {
-								parseMthReturnValue.set(ljar.parseMth.invoke(null, new Object[] { args }));
+								parseMthReturnValue.set(src != null //
+										? returningParseMth.invoke(null, args, src)
+										: returningParseMth.invoke(null, new Object[] { args }));
 							} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
 								innerError.set(e);
 							}
@@ -217,13 +304,14 @@ public class ASTProvider {
 				} finally {
 					if (installedSystemExitInterceptor) {
 						SystemExitControl.enableSystemExit();
+						installedSystemExitInterceptor = false;
 					}
 
 					if (printDebugInfo) {
 						System.out.printf("Compiler finished after : %d ms%n", (System.currentTimeMillis() - start));
 					}
 				}
-				final Object root = ljar.parseMth != null //
+				final Object root = returningParseMth != null //
 						? parseMthReturnValue.get()
 						: ljar.drAstField.get(ljar.mainClazz);
 				if (root == null) {
@@ -231,8 +319,8 @@ public class ASTProvider {
 						captures = new ArrayList<>();
 					}
 					captures.addAll(StdIoInterceptor.performDefaultCapture(() -> {
-						if (ljar.parseMth != null) {
-							System.err.println("CodeProber_parse returned null");
+						if (returningParseMth != null) {
+							System.err.println(returningParseMth.getName() + " returned null");
 						} else {
 							System.err.println("Compiler exited, but no 'CodeProber_root_node' found.");
 							System.err.println(
@@ -266,6 +354,7 @@ public class ASTProvider {
 			} finally {
 				if (installedSystemExitInterceptor) {
 					SystemExitControl.enableSystemExit();
+					installedSystemExitInterceptor = false;
 				}
 			}
 		} catch (NoSuchMethodException e) {
@@ -0,0 +1,98 @@
+package codeprober.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Fast, non-cryptographic 64-bit digests of source contents. Used to identify
+ * parse inputs without having to compare (potentially multi-megabyte) texts
+ * character by character.
+ * <p>
+ * The digest is FNV-1a, followed by a final avalanche step to spread the bits
+ * of short inputs.
+ */
+public class ContentDigest {
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private long state = FNV_OFFSET_BASIS;
+	private long length;
+
+	public void update(int b) {
+		state = (state ^ (b & 0xFF)) * FNV_PRIME;
+		++length;
+	}
+
+	public void update(byte[] data, int off, int len) {
+		long h = state;
+		for (int i = off, end = off + len; i < end; ++i) {
+			h = (h ^ (data[i] & 0xFF)) * FNV_PRIME;
+		}
+		state = h;
+		length += len;
+	}
+
+	public void update(CharSequence text) {
+		long h = state;
+		final int len = text.length();
+		for (int i = 0; i < len; ++i) {
+			final char c = text.charAt(i);
+			h = (h ^ (c & 0xFF)) * FNV_PRIME;
+			h = (h ^ (c >>> 8)) * FNV_PRIME;
+		}
+		state = h;
+		length += len;
+	}
+
+	public long get() {
+		// Mix in the length and avalanche (fmix64 from MurmurHash3)
+		long h = state ^ length;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	public static long of(CharSequence text) {
+		final ContentDigest cd = new ContentDigest();
+		cd.update(text);
+		return cd.get();
+	}
+
+	public static long of(byte[] data) {
+		final ContentDigest cd = new ContentDigest();
+		cd.update(data, 0, data.length);
+		return cd.get();
+	}
+
+	/**
+	 * An output stream that digests all bytes written through it.
+	 */
+	public static class DigestingOutputStream extends FilterOutputStream {
+		private final ContentDigest digest = new ContentDigest();
+
+		public DigestingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			digest.update(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			digest.update(b, off, len);
+		}
+
+		public long getDigest() {
+			return digest.get();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package codeprober.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Tracks how much of the heap is in use right after each full garbage
+ * collection. Unlike the current heap usage, this doesn't include garbage that
+ * simply hasn't been collected yet, so it is a better measure of how much memory
+ * is actually retained (e.g by cached ASTs). Minor collections are ignored,
+ * since they leave any garbage in the old generation behind.
+ */
+public class HeapMonitor {
+
+	private static final AtomicBoolean installed = new AtomicBoolean();
+	private static final AtomicLong usedAfterLastFullGc = new AtomicLong(-1);
+
+	/**
+	 * The action that the JVM reports for collections that cover the whole heap,
+	 * see {@link GarbageCollectionNotificationInfo#getGcAction()}.
+	 */
+	static final String FULL_GC_ACTION = "end of major GC";
+
+	/**
+	 * Start listening for garbage collections. Does nothing if called more than
+	 * once, or if the JVM doesn't support garbage collection notifications.
+	 */
+	public static void install() {
+		if (!installed.compareAndSet(false, true)) {
+			return;
+		}
+		final Set<String> heapPools = new HashSet<>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				heapPools.add(pool.getName());
+			}
+		}
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (!(gc instanceof NotificationEmitter)) {
+				continue;
+			}
+			((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+				if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+						.equals(notification.getType())) {
+					return;
+				}
+				final GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+						.from((CompositeData) notification.getUserData());
+				final Long used = getRetainedBytes(info.getGcAction(), info.getGcInfo().getMemoryUsageAfterGc(),
+						heapPools);
+				if (used != null) {
+					usedAfterLastFullGc.set(used);
+				}
+			}, null, null);
+		}
+	}
+
+	/**
+	 * Get the heap usage after a collection, or null if the collection doesn't say
+	 * how much is retained because it wasn't a full collection.
+	 */
+	static Long getRetainedBytes(String gcAction, Map<String, MemoryUsage> usageAfterGc, Set<String> heapPools) {
+		if (!FULL_GC_ACTION.equals(gcAction)) {
+			return null;
+		}
+		long used = 0;
+		for (Map.Entry<String, MemoryUsage> ent : usageAfterGc.entrySet()) {
+			if (heapPools.contains(ent.getKey())) {
+				used += ent.getValue().getUsed();
+			}
+		}
+		return used;
+	}
+
+	/**
+	 * Get the number of heap bytes in use right after the most recent full garbage
+	 * collection, or null if no full collection has happened since
+	 * {@link #install()}.
+	 */
+	public static Long getUsedAfterLastFullGc() {
+		final long ret = usedAfterLastFullGc.get();
+		return ret >= 0 ? ret : null;
+	}
+}
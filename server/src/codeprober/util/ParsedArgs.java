@@ -23,17 +23,41 @@ public class ParsedArgs {
 
 	public final TestMode testMode;
 	public final ConcurrencyMode concurrencyMode;
+	/**
+	 * Number of worker processes, or the max number of worker processes if
+	 * {@link #minWorkerProcessCount} is set.
+	 */
 	public final Integer workerProcessCount;
+	/**
+	 * If set, the number of worker processes is adjusted to the load, between this
+	 * and {@link #workerProcessCount}.
+	 */
+	public final Integer minWorkerProcessCount;
+	/**
+	 * For {@link ConcurrencyMode#WORKER}: if set, accept coordinator connections on
+	 * this <code>[HOST:]PORT</code> instead of talking to a coordinator over
+	 * stdin/stdout.
+	 */
+	public final String listenEndpoint;
+	/**
+	 * For {@link ConcurrencyMode#COORDINATOR}: <code>HOST:PORT</code> endpoints of
+	 * workers started with <code>--worker --listen</code>. Never null.
+	 */
+	public final List<String> remoteWorkers;
 	public final String jarPath;
 	public final String[] extraArgs;
 	public final String oneshotRequest;
 	public final File oneshotOutput;
 
-	public ParsedArgs(TestMode testMode, ConcurrencyMode concurrencyMode, Integer workerProcessCount, String jarPath,
+	public ParsedArgs(TestMode testMode, ConcurrencyMode concurrencyMode, Integer workerProcessCount,
+			Integer minWorkerProcessCount, String listenEndpoint, List<String> remoteWorkers, String jarPath,
 			String[] extraArgs, String oneshotRequest, File oneshotOutput) {
 		this.testMode = testMode;
 		this.concurrencyMode = concurrencyMode;
 		this.workerProcessCount = workerProcessCount;
+		this.minWorkerProcessCount = minWorkerProcessCount;
+		this.listenEndpoint = listenEndpoint;
+		this.remoteWorkers = remoteWorkers;
 		this.jarPath = jarPath;
 		this.extraArgs = extraArgs;
 		this.oneshotRequest = oneshotRequest;
@@ -42,7 +66,7 @@ public class ParsedArgs {
 
 	public static void printUsage() {
 		System.out.println(
-				"Usage: java -jar codeprober.jar [--test[=run|bless|bless-dry] [--concurrent=N] [path/to/your/analyzer-or-compiler.jar [args-to-forward-to-your-main]]");
+				"Usage: java -jar codeprober.jar [--test[=run|bless|bless-dry] [--concurrent=N|MIN-MAX] [--remote-workers=HOST:PORT,..] [path/to/your/analyzer-or-compiler.jar [args-to-forward-to-your-main]]");
 		System.out.println("");
 		System.out.println("Option descriptions:");
 
@@ -72,6 +96,12 @@ public class ParsedArgs {
 				"A dry-run version of --test=bless. Will print all updates that would be done.");
 		addOption.accept("--concurrent=N",
 				"Spawn N separate JVM instances, delegate most tasks to them. This can increase performance. It also makes it possible to interrupt long-running tasks. Normally, probes are evaluated in the same process as CodeProber itself, so an infinite or slow-running task is impossible for CodeProber to cancel. With --concurrent, CodeProber can stop worker processes mid-task. If you are developing analysis tasks that have a tendency to get stuck, this may be a very useful option to enable.");
+		addOption.accept("--concurrent=MIN-MAX",
+				"Like --concurrent=N, but the number of worker processes is adjusted to the load. It starts at MIN, and workers are added (up to MAX) when jobs have to wait for a worker. Workers that have been idle for a while are shut down again. New workers are only started if the host has enough memory, see the 'cpr.worker*' system properties.");
+		addOption.accept("--remote-workers=HOST:PORT,..",
+				"Also delegate tasks to workers on other hosts, started with '--worker --listen=PORT'. Enables concurrent mode. Unless --concurrent=N is also specified, no local worker processes are started. If a remote worker disconnects, CodeProber reconnects once it is available again.");
+		addOption.accept("--worker --listen=[HOST:]PORT",
+				"Run a worker that accepts a CodeProber coordinator on the given port, for use with --remote-workers. Only accepts local connections unless PERMIT_REMOTE_CONNECTIONS is set to true. The coordinator must present the token printed at startup (or set with -Dcpr.workerToken=TOKEN). The connection is not encrypted, so only use this on trusted networks.");
 
 		System.out.println("");
 		System.out.println("Important System Properties:");
@@ -130,6 +160,9 @@ public class ParsedArgs {
 		String jarPath = null;
 		String[] extraArgs = null;
 		Integer workerCount = null;
+		Integer minWorkerCount = null;
+		String listenEndpoint = null;
+		final List<String> remoteWorkers = new ArrayList<>();
 		String oneshotRequest = null;
 		File oneshotOutput = null;
 
@@ -173,17 +206,47 @@ public class ParsedArgs {
 					}
 					continue;
 				}
+				if (args[i].startsWith("--listen=")) {
+					if (listenEndpoint != null) {
+						throw new IllegalArgumentException("Cannot specify multiple --listen values");
+					}
+					listenEndpoint = args[i].substring("--listen=".length());
+					continue;
+				}
+				if (args[i].startsWith("--remote-workers=")) {
+					for (String endpoint : args[i].substring("--remote-workers=".length()).split(",")) {
+						if (!endpoint.trim().isEmpty()) {
+							remoteWorkers.add(endpoint.trim());
+						}
+					}
+					if (remoteWorkers.isEmpty()) {
+						throw new IllegalArgumentException("No endpoints given to --remote-workers");
+					}
+					continue;
+				}
 				if (args[i].startsWith("--concurrent=")) {
 					setConcurrencyMode.accept(ConcurrencyMode.COORDINATOR);
 					try {
-						workerCount = Integer.parseInt(args[i].substring("--concurrent=".length()));
+						final String countStr = args[i].substring("--concurrent=".length());
+						final int rangeSep = countStr.indexOf('-');
+						if (rangeSep > 0) {
+							minWorkerCount = Integer.parseInt(countStr.substring(0, rangeSep));
+							workerCount = Integer.parseInt(countStr.substring(rangeSep + 1));
+							if (minWorkerCount <= 0) {
+								throw new IllegalArgumentException(
+										"Minimum worker count is 1, got '" + minWorkerCount + "'");
+							}
+							if (workerCount < minWorkerCount) {
+								throw new IllegalArgumentException("Invalid worker count range '" + countStr + "'");
+							}
+						} else {
+							workerCount = Integer.parseInt(countStr);
+						}
 						if (workerCount <= 0) {
 							throw new IllegalArgumentException("Minimum worker count is 1, got '" + workerCount + "'");
 						}
 					} catch (NumberFormatException e) {
-						System.out.println("Invalid value for '--concurrent'");
-						e.printStackTrace();
-						System.exit(1);
+						throw new IllegalArgumentException("Invalid value for '" + args[i] + "'", e);
 					}
 					continue;
 				}
@@ -230,10 +293,32 @@ public class ParsedArgs {
 			}
 		}
 
+		if (listenEndpoint != null && concurrency.get() != ConcurrencyMode.WORKER) {
+			throw new IllegalArgumentException("--listen= is only valid together with --worker");
+		}
+		if (!remoteWorkers.isEmpty()) {
+			switch (concurrency.get()) {
+			case DISABLED:
+				concurrency.set(ConcurrencyMode.COORDINATOR);
+				if (workerCount == null) {
+					// Only use the remote workers
+					workerCount = 0;
+				}
+				break;
+			case COORDINATOR:
+				break;
+			default:
+				throw new IllegalArgumentException("--remote-workers= cannot be combined with --worker");
+			}
+		}
+		if (oneshotRequest != null && !remoteWorkers.isEmpty()) {
+			throw new IllegalArgumentException("Concurrency is not supported for oneshot requests");
+		}
+
 		if (testMode[0].isBlessLike() && concurrency.get() != ConcurrencyMode.DISABLED) {
 			throw new IllegalArgumentException("Concurrent --bless not supported");
 		}
-		return new ParsedArgs(testMode[0], concurrency.get(), workerCount, jarPath, extraArgs, oneshotRequest,
-				oneshotOutput);
+		return new ParsedArgs(testMode[0], concurrency.get(), workerCount, minWorkerCount, listenEndpoint,
+				remoteWorkers, jarPath, extraArgs, oneshotRequest, oneshotOutput);
 	}
 }
@@ -17,6 +17,7 @@ import org.json.JSONObject;
 import codeprober.metaprogramming.StdIoInterceptor;
 import codeprober.metaprogramming.StreamInterceptor.OtherThreadDataHandling;
 import codeprober.protocol.ClientRequest;
+import codeprober.protocol.JobPriority;
 import codeprober.protocol.data.AsyncRequestReq;
 import codeprober.protocol.data.AsyncRequestRes;
 import codeprober.protocol.data.Decoration;
@@ -117,7 +118,7 @@ public class RunWorkspaceTest {
 					final AsyncRequestReq asyncReq = new AsyncRequestReq(
 							new GetDecorationsReq(TextProbeEnvironment.createParsingRequestData(fullPath), null, true)
 									.toJSON(),
-							jobIdgenerator.incrementAndGet());
+							jobIdgenerator.incrementAndGet(), JobPriority.BULK);
 
 					final JSONObject[] resPtr = new JSONObject[1];
 					final CountDownLatch cdl = new CountDownLatch(1);
@@ -8,8 +8,16 @@ public class SystemExitControl {
 public static class ExitTrappedException extends SecurityException {
   }
 
+  // Number of callers that currently have System.exit disabled. Parsing may happen
+  // in several threads at once, and exit must stay disabled until all are done.
+  private static int disableCount = 0;
+
   @SuppressWarnings("removal")
-  public static void disableSystemExit() {
+  public static synchronized void disableSystemExit() {
+    if (disableCount > 0) {
+      ++disableCount;
+      return;
+    }
     final SecurityManager securityManager = new SecurityManager() {
       @Override public void checkPermission(Permission permission) {
         if (permission.getName().contains("exitVM")) {
@@ -18,10 +26,36 @@ public static class ExitTrappedException extends SecurityException {
       }
     };
     System.setSecurityManager(securityManager);
+    disableCount = 1;
+  }
+
+  // Set once installing a security manager has failed. Newer JVMs refuse it
+  // unless started with -Djava.security.manager=allow, no point retrying then.
+  private static boolean securityManagerUnsupported = false;
+
+  /**
+   * Like {@link #disableSystemExit()}, but returns false instead of throwing if
+   * the JVM doesn't permit installing a security manager.
+   */
+  public static synchronized boolean tryDisableSystemExit() {
+    if (securityManagerUnsupported) {
+      return false;
+    }
+    try {
+      disableSystemExit();
+      return true;
+    } catch (UnsupportedOperationException e) {
+      e.printStackTrace();
+      securityManagerUnsupported = true;
+      return false;
+    }
   }
 
   @SuppressWarnings("removal")
-  public static void enableSystemExit() {
+  public static synchronized void enableSystemExit() {
+    if (disableCount == 0 || --disableCount > 0) {
+      return;
+    }
     System.setSecurityManager(null);
   }
 }
@@ -3,4 +3,22 @@ package codeprober.util;
 public class Util {
 
 	public static final boolean verbose = "true".equals(System.getProperty("cpr.verbose"));
+
+	/**
+	 * Read an integer system property, falling back to a default value if the
+	 * property is missing or malformed.
+	 */
+	public static int getIntProperty(String key, int defaultValue) {
+		final String override = System.getProperty(key);
+		if (override == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(override.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid value supplied to '" + key + "'");
+			e.printStackTrace();
+			return defaultValue;
+		}
+	}
 }
@@ -0,0 +1,77 @@
+package codeprober.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe map that compares keys by identity (like
+ * {@link java.util.IdentityHashMap}) and only holds weak references to them
+ * (like {@link java.util.WeakHashMap}). Entries are removed some time after
+ * their key has been garbage collected. Null keys are not supported.
+ */
+public class WeakIdentityMap<K, V> {
+
+	private static class IdentityWeakKey extends WeakReference<Object> {
+		private final int hash;
+
+		public IdentityWeakKey(Object referent, ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			this.hash = System.identityHashCode(referent);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof IdentityWeakKey)) {
+				return false;
+			}
+			final Object referent = get();
+			return referent != null && referent == ((IdentityWeakKey) obj).get();
+		}
+	}
+
+	private final Map<IdentityWeakKey, V> entries = new HashMap<>();
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+	private void expungeStaleEntries() {
+		Reference<?> ref;
+		while ((ref = queue.poll()) != null) {
+			entries.remove(ref);
+		}
+	}
+
+	/**
+	 * Get the value for a key, or null if there is no entry for it.
+	 */
+	public synchronized V get(K key) {
+		expungeStaleEntries();
+		return entries.get(new IdentityWeakKey(key, null));
+	}
+
+	public synchronized void put(K key, V value) {
+		expungeStaleEntries();
+		entries.put(new IdentityWeakKey(key, queue), value);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		// Entries are already gone, just drain the queue
+		while (queue.poll() != null) {
+		}
+	}
+
+	public synchronized int size() {
+		expungeStaleEntries();
+		return entries.size();
+	}
+}
@@ -4,7 +4,9 @@ import java.io.File;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import codeprober.requesthandler.WorkspaceHandler;
@@ -16,11 +18,23 @@ public class WorkspaceDirectoryMonitor extends DirectoryMonitor {
 	private File workspaceRoot;
 	final Set<String> changedWorkspacePaths = new HashSet<>();
 	private ServerToClientMessagePusher msgPusher;
+	private Consumer<List<String>> onWorkspacePathsChanged;
 
 	public WorkspaceDirectoryMonitor(File workspaceRoot, ServerToClientMessagePusher msgPusher) {
+		this(workspaceRoot, msgPusher, null);
+	}
+
+	/**
+	 * @param onWorkspacePathsChanged optional listener, called with the changed
+	 *                                workspace paths after clients have been
+	 *                                notified.
+	 */
+	public WorkspaceDirectoryMonitor(File workspaceRoot, ServerToClientMessagePusher msgPusher,
+			Consumer<List<String>> onWorkspacePathsChanged) {
 		super(workspaceRoot);
 		this.workspaceRoot = workspaceRoot;
 		this.msgPusher = msgPusher;
+		this.onWorkspacePathsChanged = onWorkspacePathsChanged;
 	}
 
 	@Override
@@ -58,7 +72,11 @@ public class WorkspaceDirectoryMonitor extends DirectoryMonitor {
 	public void onChange() {
 		synchronized (changedWorkspacePaths) {
 			if (!changedWorkspacePaths.isEmpty()) {
-				msgPusher.onChange(ServerToClientEvent.workspacePathChanged(new ArrayList<>(changedWorkspacePaths)));
+				final List<String> changed = new ArrayList<>(changedWorkspacePaths);
+				msgPusher.onChange(ServerToClientEvent.workspacePathChanged(changed));
+				if (onWorkspacePathsChanged != null) {
+					onWorkspacePathsChanged.accept(changed);
+				}
 				changedWorkspacePaths.clear();
 			}
 		}